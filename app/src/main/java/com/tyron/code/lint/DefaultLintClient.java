@@ -5,11 +5,15 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.tyron.builder.model.DiagnosticWrapper;
+import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.completion.java.compiler.CompileTask;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.lint.api.Context;
+import com.tyron.lint.api.DefaultPosition;
 import com.tyron.lint.api.Issue;
 import com.tyron.lint.api.Lint;
 import com.tyron.lint.api.Location;
@@ -17,36 +21,182 @@ import com.tyron.lint.api.Severity;
 import com.tyron.lint.api.TextFormat;
 import com.tyron.lint.client.LintClient;
 
+import org.openjdk.javax.tools.Diagnostic;
+
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DefaultLintClient extends LintClient {
 
-    private final List<LintIssue> mIssues = new ArrayList<>();
-    private final Lint mLint;
-    private final JavaCompilerService mCompiler;
+    private static final Map<JavaModule, DefaultLintClient> sClients =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Returns the client of the module, the results of the files linted so far are kept
+     * by it so they are shared by the editor and project scans.
+     */
+    public static DefaultLintClient getInstance(@NonNull Project project,
+                                                @NonNull JavaModule module) {
+        DefaultLintClient client;
+        synchronized (sClients) {
+            client = sClients.get(module);
+            if (client == null) {
+                client = new DefaultLintClient(project, module);
+                sClients.put(module, client);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * The issues reported for each file by the last scan of the file
+     */
+    private final Map<File, List<LintIssue>> mIssues = new ConcurrentHashMap<>();
+    private final Project mProject;
+    private final JavaModule mModule;
 
-    public DefaultLintClient(JavaModule project) {
-        mCompiler = CompilerService.getInstance()
+    private Lint mLint;
+    private JavaCompilerService mCompiler;
+
+    private DefaultLintClient(Project project, JavaModule module) {
+        mProject = project;
+        mModule = module;
+    }
+
+    /**
+     * The compiler is created again when the class path of the project changes, the
+     * cached results may depend on it so they are dropped as well.
+     */
+    private synchronized Lint getLint() {
+        JavaCompilerProvider provider = CompilerService.getInstance()
                 .getIndex(JavaCompilerProvider.KEY);
-        mLint = new Lint(mCompiler, project, this);
+        JavaCompilerService compiler = provider.getCompiler(mProject, mModule);
+        if (mLint == null || compiler != mCompiler) {
+            mCompiler = compiler;
+            mLint = new Lint(compiler, mModule, this);
+        }
+        return mLint;
     }
 
     public void scan(File file) {
-        mIssues.clear();
-        mLint.scanFile(file);
+        IssueCollector collector = new IssueCollector();
+        getLint().scanFile(file, collector);
+        putIssues(file, collector.getIssues(file));
+    }
+
+    /**
+     * Lints a file that has been compiled for its diagnostics
+     *
+     * @return the issues of the file
+     */
+    public List<LintIssue> scan(File file, String contents, CompileTask task) {
+        IssueCollector collector = new IssueCollector();
+        getLint().scanFile(file, contents, task, collector);
+        List<LintIssue> issues = collector.getIssues(file);
+        putIssues(file, issues);
+        return issues;
+    }
+
+    /**
+     * Lints all the java files of the project, unchanged files reuse their previous results.
+     */
+    public void scanProject() {
+        IssueCollector collector = new IssueCollector();
+        getLint().scanProject(collector);
+        Set<File> files = new HashSet<>(mModule.getJavaFiles().values());
+        mIssues.keySet().retainAll(files);
+        for (File file : files) {
+            putIssues(file, collector.getIssues(file));
+        }
+    }
+
+    /**
+     * Replaces the issues of the file with the ones of its last scan, the issues of each
+     * scan are collected separately so scans running at the same time don't mix them.
+     */
+    private void putIssues(File file, List<LintIssue> issues) {
+        if (issues.isEmpty()) {
+            mIssues.remove(file);
+        } else {
+            mIssues.put(file, Collections.unmodifiableList(issues));
+        }
     }
 
     @Override
     public void report(@NonNull Context context, @NonNull Issue issue, @NonNull Severity severity, @Nullable Location location, @NonNull String message, @NonNull TextFormat format) {
-        if (location != null) {
-            Log.d("default lint client", "adding issue: " + issue.getId());
-            mIssues.add(new LintIssue(issue, severity, location));
-        }
+        // the issues are reported to the collector of each scan
     }
 
     public List<LintIssue> getReportedIssues() {
-        return mIssues;
+        List<LintIssue> issues = new ArrayList<>();
+        for (List<LintIssue> fileIssues : mIssues.values()) {
+            issues.addAll(fileIssues);
+        }
+        return issues;
+    }
+
+    public List<LintIssue> getReportedIssues(File file) {
+        List<LintIssue> issues = mIssues.get(file);
+        return issues == null ? Collections.emptyList() : new ArrayList<>(issues);
+    }
+
+    private static class IssueCollector extends LintClient {
+
+        private final Map<File, List<LintIssue>> mIssues = new ConcurrentHashMap<>();
+
+        @Override
+        public void report(@NonNull Context context, @NonNull Issue issue, @NonNull Severity severity, @Nullable Location location, @NonNull String message, @NonNull TextFormat format) {
+            if (location != null) {
+                Log.d("default lint client", "adding issue: " + issue.getId());
+                mIssues.computeIfAbsent(context.file, it -> new CopyOnWriteArrayList<>())
+                        .add(new LintIssue(issue, severity, location));
+            }
+        }
+
+        List<LintIssue> getIssues(File file) {
+            List<LintIssue> issues = mIssues.get(file);
+            return issues == null ? new ArrayList<>() : new ArrayList<>(issues);
+        }
+    }
+
+    /**
+     * Converts an issue to a diagnostic so it is shown in the editor along with the
+     * diagnostics of the compiler.
+     */
+    public static DiagnosticWrapper toDiagnostic(LintIssue issue) {
+        DiagnosticWrapper wrapper = new DiagnosticWrapper();
+        wrapper.setCode(issue.getIssue().getId());
+        wrapper.setMessage(issue.getIssue().getBriefDescription(TextFormat.TEXT));
+        wrapper.setSource(issue.getLocation().getFile());
+        switch (issue.getSeverity()) {
+            case FATAL:
+            case ERROR:
+                wrapper.setKind(Diagnostic.Kind.ERROR);
+                break;
+            case WARNING:
+                wrapper.setKind(Diagnostic.Kind.WARNING);
+                break;
+            default:
+                wrapper.setKind(Diagnostic.Kind.NOTE);
+        }
+        if (issue.getLocation().getStart() instanceof DefaultPosition) {
+            DefaultPosition start = (DefaultPosition) issue.getLocation().getStart();
+            wrapper.setStartPosition(start.getOffset());
+            wrapper.setPosition(start.getOffset());
+            wrapper.setLineNumber(start.getLine() + 1);
+            wrapper.setColumnNumber(start.getColumn() + 1);
+        }
+        if (issue.getLocation().getEnd() instanceof DefaultPosition) {
+            wrapper.setEndPosition(((DefaultPosition) issue.getLocation().getEnd()).getOffset());
+        }
+        return wrapper;
     }
 }
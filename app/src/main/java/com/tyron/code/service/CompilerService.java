@@ -173,7 +173,7 @@ public class CompilerService extends Service {
 
         project.setCompiling(true);
         ProgressIndicator indicator = new ProgressIndicator();
-        ProgressManager.getInstance().runAsync(() -> {
+        ProgressManager.getInstance().runAsync(null, ProgressManager.Priority.BACKGROUND, () -> {
             try {
                 if (true) {
                     buildProject(project, type);
@@ -403,7 +403,7 @@ public class CodeEditorView extends CodeEditor implements Editor {
                     .getCurrentProject();
 
             if (analyzeManager instanceof DiagnosticTextmateAnalyzer) {
-                if (isBackgroundAnalysisEnabled() && (project != null && !project.isCompiling())) {
+                if (isBackgroundAnalysisEnabled() && project != null) {
                     ((DiagnosticTextmateAnalyzer) analyzeManager).rerunWithBg();
                 } else {
                     ((DiagnosticTextmateAnalyzer) analyzeManager).rerunWithoutBg();
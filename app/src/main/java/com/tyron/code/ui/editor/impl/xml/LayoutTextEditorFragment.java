@@ -1,14 +1,22 @@
 package com.tyron.code.ui.editor.impl.xml;
 
 import android.os.Bundle;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
 
 import com.tyron.code.R;
 import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorFragment;
+import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorView;
 import com.tyron.code.ui.layoutEditor.LayoutEditorFragment;
 import com.tyron.code.util.ProjectUtils;
 
 import java.io.File;
 
+import io.github.rosemoe.sora.event.ContentChangeEvent;
+
 /**
  * A {@link CodeEditorFragment} that supports editing layout files
  */
@@ -22,6 +30,22 @@ public class LayoutTextEditorFragment extends CodeEditorFragment {
         return fragment;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        CodeEditorView editor = view.findViewById(R.id.code_editor);
+        editor.subscribeEvent(ContentChangeEvent.class, (event, unsubscribe) -> {
+            Fragment preview = getChildFragmentManager()
+                    .findFragmentById(R.id.layout_editor_container);
+            if (preview instanceof LayoutEditorFragment && preview.isVisible()) {
+                ((LayoutEditorFragment) preview).updateLayout(event.getEditor()
+                        .getText()
+                        .toString());
+            }
+        });
+    }
+
     public void preview() {
 
         File currentFile = getEditor().getCurrentFile();
@@ -11,6 +11,7 @@ import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
 import com.tyron.code.BuildConfig;
+import com.tyron.code.lint.DefaultLintClient;
 import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorView;
 import com.tyron.code.ui.editor.language.AbstractCodeAnalyzer;
 import com.tyron.code.ui.editor.language.HighlightUtil;
@@ -94,7 +95,7 @@ public class JavaAnalyzer extends DiagnosticTextmateAnalyzer {
             throw new RuntimeException(e);
         }
     }
-    private static final Debouncer sDebouncer = new Debouncer(Duration.ofMillis(700));
+    private static final Debouncer sDebouncer = new Debouncer(Duration.ofMillis(150));
     private static final String TAG = JavaAnalyzer.class.getSimpleName();
 
     private final WeakReference<Editor> mEditorReference;
@@ -128,10 +129,7 @@ public class JavaAnalyzer extends DiagnosticTextmateAnalyzer {
         if (project == null) {
             return null;
         }
-        if (project.isCompiling()) {
-            return null;
-        }
-        Module module = project.getModule(editor.getCurrentFile());
+        Module module = project.getSnapshot(project.getModule(editor.getCurrentFile()));
         if (module instanceof JavaModule) {
             JavaCompilerProvider provider = CompilerService.getInstance()
                     .getIndex(JavaCompilerProvider.KEY);
@@ -171,13 +169,15 @@ public class JavaAnalyzer extends DiagnosticTextmateAnalyzer {
                                                                                      .toPath(),
                                                                              contents.toString(),
                                                                              Instant.now());
-                    CompilerContainer container = service.compile(Collections.singletonList(sourceFileObject));
+                    CompilerContainer container = service.compileInBackground(Collections.singletonList(sourceFileObject));
                     container.run(task -> {
                         if (!cancel.invoke()) {
                             List<DiagnosticWrapper> collect = task.diagnostics.stream()
                                     .map(d -> modifyDiagnostic(task, d))
                                     .peek(it -> ProgressManager.checkCanceled())
                                     .collect(Collectors.toList());
+                            collect.addAll(getLintDiagnostics(module, currentFile,
+                                    contents.toString(), task));
                             editor.setDiagnostics(collect);
 
                             ProgressManager.getInstance()
@@ -199,6 +199,22 @@ public class JavaAnalyzer extends DiagnosticTextmateAnalyzer {
         }
     }
 
+    /**
+     * Lints the file with the task that has just been compiled for its diagnostics, the
+     * results are cached until the contents of the file change.
+     */
+    private List<DiagnosticWrapper> getLintDiagnostics(Module module, File file,
+                                                       String contents, CompileTask task) {
+        Project project = ProjectManager.getInstance().getCurrentProject();
+        if (project == null || !(module instanceof JavaModule)) {
+            return Collections.emptyList();
+        }
+        return DefaultLintClient.getInstance(project, (JavaModule) module)
+                .scan(file, contents, task).stream()
+                .map(DefaultLintClient::toDiagnostic)
+                .collect(Collectors.toList());
+    }
+
     private DiagnosticWrapper modifyDiagnostic(CompileTask task, Diagnostic<? extends JavaFileObject> diagnostic) {
         DiagnosticWrapper wrapped = new DiagnosticWrapper(diagnostic);
 
@@ -5,11 +5,14 @@ import android.graphics.Color;
 import com.tyron.code.ui.editor.impl.text.rosemoe.CodeEditorView;
 import com.tyron.code.ui.editor.language.HighlightUtil;
 import com.tyron.editor.Editor;
+import com.tyron.editor.highlight.TokenizeCache;
 
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.github.rosemoe.sora.lang.analysis.AsyncIncrementalAnalyzeManager;
 import io.github.rosemoe.sora.lang.styling.CodeBlock;
@@ -44,11 +47,23 @@ public class BaseTextmateAnalyzer extends AsyncIncrementalAnalyzeManager<StackEl
      */
     public static int MAX_FOLDING_REGIONS_FOR_INDENT_LIMIT = 5000;
 
+    /**
+     * Maximum number of distinct lines whose tokens are cached
+     */
+    private static final int MAX_CACHED_LINES = 8192;
+
     private final Registry registry = new Registry();
     private final IGrammar grammar;
     private Theme theme;
     private final Editor editor;
     private final ILanguageConfiguration configuration;
+    private final TokenizeCache<StackElement, ITokenizeLineResult2> tokenizeCache =
+            new TokenizeCache<>(MAX_CACHED_LINES);
+
+    /**
+     * Parsed underline colors of the theme, keyed by the foreground id of the token
+     */
+    private final Map<Integer, Integer> underlineColors = new HashMap<>();
 
     public BaseTextmateAnalyzer(Editor editor,
                                 String grammarName,
@@ -136,16 +151,24 @@ public class BaseTextmateAnalyzer extends AsyncIncrementalAnalyzeManager<StackEl
     @Override
     public LineTokenizeResult<StackElement, Span> tokenizeLine(CharSequence lineC,
                                                                StackElement state) {
-        String line = lineC.toString();
-        ArrayList<Span> tokens = new ArrayList<>();
-        ITokenizeLineResult2 lineTokens = grammar.tokenizeLine2(line, state);
-        int tokensLength = lineTokens.getTokens().length / 2;
+        ITokenizeLineResult2 cached = tokenizeCache.get(lineC, state);
+        if (cached == null) {
+            // read before tokenizing, the tokens are not cached if the theme changes meanwhile
+            int generation = tokenizeCache.getGeneration();
+            String line = lineC.toString();
+            cached = grammar.tokenizeLine2(line, state);
+            tokenizeCache.put(line, state, generation, cached);
+        }
+
+        int[] lineTokens = cached.getTokens();
+        int tokensLength = lineTokens.length / 2;
+        ArrayList<Span> tokens = new ArrayList<>(tokensLength + 1);
         for (int i = 0; i < tokensLength; i++) {
-            int startIndex = lineTokens.getTokens()[2 * i];
+            int startIndex = lineTokens[2 * i];
             if (i == 0 && startIndex != 0) {
                 tokens.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
             }
-            int metadata = lineTokens.getTokens()[2 * i + 1];
+            int metadata = lineTokens[2 * i + 1];
             int foreground = StackElementMetadata.getForeground(metadata);
             int fontStyle = StackElementMetadata.getFontStyle(metadata);
             Span span = Span.obtain(startIndex, TextStyle.makeStyle(foreground + 255, 0,
@@ -155,15 +178,27 @@ public class BaseTextmateAnalyzer extends AsyncIncrementalAnalyzeManager<StackEl
                                                                     false));
 
             if ((fontStyle & FontStyle.Underline) != 0) {
-                String color = theme.getColor(foreground);
+                Integer color = getUnderlineColor(foreground);
                 if (color != null) {
-                    span.underlineColor = Color.parseColor(color);
+                    span.underlineColor = color;
                 }
             }
 
             tokens.add(span);
         }
-        return new LineTokenizeResult<>(lineTokens.getRuleStack(), null, tokens);
+        return new LineTokenizeResult<>(cached.getRuleStack(), null, tokens);
+    }
+
+    private Integer getUnderlineColor(int foreground) {
+        synchronized (underlineColors) {
+            if (underlineColors.containsKey(foreground)) {
+                return underlineColors.get(foreground);
+            }
+            String color = theme.getColor(foreground);
+            Integer parsed = color != null ? Color.parseColor(color) : null;
+            underlineColors.put(foreground, parsed);
+            return parsed;
+        }
     }
 
     @Override
@@ -174,5 +209,10 @@ public class BaseTextmateAnalyzer extends AsyncIncrementalAnalyzeManager<StackEl
     public void updateTheme(IRawTheme theme) {
         registry.setTheme(theme);
         this.theme = Theme.createFromRawTheme(theme);
+        // the cached tokens hold the colors of the previous theme
+        tokenizeCache.clear();
+        synchronized (underlineColors) {
+            underlineColors.clear();
+        }
     }
 }
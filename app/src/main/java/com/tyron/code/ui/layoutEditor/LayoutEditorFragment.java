@@ -65,6 +65,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import kotlin.Pair;
 
@@ -86,6 +87,7 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
     }
 
     private final ExecutorService mService = Executors.newSingleThreadExecutor();
+    private final AtomicReference<String> mPendingXml = new AtomicReference<>();
     private LayoutEditorViewModel mEditorViewModel;
 
     private File mCurrentFile;
@@ -363,6 +365,34 @@ public class LayoutEditorFragment extends Fragment implements ProjectManager.OnP
         }
     }
 
+    /**
+     * Updates the preview to new contents of the layout file, only the views that have changed
+     * are bound again. Contents passed while a previous update is waiting to be parsed replace
+     * it, only the latest contents are parsed.
+     */
+    public void updateLayout(String xml) {
+        PreviewLayoutInflater inflater = mInflater;
+        if (inflater == null || mPendingXml.getAndSet(xml) != null) {
+            return;
+        }
+        mService.execute(() -> {
+            Optional<Layout> layout = inflater.parseLayout(mPendingXml.getAndSet(null));
+            if (layout.isPresent() && getActivity() != null) {
+                requireActivity().runOnUiThread(() -> applyLayout(inflater, layout.get()));
+            }
+        });
+    }
+
+    private void applyLayout(PreviewLayoutInflater inflater, Layout layout) {
+        if (inflater != mInflater || mEditorRoot.getChildCount() == 0
+                || !(mEditorRoot.getChildAt(0) instanceof ProteusView)) {
+            return;
+        }
+        inflater.updateLayout((ProteusView) mEditorRoot.getChildAt(0), layout);
+        setDragListeners(mEditorRoot);
+        setClickListeners(mEditorRoot);
+    }
+
     private void resizeLayoutEditor(View root) {
         final Point point = new Point();
         ((WindowManager)requireActivity().getSystemService(Context.WINDOW_SERVICE))
@@ -172,7 +172,8 @@ public class LibraryManagerFragment extends Fragment implements ProjectManager.O
             isDumb = true;
             ProjectManager.getInstance().addOnProjectOpenListener(this);
         } else {
-            ProgressManager.getInstance().runNonCancelableAsync(() -> loadDependencies(project));
+            ProgressManager.getInstance().runNonCancelableAsync(
+                    ProgressManager.Priority.BACKGROUND, () -> loadDependencies(project));
         }
         Toolbar toolbar = view.findViewById(R.id.toolbar);
         toolbar.setOnMenuItemClickListener(menu -> getParentFragmentManager().popBackStackImmediate());
@@ -185,7 +186,8 @@ public class LibraryManagerFragment extends Fragment implements ProjectManager.O
     @Override
     public void onProjectOpen(Project project) {
         if (isDumb) {
-            ProgressManager.getInstance().runNonCancelableAsync(() -> loadDependencies(project));
+            ProgressManager.getInstance().runNonCancelableAsync(
+                    ProgressManager.Priority.BACKGROUND, () -> loadDependencies(project));
         }
     }
 
@@ -7,12 +7,13 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.tyron.builder.compiler.java.ExtractedLibraryStore;
+import com.tyron.builder.compiler.java.LibraryFingerprintCache;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
-import com.tyron.common.util.AndroidUtilities;
 import com.tyron.code.util.DependencyUtils;
 import com.tyron.common.util.Decompress;
 import com.tyron.resolver.DependencyResolver;
@@ -32,13 +33,13 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipFile;
 
 public class DependencyManager {
 
@@ -149,25 +150,6 @@ public class DependencyManager {
     private void checkLibraries(JavaModule project, ILogger logger, List<Library> newLibraries) throws IOException {
         Set<Library> libraries = new HashSet<>(newLibraries);
 
-        Map<String, Library> fileLibsHashes = new HashMap<>();
-        File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
-                c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
-        if (fileLibraries != null) {
-            for (File fileLibrary : fileLibraries) {
-                try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
-                    Library library = new Library();
-                    library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(AndroidUtilities.calculateMD5(fileLibrary), library);
-                } catch (IOException e) {
-                    String message = "File " + fileLibrary +
-                            " is corrupt! Ignoring.";
-                    logger.warning(message);
-                }
-            }
-        }
-
-
         String librariesString = project.getSettings().getString("libraries", "[]");
         try {
             List<Library> parsedLibraries = new Gson().fromJson(librariesString, new TypeToken<List<Library>>() {
@@ -185,9 +167,40 @@ public class DependencyManager {
 
         }
 
+        File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
+                c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
+        List<File> archives = new ArrayList<>();
+        if (fileLibraries != null) {
+            archives.addAll(Arrays.asList(fileLibraries));
+        }
+        libraries.forEach(it -> archives.add(it.getSourceFile()));
+        // only the archives that changed since the last check are hashed
+        Map<File, LibraryFingerprintCache.Fingerprint> fingerprints =
+                LibraryFingerprintCache.getInstance().getFingerprints(archives);
+
+        Map<String, Library> fileLibsHashes = new HashMap<>();
+        if (fileLibraries != null) {
+            for (File fileLibrary : fileLibraries) {
+                LibraryFingerprintCache.Fingerprint fingerprint = fingerprints.get(fileLibrary);
+                if (fingerprint == null || !fingerprint.isValidArchive()) {
+                    String message = "File " + fileLibrary +
+                            " is corrupt! Ignoring.";
+                    logger.warning(message);
+                    continue;
+                }
+                Library library = new Library();
+                library.setSourceFile(fileLibrary);
+                fileLibsHashes.put(fingerprint.getMd5(), library);
+            }
+        }
+
         Map<String, Library> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(AndroidUtilities.calculateMD5(it.getSourceFile()), it));
+        libraries.forEach(it -> {
+            LibraryFingerprintCache.Fingerprint fingerprint = fingerprints.get(it.getSourceFile());
+            if (fingerprint != null) {
+                md5Map.put(fingerprint.getMd5(), it);
+            }
+        });
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -212,26 +225,14 @@ public class DependencyManager {
             ((JavaModule) module).putLibraryHashes(combined);
         }
 
+        ExtractedLibraryStore store = ExtractedLibraryStore.getInstance();
         for (Map.Entry<String, Library> entry : combined.entrySet()) {
             String hash = entry.getKey();
             Library library = entry.getValue();
 
             File libraryDir = new File(module.getBuildDirectory(), "libs/" + hash);
-            if (!libraryDir.exists()) {
-                libraryDir.mkdir();
-            } else {
-                continue;
-            }
-
-            if (library.getSourceFile().getName().endsWith(".jar")) {
-                FileUtils.copyFileToDirectory(library.getSourceFile(), libraryDir);
-
-                File file = new File(libraryDir, library.getSourceFile().getName());
-                file.renameTo(new File(libraryDir, "classes.jar"));
-            } else if (library.getSourceFile().getName().endsWith(".aar")) {
-                Decompress.unzip(library.getSourceFile().getAbsolutePath(),
-                        libraryDir.getAbsolutePath());
-            }
+            // libraries are extracted once into the store and linked into each project
+            store.link(hash, library.getSourceFile(), libraryDir);
         }
 
         String librariesString = new Gson().toJson(libraries.values());
@@ -241,19 +242,19 @@ public class DependencyManager {
     }
 
     public List<Library> getFiles(List<Pom> resolvedPoms, ILogger logger) {
+        // the libraries are downloaded in parallel
+        Map<Pom, File> libraries = mRepository.getLibraries(resolvedPoms);
         List<Library> files = new ArrayList<>();
         for (Pom resolvedPom : resolvedPoms) {
-            try {
-                File file = mRepository.getLibrary(resolvedPom);
-                if (file != null) {
-                    Library library = new Library();
-                    library.setSourceFile(file);
-                    library.setDeclaration(resolvedPom.getDeclarationString());
-                    files.add(library);
-                }
-            } catch (IOException e) {
-                logger.error("Unable to download " + resolvedPom + ": " + e.getMessage());
+            File file = libraries.get(resolvedPom);
+            if (file == null) {
+                logger.error("Unable to download " + resolvedPom);
+                continue;
             }
+            Library library = new Library();
+            library.setSourceFile(file);
+            library.setDeclaration(resolvedPom.getDeclarationString());
+            files.add(library);
         }
         return files;
     }
@@ -16,6 +16,7 @@ import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
+import com.tyron.code.lint.DefaultLintClient;
 import com.tyron.code.template.CodeTemplate;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.completion.index.CompilerService;
@@ -82,8 +83,10 @@ public class ProjectManager {
                             boolean downloadLibs,
                             TaskListener listener,
                             ILogger logger) {
+        // downloading the libraries and indexing the project take a while, keep them
+        // out of the lanes of the editor
         ProgressManager.getInstance()
-                .runNonCancelableAsync(
+                .runNonCancelableAsync(ProgressManager.Priority.BACKGROUND,
                         () -> doOpenProject(project, downloadLibs, listener, logger));
     }
 
@@ -184,6 +187,12 @@ public class ProjectManager {
         }
 
         mListener.onComplete(project, true, "Index successful");
+
+        if (module instanceof JavaModule) {
+            // fills the lint results of every file so opening a file shows them right away
+            ProgressManager.getInstance().runNonCancelableAsync(ProgressManager.Priority.BACKGROUND,
+                    () -> DefaultLintClient.getInstance(project, (JavaModule) module).scanProject());
+        }
     }
 
     private void downloadLibraries(JavaModule project,
@@ -124,6 +124,33 @@ public class Aapt2Jni {
         return executeBinary(args, instance);
     }
 
+    /**
+     * Same as {@link #compile(List)} but the logs are added to the given list instead of the
+     * shared ones returned by {@link #getLogs()}, so multiple compilations can run at the
+     * same time without mixing their logs.
+     *
+     * @param args the arguments to pass to aapt2
+     * @param logs the list where the logs of this compilation are added
+     * @return exit code, non zero if theres an error
+     */
+    public static int compile(List<String> args, List<DiagnosticWrapper> logs) {
+        Aapt2Jni instance = new Aapt2Jni();
+
+        // aapt2 has failed to load, fail early
+        String failureString = getInstance().mFailureString;
+        if (failureString != null) {
+            instance.log(LOG_LEVEL_ERROR, null, -1, failureString);
+            logs.addAll(instance.mDiagnostics);
+            return -1;
+        }
+
+        args.add(0, "compile");
+        args.add(0, getBinary());
+        int result = executeBinary(args, instance);
+        logs.addAll(instance.mDiagnostics);
+        return result;
+    }
+
     public static int link(List<String> args) {
         Aapt2Jni instance = Aapt2Jni.getInstance();
         instance.clearLogs();
@@ -2,11 +2,25 @@ package com.tyron.builder.compiler;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.DefaultApkSignerEngine;
 import com.tyron.builder.BuildModule;
 import com.tyron.common.util.Decompress;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.Collections;
 
 
 public class ApkSigner {
@@ -46,7 +60,34 @@ public class ApkSigner {
     }
 
 
-    private String getTestKeyFilePath() {
+    /**
+     * Creates a signer that signs with the test key as the entries of an APK are written,
+     * see {@link com.tyron.builder.compiler.apk.ApkWriter}. The v1 scheme is only used if
+     * the APK supports devices older than Android 7.0.
+     */
+    public static ApkSignerEngine createTestSignerEngine(int minSdk)
+            throws IOException, GeneralSecurityException {
+        X509Certificate certificate;
+        try (InputStream inputStream = new FileInputStream(getTestCertFilePath())) {
+            certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(inputStream);
+        }
+        byte[] key = FileUtils.readFileToByteArray(new File(getTestKeyFilePath()));
+        PrivateKey privateKey = KeyFactory.getInstance(certificate.getPublicKey().getAlgorithm())
+                .generatePrivate(new PKCS8EncodedKeySpec(key));
+
+        DefaultApkSignerEngine.SignerConfig signerConfig =
+                new DefaultApkSignerEngine.SignerConfig.Builder("CERT", privateKey,
+                        Collections.singletonList(certificate)).build();
+        return new DefaultApkSignerEngine.Builder(Collections.singletonList(signerConfig), minSdk)
+                .setV1SigningEnabled(minSdk < 24)
+                .setV2SigningEnabled(true)
+                .setV3SigningEnabled(true)
+                .setCreatedBy("1.0 (Android)")
+                .build();
+    }
+
+    private static String getTestKeyFilePath() {
         if (sTestKeyFile != null) {
             return sTestKeyFile.getAbsolutePath();
         }
@@ -63,7 +104,7 @@ public class ApkSigner {
         return check.getAbsolutePath();
     }
 
-    private String getTestCertFilePath() {
+    private static String getTestCertFilePath() {
         if (sTestCertFile != null) {
             return sTestCertFile.getAbsolutePath();
         }
@@ -0,0 +1,223 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the central directory of an APK written by {@link ApkWriter} so that its entries can be
+ * copied to a new APK without being decompressed and compressed again.
+ */
+public class ApkReader implements Closeable {
+
+    public static class Entry {
+
+        private final String mName;
+        private final int mMethod;
+        private final long mCrc;
+        private final long mCompressedSize;
+        private final long mSize;
+        private final long mLocalHeaderOffset;
+
+        private Entry(String name, int method, long crc, long compressedSize, long size,
+                      long localHeaderOffset) {
+            mName = name;
+            mMethod = method;
+            mCrc = crc;
+            mCompressedSize = compressedSize;
+            mSize = size;
+            mLocalHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getMethod() {
+            return mMethod;
+        }
+
+        public long getCrc() {
+            return mCrc;
+        }
+
+        public long getCompressedSize() {
+            return mCompressedSize;
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+    }
+
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+    private final RandomAccessFile mFile;
+    private final Map<String, Entry> mEntries;
+
+    public ApkReader(@NonNull File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            mEntries = Collections.unmodifiableMap(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    @NonNull
+    public Map<String, Entry> getEntries() {
+        return mEntries;
+    }
+
+    @Nullable
+    public Entry getEntry(@NonNull String name) {
+        return mEntries.get(name);
+    }
+
+    /**
+     * Writes the data of the entry as it is stored in the APK to the given stream, the entry
+     * is copied in chunks so it is not held in memory as a whole.
+     */
+    public void copyRaw(@NonNull Entry entry, @NonNull OutputStream out) throws IOException {
+        seekToData(entry);
+        byte[] buffer = new byte[8192];
+        long remaining = entry.mCompressedSize;
+        while (remaining > 0) {
+            int count = (int) Math.min(buffer.length, remaining);
+            mFile.readFully(buffer, 0, count);
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * @return the data of the entry as it is stored in the APK
+     */
+    @NonNull
+    private byte[] readRaw(@NonNull Entry entry) throws IOException {
+        seekToData(entry);
+        byte[] data = new byte[Math.toIntExact(entry.mCompressedSize)];
+        mFile.readFully(data);
+        return data;
+    }
+
+    private void seekToData(Entry entry) throws IOException {
+        mFile.seek(entry.mLocalHeaderOffset + 26);
+        ByteBuffer lengths = read(4);
+        int nameLength = lengths.getShort() & 0xffff;
+        int extraLength = lengths.getShort() & 0xffff;
+        mFile.seek(entry.mLocalHeaderOffset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength);
+    }
+
+    /**
+     * @return the uncompressed data of the entry
+     */
+    @NonNull
+    public byte[] read(@NonNull Entry entry) throws IOException {
+        byte[] raw = readRaw(entry);
+        if (entry.mMethod == ZipEntry.STORED) {
+            return raw;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    Math.toIntExact(entry.mSize));
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry " + entry.mName);
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed entry " + entry.mName, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        long length = mFile.length();
+        if (length < END_OF_CENTRAL_DIRECTORY_SIZE) {
+            throw new IOException("Not a zip file");
+        }
+        // the end of central directory record is followed by a comment of up to 64 KB
+        int searchSize = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        mFile.seek(length - searchSize);
+        ByteBuffer tail = read(searchSize);
+        int eocd = -1;
+        for (int i = searchSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new IOException("End of central directory not found");
+        }
+        int count = tail.getShort(eocd + 10) & 0xffff;
+        long size = tail.getInt(eocd + 12) & 0xffffffffL;
+        long offset = tail.getInt(eocd + 16) & 0xffffffffL;
+
+        mFile.seek(offset);
+        ByteBuffer centralDirectory = read(Math.toIntExact(size));
+        Map<String, Entry> entries = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            int start = centralDirectory.position();
+            if (centralDirectory.getInt(start) != CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("Malformed central directory");
+            }
+            int method = centralDirectory.getShort(start + 10) & 0xffff;
+            long crc = centralDirectory.getInt(start + 16) & 0xffffffffL;
+            long compressedSize = centralDirectory.getInt(start + 20) & 0xffffffffL;
+            long uncompressedSize = centralDirectory.getInt(start + 24) & 0xffffffffL;
+            int nameLength = centralDirectory.getShort(start + 28) & 0xffff;
+            int extraLength = centralDirectory.getShort(start + 30) & 0xffff;
+            int commentLength = centralDirectory.getShort(start + 32) & 0xffff;
+            long localHeaderOffset = centralDirectory.getInt(start + 42) & 0xffffffffL;
+            byte[] name = new byte[nameLength];
+            centralDirectory.position(start + 46);
+            centralDirectory.get(name);
+            centralDirectory.position(start + 46 + nameLength + extraLength + commentLength);
+
+            String entryName = new String(name, StandardCharsets.UTF_8);
+            entries.put(entryName, new Entry(entryName, method, crc, compressedSize,
+                    uncompressedSize, localHeaderOffset));
+        }
+        return entries;
+    }
+
+    private ByteBuffer read(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        mFile.readFully(bytes);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,495 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+
+import com.android.apksig.ApkSignerEngine;
+import com.android.apksig.apk.ApkFormatException;
+import com.android.apksig.util.DataSources;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes a signed APK in a single pass. Uncompressed entries are aligned to 4 bytes as they
+ * are written and every entry is passed to the signer while it is written, so the APK does
+ * not have to be aligned and signed again afterwards.
+ *
+ * <p>Entries are streamed from their source to the APK and the signer, they are never held in
+ * memory as a whole. The sizes and checksum of an entry are written to its local header once
+ * its data has been written.
+ *
+ * <p>Only the APK signing block and the central directory are written after the entries.
+ * The entries are read back once to compute the v2 and v3 digests.
+ *
+ * <p>If a previous APK is given, entries whose contents have not changed are copied from it
+ * as they are stored instead of being compressed again, along with their v1 digests.
+ */
+public class ApkWriter implements Closeable {
+
+    /**
+     * Thrown when two inputs add an entry with the same path.
+     */
+    public static class DuplicateEntryException extends IOException {
+
+        private final String mArchivePath;
+        private final String mFile1;
+        private final String mFile2;
+
+        public DuplicateEntryException(String archivePath, String file1, String file2) {
+            super("Duplicate entry " + archivePath);
+            mArchivePath = archivePath;
+            mFile1 = file1;
+            mFile2 = file2;
+        }
+
+        public String getArchivePath() {
+            return mArchivePath;
+        }
+
+        public String getFile1() {
+            return mFile1;
+        }
+
+        public String getFile2() {
+            return mFile2;
+        }
+    }
+
+    private static final int ALIGNMENT = 4;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int VERSION = 20;
+    private static final int FLAG_UTF_8 = 0x0800;
+
+    /**
+     * Entries are written with a fixed timestamp (1981-01-01) so that the same inputs produce
+     * the same APK.
+     */
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = ((1981 - 1980) << 9) | (1 << 5) | 1;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final OutputStream mOutput;
+    private final ApkSignerEngine mSigner;
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] mBuffer = new byte[8192];
+    private final byte[] mDeflateBuffer = new byte[8192];
+    private final ByteArrayOutputStream mCentralDirectory = new ByteArrayOutputStream();
+
+    /**
+     * The source of each entry written so far, used to report duplicates
+     */
+    private final Map<String, String> mOrigins = new HashMap<>();
+
+    private ApkReader mPrevious;
+    /**
+     * The entries of the previous APK whose v1 digests were restored from its manifest
+     */
+    private Set<String> mPreviousDigests = Collections.emptySet();
+
+    private long mOffset;
+    private int mEntryCount;
+    private int mCopiedEntryCount;
+    private boolean mFinished;
+
+    public ApkWriter(@NonNull File output, @NonNull ApkSignerEngine signer) throws IOException {
+        FileUtils.forceMkdirParent(output);
+        mFile = new RandomAccessFile(output, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        mOutput = new BufferedOutputStream(Channels.newOutputStream(mChannel), 64 * 1024);
+        mSigner = signer;
+    }
+
+    /**
+     * Sets the APK this APK replaces, entries that have the same contents and compression
+     * method in the previous APK are copied from it. This must be called before any entry is
+     * added, the previous APK must stay open until the APK is finished.
+     */
+    public void setPrevious(@NonNull ApkReader previous) throws IOException {
+        if (mEntryCount != 0) {
+            throw new IllegalStateException("Entries have already been written");
+        }
+        mPrevious = previous;
+
+        ApkReader.Entry manifest = previous.getEntry(JarFile.MANIFEST_NAME);
+        if (manifest != null) {
+            mPreviousDigests = new HashSet<>(mSigner.initWith(previous.read(manifest),
+                    new HashSet<>(previous.getEntries().keySet())));
+        }
+    }
+
+    /**
+     * Adds the contents of a file
+     *
+     * @param archivePath the path of the entry in the APK
+     * @param compress whether the entry is deflated, uncompressed entries are aligned
+     */
+    public void addFile(@NonNull String archivePath, @NonNull File file, boolean compress)
+            throws IOException {
+        checkDuplicate(archivePath, file.getAbsolutePath());
+        DataSupplier data = () -> new FileInputStream(file);
+        // the checksum is only needed to compare the file with the previous entry
+        if (mPrevious == null || !copyPrevious(archivePath, FileUtils.checksumCRC32(file),
+                file.length(), compress, data)) {
+            writeEntry(archivePath, data, compress);
+        }
+    }
+
+    /**
+     * Adds the entries of a zip file that are accepted by the filter, each entry keeps the
+     * compression method it has in the zip file. Directory entries are skipped.
+     */
+    public void addZip(@NonNull File zip, @NonNull Predicate<String> filter) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !filter.test(name)) {
+                    continue;
+                }
+                checkDuplicate(name, zip.getAbsolutePath());
+                boolean compress = entry.getMethod() != ZipEntry.STORED;
+                DataSupplier data = () -> zipFile.getInputStream(entry);
+                // the checksum of an entry is known without reading it
+                if (!copyPrevious(name, entry.getCrc(), entry.getSize(), compress, data)) {
+                    writeEntry(name, data, compress);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the signature files, the APK signing block and the central directory. No entries
+     * can be added afterwards.
+     */
+    public void finish() throws IOException, GeneralSecurityException {
+        if (mFinished) {
+            return;
+        }
+
+        try {
+            // entries of the previous APK that are not in this one
+            for (String name : mPreviousDigests) {
+                if (!mOrigins.containsKey(name)) {
+                    mSigner.outputJarEntryRemoved(name);
+                }
+            }
+            ApkSignerEngine.OutputJarSignatureRequest jarSignature = mSigner.outputJarEntries();
+            if (jarSignature != null) {
+                for (ApkSignerEngine.OutputJarSignatureRequest.JarEntry entry :
+                        jarSignature.getAdditionalJarEntries()) {
+                    byte[] data = entry.getData();
+                    writeEntry(entry.getName(), () -> new ByteArrayInputStream(data), true);
+                }
+                jarSignature.done();
+            }
+            mFinished = true;
+            mOutput.flush();
+
+            byte[] centralDirectory = mCentralDirectory.toByteArray();
+            long entriesSize = mOffset;
+            ApkSignerEngine.OutputApkSigningBlockRequest2 request = mSigner.outputZipSections2(
+                    DataSources.asDataSource(mFile, 0, entriesSize),
+                    DataSources.asDataSource(ByteBuffer.wrap(centralDirectory)),
+                    DataSources.asDataSource(endOfCentralDirectory(centralDirectory.length,
+                            entriesSize)));
+
+            mChannel.position(entriesSize);
+            if (request != null) {
+                writeBytes(new byte[request.getPaddingSizeBeforeApkSigningBlock()]);
+                writeBytes(request.getApkSigningBlock());
+                request.done();
+            }
+            long centralDirectoryOffset = mOffset;
+            writeBytes(centralDirectory);
+            writeBytes(endOfCentralDirectory(centralDirectory.length, centralDirectoryOffset)
+                    .array());
+            mOutput.flush();
+            mFile.setLength(mOffset);
+        } catch (ApkFormatException e) {
+            throw new IOException(e);
+        }
+        mSigner.outputDone();
+    }
+
+    /**
+     * @return the number of entries written, including the signature files
+     */
+    public int getEntryCount() {
+        return mEntryCount;
+    }
+
+    /**
+     * @return the number of entries copied from the previous APK
+     */
+    public int getCopiedEntryCount() {
+        return mCopiedEntryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDeflater.end();
+        mSigner.close();
+        try {
+            mOutput.close();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    private void checkDuplicate(String archivePath, String origin) throws IOException {
+        String existing = mOrigins.put(archivePath, origin);
+        if (existing != null) {
+            throw new DuplicateEntryException(archivePath, existing, origin);
+        }
+    }
+
+    /**
+     * Copies the entry of the previous APK if it has the same contents, the data is only read
+     * if its v1 digest could not be restored.
+     *
+     * @return whether the entry was copied
+     */
+    private boolean copyPrevious(String name, long crc, long size, boolean compress,
+                                 DataSupplier data) throws IOException {
+        if (mPrevious == null) {
+            return false;
+        }
+        ApkReader.Entry previous = mPrevious.getEntry(name);
+        int method = compress ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        if (previous == null || previous.getCrc() != crc || previous.getSize() != size
+            || previous.getMethod() != method) {
+            return false;
+        }
+        long headerOffset = writeLocalHeader(name, method, crc, previous.getCompressedSize(),
+                size);
+        mPrevious.copyRaw(previous, mOutput);
+        mOffset += previous.getCompressedSize();
+        writeCentralDirectoryRecord(name, method, crc, previous.getCompressedSize(), size,
+                headerOffset);
+        if (!mPreviousDigests.contains(name)) {
+            inspect(name, data);
+        }
+        mCopiedEntryCount++;
+        return true;
+    }
+
+    /**
+     * Streams the data to the APK, compressing it if needed, and to the signer
+     */
+    private void writeEntry(String name, DataSupplier data, boolean compress)
+            throws IOException {
+        int method = compress ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        // the sizes and checksum are written once the data has been written
+        long headerOffset = writeLocalHeader(name, method, 0, 0, 0);
+        long dataOffset = mOffset;
+
+        ApkSignerEngine.InspectJarEntryRequest request = mSigner.outputJarEntry(name);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        if (compress) {
+            mDeflater.reset();
+        }
+        try (InputStream inputStream = data.open()) {
+            int count;
+            while ((count = inputStream.read(mBuffer)) != -1) {
+                crc.update(mBuffer, 0, count);
+                size += count;
+                if (request != null) {
+                    request.getDataSink().consume(mBuffer, 0, count);
+                }
+                if (compress) {
+                    mDeflater.setInput(mBuffer, 0, count);
+                    while (!mDeflater.needsInput()) {
+                        deflate();
+                    }
+                } else {
+                    writeBytes(mBuffer, 0, count);
+                }
+            }
+        }
+        if (compress) {
+            mDeflater.finish();
+            while (!mDeflater.finished()) {
+                deflate();
+            }
+        }
+        if (request != null) {
+            request.done();
+        }
+
+        long compressedSize = mOffset - dataOffset;
+        updateLocalHeader(headerOffset, crc.getValue(), compressedSize, size);
+        writeCentralDirectoryRecord(name, method, crc.getValue(), compressedSize, size,
+                headerOffset);
+    }
+
+    private void inspect(String name, DataSupplier data) throws IOException {
+        ApkSignerEngine.InspectJarEntryRequest request = mSigner.outputJarEntry(name);
+        if (request != null) {
+            try (InputStream inputStream = data.open()) {
+                int count;
+                while ((count = inputStream.read(mBuffer)) != -1) {
+                    request.getDataSink().consume(mBuffer, 0, count);
+                }
+            }
+            request.done();
+        }
+    }
+
+    /**
+     * Writes the local header of an entry, uncompressed entries are aligned by padding its
+     * extra field.
+     *
+     * @return the offset of the header
+     */
+    private long writeLocalHeader(String name, int method, long crc, long compressedSize,
+                                  long size) throws IOException {
+        if (mFinished) {
+            throw new IllegalStateException("The APK has already been written");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        int padding = 0;
+        if (method == ZipEntry.STORED) {
+            long dataOffset = mOffset + LOCAL_FILE_HEADER_SIZE + nameBytes.length;
+            padding = (int) ((ALIGNMENT - dataOffset % ALIGNMENT) % ALIGNMENT);
+        }
+        long headerOffset = mOffset;
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) FLAG_UTF_8);
+        header.putShort((short) method);
+        header.putShort((short) DOS_TIME);
+        header.putShort((short) DOS_DATE);
+        header.putInt((int) crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) size);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) padding);
+        writeBytes(header.array());
+        writeBytes(nameBytes);
+        // the extra field is only used to align the data
+        writeBytes(new byte[padding]);
+        return headerOffset;
+    }
+
+    /**
+     * Writes the checksum and sizes of an entry whose data has been streamed to its local
+     * header
+     */
+    private void updateLocalHeader(long headerOffset, long crc, long compressedSize, long size)
+            throws IOException {
+        mOutput.flush();
+        ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt((int) crc);
+        buffer.putInt((int) compressedSize);
+        buffer.putInt((int) size);
+        buffer.flip();
+        long position = headerOffset + 14;
+        while (buffer.hasRemaining()) {
+            // does not change the position of the channel the entries are written to
+            position += mChannel.write(buffer, position);
+        }
+    }
+
+    private void writeCentralDirectoryRecord(String name, int method, long crc,
+                                             long compressedSize, long size, long headerOffset)
+            throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(CENTRAL_DIRECTORY_HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(CENTRAL_DIRECTORY_SIGNATURE);
+        record.putShort((short) VERSION);
+        record.putShort((short) VERSION);
+        record.putShort((short) FLAG_UTF_8);
+        record.putShort((short) method);
+        record.putShort((short) DOS_TIME);
+        record.putShort((short) DOS_DATE);
+        record.putInt((int) crc);
+        record.putInt((int) compressedSize);
+        record.putInt((int) size);
+        record.putShort((short) nameBytes.length);
+        record.putShort((short) 0); // extra field length
+        record.putShort((short) 0); // comment length
+        record.putShort((short) 0); // disk number
+        record.putShort((short) 0); // internal attributes
+        record.putInt(0); // external attributes
+        record.putInt((int) headerOffset);
+        mCentralDirectory.write(record.array());
+        mCentralDirectory.write(nameBytes);
+        mEntryCount++;
+    }
+
+    private void deflate() throws IOException {
+        int count = mDeflater.deflate(mDeflateBuffer);
+        writeBytes(mDeflateBuffer, 0, count);
+    }
+
+    private ByteBuffer endOfCentralDirectory(int centralDirectorySize, long centralDirectoryOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        buffer.putShort((short) 0); // disk number
+        buffer.putShort((short) 0); // disk with the central directory
+        buffer.putShort((short) mEntryCount);
+        buffer.putShort((short) mEntryCount);
+        buffer.putInt(centralDirectorySize);
+        buffer.putInt((int) centralDirectoryOffset);
+        buffer.putShort((short) 0); // comment length
+        buffer.flip();
+        return buffer;
+    }
+
+    private interface DataSupplier {
+        InputStream open() throws IOException;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        mOutput.write(bytes, offset, length);
+        mOffset += length;
+    }
+}
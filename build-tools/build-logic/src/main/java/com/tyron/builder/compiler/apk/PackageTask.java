@@ -1,24 +1,40 @@
 package com.tyron.builder.compiler.apk;
 
-import android.net.Uri;
+import androidx.annotation.Nullable;
 
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
+import com.tyron.builder.compiler.ApkSigner;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.File;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * Packages the resources, dex files, java resources and native libraries into a signed APK,
+ * uncompressed entries are aligned as they are written.
+ */
 public class PackageTask extends Task<AndroidModule> {
 
+    /**
+     * Files that are never packaged from library jars and the resources folder
+     */
+    private static final Set<String> IGNORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "aidl", "rs", "fs", "rsh", "d", "java", "scala", "class", "scc", "swp"));
+    private static final Set<String> IGNORED_FILES = new HashSet<>(Arrays.asList(
+            "thumbs.db", "picasa.ini", "package.html", "overview.html"));
+
     /**
      * List of extra dex files not including the main dex file
      */
@@ -39,6 +55,10 @@ public class PackageTask extends Task<AndroidModule> {
      * The output apk file
      */
     private File mApk;
+    /**
+     * The apk of the last debug build while the new one is written
+     */
+    private File mPreviousApk;
     private BuildType mBuildType;
 
     public PackageTask(AndroidModule project, ILogger logger) {
@@ -56,7 +76,8 @@ public class PackageTask extends Task<AndroidModule> {
 
         File mBinDir = new File(getModule().getBuildDirectory(), "bin");
 
-        mApk = new File(mBinDir, "generated.apk");
+        mApk = new File(mBinDir, "signed.apk");
+        mPreviousApk = new File(mBinDir, "previous.apk");
         mDexFile = new File(mBinDir, "classes.dex");
         mGeneratedRes = new File(mBinDir, "generated.apk.res");
         File[] binFiles = mBinDir.listFiles();
@@ -65,7 +86,9 @@ public class PackageTask extends Task<AndroidModule> {
                 if (!child.isFile()) {
                     continue;
                 }
-                if (!child.getName().equals("classes.dex") && child.getName().endsWith(".dex")) {
+                // debug builds produce one or more dex files per shard
+                if (!child.getName().equals("classes.dex")
+                    && child.getName().matches("classes\\d+\\.dex")) {
                     mDexFiles.add(child);
                 }
             }
@@ -78,68 +101,179 @@ public class PackageTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
+        ApkReader previous = openPreviousApk();
+        try (ApkWriter writer = new ApkWriter(mApk,
+                ApkSigner.createTestSignerEngine(getModule().getMinSdk()))) {
+            if (previous != null) {
+                writer.setPrevious(previous);
+            }
 
-        int dexCount = 1;
-        try {
-            ApkBuilder builder = new ApkBuilder(
-                    mApk.getAbsolutePath(),
-                    mGeneratedRes.getAbsolutePath(),
-                    mDexFile.getAbsolutePath(),
-                    null,
-                    null);
+            // resources.arsc and the other uncompressed resources keep their method
+            writer.addZip(mGeneratedRes, name -> true);
 
+            int dexCount = 1;
+            writer.addFile("classes.dex", mDexFile, true);
             for (File extraDex : mDexFiles) {
                 dexCount++;
-                builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
-            }
-
-            for (File library : mLibraries) {
-                builder.addResourcesFromJar(library);
-
-                File parent = library.getParentFile();
-                if (parent != null) {
-                    File jniFolder = new File(parent, "jni");
-                    if (jniFolder.exists() && jniFolder.isDirectory()) {
-                        builder.addNativeLibraries(jniFolder);
-                    }
-                }
-            }
-
-            if (getModule().getNativeLibrariesDirectory().exists()) {
-                builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+                writer.addFile(extraDex.getName(), extraDex, true);
             }
 
             if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
                 // For debug mode, dex files are not merged to save up compile time
-                for (File it : getModule().getLibraries()) {
+                for (File it : mLibraries) {
                     File parent = it.getParentFile();
                     if (parent != null) {
                         File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
                         if (dexFiles != null) {
                             for (File dexFile : dexFiles) {
                                 dexCount++;
-                                builder.addFile(dexFile, "classes" + dexCount + ".dex");
+                                writer.addFile("classes" + dexCount + ".dex", dexFile, true);
                             }
                         }
                     }
                 }
             }
 
+            for (File library : mLibraries) {
+                writer.addZip(library, PackageTask::isJavaResource);
+
+                File parent = library.getParentFile();
+                if (parent != null) {
+                    File jniFolder = new File(parent, "jni");
+                    if (jniFolder.exists() && jniFolder.isDirectory()) {
+                        addNativeLibraries(writer, jniFolder);
+                    }
+                }
+            }
+
+            if (getModule().getNativeLibrariesDirectory().exists()) {
+                addNativeLibraries(writer, getModule().getNativeLibrariesDirectory());
+            }
+
             File resourcesDir = getModule().getResourcesDir();
             if (resourcesDir.exists()) {
-                builder.addSourceFolder(resourcesDir);
+                addSourceFolder(writer, resourcesDir, "");
             }
 
-            builder.sealApk();
-        } catch (ApkCreationException | SealedApkException e) {
-            throw new CompilationFailedException(e);
-        } catch (DuplicateFileException e) {
+            writer.finish();
+            getLogger().debug("Packaged " + writer.getEntryCount() + " entries, " +
+                              writer.getCopiedEntryCount() + " unchanged.");
+        } catch (ApkWriter.DuplicateEntryException e) {
+            FileUtils.deleteQuietly(mApk);
             String message = "Duplicate files from two libraries detected. \n";
             message += "File1: " + e.getFile1() + " \n";
             message += "File2: " + e.getFile2() + " \n";
             message += "Archive path: " + e.getArchivePath();
             throw new CompilationFailedException(message);
+        } catch (GeneralSecurityException e) {
+            FileUtils.deleteQuietly(mApk);
+            throw new CompilationFailedException(e);
+        } catch (IOException e) {
+            // do not leave an APK that is not signed behind
+            FileUtils.deleteQuietly(mApk);
+            throw e;
+        } finally {
+            if (previous != null) {
+                previous.close();
+            }
+            FileUtils.deleteQuietly(mPreviousApk);
+        }
+    }
+
+    /**
+     * Debug builds copy the entries that have not changed from the APK of the last build so
+     * that only the changed dex files and resources are compressed again. The APK is moved
+     * aside since the new one is written to the same path.
+     */
+    @Nullable
+    private ApkReader openPreviousApk() {
+        if (mBuildType != BuildType.DEBUG || !mApk.exists()) {
+            return null;
+        }
+        FileUtils.deleteQuietly(mPreviousApk);
+        if (!mApk.renameTo(mPreviousApk)) {
+            return null;
+        }
+        try {
+            return new ApkReader(mPreviousApk);
+        } catch (IOException e) {
+            getLogger().debug("Unable to read the previous APK, packaging all entries.");
+            return null;
+        }
+    }
+
+    /**
+     * Adds the native libraries of each ABI folder to lib/&lt;abi&gt;/
+     */
+    private void addNativeLibraries(ApkWriter writer, File jniFolder) throws IOException {
+        File[] abiFolders = jniFolder.listFiles(File::isDirectory);
+        if (abiFolders == null) {
+            return;
+        }
+        for (File abiFolder : abiFolders) {
+            File[] libraries = abiFolder.listFiles(c -> c.isFile() && (c.getName().endsWith(".so")
+                    || (mBuildType == BuildType.DEBUG && c.getName().equals("gdbserver"))));
+            if (libraries == null) {
+                continue;
+            }
+            for (File library : libraries) {
+                writer.addFile("lib/" + abiFolder.getName() + "/" + library.getName(), library,
+                        true);
+            }
+        }
+    }
+
+    private void addSourceFolder(ApkWriter writer, File folder, String path) throws IOException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String archivePath = path + child.getName();
+            if (child.isDirectory()) {
+                if (isPackagedFolder(child.getName())) {
+                    addSourceFolder(writer, child, archivePath + "/");
+                }
+            } else if (isPackagedFile(child.getName())) {
+                writer.addFile(archivePath, child, true);
+            }
+        }
+    }
+
+    /**
+     * Whether an entry of a library jar is a java resource that is packaged in the APK,
+     * class files and the signature of the jar are left out.
+     */
+    private static boolean isJavaResource(String archivePath) {
+        String[] segments = archivePath.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (!isPackagedFolder(segments[i])) {
+                return false;
+            }
+        }
+        String name = segments[segments.length - 1];
+        if (archivePath.startsWith("META-INF/")) {
+            String upperCase = name.toUpperCase(Locale.ROOT);
+            if (upperCase.equals("MANIFEST.MF") || upperCase.endsWith(".SF")
+                || upperCase.endsWith(".RSA") || upperCase.endsWith(".DSA")
+                || upperCase.endsWith(".EC")) {
+                return false;
+            }
+        }
+        return isPackagedFile(name);
+    }
+
+    private static boolean isPackagedFolder(String name) {
+        return !name.startsWith(".") && !name.equals("CVS") && !name.equals("SCCS")
+               && !name.startsWith("_");
+    }
+
+    private static boolean isPackagedFile(String name) {
+        if (name.startsWith(".") || IGNORED_FILES.contains(name.toLowerCase(Locale.ROOT))) {
+            return false;
         }
+        int index = name.lastIndexOf('.');
+        return index == -1 || !IGNORED_EXTENSIONS.contains(name.substring(index + 1)
+                .toLowerCase(Locale.ROOT));
     }
 }
@@ -0,0 +1,216 @@
+package com.tyron.builder.compiler.incremental;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.common.util.BinaryStore;
+import com.tyron.common.util.Cache;
+
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persists a {@link Cache} that maps a source file to its output files so incremental
+ * tasks stay incremental after the process has been restarted.
+ *
+ * <p>Each entry stores the source path, the cache key, the time the outputs were produced,
+ * a checksum of the source contents and the output paths. When restoring, an entry whose
+ * source has a newer modification time but the same contents is still treated as up to date,
+ * and entries whose outputs no longer exist are dropped so they will be compiled again.
+ *
+ * <p>The checksum must be of the contents the outputs were produced from, tasks record it
+ * with {@link #putChecksum(Cache, Path, String, long)} when they load an entry. Entries
+ * without one are written without a checksum and are compiled again once their source
+ * is modified.
+ */
+public class FileCacheStore {
+
+    /**
+     * Returns the store of the given cache key, the instance is kept in the module so
+     * checksums of unchanged entries are not computed again on the next build.
+     */
+    public static FileCacheStore getInstance(Module module, CacheHolder.CacheKey<?, ?> cacheKey) {
+        Key<FileCacheStore> key = STORE_KEYS.computeIfAbsent(cacheKey.getName(), Key::create);
+        FileCacheStore store = module.getUserData(key);
+        if (store == null) {
+            File file = new File(module.getBuildDirectory(),
+                    "intermediate/cache/" + cacheKey.getName() + ".bin");
+            store = module.putUserDataIfAbsent(key, new FileCacheStore(file));
+        }
+        return store;
+    }
+
+    private static final Map<String, Key<FileCacheStore>> STORE_KEYS = new ConcurrentHashMap<>();
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 1;
+    private static final long NO_CHECKSUM = -1;
+
+    private final File mFile;
+
+    /**
+     * Checksums of the entries that were read or recorded, keyed by the entry
+     */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    public FileCacheStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Restores the entries of this store into the given cache. Does nothing if the store
+     * has not been written yet or was written by a different version.
+     *
+     * @throws IOException if the store is corrupted, the cache is left empty in that case
+     */
+    public void read(Cache<String, List<File>> cache) throws IOException {
+        mEntries.clear();
+        try {
+            BinaryStore.read(mFile, MAGIC, VERSION, in -> {
+                readEntries(in, cache);
+                return null;
+            });
+        } catch (IOException e) {
+            // a partially written store is as good as an empty one
+            cache.clear();
+            mEntries.clear();
+            throw e;
+        }
+    }
+
+    private void readEntries(DataInputStream in, Cache<String, List<File>> cache)
+            throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Path file = Paths.get(in.readUTF());
+            String key = in.readUTF();
+            Instant created = Instant.ofEpochMilli(in.readLong());
+            long checksum = in.readLong();
+            int outputCount = in.readInt();
+            List<File> outputs = new ArrayList<>(outputCount);
+            boolean missing = false;
+            for (int j = 0; j < outputCount; j++) {
+                File output = new File(in.readUTF());
+                if (!output.exists()) {
+                    missing = true;
+                }
+                outputs.add(output);
+            }
+            if (missing || outputs.isEmpty()) {
+                continue;
+            }
+
+            if (Files.exists(file) && isModifiedSince(file, created)
+                && checksum != NO_CHECKSUM && checksum == checksum(file)) {
+                // only the timestamp has changed, the outputs are still valid
+                created = Instant.now();
+            }
+            cache.load(file, key, outputs, created);
+            mEntries.put(entryKey(file, key), new Entry(created, checksum));
+        }
+    }
+
+    /**
+     * Records the checksum of the contents the outputs of an entry have been produced from,
+     * must be called after the entry has been loaded into the cache.
+     *
+     * @param checksum the checksum of the contents, see {@link #checksum(byte[])}
+     */
+    public void putChecksum(Cache<String, List<File>> cache, Path file, String key,
+                            long checksum) {
+        mEntries.put(entryKey(file, key), new Entry(cache.getCreated(file, key), checksum));
+    }
+
+    /**
+     * Writes all the entries of the cache, replacing the previous contents of this store.
+     */
+    public void write(Cache<String, List<File>> cache) throws IOException {
+        Map<String, Entry> written = new HashMap<>();
+        BinaryStore.write(mFile, MAGIC, VERSION, out -> {
+            List<Cache.Key<String>> keys = new ArrayList<>(cache.getKeys());
+            out.writeInt(keys.size());
+            for (Cache.Key<String> key : keys) {
+                List<File> outputs = cache.get(key.file, key.key);
+                Instant created = cache.getCreated(key.file, key.key);
+
+                // the source may have changed since the entry was produced, so it is not
+                // hashed here
+                Entry previous = mEntries.get(entryKey(key.file, key.key));
+                long checksum = previous != null && previous.created.equals(created)
+                        ? previous.checksum
+                        : NO_CHECKSUM;
+                written.put(entryKey(key.file, key.key), new Entry(created, checksum));
+
+                out.writeUTF(key.file.toString());
+                out.writeUTF(key.key);
+                out.writeLong(created.toEpochMilli());
+                out.writeLong(checksum);
+                out.writeInt(outputs.size());
+                for (File output : outputs) {
+                    out.writeUTF(output.getAbsolutePath());
+                }
+            }
+        });
+        mEntries.clear();
+        mEntries.putAll(written);
+    }
+
+    public void delete() throws IOException {
+        mEntries.clear();
+        if (mFile.exists()) {
+            FileUtils.delete(mFile);
+        }
+    }
+
+    private static String entryKey(Path file, String key) {
+        return file + File.pathSeparator + key;
+    }
+
+    private static boolean isModifiedSince(Path file, Instant instant) throws IOException {
+        return Files.getLastModifiedTime(file).toInstant().isAfter(instant);
+    }
+
+    public static long checksum(byte[] contents) {
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+        return crc.getValue();
+    }
+
+    public static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Entry {
+        final Instant created;
+        final long checksum;
+
+        Entry(Instant created, long checksum) {
+            this.created = created;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.tyron.builder.compiler.incremental.dex;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.tools.r8.CompilationMode;
 import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
@@ -9,24 +11,33 @@ import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.incremental.FileCacheStore;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.common.util.BinaryStore;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class IncrementalD8Task extends Task<AndroidModule> {
@@ -41,10 +52,36 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     private List<Path> mFilesToCompile;
 
     private Cache<String, List<File>> mDexCache;
+    private FileCacheStore mCacheStore;
     private Path mOutputPath;
 
     private BuildType mBuildType;
 
+    /**
+     * The number of dex shards used in debug builds. Classes are assigned to a shard by
+     * the hash of their top level class name, only shards that contain changed classes
+     * are merged again.
+     */
+    private static final int SHARD_COUNT = 16;
+
+    /**
+     * The first API level that loads every classesN.dex file of an APK. Older platforms only
+     * load classes.dex unless the app installs the multidex support library itself, so the
+     * shards are merged into the smallest number of dex files for them.
+     */
+    private static final int NATIVE_MULTIDEX_MIN_SDK = 21;
+
+    private static final int DIRTY_SHARDS_MAGIC = 0x44534844;
+    private static final int DIRTY_SHARDS_VERSION = 1;
+
+    /**
+     * Shards that contain classes which have been added, changed or removed. They are saved
+     * along with the dex cache, a build that fails before merging them marks the classes
+     * as dexed so the shards would not be found again from the cache.
+     */
+    private final Set<Integer> mDirtyShards = new HashSet<>();
+    private File mDirtyShardsFile;
+
     public IncrementalD8Task(AndroidModule project, ILogger logger) {
         super(project, logger);
     }
@@ -60,6 +97,16 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mBuildType = type;
         diagnosticsHandler = new DexDiagnosticHandler(getLogger(), getModule());
         mDexCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mCacheStore = FileCacheStore.getInstance(getModule(), CACHE_KEY);
+        if (mDexCache.getKeys().isEmpty()) {
+            // the in-memory cache is lost when the process is killed,
+            // restore it from the previous build
+            try {
+                mCacheStore.read(mDexCache);
+            } catch (IOException e) {
+                getLogger().warning("Unable to read the dex cache, all classes will be dexed.");
+            }
+        }
 
         File output = new File(getModule().getBuildDirectory(), "intermediate/classes");
         if (!output.exists() && !output.mkdirs()) {
@@ -70,10 +117,23 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         mFilesToCompile = new ArrayList<>();
         mClassFiles = new ArrayList<>(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        mDirtyShardsFile = new File(getModule().getBuildDirectory(),
+                "intermediate/cache/dirtyShards.bin");
+        mDirtyShards.clear();
+        try {
+            mDirtyShards.addAll(readDirtyShards(mDirtyShardsFile));
+        } catch (IOException e) {
+            // the shards are merged again as long as the file could not be read
+            getLogger().warning("Unable to read the dirty dex shards, all shards will be merged.");
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                mDirtyShards.add(i);
+            }
+        }
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!mClassFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+                mDirtyShards.add(getShard(file));
+                deleteAllFiles(key.file.toFile(), ".dex");
                 mDexCache.remove(key.file, "dex");
             }
         }
@@ -81,8 +141,10 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         for (Path file : mClassFiles) {
             if (mDexCache.needs(file, "dex")) {
                 mFilesToCompile.add(file);
+                mDirtyShards.add(getShard(getDexFile(file.toFile())));
             }
         }
+        writeDirtyShards(mDirtyShardsFile, mDirtyShards);
     }
 
     @Override
@@ -99,9 +161,10 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         super.clean();
     }
 
-    private void doRelease() throws CompilationFailedException {
+    private void doRelease() throws CompilationFailedException, IOException {
         try {
             ensureDexedLibraries();
+            Map<Path, Long> checksums = getChecksums(mFilesToCompile);
             D8Command command = D8Command.builder(diagnosticsHandler)
                     .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
                     .addProgramFiles(mFilesToCompile)
@@ -112,9 +175,8 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
                     .build();
             D8.run(command);
-            for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
-            }
+            loadDexFiles(checksums);
+            saveCache();
 
             mergeRelease();
         } catch (com.android.tools.r8.CompilationFailedException e) {
@@ -122,38 +184,245 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         }
     }
 
-    private void doDebug() throws CompilationFailedException {
+    private void doDebug() throws CompilationFailedException, IOException {
         try {
             ensureDexedLibraries();
 
+            Map<Path, Long> checksums = getChecksums(mFilesToCompile);
+            if (!mFilesToCompile.isEmpty()) {
+                D8Command command = D8Command.builder(diagnosticsHandler)
+                        .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
+                        .addProgramFiles(mFilesToCompile)
+                        .addLibraryFiles(getLibraryFiles())
+                        .setMinApiLevel(getModule().getMinSdk())
+                        .setMode(CompilationMode.DEBUG)
+                        .setIntermediate(true)
+                        .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
+                        .build();
+                D8.run(command);
+            }
+
+            loadDexFiles(checksums);
+            saveCache();
+
+            if (getModule().getMinSdk() >= NATIVE_MULTIDEX_MIN_SDK) {
+                mergeShards();
+            } else {
+                mergeDebug();
+            }
+        } catch (com.android.tools.r8.CompilationFailedException e) {
+            throw new CompilationFailedException(e);
+        }
+    }
+
+    /**
+     * Merges the per class dex files of the shards that have changed, then places the
+     * dex files of every shard in the bin directory as classes.dex, classes2.dex and so on
+     * for {@link com.tyron.builder.compiler.apk.PackageTask} to pack.
+     */
+    private void mergeShards() throws IOException, com.android.tools.r8.CompilationFailedException {
+        Map<Integer, List<Path>> shards = new HashMap<>();
+        for (Path dexFile : getAllDexFiles(mOutputPath.toFile())) {
+            shards.computeIfAbsent(getShard(dexFile.toFile()), k -> new ArrayList<>())
+                    .add(dexFile);
+        }
+
+        File shardsDir = new File(getModule().getBuildDirectory(), "intermediate/shards");
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            File shardDir = new File(shardsDir, String.valueOf(i));
+            if (shardDir.exists() && !mDirtyShards.contains(i)) {
+                continue;
+            }
+            if (shardDir.exists()) {
+                FileUtils.deleteDirectory(shardDir);
+            }
+
+            List<Path> dexFiles = shards.get(i);
+            if (dexFiles == null || dexFiles.isEmpty()) {
+                continue;
+            }
+            if (!shardDir.mkdirs()) {
+                throw new IOException("Unable to create shard directory " + shardDir);
+            }
+            getLogger().debug("Merging dex shard " + i);
             D8Command command = D8Command.builder(diagnosticsHandler)
-                    .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
-                    .addProgramFiles(mFilesToCompile)
+                    .addProgramFiles(dexFiles)
                     .addLibraryFiles(getLibraryFiles())
+                    .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
                     .setMinApiLevel(getModule().getMinSdk())
                     .setMode(CompilationMode.DEBUG)
-                    .setIntermediate(true)
-                    .setOutput(mOutputPath, OutputMode.DexFilePerClassFile)
+                    .setOutput(shardDir.toPath(), OutputMode.DexIndexed)
                     .build();
-            D8.run(command);
+            boolean merged = false;
+            try {
+                D8.run(command);
+                merged = true;
+            } finally {
+                if (!merged) {
+                    // a partial shard would be packed as is on the next build
+                    FileUtils.deleteQuietly(shardDir);
+                }
+            }
+        }
+        mDirtyShards.clear();
+        writeDirtyShards(mDirtyShardsFile, mDirtyShards);
 
-            for (Path file : mFilesToCompile) {
-                mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+        File output = new File(getModule().getBuildDirectory(), "bin");
+        deleteOutputDexFiles(output);
+
+        int dexCount = 0;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            File[] shardDexFiles = new File(shardsDir, String.valueOf(i))
+                    .listFiles(c -> c.getName().endsWith(".dex"));
+            if (shardDexFiles == null) {
+                continue;
+            }
+            Arrays.sort(shardDexFiles, Comparator.comparingInt(IncrementalD8Task::getDexIndex));
+            for (File shardDexFile : shardDexFiles) {
+                dexCount++;
+                String name = dexCount == 1 ? "classes.dex" : "classes" + dexCount + ".dex";
+                linkOrCopy(shardDexFile, new File(output, name));
             }
+        }
+    }
 
-            D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
-                    .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
-                    .addLibraryFiles(getLibraryFiles())
-                    .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
-                    .setMinApiLevel(getModule().getMinSdk());
+    /**
+     * Merges every per class dex file into bin/classes.dex, D8 only adds more dex files if
+     * the classes do not fit in one. The shards are removed since their contents are not
+     * tracked while they are not used.
+     */
+    private void mergeDebug() throws IOException, com.android.tools.r8.CompilationFailedException {
+        FileUtils.deleteDirectory(new File(getModule().getBuildDirectory(), "intermediate/shards"));
+        mDirtyShards.clear();
 
-            File output = new File(getModule().getBuildDirectory(), "bin");
-            builder.setMode(CompilationMode.DEBUG);
-            builder.setOutput(output.toPath(), OutputMode.DexIndexed);
-            D8.run(builder.build());
+        File output = new File(getModule().getBuildDirectory(), "bin");
+        deleteOutputDexFiles(output);
 
-        } catch (com.android.tools.r8.CompilationFailedException e) {
-            throw new CompilationFailedException(e);
+        D8Command command = D8Command.builder(diagnosticsHandler)
+                .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
+                .addLibraryFiles(getLibraryFiles())
+                .addClasspathFiles(getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
+                .setMinApiLevel(getModule().getMinSdk())
+                .setMode(CompilationMode.DEBUG)
+                .setOutput(output.toPath(), OutputMode.DexIndexed)
+                .build();
+        D8.run(command);
+        writeDirtyShards(mDirtyShardsFile, mDirtyShards);
+    }
+
+    @VisibleForTesting
+    static Set<Integer> readDirtyShards(File file) throws IOException {
+        Set<Integer> shards = BinaryStore.read(file, DIRTY_SHARDS_MAGIC, DIRTY_SHARDS_VERSION,
+                in -> {
+                    int count = in.readInt();
+                    Set<Integer> read = new HashSet<>(count);
+                    for (int i = 0; i < count; i++) {
+                        read.add(in.readInt());
+                    }
+                    return read;
+                });
+        return shards == null ? Collections.emptySet() : shards;
+    }
+
+    @VisibleForTesting
+    static void writeDirtyShards(File file, Set<Integer> shards) throws IOException {
+        BinaryStore.write(file, DIRTY_SHARDS_MAGIC, DIRTY_SHARDS_VERSION, out -> {
+            out.writeInt(shards.size());
+            for (int shard : shards) {
+                out.writeInt(shard);
+            }
+        });
+    }
+
+    private static void deleteOutputDexFiles(File output) throws IOException {
+        File[] oldDexFiles = output.listFiles(c -> c.isFile() && c.getName().matches("classes\\d*\\.dex"));
+        if (oldDexFiles != null) {
+            for (File oldDexFile : oldDexFiles) {
+                FileUtils.delete(oldDexFile);
+            }
+        }
+    }
+
+    /**
+     * Shard outputs are not modified after they are written, so a hard link is enough
+     * and avoids copying the dex files on every build.
+     */
+    private static void linkOrCopy(File source, File target) throws IOException {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            FileUtils.copyFile(source, target);
+        }
+    }
+
+    /**
+     * @return the index of a dex file named classes.dex, classes2.dex ...
+     */
+    @VisibleForTesting
+    static int getDexIndex(File dexFile) {
+        String name = dexFile.getName();
+        String index = name.substring("classes".length(), name.length() - ".dex".length());
+        if (index.isEmpty()) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(index);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns the shard of a per class dex file in the intermediate directory. Inner classes
+     * and synthetic classes are placed in the same shard as their top level class.
+     */
+    private int getShard(File dexFile) {
+        return getShard(mOutputPath, dexFile);
+    }
+
+    @VisibleForTesting
+    static int getShard(Path outputPath, File dexFile) {
+        String path = outputPath.relativize(dexFile.toPath()).toString();
+        int separator = path.lastIndexOf(File.separatorChar);
+        String directory = separator == -1 ? "" : path.substring(0, separator);
+        String name = path.substring(separator + 1).replace(".dex", "");
+
+        if (name.startsWith("-$$")) {
+            int start = name.indexOf('$', 3) + 1;
+            int end = name.indexOf('$', start);
+            if (start > 0 && end != -1) {
+                name = name.substring(start, end);
+            }
+        } else if (name.indexOf('$') > 0) {
+            name = name.substring(0, name.indexOf('$'));
+        }
+        return ((directory + '/' + name).hashCode() & Integer.MAX_VALUE) % SHARD_COUNT;
+    }
+
+    /**
+     * Returns the checksums of the class files as they are before they are dexed, the
+     * persisted cache must not trust contents that were written after that.
+     */
+    private static Map<Path, Long> getChecksums(List<Path> files) throws IOException {
+        Map<Path, Long> checksums = new HashMap<>();
+        for (Path file : files) {
+            checksums.put(file, FileCacheStore.checksum(file));
+        }
+        return checksums;
+    }
+
+    private void loadDexFiles(Map<Path, Long> checksums) {
+        for (Path file : mFilesToCompile) {
+            mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
+            mCacheStore.putChecksum(mDexCache, file, "dex", checksums.get(file));
+        }
+    }
+
+    private void saveCache() {
+        try {
+            mCacheStore.write(mDexCache);
+        } catch (IOException e) {
+            getLogger().warning("Unable to save the dex cache: " + e.getMessage());
         }
     }
 
@@ -189,15 +458,18 @@ public class IncrementalD8Task extends Task<AndroidModule> {
 
 
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
-        String packageName = file.getAbsolutePath()
-                .replace(output.getAbsolutePath(), "")
-                .substring(1)
-                .replace(".class", ".dex");
-
-        File intermediate = new File(getModule().getBuildDirectory(), "intermediate/classes");
-        File file1 = new File(intermediate, packageName);
-        return file1;
+        File javaClasses = new File(getModule().getBuildDirectory(), "bin/java/classes");
+        File kotlinClasses = new File(getModule().getBuildDirectory(), "bin/kotlin/classes");
+        String path = file.getAbsolutePath();
+        String relative;
+        if (path.startsWith(javaClasses.getAbsolutePath())) {
+            relative = path.substring(javaClasses.getAbsolutePath().length() + 1);
+        } else if (path.startsWith(kotlinClasses.getAbsolutePath())) {
+            relative = path.substring(kotlinClasses.getAbsolutePath().length() + 1);
+        } else {
+            relative = file.getName();
+        }
+        return new File(mOutputPath.toFile(), relative.replace(".class", ".dex"));
     }
 
     /**
@@ -205,9 +477,11 @@ public class IncrementalD8Task extends Task<AndroidModule> {
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
-    protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
+    protected void ensureDexedLibraries() throws IOException,
+            com.android.tools.r8.CompilationFailedException {
         List<File> libraries = getModule().getLibraries();
 
+        List<File> librariesToDex = new ArrayList<>();
         for (File lib : libraries) {
             File parentFile = lib.getParentFile();
             if (parentFile == null) {
@@ -224,20 +498,81 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     continue;
                 }
                 if (lib.exists()) {
-                    getLogger().debug("Dexing jar " + parentFile.getName());
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                            .addLibraryFiles(getLibraryFiles())
-                            .addClasspathFiles(libraries.stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                            .setMinApiLevel(getModule().getMinSdk())
-                            .addProgramFiles(lib.toPath())
-                            .setMode(CompilationMode.RELEASE)
-                            .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                            .build();
-                    D8.run(command);
+                    librariesToDex.add(lib);
                 }
             }
         }
+        if (librariesToDex.isEmpty()) {
+            return;
+        }
+
+        // libraries are dexed independently of each other, dex them in parallel
+        int threads = Math.min(librariesToDex.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (File lib : librariesToDex) {
+            futures.add(service.submit(() -> {
+                dexLibrary(lib, libraries);
+                return null;
+            }));
+        }
+        service.shutdown();
+
+        try {
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    if (e.getCause() instanceof com.android.tools.r8.CompilationFailedException) {
+                        throw (com.android.tools.r8.CompilationFailedException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Copies the dex files of the library from the shared {@link LibraryDexCache}
+     * next to the jar, dexing it first if no other project has done so. Libraries are
+     * dexed in parallel so each one reports its diagnostics to its own handler.
+     */
+    private void dexLibrary(File lib, List<File> libraries)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        List<File> classpath = new ArrayList<>();
+        for (Path path : getLibraryFiles()) {
+            classpath.add(path.toFile());
+        }
+        classpath.addAll(libraries);
+
+        List<File> dexFiles = LibraryDexCache.getInstance().getOrCreate(lib,
+                getModule().getMinSdk(), CompilationMode.RELEASE, classpath, output -> {
+            getLogger().debug("Dexing jar " + lib.getParentFile().getName());
+            DiagnosticsHandler handler = new DexDiagnosticHandler(getLogger(), getModule());
+            D8Command command = D8Command.builder(handler)
+                    .addLibraryFiles(getLibraryFiles())
+                    .addClasspathFiles(libraries.stream().map(File::toPath)
+                            .collect(Collectors.toList()))
+                    .setMinApiLevel(getModule().getMinSdk())
+                    .addProgramFiles(lib.toPath())
+                    .setMode(CompilationMode.RELEASE)
+                    .setOutput(output, OutputMode.DexIndexed)
+                    .build();
+            D8.run(command);
+        });
+        for (File dexFile : dexFiles) {
+            File target = new File(lib.getParentFile(), dexFile.getName());
+            if (target.exists()) {
+                FileUtils.delete(target);
+            }
+            linkOrCopy(dexFile, target);
+        }
     }
 
     private List<Path> getLibraryFiles() {
@@ -0,0 +1,140 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.Version;
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.java.LibraryFingerprintCache;
+import com.tyron.common.util.FileUtilsEx;
+import com.tyron.common.util.HashUtils;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A content addressed store of dexed library jars that is shared by every project.
+ * Entries are keyed by the SHA-256 of the jar and by everything else the dex files depend
+ * on: the min sdk, the compilation mode, the version of D8 and the contents of the classpath
+ * the jar is desugared against. The same artifact only has to be dexed once on the device
+ * as long as it is used with the same classpath.
+ */
+public class LibraryDexCache {
+
+    private static LibraryDexCache sInstance;
+
+    /**
+     * Returns the cache shared by all projects, it is stored in the cache directory
+     * of the application so the system may clear it when storage is low.
+     */
+    public static synchronized LibraryDexCache getInstance() {
+        if (sInstance == null) {
+            File parent = BuildModule.getContext() != null
+                    ? BuildModule.getContext().getCacheDir()
+                    : new File(System.getProperty("java.io.tmpdir"));
+            sInstance = new LibraryDexCache(new File(parent, "dex-libraries"));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Produces the dex files of a library in the given directory
+     */
+    public interface Dexer {
+        void dex(Path outputDirectory) throws CompilationFailedException;
+    }
+
+    private final File mDirectory;
+
+    public LibraryDexCache(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the dex files of the given jar, the dexer is only invoked if the jar has not
+     * been dexed before with the same settings and classpath.
+     *
+     * @param classpath the library and classpath files the dexer resolves classes against
+     */
+    public List<File> getOrCreate(File jar, int minSdk, CompilationMode mode,
+                                  List<File> classpath, Dexer dexer)
+            throws IOException, CompilationFailedException {
+        File entry = new File(mDirectory, getKey(jar, minSdk, mode, classpath));
+        List<File> dexFiles = getDexFiles(entry);
+        if (dexFiles != null) {
+            return dexFiles;
+        }
+
+        // dex into a temporary directory first so other builds never see a partial entry
+        File temp = new File(mDirectory, "tmp-" + UUID.randomUUID());
+        if (!temp.mkdirs()) {
+            throw new IOException("Unable to create directory " + temp);
+        }
+        try {
+            dexer.dex(temp.toPath());
+            try {
+                FileUtilsEx.moveAtomically(temp, entry);
+            } catch (IOException e) {
+                dexFiles = getDexFiles(entry);
+                if (dexFiles == null) {
+                    throw e;
+                }
+                // another build has dexed the same jar at the same time
+                return dexFiles;
+            }
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteDirectory(temp);
+            }
+        }
+
+        dexFiles = getDexFiles(entry);
+        if (dexFiles == null) {
+            throw new IOException("Dexing " + jar.getName() + " produced no dex files");
+        }
+        return dexFiles;
+    }
+
+    @Nullable
+    private static List<File> getDexFiles(File entry) {
+        File[] files = entry.listFiles(c -> c.isFile() && c.getName().endsWith(".dex"));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    static String getKey(File jar, int minSdk, CompilationMode mode, List<File> classpath)
+            throws IOException {
+        MessageDigest settings = HashUtils.newDigest("SHA-256");
+        update(settings, Version.getVersionString());
+        // the classpath is hashed with the fingerprints of its archives, which are only
+        // computed again when an archive changes
+        Map<File, LibraryFingerprintCache.Fingerprint> fingerprints =
+                LibraryFingerprintCache.getInstance().getFingerprints(classpath);
+        for (File file : classpath) {
+            LibraryFingerprintCache.Fingerprint fingerprint = fingerprints.get(file);
+            update(settings, fingerprint != null ? fingerprint.getMd5() : "missing");
+        }
+        return HashUtils.hash(jar, "SHA-256") + '-' + minSdk + '-'
+                + mode.name().toLowerCase() + '-' + HashUtils.toHex(settings.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,220 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import org.openjdk.javax.lang.model.element.Element;
+import org.openjdk.javax.lang.model.element.ElementKind;
+import org.openjdk.javax.lang.model.element.ExecutableElement;
+import org.openjdk.javax.lang.model.element.Modifier;
+import org.openjdk.javax.lang.model.element.PackageElement;
+import org.openjdk.javax.lang.model.element.TypeElement;
+import org.openjdk.javax.lang.model.element.TypeParameterElement;
+import org.openjdk.javax.lang.model.element.VariableElement;
+import org.openjdk.javax.lang.model.type.DeclaredType;
+import org.openjdk.javax.lang.model.type.TypeKind;
+import org.openjdk.javax.lang.model.type.TypeMirror;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.IdentifierTree;
+import org.openjdk.source.tree.MemberSelectTree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.source.util.TaskEvent;
+import org.openjdk.source.util.TaskListener;
+import org.openjdk.source.util.TreePath;
+import org.openjdk.source.util.TreePathScanner;
+import org.openjdk.source.util.Trees;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the classes that each compiled file references and a fingerprint of the
+ * public ABI of the classes it declares. The fingerprint only changes when something
+ * that other files can observe changes, edits inside method bodies do not affect it.
+ */
+public class DependencyCollector implements TaskListener {
+
+    private final Trees mTrees;
+    private final Set<CompilationUnitTree> mScannedUnits = new HashSet<>();
+
+    /**
+     * Top level classes referenced by a source file
+     */
+    private final Map<File, Set<String>> mDependencies = new HashMap<>();
+
+    /**
+     * Top level classes declared by a source file along with its abi fingerprint
+     */
+    private final Map<File, Map<String, Long>> mDeclared = new HashMap<>();
+
+    public DependencyCollector(JavacTask task) {
+        mTrees = Trees.instance(task);
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() != TaskEvent.Kind.ANALYZE) {
+            return;
+        }
+        CompilationUnitTree unit = e.getCompilationUnit();
+        if (unit == null || unit.getSourceFile() == null) {
+            return;
+        }
+        File file = new File(unit.getSourceFile().toUri());
+        if (mScannedUnits.add(unit)) {
+            Set<String> dependencies = new HashSet<>();
+            new ReferenceScanner(dependencies).scan(unit, null);
+            mDependencies.put(file, dependencies);
+        }
+
+        TypeElement typeElement = e.getTypeElement();
+        if (typeElement != null) {
+            mDeclared.computeIfAbsent(file, f -> new HashMap<>())
+                    .put(typeElement.getQualifiedName().toString(), fingerprint(typeElement));
+        }
+    }
+
+    public Map<File, Set<String>> getDependencies() {
+        return mDependencies;
+    }
+
+    public Map<File, Map<String, Long>> getDeclaredClasses() {
+        return mDeclared;
+    }
+
+    private class ReferenceScanner extends TreePathScanner<Void, Void> {
+
+        private final Set<String> mReferences;
+
+        ReferenceScanner(Set<String> references) {
+            mReferences = references;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree node, Void unused) {
+            addElement(mTrees.getElement(getCurrentPath()));
+            return super.visitIdentifier(node, unused);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree node, Void unused) {
+            addElement(mTrees.getElement(getCurrentPath()));
+            // the type of the receiver may not be written anywhere in this file,
+            // e.g. getFoo().bar()
+            TreePath expression = new TreePath(getCurrentPath(), node.getExpression());
+            addType(mTrees.getTypeMirror(expression));
+            return super.visitMemberSelect(node, unused);
+        }
+
+        private void addType(TypeMirror type) {
+            if (type != null && type.getKind() == TypeKind.DECLARED) {
+                addElement(((DeclaredType) type).asElement());
+            }
+        }
+
+        private void addElement(Element element) {
+            if (element == null) {
+                return;
+            }
+            Element topLevel = null;
+            Element current = element;
+            while (current != null && !(current instanceof PackageElement)) {
+                if (current instanceof TypeElement) {
+                    topLevel = current;
+                }
+                current = current.getEnclosingElement();
+            }
+            if (topLevel != null) {
+                mReferences.add(((TypeElement) topLevel).getQualifiedName().toString());
+            }
+        }
+    }
+
+    /**
+     * Computes a fingerprint of everything in this class that is visible to other classes,
+     * including non private members, supertypes, annotations and constant values since
+     * those are inlined by the compiler.
+     */
+    static long fingerprint(TypeElement element) {
+        StringBuilder builder = new StringBuilder();
+        appendSignature(element, builder);
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5")
+                    .digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (digest[i] & 0xff);
+            }
+            return result;
+        } catch (NoSuchAlgorithmException e) {
+            return builder.toString().hashCode();
+        }
+    }
+
+    private static void appendSignature(TypeElement element, StringBuilder builder) {
+        builder.append(element.getKind()).append(' ')
+                .append(element.getModifiers()).append(' ')
+                .append(element.getAnnotationMirrors()).append(' ')
+                .append(element.getQualifiedName());
+        for (TypeParameterElement parameter : element.getTypeParameters()) {
+            builder.append('<').append(parameter).append(parameter.getBounds()).append('>');
+        }
+        builder.append(" extends ").append(element.getSuperclass())
+                .append(" implements ").append(element.getInterfaces())
+                .append('\n');
+
+        List<String> members = new ArrayList<>();
+        for (Element member : element.getEnclosedElements()) {
+            if (member.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            StringBuilder memberBuilder = new StringBuilder();
+            if (member instanceof TypeElement) {
+                appendSignature((TypeElement) member, memberBuilder);
+            } else if (member instanceof ExecutableElement) {
+                ExecutableElement method = (ExecutableElement) member;
+                memberBuilder.append(method.getKind()).append(' ')
+                        .append(method.getModifiers()).append(' ')
+                        .append(method.getAnnotationMirrors()).append(' ')
+                        .append(method.getTypeParameters()).append(' ')
+                        .append(method.getReturnType()).append(' ')
+                        .append(method.getSimpleName());
+                for (VariableElement parameter : method.getParameters()) {
+                    memberBuilder.append(' ').append(parameter.asType());
+                }
+                memberBuilder.append(" throws ").append(method.getThrownTypes());
+                if (method.getDefaultValue() != null) {
+                    memberBuilder.append(" default ").append(method.getDefaultValue());
+                }
+            } else if (member instanceof VariableElement) {
+                VariableElement variable = (VariableElement) member;
+                memberBuilder.append(variable.getKind()).append(' ')
+                        .append(variable.getModifiers()).append(' ')
+                        .append(variable.getAnnotationMirrors()).append(' ')
+                        .append(variable.asType()).append(' ')
+                        .append(variable.getSimpleName());
+                if (variable.getKind() == ElementKind.FIELD) {
+                    memberBuilder.append(" = ").append(variable.getConstantValue());
+                }
+            } else {
+                memberBuilder.append(member.getKind()).append(' ').append(member);
+            }
+            members.add(memberBuilder.toString());
+        }
+        Collections.sort(members);
+        for (String member : members) {
+            builder.append(member).append('\n');
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.openjdk.source.util.JavacTask;
 import org.openjdk.tools.javac.api.JavacTool;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.incremental.FileCacheStore;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -29,7 +30,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openjdk.javax.tools.DiagnosticListener;
 import org.openjdk.javax.tools.JavaFileObject;
@@ -47,6 +51,8 @@ public class IncrementalJavaTask extends Task<JavaModule> {
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private FileCacheStore mCacheStore;
+    private JavaDependencyGraph mDependencyGraph;
 
     public IncrementalJavaTask(JavaModule project, ILogger logger) {
         super(project, logger);
@@ -66,6 +72,16 @@ public class IncrementalJavaTask extends Task<JavaModule> {
 
         mFilesToCompile = new ArrayList<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mCacheStore = FileCacheStore.getInstance(getModule(), CACHE_KEY);
+        if (mClassCache.getKeys().isEmpty()) {
+            // the in-memory cache is lost when the process is killed,
+            // restore it from the previous build
+            try {
+                mCacheStore.read(mClassCache);
+            } catch (IOException e) {
+                getLogger().warning("Unable to read the java cache, all files will be compiled.");
+            }
+        }
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
         if (getModule() instanceof AndroidModule) {
@@ -79,13 +95,41 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             }
         }
 
+        List<File> upToDate = new ArrayList<>();
         for (File file : mJavaFiles) {
             Path filePath = file.toPath();
             if (mClassCache.needs(filePath, "class")) {
                 mFilesToCompile.add(file);
+            } else {
+                upToDate.add(file);
             }
         }
 
+        mDependencyGraph = JavaDependencyGraph.getInstance(getModule());
+        try {
+            mDependencyGraph.loadIfNeeded();
+        } catch (IOException e) {
+            getLogger().warning("Unable to read the java dependency graph: " + e.getMessage());
+        }
+        if (!mDependencyGraph.containsAll(upToDate)) {
+            // the dependents of a file that is not in the graph are unknown, compile
+            // everything so the graph is recorded again
+            getLogger().debug("The java dependency graph is incomplete, compiling all files");
+            mDependencyGraph.clear();
+            mFilesToCompile = new ArrayList<>(mJavaFiles);
+        }
+        // files that reference classes from deleted files need to be compiled again,
+        // as well as the files left over by a previous build that failed
+        Set<String> removedClasses = mDependencyGraph.retainFiles(mJavaFiles);
+        Set<File> affected = new HashSet<>(mDependencyGraph.getDependents(removedClasses));
+        affected.addAll(mDependencyGraph.getPending());
+        Set<File> javaFiles = new HashSet<>(mJavaFiles);
+        Set<File> filesToCompile = new HashSet<>(mFilesToCompile);
+        for (File dependent : affected) {
+            if (javaFiles.contains(dependent) && filesToCompile.add(dependent)) {
+                mFilesToCompile.add(dependent);
+            }
+        }
     }
 
     private boolean mHasErrors = false;
@@ -129,18 +173,73 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             throw new CompilationFailedException(e);
         }
 
+        Set<File> javaFiles = new HashSet<>(mJavaFiles);
+        Set<File> compiled = new HashSet<>();
+        List<File> round = new ArrayList<>(mFilesToCompile);
+        try {
+            // files are compiled in rounds, if the abi of a class has changed
+            // the files that reference it are compiled in the next round
+            while (!round.isEmpty()) {
+                compiled.addAll(round);
+                // the new abi of the changed classes is saved even if this round fails,
+                // so the files that are not compiled yet are remembered for the next build
+                mDependencyGraph.addPending(round);
+                Set<String> changedClasses = compile(tool, standardJavaFileManager,
+                        diagnosticCollector, round);
+
+                List<File> next = new ArrayList<>();
+                for (File dependent : mDependencyGraph.getDependents(changedClasses)) {
+                    if (javaFiles.contains(dependent) && !compiled.contains(dependent)) {
+                        next.add(dependent);
+                    }
+                }
+                if (mHasErrors) {
+                    mDependencyGraph.addPending(next);
+                    break;
+                }
+                mDependencyGraph.removePending(round);
+                if (!next.isEmpty()) {
+                    getLogger().debug("Compiling " + next.size() + " files affected by changes to " + changedClasses);
+                }
+                mFilesToCompile.addAll(next);
+                round = next;
+            }
+        } finally {
+            saveCache();
+        }
+
+        if (mHasErrors) {
+            throw new CompilationFailedException("Compilation failed, check logs for more details");
+        }
+    }
+
+    /**
+     * Compiles the given files and records their dependencies
+     *
+     * @return the classes whose abi has changed
+     */
+    private Set<String> compile(JavacTool tool,
+                                StandardJavaFileManager standardJavaFileManager,
+                                DiagnosticListener<JavaFileObject> diagnosticCollector,
+                                List<File> files) throws CompilationFailedException {
+        // the checksums of the contents that are compiled, the files may change while compiling
+        Map<String, Long> checksums = new ConcurrentHashMap<>();
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
-                    return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                    byte[] contents = FileUtils.readFileToByteArray(file);
+                    checksums.put(file.getAbsolutePath(), FileCacheStore.checksum(contents));
+                    return new String(contents, StandardCharsets.UTF_8);
                 }
             });
         }
 
         JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
                 Collections.emptyList(), null, javaFileObjects);
+        DependencyCollector collector = new DependencyCollector(task);
+        task.addTaskListener(collector);
 
         HashMap<String, List<File>> compiledFiles = new HashMap<>();
         try {
@@ -148,18 +247,27 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             task.parse();
             task.analyze();
             Iterable<? extends JavaFileObject> generate = task.generate();
+            Map<String, File> sourceFiles = new HashMap<>();
+            collector.getDeclaredClasses().forEach((file, classes) -> {
+                for (String className : classes.keySet()) {
+                    sourceFiles.put(className, file);
+                }
+            });
             for (JavaFileObject fileObject : generate) {
                 String path = fileObject.getName();
                 File classFile = new File(path);
                 if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
+                    File file = sourceFiles.get(getTopLevelClassName(classFile));
+                    if (file == null) {
+                        String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
+                                "src/main/java/").replace(".class", ".java");
+                        if (classFile.getName().indexOf('$') != -1) {
+                            classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
+                        }
+                        file = new File(classPath);
+                        if (!file.exists()) {
+                            file = new File(classPath.replace("src/main/java", "build/gen"));
+                        }
                     }
 
                     if (!compiledFiles.containsKey(file.getAbsolutePath())) {
@@ -170,6 +278,10 @@ public class IncrementalJavaTask extends Task<JavaModule> {
                         Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
                     }
                     mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
+                    Long checksum = checksums.get(file.getAbsolutePath());
+                    if (checksum != null) {
+                        mCacheStore.putChecksum(mClassCache, file.toPath(), "class", checksum);
+                    }
                 }
             }
 
@@ -200,9 +312,27 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
+        return mDependencyGraph.update(collector);
+    }
 
-        if (mHasErrors) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details");
+    /**
+     * @return the name of the top level class that the given class file belongs to
+     */
+    private String getTopLevelClassName(File classFile) {
+        String path = mOutputDir.toPath().relativize(classFile.toPath()).toString();
+        int end = path.indexOf('$');
+        if (end == -1) {
+            end = path.length() - ".class".length();
+        }
+        return path.substring(0, end).replace(File.separatorChar, '.');
+    }
+
+    private void saveCache() {
+        try {
+            mCacheStore.write(mClassCache);
+            mDependencyGraph.save();
+        } catch (IOException e) {
+            getLogger().warning("Unable to save the java cache: " + e.getMessage());
         }
     }
 
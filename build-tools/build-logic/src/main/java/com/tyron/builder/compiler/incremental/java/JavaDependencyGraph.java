@@ -0,0 +1,272 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.project.api.Module;
+import com.tyron.common.util.BinaryStore;
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which source files reference which classes and the abi fingerprint
+ * of every class declared in the module, so {@link IncrementalJavaTask} can recompile
+ * only the files affected by a change.
+ */
+public class JavaDependencyGraph {
+
+    private static final Key<JavaDependencyGraph> GRAPH_KEY = Key.create("javaDependencyGraph");
+
+    private static final int MAGIC = 0x4a444550;
+    private static final int VERSION = 2;
+
+    /**
+     * Returns the dependency graph of this module, it is read from the build directory
+     * the first time it is requested.
+     */
+    public static JavaDependencyGraph getInstance(Module module) {
+        JavaDependencyGraph graph = module.getUserData(GRAPH_KEY);
+        if (graph == null) {
+            File file = new File(module.getBuildDirectory(),
+                    "intermediate/cache/javaDependencies.bin");
+            graph = module.putUserDataIfAbsent(GRAPH_KEY, new JavaDependencyGraph(file));
+        }
+        return graph;
+    }
+
+    private final File mFile;
+    private boolean mLoaded;
+
+    private final Map<File, Set<String>> mDependencies = new HashMap<>();
+    private final Map<File, Map<String, Long>> mDeclared = new HashMap<>();
+
+    /**
+     * Files that have to be compiled by the next build, they were part of a build that
+     * failed or are dependents of classes whose abi changed in that build
+     */
+    private final Set<File> mPending = new HashSet<>();
+
+    /**
+     * Lazily computed map of a class name to the files that reference it
+     */
+    private Map<String, Set<File>> mDependents;
+
+    public JavaDependencyGraph(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return whether the classes and references of every given file are known, a file that
+     * was compiled while this graph was not recorded or could not be read has no edges
+     */
+    public boolean containsAll(Collection<File> files) {
+        for (File file : files) {
+            if (!mDeclared.containsKey(file) && !mDependencies.containsKey(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the files that no longer exist from this graph.
+     *
+     * @return the classes that were declared by the removed files
+     */
+    public Set<String> retainFiles(Collection<File> files) {
+        Set<File> existing = new HashSet<>(files);
+        Set<String> removedClasses = new HashSet<>();
+        for (File file : new HashSet<>(mDeclared.keySet())) {
+            if (!existing.contains(file)) {
+                removedClasses.addAll(mDeclared.remove(file).keySet());
+                mDependencies.remove(file);
+            }
+        }
+        mDependencies.keySet().retainAll(existing);
+        mPending.retainAll(existing);
+        if (!removedClasses.isEmpty()) {
+            mDependents = null;
+        }
+        return removedClasses;
+    }
+
+    /**
+     * Updates this graph with the results of a compilation
+     *
+     * @return the classes whose abi has changed, including classes that have been added
+     * or removed
+     */
+    public Set<String> update(DependencyCollector collector) {
+        return update(collector.getDeclaredClasses(), collector.getDependencies());
+    }
+
+    @VisibleForTesting
+    Set<String> update(Map<File, Map<String, Long>> declaredClasses,
+                       Map<File, Set<String>> dependencies) {
+        Set<String> changed = new HashSet<>();
+        Set<String> addedSimpleNames = new HashSet<>();
+        for (Map.Entry<File, Map<String, Long>> entry : declaredClasses.entrySet()) {
+            Map<String, Long> current = entry.getValue();
+            Map<String, Long> previous = mDeclared.put(entry.getKey(), current);
+            if (previous == null) {
+                previous = Collections.emptyMap();
+            }
+            for (Map.Entry<String, Long> currentEntry : current.entrySet()) {
+                Long previousFingerprint = previous.get(currentEntry.getKey());
+                if (previousFingerprint == null) {
+                    addedSimpleNames.add(getSimpleName(currentEntry.getKey()));
+                    changed.add(currentEntry.getKey());
+                } else if (!previousFingerprint.equals(currentEntry.getValue())) {
+                    changed.add(currentEntry.getKey());
+                }
+            }
+            for (String previousClass : previous.keySet()) {
+                if (!current.containsKey(previousClass)) {
+                    changed.add(previousClass);
+                }
+            }
+        }
+
+        // a new class may be resolved instead of a class with the same simple name from
+        // another package, e.g. one that was imported on demand
+        if (!addedSimpleNames.isEmpty()) {
+            for (Set<String> references : mDependencies.values()) {
+                for (String reference : references) {
+                    if (addedSimpleNames.contains(getSimpleName(reference))) {
+                        changed.add(reference);
+                    }
+                }
+            }
+        }
+        mDependencies.putAll(dependencies);
+        mDependents = null;
+        return changed;
+    }
+
+    /**
+     * Returns the files that directly reference any of the given classes
+     */
+    public Set<File> getDependents(Collection<String> classes) {
+        if (mDependents == null) {
+            mDependents = new HashMap<>();
+            mDependencies.forEach((file, dependencies) -> {
+                for (String dependency : dependencies) {
+                    mDependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(file);
+                }
+            });
+        }
+        Set<File> dependents = new HashSet<>();
+        for (String className : classes) {
+            dependents.addAll(mDependents.getOrDefault(className, Collections.emptySet()));
+        }
+        return dependents;
+    }
+
+    /**
+     * Marks the given files to be compiled by the next build, until they are removed
+     * with {@link #removePending(Collection)} once they have been compiled successfully.
+     */
+    public void addPending(Collection<File> files) {
+        mPending.addAll(files);
+    }
+
+    public void removePending(Collection<File> files) {
+        mPending.removeAll(files);
+    }
+
+    public Set<File> getPending() {
+        return Collections.unmodifiableSet(mPending);
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    public void clear() {
+        mDeclared.clear();
+        mDependencies.clear();
+        mPending.clear();
+        mDependents = null;
+    }
+
+    /**
+     * Reads this graph from the build directory if it has not been read yet.
+     */
+    public void loadIfNeeded() throws IOException {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        clear();
+        try {
+            BinaryStore.read(mFile, MAGIC, VERSION, in -> {
+                int fileCount = in.readInt();
+                for (int i = 0; i < fileCount; i++) {
+                    File file = new File(in.readUTF());
+
+                    int declaredCount = in.readInt();
+                    Map<String, Long> declared = new HashMap<>(declaredCount);
+                    for (int j = 0; j < declaredCount; j++) {
+                        declared.put(in.readUTF(), in.readLong());
+                    }
+                    mDeclared.put(file, declared);
+
+                    int dependencyCount = in.readInt();
+                    Set<String> dependencies = new HashSet<>(dependencyCount);
+                    for (int j = 0; j < dependencyCount; j++) {
+                        dependencies.add(in.readUTF());
+                    }
+                    mDependencies.put(file, dependencies);
+                }
+
+                int pendingCount = in.readInt();
+                for (int i = 0; i < pendingCount; i++) {
+                    mPending.add(new File(in.readUTF()));
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    public void save() throws IOException {
+        Set<File> files = new HashSet<>(mDeclared.keySet());
+        files.addAll(mDependencies.keySet());
+
+        BinaryStore.write(mFile, MAGIC, VERSION, out -> {
+            out.writeInt(files.size());
+            for (File file : files) {
+                out.writeUTF(file.getAbsolutePath());
+
+                Map<String, Long> declared = mDeclared.getOrDefault(file, Collections.emptyMap());
+                out.writeInt(declared.size());
+                for (Map.Entry<String, Long> entry : declared.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+
+                Set<String> dependencies = mDependencies.getOrDefault(file, Collections.emptySet());
+                out.writeInt(dependencies.size());
+                for (String dependency : dependencies) {
+                    out.writeUTF(dependency);
+                }
+            }
+
+            out.writeInt(mPending.size());
+            for (File file : mPending) {
+                out.writeUTF(file.getAbsolutePath());
+            }
+        });
+    }
+}
@@ -19,8 +19,6 @@ import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSourceLocation;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
-import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
-import org.jetbrains.kotlin.incremental.IncrementalJvmCompilerRunnerKt;
 
 import java.io.File;
 import java.io.IOException;
@@ -89,9 +87,8 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         List<File> javaSourceRoots = new ArrayList<>(getModule().getJavaFiles().values());
 
         try {
-            K2JVMCompiler compiler = new K2JVMCompiler();
-            K2JVMCompilerArguments args = new K2JVMCompilerArguments();
-            compiler.parseArguments(arguments.toArray(new String[0]), args);
+            KotlinCompilerSession session = KotlinCompilerSession.getInstance();
+            K2JVMCompilerArguments args = session.parseArguments(arguments);
 
             args.setUseJavac(false);
             args.setCompileJava(false);
@@ -111,7 +108,7 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
                     .toArray(String[]::new));
             File cacheDir = new File(getModule().getBuildDirectory(), "intermediate/kotlin");
 
-            IncrementalJvmCompilerRunnerKt.makeIncrementally(cacheDir,
+            session.compile(cacheDir,
                     Arrays.asList(getModule().getJavaDirectory(),
                             new File(getModule().getBuildDirectory(), "gen")),
                     args, mCollector, new ICReporterBase() {
@@ -0,0 +1,150 @@
+package com.tyron.builder.compiler.incremental.kotlin;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.jetbrains.kotlin.build.report.ICReporter;
+import org.jetbrains.kotlin.cli.common.CompilerSystemProperties;
+import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreApplicationEnvironment;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.com.intellij.openapi.vfs.VirtualFileSystem;
+import org.jetbrains.kotlin.com.intellij.openapi.vfs.impl.jar.CoreJarFileSystem;
+import org.jetbrains.kotlin.incremental.IncrementalJvmCompilerRunnerKt;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compilation session shared by all the Kotlin builds of this process.
+ *
+ * <p>The Kotlin compiler normally disposes its application environment once the last
+ * compilation has finished, so every build registers the extension points and opens the
+ * classpath jars again. The session keeps the application environment alive between
+ * builds, which also shares it with the other Kotlin environments of the process such as
+ * the one used for code completion.
+ *
+ * <p>The jar file system of the application environment keeps the index of the entries of
+ * every jar it has opened, so the classpath is only indexed once. When a jar of the
+ * classpath changes, only that jar is dropped from the file system, the other jars stay
+ * indexed for the next build and for code completion.
+ */
+public class KotlinCompilerSession {
+
+    private static final String TAG = KotlinCompilerSession.class.getSimpleName();
+
+    private static KotlinCompilerSession sInstance;
+
+    public static synchronized KotlinCompilerSession getInstance() {
+        if (sInstance == null) {
+            sInstance = new KotlinCompilerSession();
+        }
+        return sInstance;
+    }
+
+    private final K2JVMCompiler mCompiler = new K2JVMCompiler();
+
+    /**
+     * The size and modification time of the classpath jars when they were last compiled
+     * against, keyed by their path
+     */
+    private final Map<String, String> mJarStamps = new HashMap<>();
+
+    @VisibleForTesting
+    KotlinCompilerSession() {
+        CompilerSystemProperties.KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY.setValue("true");
+    }
+
+    @NonNull
+    public K2JVMCompilerArguments parseArguments(@NonNull List<String> arguments) {
+        K2JVMCompilerArguments args = mCompiler.createArguments();
+        mCompiler.parseArguments(arguments.toArray(new String[0]), args);
+        return args;
+    }
+
+    public synchronized void compile(@NonNull File cacheDir,
+                                     @NonNull List<File> sourceRoots,
+                                     @NonNull K2JVMCompilerArguments args,
+                                     @NonNull MessageCollector collector,
+                                     @NonNull ICReporter reporter) {
+        String classpath = args.getClasspath();
+        if (classpath != null) {
+            updateJars(Arrays.asList(classpath.split(File.pathSeparator)));
+        }
+
+        IncrementalJvmCompilerRunnerKt.makeIncrementally(cacheDir, sourceRoots, args,
+                collector, reporter);
+    }
+
+    /**
+     * Drops the jars that have changed since they were last compiled against from the jar
+     * file system, they are cached by their path so a jar that has been replaced by another
+     * one at the same path would otherwise still be read from the cache. Directories are
+     * read from the local file system and are not cached.
+     */
+    @VisibleForTesting
+    synchronized void updateJars(@NonNull List<String> paths) {
+        List<File> changed = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (!file.isFile()) {
+                continue;
+            }
+            String stamp = file.length() + ":" + file.lastModified();
+            String previous = mJarStamps.put(file.getPath(), stamp);
+            if (previous != null && !previous.equals(stamp)) {
+                changed.add(file);
+            }
+        }
+        if (!changed.isEmpty()) {
+            removeJarHandlers(changed);
+        }
+    }
+
+    private static void removeJarHandlers(List<File> jars) {
+        KotlinCoreApplicationEnvironment environment =
+                KotlinCoreEnvironment.Companion.getApplicationEnvironment();
+        if (environment == null) {
+            return;
+        }
+        VirtualFileSystem jarFileSystem = environment.getJarFileSystem();
+        if (!(jarFileSystem instanceof CoreJarFileSystem)) {
+            return;
+        }
+        Map<String, ?> handlers = getHandlers((CoreJarFileSystem) jarFileSystem);
+        if (handlers == null) {
+            // drop every jar rather than reading a stale one
+            ((CoreJarFileSystem) jarFileSystem).clearHandlersCache();
+            return;
+        }
+        // the handlers are kept in a concurrent map, a completion reading another jar
+        // meanwhile is not affected
+        for (File jar : jars) {
+            handlers.remove(jar.getPath());
+            handlers.remove(jar.getAbsolutePath());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Map<String, ?> getHandlers(CoreJarFileSystem jarFileSystem) {
+        try {
+            Field field = CoreJarFileSystem.class.getDeclaredField("myHandlers");
+            field.setAccessible(true);
+            return (Map<String, ?>) field.get(jarFileSystem);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "Unable to access the jar handlers", e);
+            return null;
+        }
+    }
+}
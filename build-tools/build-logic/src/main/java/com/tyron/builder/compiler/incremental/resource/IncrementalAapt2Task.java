@@ -6,6 +6,7 @@ import com.android.tools.aapt2.Aapt2Jni;
 import com.tyron.builder.BuildModule;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.java.ExtractedLibraryStore;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -13,31 +14,60 @@ import com.tyron.builder.log.LogUtils;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.util.BinaryExecutor;
+import com.tyron.common.util.HashUtils;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     private static final String TAG = "IncrementalAAPT2";
 
+    /**
+     * Name of the compiled resources of a library in the {@link ExtractedLibraryStore}
+     */
+    @VisibleForTesting
+    static final String COMPILED_RESOURCES = "aapt2-res.zip";
+
     private final boolean mGenerateProtoFormat;
+    private final ExtractedLibraryStore mStore;
 
     public IncrementalAapt2Task(AndroidModule project, ILogger logger, boolean generateProtoFormat) {
+        this(project, logger, generateProtoFormat, ExtractedLibraryStore.getInstance());
+    }
+
+    @VisibleForTesting
+    IncrementalAapt2Task(AndroidModule project, ILogger logger, boolean generateProtoFormat,
+                         ExtractedLibraryStore store) {
         super(project, logger);
         mGenerateProtoFormat = generateProtoFormat;
+        mStore = store;
     }
 
     @Override
@@ -103,45 +133,151 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         copyMapToDir(files);
     }
 
-    private void compileLibraries(List<File> libraries)
+    @VisibleForTesting
+    void compileLibraries(List<File> libraries)
             throws IOException, CompilationFailedException {
-        getLogger().debug("Compiling libraries.");
-
-        File output = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create resource output directory");
+        if (libraries.isEmpty()) {
+            return;
+        }
+        getLogger().debug("Compiling " + libraries.size() + " libraries.");
+
+        File output = getOutputPath();
+        Properties fingerprints = readLibraryFingerprints();
+
+        // libraries are independent of each other, compile them in parallel
+        int threads = Math.min(libraries.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        Map<File, Future<LibraryResult>> futures = new LinkedHashMap<>();
+        for (File library : libraries) {
+            futures.put(library, service.submit(() -> compileLibrary(library, output)));
+        }
+        service.shutdown();
+
+        boolean failed = false;
+        try {
+            for (Map.Entry<File, Future<LibraryResult>> entry : futures.entrySet()) {
+                LibraryResult result;
+                try {
+                    result = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new CompilationFailedException("Unable to compile library resources", e.getCause());
+                }
+                // logs are printed one library at a time so they don't interleave
+                LogUtils.log(result.logs, getLogger());
+
+                String name = entry.getKey().getParentFile().getName();
+                if (result.exitCode != 0) {
+                    failed = true;
+                    fingerprints.remove(name);
+                } else {
+                    fingerprints.setProperty(name, result.fingerprint);
+                }
             }
+        } catch (InterruptedException e) {
+            service.shutdownNow();
+            throw new CompilationFailedException(e);
+        } finally {
+            writeLibraryFingerprints(fingerprints);
         }
 
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("Library folder doesn't exist");
-            }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
-            }
+        if (failed) {
+            throw new CompilationFailedException("Compilation failed, check logs for more details.");
+        }
+    }
+
+    private static class LibraryResult {
+        final int exitCode;
+        final String fingerprint;
+        final List<DiagnosticWrapper> logs;
 
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
-                    List<String> args = new ArrayList<>();
-                    args.add("--dir");
-                    args.add(inside.getAbsolutePath());
-                    args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
+        LibraryResult(int exitCode, String fingerprint, List<DiagnosticWrapper> logs) {
+            this.exitCode = exitCode;
+            this.fingerprint = fingerprint;
+            this.logs = logs;
+        }
+    }
 
-                    int compile = Aapt2Jni.compile(args);
-                    List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-                    LogUtils.log(logs, getLogger());
+    private LibraryResult compileLibrary(File library, File output) throws IOException {
+        File parent = library.getParentFile();
+        if (parent == null) {
+            throw new IOException("Library folder doesn't exist");
+        }
+        File resDir = new File(parent, "res");
+        String fingerprint = fingerprint(resDir);
+        File compiled = createNewFile(output, parent.getName() + ".zip");
 
-                    if (compile != 0) {
-                        throw new CompilationFailedException("Compilation failed, check logs for more details.");
-                    }
-                }
+        // the library directory is named after the hash of the library, the compiled
+        // resources are shared with the other projects using the same library
+        File stored = mStore.getDerivedFile(parent.getName(), COMPILED_RESOURCES);
+        if (stored != null) {
+            FileUtils.delete(compiled);
+            ExtractedLibraryStore.linkOrCopy(stored, compiled);
+            return new LibraryResult(0, fingerprint, Collections.emptyList());
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("--dir");
+        args.add(resDir.getAbsolutePath());
+        args.add("-o");
+        args.add(compiled.getAbsolutePath());
+
+        List<DiagnosticWrapper> logs = new ArrayList<>();
+        int compile = Aapt2Jni.compile(args, logs);
+        if (compile == 0) {
+            mStore.putDerivedFile(parent.getName(), COMPILED_RESOURCES, compiled);
+        }
+        return new LibraryResult(compile, fingerprint, logs);
+    }
+
+    /**
+     * Computes a fingerprint of a library resource directory from the paths, sizes
+     * and modification times of its files. Libraries are extracted once so this changes
+     * only when the library is extracted again.
+     */
+    private static String fingerprint(File resDir) throws IOException {
+        MessageDigest digest = HashUtils.newDigest("MD5");
+        String root = resDir.getAbsolutePath();
+        List<File> files = new ArrayList<>(FileUtils.listFiles(resDir, TrueFileFilter.INSTANCE,
+                TrueFileFilter.INSTANCE));
+        Collections.sort(files);
+        for (File file : files) {
+            String entry = file.getAbsolutePath().substring(root.length()) + ':'
+                    + file.length() + ':' + file.lastModified() + '\n';
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+        }
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private File getLibraryFingerprintsFile() {
+        return new File(getModule().getBuildDirectory(), "intermediate/cache/aapt2-libraries.properties");
+    }
+
+    private Properties readLibraryFingerprints() {
+        Properties properties = new Properties();
+        File file = getLibraryFingerprintsFile();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                getLogger().warning("Unable to read library fingerprints, libraries will be recompiled");
+                properties.clear();
             }
         }
+        return properties;
+    }
+
+    private void writeLibraryFingerprints(Properties properties) throws IOException {
+        File file = getLibraryFingerprintsFile();
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, null);
+        }
     }
 
     private void link() throws IOException, CompilationFailedException {
@@ -433,36 +569,52 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
+     * Returns the list of libraries whose resources need to be compiled.
+     * A library is skipped if its compiled zip exists in the build/bin/res folder and the
+     * fingerprint of its res folder matches the one from the last compilation.
+     * Compiled zips of libraries that have been removed are deleted so they are not linked.
      */
-    private List<File> getLibraries()  throws IOException {
-        File resDir = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!resDir.exists()) {
-            if (!resDir.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
-            }
-        }
+    @VisibleForTesting
+    List<File> getLibraries() throws IOException {
+        File resDir = getOutputPath();
+        Properties fingerprints = readLibraryFingerprints();
 
         List<File> libraries = new ArrayList<>();
+        Set<String> names = new HashSet<>();
 
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
             if (parent != null) {
-
-                if (!new File(parent, "res").exists()) {
+                File libraryRes = new File(parent, "res");
+                if (!libraryRes.exists()) {
                     // we don't need to check it if it has no resource directory
                     continue;
                 }
+                names.add(parent.getName());
 
                 File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
+                if (!check.exists() || check.length() == 0) {
+                    libraries.add(library);
+                    continue;
+                }
+
+                String fingerprint = fingerprints.getProperty(parent.getName());
+                if (fingerprint == null || !fingerprint.equals(fingerprint(libraryRes))) {
                     libraries.add(library);
                 }
             }
         }
 
+        File[] compiled = resDir.listFiles(c -> c.isFile() && c.getName().endsWith(".zip"));
+        if (compiled != null) {
+            for (File zip : compiled) {
+                String name = zip.getName().substring(0, zip.getName().length() - ".zip".length());
+                if (!names.contains(name)) {
+                    FileUtils.deleteQuietly(zip);
+                }
+            }
+        }
+
         return libraries;
     }
 
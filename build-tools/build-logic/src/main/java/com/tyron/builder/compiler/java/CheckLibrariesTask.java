@@ -11,7 +11,6 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
-import com.tyron.common.util.Decompress;
 
 import org.apache.commons.io.FileUtils;
 
@@ -23,13 +22,14 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.ZipFile;
 
 /**
  * Task responsible for copying aars/jars from libraries to build/libs
@@ -58,25 +58,6 @@ public class CheckLibrariesTask extends Task<JavaModule> {
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
         Set<Library> libraries = new HashSet<>();
 
-        Map<String, Library> fileLibsHashes = new HashMap<>();
-        File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
-                c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
-        if (fileLibraries != null) {
-            for (File fileLibrary : fileLibraries) {
-                try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
-                    Library library = new Library();
-                    library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(calculateMD5(fileLibrary), library);
-                } catch (IOException e) {
-                    String message = "File " + fileLibrary +
-                            " is corrupt! Ignoring.";
-                    logger.warning(message);
-                }
-            }
-        }
-
-
         newLibraries.forEach(it -> {
             Library library = new Library();
             library.setSourceFile(it);
@@ -93,9 +74,40 @@ public class CheckLibrariesTask extends Task<JavaModule> {
 
         }
 
+        File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
+                c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
+        List<File> archives = new ArrayList<>();
+        if (fileLibraries != null) {
+            archives.addAll(Arrays.asList(fileLibraries));
+        }
+        libraries.forEach(it -> archives.add(it.getSourceFile()));
+        // only the archives that changed since the last check are hashed
+        Map<File, LibraryFingerprintCache.Fingerprint> fingerprints =
+                LibraryFingerprintCache.getInstance().getFingerprints(archives);
+
+        Map<String, Library> fileLibsHashes = new HashMap<>();
+        if (fileLibraries != null) {
+            for (File fileLibrary : fileLibraries) {
+                LibraryFingerprintCache.Fingerprint fingerprint = fingerprints.get(fileLibrary);
+                if (fingerprint == null || !fingerprint.isValidArchive()) {
+                    String message = "File " + fileLibrary +
+                            " is corrupt! Ignoring.";
+                    logger.warning(message);
+                    continue;
+                }
+                Library library = new Library();
+                library.setSourceFile(fileLibrary);
+                fileLibsHashes.put(fingerprint.getMd5(), library);
+            }
+        }
+
         Map<String, Library> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(calculateMD5(it.getSourceFile()), it));
+        libraries.forEach(it -> {
+            LibraryFingerprintCache.Fingerprint fingerprint = fingerprints.get(it.getSourceFile());
+            if (fingerprint != null) {
+                md5Map.put(fingerprint.getMd5(), it);
+            }
+        });
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -118,26 +130,14 @@ public class CheckLibrariesTask extends Task<JavaModule> {
 
         getModule().putLibraryHashes(combined);
 
+        ExtractedLibraryStore store = ExtractedLibraryStore.getInstance();
         for (Map.Entry<String, Library> entry : combined.entrySet()) {
             String hash = entry.getKey();
             Library library = entry.getValue();
 
             File libraryDir = new File(module.getBuildDirectory(), "libs/" + hash);
-            if (!libraryDir.exists()) {
-                libraryDir.mkdir();
-            } else {
-                continue;
-            }
-
-            if (library.getSourceFile().getName().endsWith(".jar")) {
-                FileUtils.copyFileToDirectory(library.getSourceFile(), libraryDir);
-
-                File file = new File(libraryDir, library.getSourceFile().getName());
-                file.renameTo(new File(libraryDir, "classes.jar"));
-            } else if (library.getSourceFile().getName().endsWith(".aar")) {
-                Decompress.unzip(library.getSourceFile().getAbsolutePath(),
-                        libraryDir.getAbsolutePath());
-            }
+            // libraries are extracted once into the store and linked into each project
+            store.link(hash, library.getSourceFile(), libraryDir);
         }
 
         String librariesString = new Gson().toJson(libraries.values());
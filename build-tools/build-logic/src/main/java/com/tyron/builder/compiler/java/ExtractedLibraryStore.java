@@ -0,0 +1,235 @@
+package com.tyron.builder.compiler.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.BuildModule;
+import com.tyron.common.util.Decompress;
+import com.tyron.common.util.FileUtilsEx;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * A content addressed store of extracted libraries that is shared by every project.
+ *
+ * <p>Each jar or aar is extracted once into a directory named after its MD5, the
+ * {@code build/libs/<md5>} directory of a project then only holds links to the entries of
+ * the store. Symbolic links are used where the file system supports them, otherwise files
+ * are hard linked and as a last resort copied, which is the case on emulated external storage.
+ * Files written to the library directory of a project, such as its dex files, are not shared
+ * since they depend on the settings of the project.
+ *
+ * <p>Artifacts that only depend on the contents of a library, such as its compiled resources,
+ * can be stored next to the extracted library with {@link #putDerivedFile(String, String, File)}.
+ */
+public class ExtractedLibraryStore {
+
+    private static final String TAG = ExtractedLibraryStore.class.getSimpleName();
+
+    private static final String DERIVED_DIRECTORY = "derived";
+
+    private static ExtractedLibraryStore sInstance;
+
+    /**
+     * Returns the store shared by all projects, it is kept in the files directory of the
+     * application since the projects link to it.
+     */
+    public static synchronized ExtractedLibraryStore getInstance() {
+        if (sInstance == null) {
+            File parent = BuildModule.getContext() != null
+                    ? BuildModule.getContext().getFilesDir()
+                    : new File(System.getProperty("java.io.tmpdir"));
+            sInstance = new ExtractedLibraryStore(new File(parent, "libraries"));
+        }
+        return sInstance;
+    }
+
+    private final File mDirectory;
+
+    /**
+     * Creates a store kept in the given directory, projects should use {@link #getInstance()}
+     * so the libraries are shared between them.
+     */
+    @VisibleForTesting
+    public ExtractedLibraryStore(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the extracted contents of the given archive, extracting it if it is not
+     * in the store yet. Jars are stored as {@code classes.jar}, aars are unzipped.
+     *
+     * @param hash the MD5 of the archive
+     */
+    @NonNull
+    public File getOrExtract(@NonNull String hash, @NonNull File archive) throws IOException {
+        File entry = new File(mDirectory, hash);
+        if (entry.isDirectory()) {
+            return entry;
+        }
+
+        // extract into a temporary directory first so other builds never see a partial entry
+        File temp = new File(mDirectory, "tmp-" + UUID.randomUUID());
+        if (!temp.mkdirs()) {
+            throw new IOException("Unable to create directory " + temp);
+        }
+        try {
+            if (archive.getName().endsWith(".jar")) {
+                FileUtils.copyFile(archive, new File(temp, "classes.jar"));
+            } else if (archive.getName().endsWith(".aar")) {
+                Decompress.unzip(archive.getAbsolutePath(), temp.getAbsolutePath());
+            }
+            try {
+                FileUtilsEx.moveAtomically(temp, entry);
+            } catch (IOException e) {
+                // another build has extracted the same archive at the same time
+                if (!entry.isDirectory()) {
+                    throw e;
+                }
+            }
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteDirectory(temp);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Makes the library directory of a project reference the extracted contents of the
+     * archive. Nothing is done if the directory already references every entry.
+     *
+     * @param hash       the MD5 of the archive
+     * @param archive    the jar or aar to extract if it is not in the store yet
+     * @param libraryDir the {@code build/libs/<md5>} directory of the project
+     * @return whether the library directory has been created again
+     */
+    public boolean link(@NonNull String hash, @NonNull File archive, @NonNull File libraryDir)
+            throws IOException {
+        File entry = getOrExtract(hash, archive);
+        if (isLinked(entry, libraryDir)) {
+            return false;
+        }
+
+        Path target = libraryDir.toPath();
+        if (Files.isSymbolicLink(target)) {
+            Files.delete(target);
+        } else if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            // a copy of an older version of this class or a directory with a dangling link
+            FileUtils.forceDelete(libraryDir);
+        }
+
+        // same as the store, the directory is only visible once every entry is linked
+        File temp = new File(libraryDir.getParentFile(), hash + ".tmp-" + UUID.randomUUID());
+        if (!temp.mkdirs()) {
+            throw new IOException("Unable to create directory " + temp);
+        }
+        try {
+            File[] children = entry.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    link(child.toPath(), new File(temp, child.getName()).toPath());
+                }
+            }
+            FileUtilsEx.moveAtomically(temp, libraryDir);
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteDirectory(temp);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the artifact with the given name that has been stored for the library, or null
+     * if there is none
+     */
+    @Nullable
+    public File getDerivedFile(@NonNull String hash, @NonNull String name) {
+        File file = getDerivedFileLocation(hash, name);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Stores an artifact that only depends on the contents of the library so other projects
+     * using the same library can reuse it with {@link #getDerivedFile(String, String)}.
+     */
+    public void putDerivedFile(@NonNull String hash, @NonNull String name, @NonNull File file) {
+        File target = getDerivedFileLocation(hash, name);
+        File parent = target.getParentFile();
+        if (parent == null || (!parent.exists() && !parent.mkdirs())) {
+            return;
+        }
+        File temp = new File(parent, name + ".tmp-" + UUID.randomUUID());
+        try {
+            FileUtils.copyFile(file, temp);
+            FileUtilsEx.moveAtomically(temp, target);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + target, e);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    private File getDerivedFileLocation(String hash, String name) {
+        return new File(mDirectory, DERIVED_DIRECTORY + "/" + hash + "/" + name);
+    }
+
+    /**
+     * Links or copies a single file, used to place derived artifacts in a project
+     */
+    public static void linkOrCopy(@NonNull File source, @NonNull File target) throws IOException {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            FileUtils.copyFile(source, target);
+        }
+    }
+
+    private static boolean isLinked(File entry, File libraryDir) {
+        if (!libraryDir.isDirectory()) {
+            return false;
+        }
+        String[] names = entry.list();
+        if (names == null) {
+            return false;
+        }
+        for (String name : names) {
+            // File#exists follows links, a dangling link is reported as missing
+            if (!new File(libraryDir, name).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createSymbolicLink(target, source);
+            return;
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // the file system does not support symbolic links
+        }
+        if (!Files.isDirectory(source)) {
+            linkOrCopy(source.toFile(), target.toFile());
+            return;
+        }
+        Files.createDirectories(target);
+        try (Stream<Path> children = Files.list(source)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                link(child, target.resolve(child.getFileName().toString()));
+            }
+        }
+    }
+}
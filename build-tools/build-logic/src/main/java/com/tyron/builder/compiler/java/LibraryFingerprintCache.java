@@ -0,0 +1,306 @@
+package com.tyron.builder.compiler.java;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.tyron.builder.BuildModule;
+import com.tyron.common.util.BinaryStore;
+import com.tyron.common.util.HashUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
+
+/**
+ * Remembers the MD5 of library archives so they are only hashed again when they change.
+ *
+ * <p>An entry is valid as long as the path, size, modification time and file key (the inode
+ * where the file system has one) of the archive are the same. The entries are shared by every
+ * project and persisted in the cache directory of the application. Archives that changed are
+ * hashed in parallel with memory mapped reads.
+ */
+public class LibraryFingerprintCache {
+
+    private static final String TAG = LibraryFingerprintCache.class.getSimpleName();
+
+    private static LibraryFingerprintCache sInstance;
+
+    public static synchronized LibraryFingerprintCache getInstance() {
+        if (sInstance == null) {
+            File parent = BuildModule.getContext() != null
+                    ? BuildModule.getContext().getCacheDir()
+                    : new File(System.getProperty("java.io.tmpdir"));
+            sInstance = new LibraryFingerprintCache(new File(parent, "library-fingerprints.bin"));
+        }
+        return sInstance;
+    }
+
+    public static class Fingerprint {
+
+        private final String mMd5;
+        private final boolean mValidArchive;
+
+        private Fingerprint(String md5, boolean validArchive) {
+            mMd5 = md5;
+            mValidArchive = validArchive;
+        }
+
+        /**
+         * @return the MD5 of the archive in hex, used as the name of its extracted directory
+         */
+        @NonNull
+        public String getMd5() {
+            return mMd5;
+        }
+
+        /**
+         * @return whether the archive could be opened as a zip file
+         */
+        public boolean isValidArchive() {
+            return mValidArchive;
+        }
+    }
+
+    private static final int MAGIC = 0x4c494246;
+    private static final int VERSION = 1;
+
+    /**
+     * Archives are mapped in windows of this size so large files do not need a single
+     * mapping of their whole size
+     */
+    private static final long MAP_SIZE = 32 * 1024 * 1024;
+
+    private final File mFile;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private boolean mLoaded;
+
+    @VisibleForTesting
+    LibraryFingerprintCache(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Returns the fingerprints of the given archives, hashing only the ones that have
+     * changed since they were last hashed.
+     *
+     * @return the fingerprint of each archive that could be read, archives that do not exist
+     * or could not be read are left out
+     */
+    @NonNull
+    public synchronized Map<File, Fingerprint> getFingerprints(@NonNull Collection<File> files) {
+        load();
+
+        Map<File, Fingerprint> fingerprints = new HashMap<>();
+        Map<File, Stat> changed = new HashMap<>();
+        for (File file : new LinkedHashSet<>(files)) {
+            Stat stat = Stat.of(file);
+            if (stat == null) {
+                continue;
+            }
+            Entry entry = mEntries.get(file.getAbsolutePath());
+            if (entry != null && entry.stat.equals(stat)) {
+                fingerprints.put(file, entry.fingerprint);
+            } else {
+                changed.put(file, stat);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            fingerprints.putAll(hash(changed));
+            save();
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return the fingerprint of the archive, or null if it could not be read
+     */
+    @Nullable
+    public Fingerprint getFingerprint(@NonNull File file) {
+        return getFingerprints(Collections.singleton(file)).get(file);
+    }
+
+    private Map<File, Fingerprint> hash(Map<File, Stat> files) {
+        Map<File, Fingerprint> fingerprints = new HashMap<>();
+        int threads = Math.max(1, Math.min(files.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            Map<File, Future<Fingerprint>> futures = new HashMap<>();
+            for (File file : files.keySet()) {
+                futures.put(file, service.submit(() -> fingerprint(file)));
+            }
+            for (Map.Entry<File, Future<Fingerprint>> future : futures.entrySet()) {
+                File file = future.getKey();
+                try {
+                    Fingerprint fingerprint = future.getValue().get();
+                    fingerprints.put(file, fingerprint);
+                    mEntries.put(file.getAbsolutePath(),
+                            new Entry(files.get(file), fingerprint));
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Unable to hash " + file, e.getCause());
+                    mEntries.remove(file.getAbsolutePath());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.shutdownNow();
+        }
+        return fingerprints;
+    }
+
+    @VisibleForTesting
+    static Fingerprint fingerprint(File file) throws IOException {
+        MessageDigest digest = HashUtils.newDigest("MD5");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_SIZE, size - position));
+                digest.update(buffer);
+            }
+        }
+        // same format as CheckLibrariesTask#calculateMD5
+        String md5 = HashUtils.toHex(digest.digest());
+
+        boolean valid;
+        try (ZipFile ignored = new ZipFile(file)) {
+            valid = true;
+        } catch (IOException e) {
+            valid = false;
+        }
+        return new Fingerprint(md5, valid);
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        try {
+            BinaryStore.read(mFile, MAGIC, VERSION, in -> {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    String path = in.readUTF();
+                    Stat stat = new Stat(in.readLong(), in.readLong(), in.readUTF());
+                    Fingerprint fingerprint = new Fingerprint(in.readUTF(), in.readBoolean());
+                    mEntries.put(path, new Entry(stat, fingerprint));
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            // the archives are hashed again
+            Log.w(TAG, "Unable to read " + mFile, e);
+            mEntries.clear();
+        }
+    }
+
+    private void save() {
+        // entries of archives that have been deleted are dropped
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            if (new File(entry.getKey()).exists()) {
+                entries.add(entry);
+            }
+        }
+
+        try {
+            BinaryStore.write(mFile, MAGIC, VERSION, out -> {
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries) {
+                    Stat stat = entry.getValue().stat;
+                    Fingerprint fingerprint = entry.getValue().fingerprint;
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(stat.size);
+                    out.writeLong(stat.lastModified);
+                    out.writeUTF(stat.fileKey);
+                    out.writeUTF(fingerprint.mMd5);
+                    out.writeBoolean(fingerprint.mValidArchive);
+                }
+            });
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mFile, e);
+        }
+    }
+
+    private static class Stat {
+        final long size;
+        final long lastModified;
+        /**
+         * The device and inode of the file where available, an empty string otherwise
+         */
+        final String fileKey;
+
+        Stat(long size, long lastModified, String fileKey) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        @Nullable
+        static Stat of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                        BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    return null;
+                }
+                Object fileKey = attributes.fileKey();
+                return new Stat(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        fileKey != null ? fileKey.toString() : "");
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stat)) {
+                return false;
+            }
+            Stat stat = (Stat) o;
+            return size == stat.size && lastModified == stat.lastModified
+                   && fileKey.equals(stat.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKey);
+        }
+    }
+
+    private static class Entry {
+        final Stat stat;
+        final Fingerprint fingerprint;
+
+        Entry(Stat stat, Fingerprint fingerprint) {
+            this.stat = stat;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
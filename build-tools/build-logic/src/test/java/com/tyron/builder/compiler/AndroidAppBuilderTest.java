@@ -28,4 +28,25 @@ public class AndroidAppBuilderTest extends AndroidAppBuilderTestBase {
 
         FileUtils.deleteQuietly(mProject.getBuildDirectory());
     }
+
+    @Test
+    public void testDebugBuildWithoutNativeMultidex() throws Exception {
+        mProject.addJavaFile(new File(mProject.getJavaDirectory(),
+                "com/tyron/test/MainActivity.java"));
+        mProject.setMinSdk(19);
+        mProject.open();
+
+        AndroidAppBuilder builder = new AndroidAppBuilder(mProject, ILogger.STD_OUT);
+        builder.build(BuildType.DEBUG);
+
+        // the classes of the project are not split in shards, older platforms only load
+        // classes.dex
+        File bin = new File(mProject.getBuildDirectory(), "bin");
+        assertThat(new File(bin, "classes.dex").exists()).isTrue();
+        assertThat(new File(bin, "classes2.dex").exists()).isFalse();
+        assertThat(new File(mProject.getBuildDirectory(), "intermediate/shards").exists())
+                .isFalse();
+
+        FileUtils.deleteQuietly(mProject.getBuildDirectory());
+    }
 }
@@ -0,0 +1,281 @@
+package com.tyron.builder.compiler.apk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.apksig.ApkVerifier;
+import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class ApkWriterTest {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mResources;
+    private File mDex;
+
+    @Before
+    public void setup() throws IOException {
+        File resourcesDir = TestUtil.getResourcesDirectory();
+        ApkSigner.setTestCertFile(new File(resourcesDir, "apksigner/testkey.x509.pem"));
+        ApkSigner.setTestKeyFile(new File(resourcesDir, "apksigner/testkey.pk8"));
+
+        mResources = mFolder.newFile("generated.apk.res");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mResources))) {
+            putEntry(out, "AndroidManifest.xml", binaryManifest(), ZipEntry.DEFLATED);
+            putEntry(out, "resources.arsc", bytes("arsc"), ZipEntry.STORED);
+            putEntry(out, "res/a.png", bytes("png"), ZipEntry.STORED);
+            putEntry(out, "res/layout/main.xml", bytes("layout"), ZipEntry.DEFLATED);
+        }
+        mDex = mFolder.newFile("classes.dex");
+        FileUtils.writeStringToFile(mDex, "dex", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSignedWithAllSchemes() throws Exception {
+        File apk = write(21);
+
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(21)
+                .setMaxCheckedPlatformVersion(30)
+                .build()
+                .verify();
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.isVerified()).isTrue();
+        assertThat(result.isVerifiedUsingV1Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV2Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV3Scheme()).isTrue();
+    }
+
+    @Test
+    public void testV1IsSkippedOnNewerDevices() throws Exception {
+        File apk = write(24);
+
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(24)
+                .setMaxCheckedPlatformVersion(30)
+                .build()
+                .verify();
+        assertThat(result.isVerified()).isTrue();
+        assertThat(result.isVerifiedUsingV1Scheme()).isFalse();
+        assertThat(result.isVerifiedUsingV2Scheme()).isTrue();
+    }
+
+    @Test
+    public void testEntriesAreReadable() throws Exception {
+        File apk = write(21);
+
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            assertThat(zipFile.getEntry("resources.arsc").getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(zipFile.getEntry("classes.dex").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(zipFile.getEntry("META-INF/MANIFEST.MF")).isNotNull();
+            try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry("classes.dex"))) {
+                assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8)).isEqualTo("dex");
+            }
+        }
+    }
+
+    @Test
+    public void testUncompressedEntriesAreAligned() throws Exception {
+        File apk = write(21);
+
+        int stored = 0;
+        try (RandomAccessFile file = new RandomAccessFile(apk, "r")) {
+            long offset = 0;
+            while (true) {
+                file.seek(offset);
+                if (Integer.reverseBytes(file.readInt()) != LOCAL_FILE_HEADER_SIGNATURE) {
+                    break;
+                }
+                file.seek(offset + 8);
+                int method = Short.reverseBytes(file.readShort());
+                file.seek(offset + 18);
+                int compressedSize = Integer.reverseBytes(file.readInt());
+                file.seek(offset + 26);
+                int nameLength = Short.reverseBytes(file.readShort());
+                int extraLength = Short.reverseBytes(file.readShort());
+                long dataOffset = offset + 30 + nameLength + extraLength;
+                if (method == ZipEntry.STORED) {
+                    assertThat(dataOffset % 4).isEqualTo(0);
+                    stored++;
+                }
+                offset = dataOffset + compressedSize;
+            }
+        }
+        assertThat(stored).isEqualTo(2);
+    }
+
+    @Test
+    public void testLargeEntriesAreStreamed() throws Exception {
+        // larger than the buffers used to stream entries
+        byte[] contents = new byte[100_000];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) (i * 31 % 251);
+        }
+        FileUtils.writeByteArrayToFile(mDex, contents);
+        File apk = write(21);
+
+        assertVerified(apk);
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            ZipEntry entry = zipFile.getEntry("classes.dex");
+            assertThat(entry.getSize()).isEqualTo(contents.length);
+            assertThat(entry.getCompressedSize()).isLessThan((long) contents.length);
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                assertThat(IOUtils.toByteArray(inputStream)).isEqualTo(contents);
+            }
+        }
+    }
+
+    @Test(expected = ApkWriter.DuplicateEntryException.class)
+    public void testDuplicateEntry() throws Exception {
+        try (ApkWriter writer = new ApkWriter(new File(mFolder.getRoot(), "signed.apk"),
+                ApkSigner.createTestSignerEngine(21))) {
+            writer.addZip(mResources, name -> true);
+            writer.addFile("resources.arsc", mDex, false);
+        }
+    }
+
+    @Test
+    public void testUnchangedEntriesAreCopied() throws Exception {
+        File previous = write(21);
+        FileUtils.writeStringToFile(mDex, "changed", StandardCharsets.UTF_8);
+
+        File apk = new File(mFolder.getRoot(), "incremental.apk");
+        try (ApkReader reader = new ApkReader(previous);
+             ApkWriter writer = new ApkWriter(apk, ApkSigner.createTestSignerEngine(21))) {
+            writer.setPrevious(reader);
+            writer.addZip(mResources, name -> true);
+            writer.addFile("classes.dex", mDex, true);
+            writer.finish();
+            assertThat(writer.getCopiedEntryCount()).isEqualTo(4);
+        }
+
+        assertVerified(apk);
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry("classes.dex"))) {
+                assertThat(IOUtils.toString(inputStream, StandardCharsets.UTF_8))
+                        .isEqualTo("changed");
+            }
+        }
+    }
+
+    @Test
+    public void testUnchangedApkIsSignedAgain() throws Exception {
+        File previous = write(21);
+
+        File apk = new File(mFolder.getRoot(), "incremental.apk");
+        try (ApkReader reader = new ApkReader(previous);
+             ApkWriter writer = new ApkWriter(apk, ApkSigner.createTestSignerEngine(21))) {
+            writer.setPrevious(reader);
+            writer.addZip(mResources, name -> true);
+            writer.addFile("classes.dex", mDex, true);
+            writer.finish();
+            assertThat(writer.getCopiedEntryCount()).isEqualTo(5);
+        }
+        assertVerified(apk);
+    }
+
+    @Test
+    public void testRemovedEntriesAreNotSigned() throws Exception {
+        File previous = write(21);
+
+        File apk = new File(mFolder.getRoot(), "incremental.apk");
+        try (ApkReader reader = new ApkReader(previous);
+             ApkWriter writer = new ApkWriter(apk, ApkSigner.createTestSignerEngine(21))) {
+            writer.setPrevious(reader);
+            writer.addZip(mResources, name -> !name.equals("res/a.png"));
+            writer.finish();
+        }
+        assertVerified(apk);
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            assertThat(zipFile.getEntry("res/a.png")).isNull();
+            assertThat(zipFile.getEntry("classes.dex")).isNull();
+        }
+    }
+
+    private static void assertVerified(File apk) throws Exception {
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(21)
+                .setMaxCheckedPlatformVersion(30)
+                .build()
+                .verify();
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.isVerifiedUsingV1Scheme()).isTrue();
+        assertThat(result.isVerifiedUsingV2Scheme()).isTrue();
+    }
+
+    private File write(int minSdk) throws Exception {
+        File apk = new File(mFolder.getRoot(), "signed.apk");
+        try (ApkWriter writer = new ApkWriter(apk, ApkSigner.createTestSignerEngine(minSdk))) {
+            writer.addZip(mResources, name -> true);
+            writer.addFile("classes.dex", mDex, true);
+            writer.finish();
+        }
+        return apk;
+    }
+
+    private static byte[] bytes(String contents) {
+        return contents.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The verifier reads the manifest of the APK, this is a compiled manifest with an empty
+     * manifest element.
+     */
+    private static byte[] binaryManifest() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 44 + 36 + 24).order(ByteOrder.LITTLE_ENDIAN);
+        // xml chunk
+        buffer.putShort((short) 0x0003).putShort((short) 8).putInt(buffer.capacity());
+        // string pool with the string "manifest" in utf-8
+        buffer.putShort((short) 0x0001).putShort((short) 28).putInt(44);
+        buffer.putInt(1).putInt(0).putInt(0x100).putInt(32).putInt(0);
+        buffer.putInt(0);
+        buffer.put((byte) 8).put((byte) 8).put(bytes("manifest")).put((byte) 0).put((byte) 0);
+        // start element
+        buffer.putShort((short) 0x0102).putShort((short) 16).putInt(36);
+        buffer.putInt(1).putInt(-1).putInt(-1).putInt(0);
+        buffer.putShort((short) 20).putShort((short) 20).putShort((short) 0);
+        buffer.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        // end element
+        buffer.putShort((short) 0x0103).putShort((short) 16).putInt(24);
+        buffer.putInt(1).putInt(-1).putInt(-1).putInt(0);
+        return buffer.array();
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] bytes, int method)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,125 @@
+package com.tyron.builder.compiler.incremental;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.common.util.Cache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+
+public class FileCacheStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testRestore() throws Exception {
+        File source = mFolder.newFile("Test.java");
+        FileUtils.writeStringToFile(source, "class Test {}", StandardCharsets.UTF_8);
+        File output = mFolder.newFile("Test.class");
+
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(source.toPath(), "class", Collections.singletonList(output));
+
+        File storeFile = new File(mFolder.getRoot(), "cache/javaCache.bin");
+        new FileCacheStore(storeFile).write(cache);
+
+        Cache<String, List<File>> restored = new Cache<>();
+        new FileCacheStore(storeFile).read(restored);
+        assertThat(restored.needs(source.toPath(), "class")).isFalse();
+        assertThat(restored.get(source.toPath(), "class")).containsExactly(output);
+    }
+
+    @Test
+    public void testTouchedFileWithSameContentsIsUpToDate() throws Exception {
+        File source = mFolder.newFile("Test.java");
+        FileUtils.writeStringToFile(source, "class Test {}", StandardCharsets.UTF_8);
+        File output = mFolder.newFile("Test.class");
+
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(source.toPath(), "class", Collections.singletonList(output),
+                Instant.now().minus(1, ChronoUnit.HOURS));
+        File storeFile = new File(mFolder.getRoot(), "javaCache.bin");
+        FileCacheStore store = new FileCacheStore(storeFile);
+        store.putChecksum(cache, source.toPath(), "class",
+                FileCacheStore.checksum(FileUtils.readFileToByteArray(source)));
+        store.write(cache);
+
+        Files.setLastModifiedTime(source.toPath(), FileTime.from(Instant.now()));
+
+        Cache<String, List<File>> restored = new Cache<>();
+        new FileCacheStore(storeFile).read(restored);
+        assertThat(restored.needs(source.toPath(), "class")).isFalse();
+    }
+
+    @Test
+    public void testSourceChangedBeforeWriteIsCompiledAgain() throws Exception {
+        File source = mFolder.newFile("Test.java");
+        FileUtils.writeStringToFile(source, "class Test {}", StandardCharsets.UTF_8);
+        File output = mFolder.newFile("Test.class");
+
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(source.toPath(), "class", Collections.singletonList(output),
+                Instant.now().minus(1, ChronoUnit.HOURS));
+        File storeFile = new File(mFolder.getRoot(), "javaCache.bin");
+        FileCacheStore store = new FileCacheStore(storeFile);
+        store.putChecksum(cache, source.toPath(), "class",
+                FileCacheStore.checksum(FileUtils.readFileToByteArray(source)));
+
+        // edited while the build was running, the output is of the previous contents
+        FileUtils.writeStringToFile(source, "class Test { int a; }", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(source.toPath(), FileTime.from(Instant.now()));
+        store.write(cache);
+
+        Cache<String, List<File>> restored = new Cache<>();
+        new FileCacheStore(storeFile).read(restored);
+        assertThat(restored.needs(source.toPath(), "class")).isTrue();
+    }
+
+    @Test
+    public void testEntryWithoutChecksumIsCompiledAgainWhenTouched() throws Exception {
+        File source = mFolder.newFile("Test.java");
+        FileUtils.writeStringToFile(source, "class Test {}", StandardCharsets.UTF_8);
+        File output = mFolder.newFile("Test.class");
+
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(source.toPath(), "class", Collections.singletonList(output),
+                Instant.now().minus(1, ChronoUnit.HOURS));
+        File storeFile = new File(mFolder.getRoot(), "javaCache.bin");
+        new FileCacheStore(storeFile).write(cache);
+
+        Files.setLastModifiedTime(source.toPath(), FileTime.from(Instant.now()));
+
+        Cache<String, List<File>> restored = new Cache<>();
+        new FileCacheStore(storeFile).read(restored);
+        assertThat(restored.needs(source.toPath(), "class")).isTrue();
+    }
+
+    @Test
+    public void testMissingOutputIsDropped() throws Exception {
+        File source = mFolder.newFile("Test.java");
+        File output = mFolder.newFile("Test.class");
+
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(source.toPath(), "class", Collections.singletonList(output));
+        File storeFile = new File(mFolder.getRoot(), "javaCache.bin");
+        new FileCacheStore(storeFile).write(cache);
+
+        FileUtils.delete(output);
+
+        Cache<String, List<File>> restored = new Cache<>();
+        new FileCacheStore(storeFile).read(restored);
+        assertThat(restored.needs(source.toPath(), "class")).isTrue();
+    }
+}
@@ -0,0 +1,69 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+public class IncrementalD8TaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Path mOutputPath = new File("/build/intermediate/classes").toPath();
+
+    @Test
+    public void testNestedClassesShareTheShardOfTheirTopLevelClass() {
+        int shard = getShard("com/test/MainActivity.dex");
+        assertThat(getShard("com/test/MainActivity$1.dex")).isEqualTo(shard);
+        assertThat(getShard("com/test/MainActivity$Inner$Nested.dex")).isEqualTo(shard);
+        assertThat(getShard("com/test/-$$Lambda$MainActivity$abc123.dex")).isEqualTo(shard);
+    }
+
+    @Test
+    public void testShardDependsOnThePackage() {
+        int[] shards = new int[8];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = getShard("com/test" + i + "/MainActivity.dex");
+        }
+        assertThat(Arrays.stream(shards).distinct().count()).isGreaterThan(1L);
+    }
+
+    @Test
+    public void testShardDexFilesKeepTheirOrder() {
+        File[] files = {
+                new File("classes10.dex"),
+                new File("classes2.dex"),
+                new File("classes.dex")
+        };
+        Arrays.sort(files, Comparator.comparingInt(IncrementalD8Task::getDexIndex));
+        assertThat(files).asList().containsExactly(new File("classes.dex"),
+                new File("classes2.dex"), new File("classes10.dex")).inOrder();
+    }
+
+    @Test
+    public void testDirtyShardsAreKeptUntilMerged() throws IOException {
+        File file = new File(mFolder.getRoot(), "cache/dirtyShards.bin");
+        assertThat(IncrementalD8Task.readDirtyShards(file)).isEmpty();
+
+        // the build failed before the shards were merged
+        IncrementalD8Task.writeDirtyShards(file, new HashSet<>(Arrays.asList(3, 7)));
+        assertThat(IncrementalD8Task.readDirtyShards(file)).containsExactly(3, 7);
+
+        IncrementalD8Task.writeDirtyShards(file, Collections.emptySet());
+        assertThat(IncrementalD8Task.readDirtyShards(file)).isEmpty();
+    }
+
+    private int getShard(String path) {
+        return IncrementalD8Task.getShard(mOutputPath, new File(mOutputPath.toFile(), path));
+    }
+}
@@ -0,0 +1,102 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.r8.CompilationMode;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LibraryDexCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSameJarIsDexedOnce() throws Exception {
+        LibraryDexCache cache = new LibraryDexCache(mFolder.newFolder("cache"));
+        File first = newJar("first/classes.jar", "contents");
+        File second = newJar("second/classes.jar", "contents");
+
+        AtomicInteger dexCount = new AtomicInteger();
+        LibraryDexCache.Dexer dexer = output -> {
+            dexCount.incrementAndGet();
+            writeDex(output.resolve("classes.dex").toFile());
+        };
+
+        List<File> classpath = Collections.singletonList(newJar("android.jar", "android"));
+        List<File> dexFiles = cache.getOrCreate(first, 21, CompilationMode.RELEASE,
+                classpath, dexer);
+        assertThat(dexFiles).hasSize(1);
+        assertThat(cache.getOrCreate(second, 21, CompilationMode.RELEASE, classpath, dexer))
+                .containsExactlyElementsIn(dexFiles);
+        assertThat(dexCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDifferentMinSdkIsDexedAgain() throws Exception {
+        LibraryDexCache cache = new LibraryDexCache(mFolder.newFolder("cache"));
+        File jar = newJar("lib/classes.jar", "contents");
+
+        AtomicInteger dexCount = new AtomicInteger();
+        LibraryDexCache.Dexer dexer = output -> {
+            dexCount.incrementAndGet();
+            writeDex(output.resolve("classes.dex").toFile());
+        };
+
+        cache.getOrCreate(jar, 21, CompilationMode.RELEASE, Collections.emptyList(), dexer);
+        cache.getOrCreate(jar, 26, CompilationMode.RELEASE, Collections.emptyList(), dexer);
+        cache.getOrCreate(jar, 26, CompilationMode.DEBUG, Collections.emptyList(), dexer);
+        assertThat(dexCount.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testDifferentClasspathIsDexedAgain() throws Exception {
+        LibraryDexCache cache = new LibraryDexCache(mFolder.newFolder("cache"));
+        File jar = newJar("lib/classes.jar", "contents");
+        File dependency = newJar("dependency/classes.jar", "dependency");
+
+        AtomicInteger dexCount = new AtomicInteger();
+        LibraryDexCache.Dexer dexer = output -> {
+            dexCount.incrementAndGet();
+            writeDex(output.resolve("classes.dex").toFile());
+        };
+
+        List<File> classpath = Arrays.asList(jar, dependency);
+        cache.getOrCreate(jar, 21, CompilationMode.RELEASE, classpath, dexer);
+        cache.getOrCreate(jar, 21, CompilationMode.RELEASE, classpath, dexer);
+        assertThat(dexCount.get()).isEqualTo(1);
+
+        cache.getOrCreate(jar, 21, CompilationMode.RELEASE, Collections.singletonList(jar),
+                dexer);
+        assertThat(dexCount.get()).isEqualTo(2);
+
+        // the dependency has the same path but different contents
+        FileUtils.writeStringToFile(dependency, "changed dependency", StandardCharsets.UTF_8);
+        cache.getOrCreate(jar, 21, CompilationMode.RELEASE, classpath, dexer);
+        assertThat(dexCount.get()).isEqualTo(3);
+    }
+
+    private File newJar(String path, String contents) throws Exception {
+        File jar = new File(mFolder.getRoot(), path);
+        FileUtils.writeStringToFile(jar, contents, StandardCharsets.UTF_8);
+        return jar;
+    }
+
+    private static void writeDex(File file) {
+        try {
+            FileUtils.writeStringToFile(file, "dex", StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
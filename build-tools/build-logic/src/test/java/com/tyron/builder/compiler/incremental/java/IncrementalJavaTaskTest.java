@@ -0,0 +1,78 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.mock.MockJavaModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class IncrementalJavaTaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private MockJavaModule mModule;
+
+    @Before
+    public void setup() throws IOException {
+        File root = mFolder.newFolder("project");
+        mModule = new MockJavaModule(root, new MockFileManager(root));
+        File resources = TestUtil.getResourcesDirectory();
+        mModule.setBootstrapFile(new File(resources, "bootstraps/rt.jar"));
+        mModule.setLambdaStubsJarFile(new File(resources, "bootstraps/core-lambda-stubs.jar"));
+    }
+
+    @Test
+    public void testDependentsOfFailedBuildAreCompiled() throws Exception {
+        File a = source("a/A.java", "package a; public class A { public int get() { return 1; } }");
+        File b = source("b/B.java", "package b; class B { int b() { return new a.A().get(); } }");
+        File c = source("c/C.java", "package c; class C { long c() { return new a.A().get(); } }");
+        assertThat(build()).containsExactly(a, b, c);
+        assertThat(build()).isEmpty();
+
+        // A compiles but B does not, so C is not compiled against the new signature
+        FileUtils.writeStringToFile(a,
+                "package a; public class A { public long get() { return 2; } }",
+                StandardCharsets.UTF_8);
+        try {
+            build();
+            throw new AssertionError("Expected the build to fail");
+        } catch (CompilationFailedException expected) {
+            // expected
+        }
+
+        FileUtils.writeStringToFile(b,
+                "package b; class B { long b() { return new a.A().get(); } }",
+                StandardCharsets.UTF_8);
+        assertThat(build()).containsExactly(b, c);
+        assertThat(build()).isEmpty();
+    }
+
+    private List<File> build() throws IOException, CompilationFailedException {
+        IncrementalJavaTask task = new IncrementalJavaTask(mModule, ILogger.STD_OUT);
+        task.prepare(BuildType.DEBUG);
+        task.run();
+        return task.getCompiledFiles();
+    }
+
+    private File source(String path, String contents) throws IOException {
+        File file = new File(mModule.getJavaDirectory(), path);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        mModule.addJavaFile(file);
+        return file;
+    }
+}
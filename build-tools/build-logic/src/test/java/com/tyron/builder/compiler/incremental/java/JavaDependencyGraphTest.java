@@ -0,0 +1,190 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.common.TestUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.javax.tools.StandardJavaFileManager;
+import org.openjdk.javax.tools.StandardLocation;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.tools.javac.api.JavacTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class JavaDependencyGraphTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final File mA = new File("/src/a/A.java");
+    private final File mB = new File("/src/b/B.java");
+
+    @Test
+    public void testChangedClassAffectsDependents() {
+        JavaDependencyGraph graph = new JavaDependencyGraph(new File("unused"));
+        graph.update(declared(mA, "a.A", 1L, mB, "b.B", 2L),
+                dependencies(mA, set(), mB, set("a.A")));
+
+        Set<String> changed = graph.update(declared(mA, "a.A", 3L),
+                dependencies(mA, set()));
+        assertThat(changed).containsExactly("a.A");
+        assertThat(graph.getDependents(changed)).containsExactly(mB);
+
+        // same abi, nothing to propagate
+        assertThat(graph.update(declared(mA, "a.A", 3L), dependencies(mA, set()))).isEmpty();
+    }
+
+    @Test
+    public void testAddedAndRemovedClassesAreChanged() {
+        JavaDependencyGraph graph = new JavaDependencyGraph(new File("unused"));
+        graph.update(declared(mA, "a.A", 1L), dependencies(mA, set()));
+
+        Map<File, Map<String, Long>> declared = declared(mA, "a.Other", 1L);
+        assertThat(graph.update(declared, dependencies(mA, set())))
+                .containsExactly("a.A", "a.Other");
+    }
+
+    @Test
+    public void testNewClassShadowsClassWithSameSimpleName() {
+        JavaDependencyGraph graph = new JavaDependencyGraph(new File("unused"));
+        // B uses other.Util through an import on demand
+        graph.update(declared(mB, "b.B", 1L), dependencies(mB, set("other.Util")));
+
+        File util = new File("/src/b/Util.java");
+        Set<String> changed = graph.update(declared(util, "b.Util", 1L),
+                dependencies(util, set()));
+        assertThat(graph.getDependents(changed)).containsExactly(mB);
+    }
+
+    @Test
+    public void testRemovedFiles() {
+        JavaDependencyGraph graph = new JavaDependencyGraph(new File("unused"));
+        graph.update(declared(mA, "a.A", 1L, mB, "b.B", 2L),
+                dependencies(mA, set(), mB, set("a.A")));
+
+        assertThat(graph.retainFiles(Collections.singleton(mB))).containsExactly("a.A");
+        assertThat(graph.containsAll(Collections.singleton(mA))).isFalse();
+        assertThat(graph.getDependents(Collections.singleton("a.A"))).containsExactly(mB);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = new File(mFolder.getRoot(), "cache/javaDependencies.bin");
+        JavaDependencyGraph graph = new JavaDependencyGraph(file);
+        graph.update(declared(mA, "a.A", 1L, mB, "b.B", 2L),
+                dependencies(mA, set(), mB, set("a.A")));
+        graph.save();
+
+        JavaDependencyGraph loaded = new JavaDependencyGraph(file);
+        assertThat(loaded.containsAll(Arrays.asList(mA, mB))).isFalse();
+        loaded.loadIfNeeded();
+        assertThat(loaded.containsAll(Arrays.asList(mA, mB))).isTrue();
+        assertThat(loaded.getDependents(Collections.singleton("a.A"))).containsExactly(mB);
+        assertThat(loaded.update(declared(mA, "a.A", 1L), dependencies(mA, set()))).isEmpty();
+    }
+
+    @Test
+    public void testPendingFilesAreSaved() throws IOException {
+        File file = new File(mFolder.getRoot(), "cache/javaDependencies.bin");
+        JavaDependencyGraph graph = new JavaDependencyGraph(file);
+        graph.update(declared(mA, "a.A", 1L), dependencies(mA, set()));
+        graph.addPending(Collections.singleton(mB));
+        graph.save();
+
+        JavaDependencyGraph loaded = new JavaDependencyGraph(file);
+        loaded.loadIfNeeded();
+        assertThat(loaded.getPending()).containsExactly(mB);
+
+        loaded.removePending(Collections.singleton(mB));
+        loaded.save();
+        JavaDependencyGraph cleared = new JavaDependencyGraph(file);
+        cleared.loadIfNeeded();
+        assertThat(cleared.getPending()).isEmpty();
+    }
+
+    @Test
+    public void testSignatureChangePropagates() throws IOException {
+        File a = source("a/A.java", "package a; public class A { public int get() { return 1; } }");
+        File b = source("b/B.java", "package b; class B { int b() { return new a.A().get(); } }");
+        JavaDependencyGraph graph = new JavaDependencyGraph(new File("unused"));
+        compile(graph, a, b);
+
+        // a body change does not change the abi
+        FileUtils.writeStringToFile(a,
+                "package a; public class A { public int get() { return 2; } }",
+                StandardCharsets.UTF_8);
+        assertThat(compile(graph, a)).isEmpty();
+
+        FileUtils.writeStringToFile(a,
+                "package a; public class A { public long get() { return 2; } }",
+                StandardCharsets.UTF_8);
+        Set<String> changed = compile(graph, a);
+        assertThat(changed).containsExactly("a.A");
+        assertThat(graph.getDependents(changed)).containsExactly(b);
+    }
+
+    private Set<String> compile(JavaDependencyGraph graph, File... files) throws IOException {
+        JavacTool tool = JavacTool.create();
+        StandardJavaFileManager fileManager =
+                tool.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        File output = new File(mFolder.getRoot(), "classes");
+        if (!output.exists() && !output.mkdirs()) {
+            throw new IOException("Unable to create " + output);
+        }
+        File resources = TestUtil.getResourcesDirectory();
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Arrays.asList(
+                new File(resources, "bootstraps/rt.jar"),
+                new File(resources, "bootstraps/core-lambda-stubs.jar")));
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(output));
+        fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.singletonList(output));
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjects(files);
+        JavacTask task = tool.getTask(null, fileManager, null, null, null, units);
+        DependencyCollector collector = new DependencyCollector(task);
+        task.addTaskListener(collector);
+        task.parse();
+        task.analyze();
+        task.generate();
+        return graph.update(collector);
+    }
+
+    private File source(String path, String contents) throws IOException {
+        File file = new File(mFolder.getRoot(), "src/" + path);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static Map<File, Map<String, Long>> declared(Object... values) {
+        Map<File, Map<String, Long>> declared = new HashMap<>();
+        for (int i = 0; i < values.length; i += 3) {
+            declared.computeIfAbsent((File) values[i], f -> new HashMap<>())
+                    .put((String) values[i + 1], (Long) values[i + 2]);
+        }
+        return declared;
+    }
+
+    private static Map<File, Set<String>> dependencies(Object... values) {
+        Map<File, Set<String>> dependencies = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            //noinspection unchecked
+            dependencies.put((File) values[i], (Set<String>) values[i + 1]);
+        }
+        return dependencies;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
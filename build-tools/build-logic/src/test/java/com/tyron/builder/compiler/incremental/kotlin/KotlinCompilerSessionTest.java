@@ -0,0 +1,105 @@
+package com.tyron.builder.compiler.incremental.kotlin;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.kotlin.com.intellij.openapi.vfs.VirtualFileSystem;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class KotlinCompilerSessionTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Disposable mDisposable = Disposer.newDisposable();
+    private KotlinCompilerSession mSession;
+    private VirtualFileSystem mJarFileSystem;
+
+    @Before
+    public void setup() {
+        mSession = new KotlinCompilerSession();
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY,
+                MessageCollector.Companion.getNONE());
+        KotlinCoreEnvironment.createForProduction(mDisposable, configuration,
+                EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        mJarFileSystem = KotlinCoreEnvironment.Companion.getApplicationEnvironment()
+                .getJarFileSystem();
+    }
+
+    @After
+    public void tearDown() {
+        Disposer.dispose(mDisposable);
+    }
+
+    @Test
+    public void testUnchangedJarsStayIndexed() throws Exception {
+        File first = writeJar("first.jar", "a/A.class");
+        File second = writeJar("second.jar", "b/B.class");
+        List<String> classpath = Arrays.asList(first.getPath(), second.getPath(),
+                mFolder.newFolder("classes").getPath());
+
+        mSession.updateJars(classpath);
+        VirtualFile firstRoot = findFile(first, "");
+        VirtualFile secondRoot = findFile(second, "");
+
+        mSession.updateJars(classpath);
+        assertThat(findFile(first, "")).isSameInstanceAs(firstRoot);
+        assertThat(findFile(second, "")).isSameInstanceAs(secondRoot);
+    }
+
+    @Test
+    public void testChangedJarIsIndexedAgain() throws Exception {
+        File first = writeJar("first.jar", "a/A.class");
+        File second = writeJar("second.jar", "b/B.class");
+        List<String> classpath = Arrays.asList(first.getPath(), second.getPath());
+
+        mSession.updateJars(classpath);
+        VirtualFile secondRoot = findFile(second, "");
+        assertThat(findFile(first, "a/A.class")).isNotNull();
+
+        // replaced by another version of the library at the same path
+        writeJar("first.jar", "a/B.class");
+        assertThat(first.setLastModified(first.lastModified() + 2000)).isTrue();
+        mSession.updateJars(classpath);
+
+        assertThat(findFile(first, "a/B.class")).isNotNull();
+        assertThat(findFile(first, "a/A.class")).isNull();
+        assertThat(findFile(second, "")).isSameInstanceAs(secondRoot);
+    }
+
+    private VirtualFile findFile(File jar, String path) {
+        return mJarFileSystem.findFileByPath(jar.getPath() + "!/" + path);
+    }
+
+    private File writeJar(String name, String... entries) throws IOException {
+        File jar = new File(mFolder.getRoot(), name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.write(new byte[]{(byte) 0xCA, (byte) 0xFE});
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
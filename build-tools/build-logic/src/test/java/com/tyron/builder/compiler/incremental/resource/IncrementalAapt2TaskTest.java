@@ -0,0 +1,113 @@
+package com.tyron.builder.compiler.incremental.resource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.compiler.java.ExtractedLibraryStore;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class IncrementalAapt2TaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mLibraries = new ArrayList<>();
+    private ExtractedLibraryStore mStore;
+    private IncrementalAapt2Task mTask;
+    private File mCompiledDir;
+
+    @Before
+    public void setup() throws IOException {
+        File root = mFolder.newFolder("project");
+        MockAndroidModule module = new MockAndroidModule(root, new MockFileManager(root)) {
+            @Override
+            public List<File> getLibraries() {
+                return mLibraries;
+            }
+        };
+        mStore = new ExtractedLibraryStore(mFolder.newFolder("store"));
+        mTask = new IncrementalAapt2Task(module, ILogger.STD_OUT, false, mStore);
+        mCompiledDir = new File(module.getBuildDirectory(), "bin/res");
+    }
+
+    @Test
+    public void testUnchangedLibrariesAreSkipped() throws Exception {
+        File first = addLibrary();
+        File second = addLibrary();
+        assertThat(mTask.getLibraries()).containsExactly(first, second);
+
+        mTask.compileLibraries(mTask.getLibraries());
+        assertThat(compiled(first).length()).isGreaterThan(0L);
+        assertThat(compiled(second).length()).isGreaterThan(0L);
+        assertThat(mTask.getLibraries()).isEmpty();
+    }
+
+    @Test
+    public void testChangedLibraryIsCompiledAgain() throws Exception {
+        File first = addLibrary();
+        File second = addLibrary();
+        mTask.compileLibraries(mTask.getLibraries());
+
+        // extracted again with different resources
+        File strings = new File(second.getParentFile(), "res/values/strings.xml");
+        FileUtils.writeStringToFile(strings, "<resources><string name=\"b\">b</string></resources>",
+                StandardCharsets.UTF_8);
+        assertThat(strings.setLastModified(strings.lastModified() + 2000)).isTrue();
+        assertThat(mTask.getLibraries()).containsExactly(second);
+
+        // the compiled resources are missing
+        FileUtils.delete(compiled(first));
+        assertThat(mTask.getLibraries()).containsExactly(first, second);
+    }
+
+    @Test
+    public void testRemovedLibraryIsNotLinked() throws Exception {
+        File first = addLibrary();
+        File second = addLibrary();
+        mTask.compileLibraries(mTask.getLibraries());
+
+        mLibraries.remove(first);
+        assertThat(mTask.getLibraries()).isEmpty();
+        assertThat(compiled(first).exists()).isFalse();
+        assertThat(compiled(second).exists()).isTrue();
+    }
+
+    /**
+     * Adds an extracted library whose compiled resources are already in the store, so they
+     * are not compiled by aapt2
+     */
+    private File addLibrary() throws IOException {
+        String hash = UUID.randomUUID().toString().replace("-", "");
+        File libraryDir = mFolder.newFolder("project", "build", "libs", hash);
+        File jar = new File(libraryDir, "classes.jar");
+        FileUtils.writeByteArrayToFile(jar, new byte[0]);
+        FileUtils.writeStringToFile(new File(libraryDir, "res/values/strings.xml"),
+                "<resources><string name=\"a\">a</string></resources>", StandardCharsets.UTF_8);
+
+        File compiled = mFolder.newFile(hash + ".zip");
+        FileUtils.writeStringToFile(compiled, hash, StandardCharsets.UTF_8);
+        mStore.putDerivedFile(hash, IncrementalAapt2Task.COMPILED_RESOURCES, compiled);
+
+        mLibraries.add(jar);
+        return jar;
+    }
+
+    private File compiled(File library) {
+        return new File(mCompiledDir, library.getParentFile().getName() + ".zip");
+    }
+}
@@ -0,0 +1,115 @@
+package com.tyron.builder.compiler.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ExtractedLibraryStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private ExtractedLibraryStore mStore;
+    private File mAar;
+
+    @Before
+    public void setup() throws IOException {
+        mStore = new ExtractedLibraryStore(mFolder.newFolder("store"));
+        mAar = mFolder.newFile("library.aar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mAar))) {
+            putEntry(out, "classes.jar", "classes");
+            putEntry(out, "R.txt", "int string app_name 0x7f010000");
+            putEntry(out, "res/values/values.xml", "<resources/>");
+        }
+    }
+
+    @Test
+    public void testLibraryIsExtractedOnce() throws IOException {
+        File first = new File(mFolder.getRoot(), "first/build/libs/hash");
+        File second = new File(mFolder.getRoot(), "second/build/libs/hash");
+
+        assertThat(mStore.link("hash", mAar, first)).isTrue();
+        File entry = mStore.getOrExtract("hash", mAar);
+        long lastModified = new File(entry, "classes.jar").lastModified();
+        assertThat(mStore.link("hash", mAar, second)).isTrue();
+
+        assertThat(new File(entry, "classes.jar").lastModified()).isEqualTo(lastModified);
+        for (File libraryDir : new File[]{first, second}) {
+            assertThat(read(new File(libraryDir, "classes.jar"))).isEqualTo("classes");
+            assertThat(read(new File(libraryDir, "res/values/values.xml")))
+                    .isEqualTo("<resources/>");
+        }
+        assertThat(mStore.link("hash", mAar, first)).isFalse();
+    }
+
+    @Test
+    public void testJarIsStoredAsClassesJar() throws IOException {
+        File jar = mFolder.newFile("library.jar");
+        FileUtils.writeStringToFile(jar, "jar", StandardCharsets.UTF_8);
+        File libraryDir = new File(mFolder.getRoot(), "project/build/libs/jar");
+
+        mStore.link("jar", jar, libraryDir);
+        assertThat(read(new File(libraryDir, "classes.jar"))).isEqualTo("jar");
+    }
+
+    @Test
+    public void testDeletingProjectKeepsStore() throws IOException {
+        File libraryDir = new File(mFolder.getRoot(), "project/build/libs/hash");
+        mStore.link("hash", mAar, libraryDir);
+        // written by the project, not shared
+        FileUtils.writeStringToFile(new File(libraryDir, "classes.dex"), "dex",
+                StandardCharsets.UTF_8);
+
+        FileUtils.deleteDirectory(libraryDir);
+
+        File entry = mStore.getOrExtract("hash", mAar);
+        assertThat(new File(entry, "classes.dex").exists()).isFalse();
+        assertThat(read(new File(entry, "res/values/values.xml"))).isEqualTo("<resources/>");
+    }
+
+    @Test
+    public void testMissingStoreEntryIsExtractedAgain() throws IOException {
+        File libraryDir = new File(mFolder.getRoot(), "project/build/libs/hash");
+        mStore.link("hash", mAar, libraryDir);
+        FileUtils.deleteDirectory(mStore.getOrExtract("hash", mAar));
+
+        mStore.link("hash", mAar, libraryDir);
+        assertThat(read(new File(libraryDir, "R.txt"))).isEqualTo("int string app_name 0x7f010000");
+    }
+
+    @Test
+    public void testDerivedFiles() throws IOException {
+        assertThat(mStore.getDerivedFile("hash", "aapt2-res.zip")).isNull();
+
+        File compiled = mFolder.newFile("compiled.zip");
+        FileUtils.writeStringToFile(compiled, "compiled", StandardCharsets.UTF_8);
+        mStore.putDerivedFile("hash", "aapt2-res.zip", compiled);
+
+        File stored = mStore.getDerivedFile("hash", "aapt2-res.zip");
+        assertThat(stored).isNotNull();
+        assertThat(read(stored)).isEqualTo("compiled");
+        assertThat(mStore.getDerivedFile("other", "aapt2-res.zip")).isNull();
+    }
+
+    private static String read(File file) throws IOException {
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, String contents)
+            throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(contents.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,95 @@
+package com.tyron.builder.compiler.java;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class LibraryFingerprintCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mStore;
+    private File mLibrary;
+
+    @Before
+    public void setup() throws IOException {
+        mStore = new File(mFolder.getRoot(), "cache/library-fingerprints.bin");
+        mLibrary = mFolder.newFile("library.jar");
+        writeJar(mLibrary, "a");
+    }
+
+    @Test
+    public void testSameAsCalculateMD5() {
+        LibraryFingerprintCache cache = new LibraryFingerprintCache(mStore);
+        LibraryFingerprintCache.Fingerprint fingerprint = cache.getFingerprint(mLibrary);
+
+        assertThat(fingerprint).isNotNull();
+        assertThat(fingerprint.getMd5()).isEqualTo(CheckLibrariesTask.calculateMD5(mLibrary));
+        assertThat(fingerprint.isValidArchive()).isTrue();
+    }
+
+    @Test
+    public void testUnchangedFileIsNotHashedAgain() throws IOException {
+        LibraryFingerprintCache cache = new LibraryFingerprintCache(mStore);
+        String md5 = cache.getFingerprint(mLibrary).getMd5();
+
+        // same size and timestamp, the cached fingerprint is kept
+        long lastModified = mLibrary.lastModified();
+        writeJar(mLibrary, "b");
+        assertThat(mLibrary.setLastModified(lastModified)).isTrue();
+
+        assertThat(cache.getFingerprint(mLibrary).getMd5()).isEqualTo(md5);
+        assertThat(new LibraryFingerprintCache(mStore).getFingerprint(mLibrary).getMd5())
+                .isEqualTo(md5);
+    }
+
+    @Test
+    public void testChangedFileIsHashedAgain() throws IOException {
+        LibraryFingerprintCache cache = new LibraryFingerprintCache(mStore);
+        String md5 = cache.getFingerprint(mLibrary).getMd5();
+
+        writeJar(mLibrary, "b");
+        assertThat(mLibrary.setLastModified(mLibrary.lastModified() + 2000)).isTrue();
+
+        String changed = cache.getFingerprint(mLibrary).getMd5();
+        assertThat(changed).isNotEqualTo(md5);
+        assertThat(changed).isEqualTo(CheckLibrariesTask.calculateMD5(mLibrary));
+    }
+
+    @Test
+    public void testCorruptAndMissingFiles() throws IOException {
+        File corrupt = mFolder.newFile("corrupt.aar");
+        FileUtils.writeStringToFile(corrupt, "not a zip", StandardCharsets.UTF_8);
+        File missing = new File(mFolder.getRoot(), "missing.jar");
+
+        Map<File, LibraryFingerprintCache.Fingerprint> fingerprints =
+                new LibraryFingerprintCache(mStore)
+                        .getFingerprints(Arrays.asList(mLibrary, corrupt, missing));
+        assertThat(fingerprints.keySet()).containsExactly(mLibrary, corrupt);
+        assertThat(fingerprints.get(corrupt).isValidArchive()).isFalse();
+    }
+
+    private static void writeJar(File file, String contents) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            ZipEntry entry = new ZipEntry("a.txt");
+            entry.setTime(0);
+            out.putNextEntry(entry);
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+}
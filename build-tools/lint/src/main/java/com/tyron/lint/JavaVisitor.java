@@ -4,6 +4,7 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.tyron.completion.java.compiler.CompileTask;
 import com.tyron.completion.java.compiler.CompilerContainer;
 import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.compiler.JavaCompilerService;
@@ -66,28 +67,34 @@ public class JavaVisitor {
     public void visitFile(JavaContext context) {
         try {
             CompilerContainer container = mCompiler.compile(context.file.toPath());
-            container.run(task -> {
-                Tree compilationUnit = task.root();
-                context.setCompileTask(task);
-
-                for (VisitingDetector v : mAllDetectors) {
-                    v.setContext(context);
-                }
-
-                if (!mMethodDetectors.isEmpty()) {
-                    JavaVoidVisitor visitor = new DelegatingJavaVisitor(context);
-                    compilationUnit.accept(visitor, null);
-                } else if (!mTreeTypeDetectors.isEmpty()) {
-                    JavaVoidVisitor visitor = new DispatchVisitor();
-                    compilationUnit.accept(visitor, null);
-                }
-            });
+            container.run(task -> visitFile(context, task));
         } catch (Throwable e) {
             Log.e("Lint", "Failed to analyze file", e);
             ((JavaCompilerService) mCompiler).destroy();
         }
     }
 
+    /**
+     * Runs the detectors on a file of a compilation that has already been done, the
+     * compilation may contain other files as well.
+     */
+    public void visitFile(JavaContext context, CompileTask task) {
+        context.setCompileTask(task);
+        Tree compilationUnit = context.getCompilationUnit();
+
+        for (VisitingDetector v : mAllDetectors) {
+            v.setContext(context);
+        }
+
+        if (!mMethodDetectors.isEmpty()) {
+            JavaVoidVisitor visitor = new DelegatingJavaVisitor(context);
+            compilationUnit.accept(visitor, null);
+        } else if (!mTreeTypeDetectors.isEmpty()) {
+            JavaVoidVisitor visitor = new DispatchVisitor();
+            compilationUnit.accept(visitor, null);
+        }
+    }
+
     private static class VisitingDetector {
         private JavaVoidVisitor mVisitor;
         private JavaContext mContext;
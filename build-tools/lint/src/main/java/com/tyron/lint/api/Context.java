@@ -50,6 +50,10 @@ public class Context {
         return contents;
     }
 
+    void setContents(String contents) {
+        this.contents = contents;
+    }
+
 
     /** Returns the comment marker used in Studio to suppress statements for language, if any */
     @Nullable
@@ -46,7 +46,11 @@ public class JavaContext extends Context {
     }
 
     public CompilationUnitTree getCompilationUnit() {
-        return mCompileTask.root();
+        if (mCompileTask.roots.size() == 1) {
+            return mCompileTask.root();
+        }
+        // files linted together are compiled in a single task
+        return mCompileTask.root(file);
     }
 
     public void report(
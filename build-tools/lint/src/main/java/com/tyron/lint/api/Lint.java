@@ -5,8 +5,15 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.completion.java.compiler.CompileBatch;
+import com.tyron.completion.java.compiler.CompileTask;
 import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.java.compiler.SourceFileManager;
 import com.tyron.lint.JavaVisitor;
 import com.tyron.lint.checks.CallSuperDetector;
 import com.tyron.lint.checks.JavaPerformanceDetector;
@@ -17,24 +24,120 @@ import com.tyron.lint.client.IssueRegistry;
 import com.tyron.lint.client.LintClient;
 import com.tyron.lint.client.LintDriver;
 
+import org.apache.commons.io.FileUtils;
+import org.openjdk.javax.tools.JavaFileObject;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Lint {
+
+    private static final String TAG = "Lint";
+
+    /**
+     * The number of files compiled together, each file is parsed and attributed once for all
+     * of the detectors.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * Each thread holds a compiler context while it is linting, the compiler keeps
+     * three of them warm.
+     */
+    private static final int MAX_THREADS = 3;
+
+    /**
+     * The threads batches are linted on, shared by every instance. Idle threads are stopped
+     * so nothing is kept alive between scans.
+     */
+    private static final ExecutorService sExecutor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Lint-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final IssueRegistry REGISTRY = new IssueRegistry() {
+        @NonNull
+        @Override
+        public List<Issue> getIssues() {
+            return Arrays.asList(
+                    JavaPerformanceDetector.PAINT_ALLOC,
+                    SharedPrefsDetector.ISSUE,
+                    CallSuperDetector.ISSUE,
+                    ToastDetector.ISSUE
+            );
+        }
+    };
+
     private final JavaModule mProject;
     private final JavaCompilerService mCompiler;
     private final List<Detector> mDetectors;
     private final LintClient mClient;
+    private final LintDriver mDriver;
+    private final Configuration mConfiguration;
+
+    /**
+     * The reports of each file linted so far, files that have not changed since are not linted
+     * again.
+     */
+    private final Map<File, CachedResult> mResults = new ConcurrentHashMap<>();
+
+    /**
+     * The number of scans started so far, the result of a file is only replaced by the
+     * result of a scan that has started later.
+     */
+    private final AtomicLong mScanCount = new AtomicLong();
 
     public Lint(JavaCompilerService compiler, JavaModule project, LintClient client) {
         mCompiler = compiler;
         mProject = project;
         mClient = client;
         mDetectors = new ArrayList<>();
+        mDriver = new LintDriver(REGISTRY, client);
+        mConfiguration = new Configuration() {
+            @Override
+            public void ignore(@NonNull Context context, @NonNull Issue issue, @Nullable Location location, @NonNull String message) {
+
+            }
+
+            @Override
+            public void setSeverity(@NonNull Issue issue, @Nullable Severity severity) {
+
+            }
+        };
 
         registerDetector(new JavaPerformanceDetector());
         registerDetector(new SharedPrefsDetector());
@@ -42,37 +145,349 @@ public class Lint {
     }
 
     public void scanFile(File file) {
+        scanFile(file, mClient);
+    }
+
+    /**
+     * Same as {@link #scanFile(File)} but the issues are reported to the given client
+     */
+    public synchronized void scanFile(File file, LintClient client) {
         Instant start = Instant.now();
-        LintDriver driver = new LintDriver(new IssueRegistry() {
-            @NonNull
-            @Override
-            public List<Issue> getIssues() {
-                return Arrays.asList(
-                        JavaPerformanceDetector.PAINT_ALLOC,
-                        SharedPrefsDetector.ISSUE,
-                        CallSuperDetector.ISSUE,
-                        ToastDetector.ISSUE
-                );
+        Scan scan = new Scan();
+        JavaContext context = scan.createContext(file);
+        if (context == null) {
+            return;
+        }
+        HashCode key = getKey(context);
+        CachedResult result = getResult(file, key);
+        if (result == null) {
+            try {
+                JavaVisitor visitor = new JavaVisitor(mCompiler, mDetectors);
+                scan.begin(file);
+                mCompiler.compile(file.toPath()).run(task -> visitor.visitFile(context, task));
+                result = scan.finish(file, key);
+            } catch (Throwable e) {
+                Log.e(TAG, "Failed to analyze file", e);
+                mCompiler.destroy();
+                scan.fail(file);
             }
-        }, mClient);
-        JavaContext context = new JavaContext(driver, mProject, file, new Configuration() {
-            @Override
-            public void ignore(@NonNull Context context, @NonNull Issue issue, @Nullable Location location, @NonNull String message) {
+        }
+        report(file, result, client);
 
+        Log.d(TAG, "Scanning took " + Duration.between(start, Instant.now()).toMillis() + " ms");
+    }
+
+    public void scanFile(File file, String contents, CompileTask task) {
+        scanFile(file, contents, task, mClient);
+    }
+
+    /**
+     * Lints a file the caller has already compiled, such as the file open in the editor, so
+     * it is not compiled again. This does not wait for a running project scan, the issues
+     * reported are those of the given contents while the cached result of the file is the
+     * one of the scan that started last.
+     *
+     * @param contents the contents the task has compiled
+     */
+    public void scanFile(File file, String contents, CompileTask task, LintClient client) {
+        Scan scan = new Scan();
+        JavaContext context = scan.createContext(file, contents);
+        HashCode key = getKey(context);
+        CachedResult result = getResult(file, key);
+        if (result == null) {
+            try {
+                scan.begin(file);
+                new JavaVisitor(mCompiler, mDetectors).visitFile(context, task);
+                result = scan.finish(file, key);
+            } catch (Throwable e) {
+                Log.e(TAG, "Failed to analyze file " + file.getName(), e);
+                scan.fail(file);
             }
+        }
+        report(file, result, client);
+    }
 
-            @Override
-            public void setSeverity(@NonNull Issue issue, @Nullable Severity severity) {
+    /**
+     * Lints all the java files of the project, only the files that have changed since they
+     * were last linted are compiled again.
+     */
+    public void scanProject() {
+        scanProject(mClient);
+    }
+
+    /**
+     * Same as {@link #scanProject()} but the issues are reported to the given client
+     */
+    public synchronized void scanProject(LintClient client) {
+        Collection<File> files = mProject.getJavaFiles().values();
+        mResults.keySet().retainAll(new HashSet<>(files));
+        scanFiles(files, client);
+    }
 
+    /**
+     * Lints the given files, reporting the issues of each file to the client in order. The
+     * files that have changed since they were last linted are compiled in batches which are
+     * spread across threads, every detector runs in a single walk of each file.
+     */
+    public void scanFiles(Collection<File> files) {
+        scanFiles(files, mClient);
+    }
+
+    /**
+     * Same as {@link #scanFiles(Collection)} but the issues are reported to the given client
+     */
+    public synchronized void scanFiles(Collection<File> files, LintClient client) {
+        Instant start = Instant.now();
+        Scan scan = new Scan();
+        List<JavaContext> changed = new ArrayList<>();
+        Map<File, HashCode> keys = new HashMap<>();
+        for (File file : files) {
+            JavaContext context = scan.createContext(file);
+            if (context == null) {
+                continue;
             }
-        });
+            HashCode key = getKey(context);
+            if (getResult(file, key) == null) {
+                keys.put(file, key);
+                changed.add(context);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            Queue<List<JavaContext>> batches = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < changed.size(); i += BATCH_SIZE) {
+                batches.add(changed.subList(i, Math.min(i + BATCH_SIZE, changed.size())));
+            }
+            int threads = Math.min(batches.size(),
+                    Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(sExecutor.submit(() -> scanBatches(scan, batches, keys)));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Failed to lint files", e.getCause());
+                } catch (InterruptedException e) {
+                    for (Future<?> other : futures) {
+                        other.cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        for (File file : files) {
+            report(file, mResults.get(file), client);
+        }
+
+        Log.d(TAG, "Scanning " + files.size() + " files (" + changed.size() + " changed) took " +
+                   Duration.between(start, Instant.now()).toMillis() + " ms");
+    }
+
+    /**
+     * Lints batches from the queue until it is empty, the compiler context and the file
+     * manager are kept for all the batches linted by this thread.
+     */
+    private void scanBatches(Scan scan, Queue<List<JavaContext>> batches,
+                             Map<File, HashCode> keys) {
+        SourceFileManager fileManager = new SourceFileManager(mCompiler.getProject());
+        fileManager.setCurrentModule(mProject);
         JavaVisitor visitor = new JavaVisitor(mCompiler, mDetectors);
-        visitor.visitFile(context);
+        try {
+            List<JavaContext> batch;
+            while ((batch = batches.poll()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                scanBatch(scan, fileManager, visitor, batch, keys);
+            }
+        } finally {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+
+    private void scanBatch(Scan scan, SourceFileManager fileManager, JavaVisitor visitor,
+                           List<JavaContext> contexts, Map<File, HashCode> keys) {
+        List<JavaFileObject> sources = new ArrayList<>(contexts.size());
+        for (JavaContext context : contexts) {
+            sources.add(new SourceFileObject(context.file.toPath(), context.getContents(),
+                    Instant.ofEpochMilli(context.file.lastModified()), mProject));
+        }
+
+        CompileBatch batch = new CompileBatch(mCompiler, fileManager, sources);
+        try {
+            CompileTask task = new CompileTask(batch);
+            for (JavaContext context : contexts) {
+                File file = context.file;
+                try {
+                    scan.begin(file);
+                    visitor.visitFile(context, task);
+                    scan.finish(file, keys.get(file));
+                } catch (Throwable e) {
+                    // the file is linted again next time
+                    Log.e(TAG, "Failed to analyze file " + file.getName(), e);
+                    scan.fail(file);
+                }
+            }
+        } finally {
+            batch.close();
+            batch.borrow.close();
+        }
+    }
+
+    private void report(File file, @Nullable CachedResult result, LintClient client) {
+        if (result == null || result.reports.isEmpty()) {
+            return;
+        }
+        Context context = new JavaContext(mDriver, mProject, file, mConfiguration);
+        for (Report report : result.reports) {
+            client.report(context, report.issue, report.severity, report.location,
+                    report.message, report.format);
+        }
+    }
+
+    /**
+     * The results of a file can be reused as long as its contents and the detectors
+     * have not changed.
+     */
+    private HashCode getKey(JavaContext context) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Detector detector : mDetectors) {
+            hasher.putString(detector.getClass().getName(), StandardCharsets.UTF_8);
+        }
+        hasher.putString(context.getContents(), StandardCharsets.UTF_8);
+        return hasher.hash();
+    }
 
-        Log.d("Lint", "Scanning took " + Duration.between(start, Instant.now()).toMillis() + " ms");
+    /**
+     * @return the cached result of the file if it has been linted with the same key
+     */
+    @Nullable
+    private CachedResult getResult(File file, HashCode key) {
+        CachedResult result = mResults.get(file);
+        return result != null && result.key.equals(key) ? result : null;
     }
 
     public void registerDetector(Detector detector) {
         mDetectors.add(detector);
     }
+
+    private static class CachedResult {
+        final HashCode key;
+        final long version;
+        final List<Report> reports;
+
+        CachedResult(HashCode key, long version, List<Report> reports) {
+            this.key = key;
+            this.version = version;
+            this.reports = Collections.unmodifiableList(reports);
+        }
+    }
+
+    private static class Report {
+        final Issue issue;
+        final Severity severity;
+        final Location location;
+        final String message;
+        final TextFormat format;
+
+        Report(Issue issue, Severity severity, Location location, String message,
+               TextFormat format) {
+            this.issue = issue;
+            this.severity = severity;
+            this.location = location;
+            this.message = message;
+            this.format = format;
+        }
+    }
+
+    /**
+     * A single scan of one or more files. It records the reports of the files it lints
+     * itself, so scans that run at the same time, such as the editor and a project scan,
+     * don't mix their reports. The detectors may run on other threads than the one the
+     * client is called from.
+     */
+    private class Scan extends LintClient {
+
+        private final long mVersion = mScanCount.incrementAndGet();
+        private final LintDriver mScanDriver = new LintDriver(REGISTRY, this);
+        private final Map<File, List<Report>> mReports = new ConcurrentHashMap<>();
+
+        @Nullable
+        JavaContext createContext(File file) {
+            String contents;
+            try {
+                contents = FileUtils.readFileToString(file, Charset.defaultCharset());
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read " + file.getName(), e);
+                fail(file);
+                return null;
+            }
+            return createContext(file, contents);
+        }
+
+        JavaContext createContext(File file, String contents) {
+            JavaContext context = new JavaContext(mScanDriver, mProject, file, mConfiguration);
+            context.setContents(contents);
+            return context;
+        }
+
+        void begin(File file) {
+            mReports.put(file, Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        /**
+         * Caches the reports of the file unless a scan that started later has already
+         * linted it.
+         *
+         * @return the result of this scan
+         */
+        CachedResult finish(File file, HashCode key) {
+            CachedResult result = new CachedResult(key, mVersion, mReports.remove(file));
+            mResults.merge(file, result,
+                    (current, latest) -> current.version > latest.version ? current : latest);
+            return result;
+        }
+
+        /**
+         * Drops the cached result of the file so it is linted again next time
+         */
+        void fail(File file) {
+            mReports.remove(file);
+            mResults.computeIfPresent(file,
+                    (f, current) -> current.version > mVersion ? current : null);
+        }
+
+        @NonNull
+        @Override
+        public Class<? extends Detector> replaceDetector(@NonNull Class<? extends Detector> detectorClass) {
+            return mClient.replaceDetector(detectorClass);
+        }
+
+        @Override
+        public boolean checkForSuppressComments() {
+            return mClient.checkForSuppressComments();
+        }
+
+        @Override
+        public void report(@NonNull Context context, @NonNull Issue issue, @NonNull Severity severity, @Nullable Location location, @NonNull String message, @NonNull TextFormat format) {
+            List<Report> reports = mReports.get(context.file);
+            if (reports != null) {
+                reports.add(new Report(issue, severity, location, message, format));
+            }
+        }
+
+        @Override
+        public void log(Throwable t, String s, String name) {
+            mClient.log(t, s, name);
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package com.tyron.lint.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.lint.checks.CallSuperDetector;
+import com.tyron.lint.checks.JavaPerformanceDetector;
+import com.tyron.lint.client.LintClient;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lints a project whose files each trigger a different detector
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class LintTest {
+
+    private static final String CLASSPATH = "java-completion/src/test/resources/classpath";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RecordingClient mClient = new RecordingClient();
+    private MockAndroidModule mModule;
+    private Lint mLint;
+
+    private File mActivity;
+    private File mView;
+
+    @Before
+    public void setup() throws IOException {
+        File classpath = new File(CLASSPATH);
+        if (!classpath.exists()) {
+            classpath = new File("../../" + CLASSPATH);
+        }
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(classpath, "rt.jar"));
+        CompletionModule.setLambdaStubs(new File(classpath, "core-lambda-stubs.jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = folder.getRoot();
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, new MockFileManager(root));
+        mModule.open();
+
+        // declared in the sources since the annotation is not on the class path of the project
+        addFile("androidx/annotation/CallSuper.java", "package androidx.annotation;\n" +
+                "public @interface CallSuper {}\n");
+        addFile("com/test/Base.java", "package com.test;\n" +
+                "import androidx.annotation.CallSuper;\n" +
+                "public class Base {\n" +
+                "    @CallSuper\n" +
+                "    public void onCreate() {}\n" +
+                "}\n");
+        addFile("com/test/Canvas.java", "package com.test;\n" +
+                "public class Canvas {}\n");
+        mActivity = addFile("com/test/Activity.java", "package com.test;\n" +
+                "public class Activity extends Base {\n" +
+                "    @Override\n" +
+                "    public void onCreate() {}\n" +
+                "}\n");
+        mView = addFile("com/test/View.java", "package com.test;\n" +
+                "public class View {\n" +
+                "    protected void onDraw(Canvas canvas) {\n" +
+                "        StringBuilder builder = new StringBuilder();\n" +
+                "    }\n" +
+                "}\n");
+
+        mLint = new Lint(provider.getCompiler(project, mModule), mModule, mClient);
+    }
+
+    @Test
+    public void testScanProject() {
+        mLint.scanProject();
+
+        assertEquals(Collections.singletonList(CallSuperDetector.ISSUE), mClient.getIssues(mActivity));
+        assertEquals(Collections.singletonList(JavaPerformanceDetector.PAINT_ALLOC),
+                mClient.getIssues(mView));
+        assertEquals(2, mClient.getIssues().size());
+    }
+
+    @Test
+    public void testUnchangedFilesAreReportedAgain() throws IOException {
+        mLint.scanFiles(Arrays.asList(mActivity, mView));
+        mClient.clear();
+
+        // the cached results of the view are reported, the activity is linted again
+        writeFile(mActivity, "package com.test;\n" +
+                "public class Activity extends Base {\n" +
+                "    @Override\n" +
+                "    public void onCreate() {\n" +
+                "        super.onCreate();\n" +
+                "    }\n" +
+                "}\n");
+        mLint.scanFiles(Arrays.asList(mActivity, mView));
+
+        assertTrue(mClient.getIssues(mActivity).isEmpty());
+        assertEquals(Collections.singletonList(JavaPerformanceDetector.PAINT_ALLOC),
+                mClient.getIssues(mView));
+    }
+
+    @Test
+    public void testScanReportsToItsOwnClient() {
+        mLint.scanProject();
+        mClient.clear();
+
+        // the cached result of the view is only reported to the client of this scan
+        RecordingClient client = new RecordingClient();
+        mLint.scanFile(mView, client);
+        assertEquals(Collections.singletonList(JavaPerformanceDetector.PAINT_ALLOC),
+                client.getIssues(mView));
+        assertTrue(client.getIssues(mActivity).isEmpty());
+        assertTrue(mClient.getIssues().isEmpty());
+    }
+
+    private File addFile(String path, String contents) throws IOException {
+        File file = new File(mModule.getJavaDirectory(), path);
+        writeFile(file, contents);
+        mModule.addJavaFile(file);
+        return file;
+    }
+
+    private static void writeFile(File file, String contents) throws IOException {
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingClient extends LintClient {
+
+        private final Map<File, List<Issue>> mIssues = new ConcurrentHashMap<>();
+
+        @Override
+        public void report(@NonNull Context context, @NonNull Issue issue,
+                           @NonNull Severity severity, @Nullable Location location,
+                           @NonNull String message, @NonNull TextFormat format) {
+            mIssues.computeIfAbsent(context.file, it -> new ArrayList<>()).add(issue);
+        }
+
+        List<Issue> getIssues(File file) {
+            List<Issue> issues = mIssues.get(file);
+            return issues == null ? Collections.emptyList() : issues;
+        }
+
+        List<Issue> getIssues() {
+            List<Issue> issues = new ArrayList<>();
+            for (List<Issue> fileIssues : mIssues.values()) {
+                issues.addAll(fileIssues);
+            }
+            return issues;
+        }
+
+        void clear() {
+            mIssues.clear();
+        }
+    }
+}
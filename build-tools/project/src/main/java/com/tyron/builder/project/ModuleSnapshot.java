@@ -0,0 +1,117 @@
+package com.tyron.builder.project;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.KotlinModule;
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.index.ClassNameIndex;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates read only views of a module that keep the files, libraries and classes the module
+ * had when the view was created. Builds clear and index the modules they build again, the
+ * views are used by completion and diagnostics while a build is running.
+ *
+ * <p>The view implements the same interfaces as the module. Methods that do not read the
+ * indexed state of the module, including the ones that modify it, are forwarded to the module.
+ */
+class ModuleSnapshot implements InvocationHandler {
+
+    @NonNull
+    static Module of(@NonNull Module module) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> type = module.getClass(); type != null; type = type.getSuperclass()) {
+            for (Class<?> implemented : type.getInterfaces()) {
+                interfaces.add(implemented);
+            }
+        }
+        return (Module) Proxy.newProxyInstance(Module.class.getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), new ModuleSnapshot(module));
+    }
+
+    private final Module mModule;
+
+    private Map<String, File> mJavaFiles = ImmutableMap.of();
+    private ImmutableList<File> mLibraries = ImmutableList.of();
+    private Map<String, File> mInjectedClasses = ImmutableMap.of();
+    private ClassNameIndex mClassNameIndex = ClassNameIndex.EMPTY;
+    private volatile Set<String> mAllClasses;
+    private Map<String, File> mKotlinFiles = ImmutableMap.of();
+    private Map<String, File> mResourceClasses = ImmutableMap.of();
+
+    private ModuleSnapshot(Module module) {
+        mModule = module;
+        if (module instanceof JavaModule) {
+            JavaModule javaModule = (JavaModule) module;
+            mJavaFiles = ImmutableMap.copyOf(javaModule.getJavaFiles());
+            mLibraries = ImmutableList.copyOf(javaModule.getLibraries());
+            mInjectedClasses = ImmutableMap.copyOf(javaModule.getInjectedClasses());
+            // the index is immutable, the names are only copied out of it when asked for
+            mClassNameIndex = javaModule.getClassNameIndex();
+        }
+        if (module instanceof KotlinModule) {
+            mKotlinFiles = ImmutableMap.copyOf(((KotlinModule) module).getKotlinFiles());
+        }
+        if (module instanceof AndroidModule) {
+            mResourceClasses = ImmutableMap.copyOf(((AndroidModule) module).getResourceClasses());
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getJavaFiles":
+                return mJavaFiles;
+            case "getJavaFile":
+                return mJavaFiles.get((String) args[0]);
+            case "getLibraries":
+                return mLibraries;
+            case "getInjectedClasses":
+                return mInjectedClasses;
+            case "getClassNameIndex":
+                return mClassNameIndex;
+            case "getAllClasses":
+                return getAllClasses();
+            case "getKotlinFiles":
+                return mKotlinFiles;
+            case "getKotlinFile":
+                return mKotlinFiles.get((String) args[0]);
+            case "getResourceClasses":
+                return mResourceClasses;
+            case "equals":
+                return proxy == args[0] || mModule.equals(args[0]);
+            case "toString":
+                return "Snapshot of " + mModule;
+        }
+        try {
+            return method.invoke(mModule, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Set<String> getAllClasses() {
+        Set<String> allClasses = mAllClasses;
+        if (allClasses == null) {
+            Set<String> classes = new HashSet<>(mClassNameIndex.size());
+            mClassNameIndex.addAllTo(classes);
+            allClasses = Collections.unmodifiableSet(classes);
+            mAllClasses = allClasses;
+        }
+        return allClasses;
+    }
+}
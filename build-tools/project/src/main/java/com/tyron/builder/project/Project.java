@@ -11,6 +11,7 @@ import com.google.common.graph.GraphBuilder;
 import com.google.common.graph.Graphs;
 import com.google.common.graph.MutableGraph;
 import com.tyron.builder.model.ProjectSettings;
+import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.AndroidModuleImpl;
 
@@ -43,6 +44,11 @@ public class Project {
 
     private volatile boolean mCompiling;
 
+    /**
+     * The state of the modules before the running build started, keyed by module
+     */
+    private volatile Map<Module, Module> mSnapshots = Collections.emptyMap();
+
     MutableGraph<Module> graph = GraphBuilder
             .directed()
             .allowsSelfLoops(false)
@@ -59,10 +65,42 @@ public class Project {
         return mCompiling;
     }
 
-    public void setCompiling(boolean compiling) {
+    public synchronized void setCompiling(boolean compiling) {
+        if (compiling && !mCompiling) {
+            Map<Module, Module> snapshots = new HashMap<>();
+            snapshots.put(mMainModule, ModuleSnapshot.of(mMainModule));
+            for (Module module : mModules.values()) {
+                snapshots.put(module, ModuleSnapshot.of(module));
+            }
+            mSnapshots = snapshots;
+        } else if (!compiling) {
+            mSnapshots = Collections.emptyMap();
+        }
         mCompiling = compiling;
     }
 
+    /**
+     * Builds clear the modules they build and index them again. Code that reads the indexed
+     * state of a module while a build may be running, such as completion, should read it from
+     * the module returned by this method.
+     *
+     * @return a read only view of the module as it was before the running build started, or
+     * the module itself if no build is running
+     */
+    @NonNull
+    public Module getSnapshot(@NonNull Module module) {
+        Module snapshot = mSnapshots.get(module);
+        return snapshot != null ? snapshot : module;
+    }
+
+    /**
+     * @see #getSnapshot(Module)
+     */
+    @NonNull
+    public JavaModule getSnapshot(@NonNull JavaModule module) {
+        return (JavaModule) getSnapshot((Module) module);
+    }
+
     public void open() throws IOException {
         mSettings.refresh();
         mMainModule.open();;
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.tyron.builder.model.Library;
+import com.tyron.builder.project.index.ClassNameIndex;
 
 import java.io.File;
 import java.util.List;
@@ -47,6 +48,13 @@ public interface JavaModule extends Module {
      */
     Set<String> getAllClasses();
 
+    /**
+     * @return an index of the classes returned by {@link #getAllClasses()} that can be
+     * searched by their simple names
+     */
+    @NonNull
+    ClassNameIndex getClassNameIndex();
+
     /**
      * @return The resources directory of the project. Note that
      * this is different from android's res directory
@@ -19,10 +19,10 @@ import org.jetbrains.kotlin.com.intellij.util.ReflectionUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Consumer;
 
 public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
@@ -89,8 +89,8 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     }
 
     @Override
-    public Set<String> getAllClasses() {
-        Set<String> classes = super.getAllClasses();
+    protected Collection<String> getSourceClasses() {
+        List<String> classes = new ArrayList<>(super.getSourceClasses());
         classes.addAll(mKotlinFiles.keySet());
         return classes;
     }
@@ -179,7 +179,9 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
             packageName = "";
         }
         String fqn = packageName + "." + file.getName().replace(".kt", "");
-        mKotlinFiles.put(fqn, file);
+        if (mKotlinFiles.put(fqn, file) == null) {
+            invalidateClassNameIndex();
+        }
     }
 
     @Override
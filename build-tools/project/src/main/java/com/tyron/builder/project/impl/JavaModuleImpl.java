@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.tyron.builder.model.Library;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.index.ClassNameIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.apache.commons.io.FileUtils;
@@ -17,28 +18,31 @@ import org.jetbrains.kotlin.com.intellij.util.ReflectionUtil;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
-    // Map of fully qualified names and the jar they are contained in
-    private final Map<String, File> mClassFiles;
+    // Map of jar files and the index of the classes they contain
+    private final Map<File, ClassNameIndex> mJarIndexes;
     private final Map<String, File> mJavaFiles;
     private final Map<String, Library> mLibraryHashMap;
     private final Map<String, File> mInjectedClassesMap;
     private final Set<File> mLibraries;
 
+    private volatile ClassNameIndex mClassNameIndex;
+
     public JavaModuleImpl(File root) {
         super(root);
         mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
+        mJarIndexes = new LinkedHashMap<>();
         mLibraries = new HashSet<>();
         mInjectedClassesMap = new HashMap<>();
         mLibraryHashMap = new HashMap<>();
@@ -59,6 +63,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
+        invalidateClassNameIndex();
     }
 
     @Override
@@ -73,7 +78,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         } else {
             className = packageName + "." + javaFile.getName().replace(".java", "");
         }
-        mJavaFiles.put(className, javaFile);
+        if (mJavaFiles.put(className, javaFile) == null) {
+            invalidateClassNameIndex();
+        }
     }
 
     @Override
@@ -90,11 +97,42 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public Set<String> getAllClasses() {
         Set<String> classes = new HashSet<>();
-        classes.addAll(mJavaFiles.keySet());
-        classes.addAll(mClassFiles.keySet());
+        classes.addAll(getSourceClasses());
+        for (ClassNameIndex index : mJarIndexes.values()) {
+            index.addAllTo(classes);
+        }
         return classes;
     }
 
+    @NonNull
+    @Override
+    public ClassNameIndex getClassNameIndex() {
+        ClassNameIndex index = mClassNameIndex;
+        if (index == null) {
+            // only the source index is built here, the jar indexes are reused as is
+            List<ClassNameIndex> indexes = new ArrayList<>();
+            indexes.add(ClassNameIndex.create(getSourceClasses()));
+            indexes.addAll(mJarIndexes.values());
+            index = ClassNameIndex.compose(indexes);
+            mClassNameIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the fully qualified names of the classes declared in the sources of this module
+     */
+    protected Collection<String> getSourceClasses() {
+        return mJavaFiles.keySet();
+    }
+
+    /**
+     * Must be called when the classes returned by {@link #getSourceClasses()} have changed.
+     */
+    protected void invalidateClassNameIndex() {
+        mClassNameIndex = null;
+    }
+
     @Override
     public List<File> getLibraries() {
         return ImmutableList.copyOf(mLibraries);
@@ -119,27 +157,12 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                if (!entry.getName().endsWith(".class")) {
-                    continue;
-                }
-
-                // We only want top level classes, if it contains $ then
-                // its an inner class, we ignore it
-                if (entry.getName().contains("$")) {
-                    continue;
-                }
-
-                String packageName = entry.getName().replace("/", ".")
-                        .substring(0, entry.getName().length() - ".class".length());
+        mJarIndexes.put(file, ClassNameIndex.forJar(file, getClassIndexDirectory()));
+        invalidateClassNameIndex();
+    }
 
-                mClassFiles.put(packageName, file);
-            }
-        }
+    private File getClassIndexDirectory() {
+        return new File(getBuildDirectory(), "intermediate/class-index");
     }
 
     @NonNull
@@ -247,7 +270,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public void clear() {
         mJavaFiles.clear();
+        mJarIndexes.clear();
         mLibraries.clear();
         mLibraryHashMap.clear();
+        invalidateClassNameIndex();
     }
 }
\ No newline at end of file
@@ -0,0 +1,348 @@
+package com.tyron.builder.project.index;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.common.util.BinaryStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An immutable index of fully qualified class names that can be searched by the prefix
+ * of their simple names.
+ *
+ * <p>The names are stored in an array sorted by their lower cased simple name so a prefix
+ * query is a binary search followed by a scan of the matching range. Queries do not
+ * allocate, matching names are passed to a {@link Visitor}.
+ *
+ * <p>Indexes of jar files are stored in a cache directory and are only rebuilt when the
+ * size or the modification time of the jar changes.
+ */
+public class ClassNameIndex {
+
+    private static final int MAGIC = 0x434e4958;
+    private static final int VERSION = 1;
+
+    public static final ClassNameIndex EMPTY = new ClassNameIndex(new String[0]);
+
+    private static final Map<String, ClassNameIndex> sJarIndexes = new ConcurrentHashMap<>();
+
+    public interface Visitor {
+
+        /**
+         * @return false to stop visiting the remaining names
+         */
+        boolean visit(@NonNull String className);
+    }
+
+    /**
+     * Creates an index containing the given fully qualified names.
+     */
+    @NonNull
+    public static ClassNameIndex create(@NonNull Collection<String> classNames) {
+        String[] names = classNames.toArray(new String[0]);
+        Arrays.sort(names, ClassNameIndex::compareNames);
+        // equal names are adjacent once sorted
+        int size = 0;
+        for (String name : names) {
+            if (size == 0 || !names[size - 1].equals(name)) {
+                names[size++] = name;
+            }
+        }
+        return new ClassNameIndex(size == names.length ? names : Arrays.copyOf(names, size));
+    }
+
+    /**
+     * Creates an index that searches all the given indexes. The indexes are not copied so
+     * composing is cheap, a name contained in several indexes is only visited for the first
+     * index containing it.
+     */
+    @NonNull
+    public static ClassNameIndex compose(@NonNull List<ClassNameIndex> indexes) {
+        if (indexes.size() == 1) {
+            return indexes.get(0);
+        }
+        return new ClassNameIndex(indexes.toArray(new ClassNameIndex[0]));
+    }
+
+    /**
+     * Returns the index of the top level classes of the given jar, reading it from the cache
+     * directory or scanning the jar if it has changed since it was last indexed.
+     */
+    @NonNull
+    public static ClassNameIndex forJar(@NonNull File jar, @NonNull File cacheDir)
+            throws IOException {
+        String path = jar.getAbsolutePath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+
+        ClassNameIndex index = sJarIndexes.get(path);
+        if (index != null && index.mLength == length && index.mLastModified == lastModified) {
+            return index;
+        }
+
+        File indexFile = new File(cacheDir, jar.getName() + "-"
+                + Integer.toHexString(path.hashCode()) + ".idx");
+        index = read(indexFile, length, lastModified);
+        if (index == null) {
+            index = create(scan(jar));
+            index.mLength = length;
+            index.mLastModified = lastModified;
+            index.write(indexFile);
+        }
+        sJarIndexes.put(path, index);
+        return index;
+    }
+
+    private final String[] mClassNames;
+    private final int[] mSimpleNameStarts;
+    private final ClassNameIndex[] mChildren;
+
+    private long mLength;
+    private long mLastModified;
+
+    private ClassNameIndex(String[] sortedClassNames) {
+        mClassNames = sortedClassNames;
+        mSimpleNameStarts = new int[sortedClassNames.length];
+        for (int i = 0; i < sortedClassNames.length; i++) {
+            mSimpleNameStarts[i] = sortedClassNames[i].lastIndexOf('.') + 1;
+        }
+        mChildren = null;
+    }
+
+    private ClassNameIndex(ClassNameIndex[] children) {
+        mClassNames = null;
+        mSimpleNameStarts = null;
+        mChildren = children;
+    }
+
+    /**
+     * @return the number of names in this index
+     */
+    public int size() {
+        if (mChildren != null) {
+            int[] size = new int[1];
+            forEachMatch("", false, className -> {
+                size[0]++;
+                return true;
+            });
+            return size[0];
+        }
+        return mClassNames.length;
+    }
+
+    /**
+     * @return whether this index contains the given fully qualified name
+     */
+    public boolean contains(@NonNull String className) {
+        if (mChildren != null) {
+            return containsBefore(mChildren.length, className);
+        }
+        int low = 0;
+        int high = mClassNames.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = compareNames(mClassNames[mid], className);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether one of the children before the given position contains the name
+     */
+    private boolean containsBefore(int end, String className) {
+        for (int i = 0; i < end; i++) {
+            if (mChildren[i].contains(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds all the names of this index to the given collection.
+     */
+    public void addAllTo(@NonNull Collection<String> collection) {
+        if (mChildren != null) {
+            forEachMatch("", false, className -> {
+                collection.add(className);
+                return true;
+            });
+            return;
+        }
+        collection.addAll(Arrays.asList(mClassNames));
+    }
+
+    /**
+     * Visits the names whose simple name starts with the given prefix.
+     *
+     * @param caseSensitive whether the case of the prefix has to match the simple name
+     * @return false if the visitor stopped the search
+     */
+    public boolean forEachMatch(@NonNull String prefix, boolean caseSensitive,
+                                @NonNull Visitor visitor) {
+        if (mChildren != null) {
+            for (int i = 0; i < mChildren.length; i++) {
+                int index = i;
+                Visitor childVisitor = i == 0 ? visitor : className ->
+                        containsBefore(index, className) || visitor.visit(className);
+                if (!mChildren[i].forEachMatch(prefix, caseSensitive, childVisitor)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int i = lowerBound(prefix); i < mClassNames.length; i++) {
+            if (comparePrefix(i, prefix) != 0) {
+                break;
+            }
+            String className = mClassNames[i];
+            if (caseSensitive && !className.startsWith(prefix, mSimpleNameStarts[i])) {
+                continue;
+            }
+            if (!visitor.visit(className)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits the names whose simple name is exactly the given name.
+     *
+     * @return false if the visitor stopped the search
+     */
+    public boolean forEachSimpleName(@NonNull String simpleName, @NonNull Visitor visitor) {
+        return forEachMatch(simpleName, true, className -> {
+            if (className.length() - simpleName.length() != className.lastIndexOf('.') + 1) {
+                return true;
+            }
+            return visitor.visit(className);
+        });
+    }
+
+    /**
+     * @return the first position whose simple name is not less than the prefix
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mClassNames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the lower cased simple name at the given position with the lower cased
+     * prefix, returns 0 if the simple name starts with the prefix.
+     */
+    private int comparePrefix(int index, String prefix) {
+        String className = mClassNames[index];
+        int start = mSimpleNameStarts[index];
+        int length = Math.min(className.length() - start, prefix.length());
+        for (int i = 0; i < length; i++) {
+            char a = Character.toLowerCase(className.charAt(start + i));
+            char b = Character.toLowerCase(prefix.charAt(i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return className.length() - start < prefix.length() ? -1 : 0;
+    }
+
+    private static int compareNames(String first, String second) {
+        int firstStart = first.lastIndexOf('.') + 1;
+        int secondStart = second.lastIndexOf('.') + 1;
+        int length = Math.min(first.length() - firstStart, second.length() - secondStart);
+        for (int i = 0; i < length; i++) {
+            char a = Character.toLowerCase(first.charAt(firstStart + i));
+            char b = Character.toLowerCase(second.charAt(secondStart + i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        int result = (first.length() - firstStart) - (second.length() - secondStart);
+        if (result != 0) {
+            return result;
+        }
+        return first.compareTo(second);
+    }
+
+    private static List<String> scan(File file) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+
+                // We only want top level classes, if it contains $ then
+                // its an inner class, we ignore it
+                if (name.contains("$")) {
+                    continue;
+                }
+
+                classNames.add(name.substring(0, name.length() - ".class".length())
+                        .replace('/', '.'));
+            }
+        }
+        return classNames;
+    }
+
+    private static ClassNameIndex read(File file, long length, long lastModified) {
+        try {
+            return BinaryStore.read(file, MAGIC, VERSION, in -> {
+                if (in.readLong() != length || in.readLong() != lastModified) {
+                    return null;
+                }
+                String[] classNames = new String[in.readInt()];
+                for (int i = 0; i < classNames.length; i++) {
+                    classNames[i] = in.readUTF();
+                }
+                ClassNameIndex index = new ClassNameIndex(classNames);
+                index.mLength = length;
+                index.mLastModified = lastModified;
+                return index;
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(File file) throws IOException {
+        BinaryStore.write(file, MAGIC, VERSION, out -> {
+            out.writeLong(mLength);
+            out.writeLong(mLastModified);
+            // the names are written sorted so they don't need to be sorted when read
+            out.writeInt(mClassNames.length);
+            for (String className : mClassNames) {
+                out.writeUTF(className);
+            }
+        });
+    }
+}
@@ -7,6 +7,7 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.impl.ModuleImpl;
+import com.tyron.builder.project.index.ClassNameIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.jetbrains.annotations.NotNull;
@@ -96,6 +97,12 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
         return Collections.emptySet();
     }
 
+    @NonNull
+    @Override
+    public ClassNameIndex getClassNameIndex() {
+        return ClassNameIndex.EMPTY;
+    }
+
     @NonNull
     @Override
     public File getResourcesDir() {
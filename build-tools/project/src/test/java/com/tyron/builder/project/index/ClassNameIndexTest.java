@@ -0,0 +1,132 @@
+package com.tyron.builder.project.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class ClassNameIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final ClassNameIndex mIndex = ClassNameIndex.create(Arrays.asList(
+            "java.util.List",
+            "java.awt.List",
+            "java.util.ArrayList",
+            "java.util.ListIterator",
+            "java.util.LinkedList",
+            "android.widget.ListView",
+            "Main",
+            "com.example.listener"));
+
+    @Test
+    public void testPrefixLookup() {
+        assertEquals(Arrays.asList("java.awt.List", "java.util.List", "com.example.listener",
+                "java.util.ListIterator", "android.widget.ListView"),
+                matches(mIndex, "list", false));
+        assertEquals(Arrays.asList("java.awt.List", "java.util.List",
+                "java.util.ListIterator", "android.widget.ListView"),
+                matches(mIndex, "List", true));
+        assertEquals(Collections.singletonList("java.util.LinkedList"),
+                matches(mIndex, "Lin", true));
+        assertEquals(Collections.emptyList(), matches(mIndex, "Lists", false));
+        assertEquals(Collections.emptyList(), matches(mIndex, "Z", false));
+    }
+
+    @Test
+    public void testBinarySearchBoundaries() {
+        // the first and the last names in the order of the index
+        assertEquals(Collections.singletonList("java.util.ArrayList"),
+                matches(mIndex, "A", true));
+        assertEquals(Collections.singletonList("Main"), matches(mIndex, "m", false));
+        assertEquals(mIndex.size(), matches(mIndex, "", false).size());
+        assertEquals(Collections.emptyList(), matches(ClassNameIndex.EMPTY, "", false));
+
+        assertTrue(mIndex.contains("java.util.ArrayList"));
+        assertTrue(mIndex.contains("Main"));
+        assertTrue(mIndex.contains("java.awt.List"));
+        assertFalse(mIndex.contains("java.util.Map"));
+        assertFalse(mIndex.contains("List"));
+    }
+
+    @Test
+    public void testSimpleNameLookup() {
+        List<String> classNames = new ArrayList<>();
+        mIndex.forEachSimpleName("List", classNames::add);
+        assertEquals(Arrays.asList("java.awt.List", "java.util.List"), classNames);
+
+        classNames.clear();
+        mIndex.forEachSimpleName("list", classNames::add);
+        assertEquals(Collections.emptyList(), classNames);
+    }
+
+    @Test
+    public void testVisitorStopsSearch() {
+        List<String> classNames = new ArrayList<>();
+        assertFalse(mIndex.forEachMatch("list", false, className -> {
+            classNames.add(className);
+            return classNames.size() < 2;
+        }));
+        assertEquals(2, classNames.size());
+    }
+
+    @Test
+    public void testDuplicatesAreVisitedOnce() {
+        ClassNameIndex module = ClassNameIndex.create(Arrays.asList(
+                "com.example.Main", "com.example.Main", "com.example.Util"));
+        assertEquals(2, module.size());
+
+        ClassNameIndex library = ClassNameIndex.create(Arrays.asList(
+                "com.example.Util", "java.util.List"));
+        ClassNameIndex composed = ClassNameIndex.compose(Arrays.asList(module, library, module));
+
+        List<String> classNames = new ArrayList<>();
+        composed.forEachSimpleName("Util", classNames::add);
+        assertEquals(Collections.singletonList("com.example.Util"), classNames);
+
+        assertEquals(3, composed.size());
+        List<String> all = new ArrayList<>();
+        composed.addAllTo(all);
+        assertEquals(Arrays.asList("com.example.Main", "com.example.Util", "java.util.List"), all);
+        assertTrue(composed.contains("java.util.List"));
+        assertSame(module, ClassNameIndex.compose(Collections.singletonList(module)));
+    }
+
+    @Test
+    public void testJarIndexIsStored() throws Exception {
+        File jar = mFolder.newFile("library.jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String name : Arrays.asList("a/Foo.class", "a/Foo$Inner.class", "b/Bar.class",
+                    "META-INF/MANIFEST.MF")) {
+                out.putNextEntry(new JarEntry(name));
+                out.closeEntry();
+            }
+        }
+        File cacheDir = mFolder.newFolder("cache");
+        ClassNameIndex index = ClassNameIndex.forJar(jar, cacheDir);
+        assertEquals(Arrays.asList("b.Bar", "a.Foo"), matches(index, "", false));
+        assertEquals(1, cacheDir.list().length);
+        assertSame(index, ClassNameIndex.forJar(jar, cacheDir));
+    }
+
+    private static List<String> matches(ClassNameIndex index, String prefix,
+                                        boolean caseSensitive) {
+        List<String> classNames = new ArrayList<>();
+        index.forEachMatch(prefix, caseSensitive, classNames::add);
+        return classNames;
+    }
+}
@@ -0,0 +1,99 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Reads and writes the binary files that caches and indexes are persisted in. Each file
+ * starts with a magic number identifying its owner followed by the version of its format,
+ * a file with another magic number or version is treated as if it did not exist.
+ *
+ * <p>Files are written to a temporary file that is then moved over the previous one, so a
+ * reader never sees a partially written file even if the process is killed while writing.
+ */
+public final class BinaryStore {
+
+    public interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private BinaryStore() {
+
+    }
+
+    /**
+     * @return the result of the reader, or null if the file does not exist or has been
+     * written with another magic number or version
+     * @throws IOException if the file could not be read, such as when it is truncated
+     */
+    @Nullable
+    public static <T> T read(@NonNull File file, int magic, int version,
+                             @NonNull Reader<T> reader) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                return null;
+            }
+            return reader.read(in);
+        }
+    }
+
+    /**
+     * Replaces the contents of the file with the header and what the writer writes, the file
+     * is left untouched if the writer fails.
+     */
+    public static void write(@NonNull File file, int magic, int version,
+                             @NonNull Writer writer) throws IOException {
+        FileUtils.forceMkdirParent(file);
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(magic);
+                out.writeInt(version);
+                writer.write(out);
+            }
+            FileUtilsEx.moveAtomically(temp, file);
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Opens the file to append records to it, the header is written first if the file
+     * is empty.
+     */
+    @NonNull
+    public static DataOutputStream append(@NonNull File file, int magic, int version)
+            throws IOException {
+        boolean newFile = !file.exists() || file.length() == 0;
+        if (newFile) {
+            FileUtils.forceMkdirParent(file);
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (newFile) {
+            out.writeInt(magic);
+            out.writeInt(version);
+        }
+        return out;
+    }
+}
@@ -36,10 +36,15 @@ public class Cache<K, V> {
 
     private class Value {
         final V value;
-        final Instant created = Instant.now();
+        final Instant created;
 
         Value(V value) {
+            this(value, Instant.now());
+        }
+
+        Value(V value, Instant created) {
             this.value = value;
+            this.created = created;
         }
     }
 
@@ -90,6 +95,26 @@ public class Cache<K, V> {
         map.put(key, value);
     }
 
+    /**
+     * Loads a value that was created at the given time, used when restoring a cache
+     * that has been persisted to disk.
+     */
+    public void load(Path file, K k, V v, Instant created) {
+        Key<K> key = new Key<>(file, k);
+        map.put(key, new Value(v, created));
+    }
+
+    /**
+     * @return the time the value of this key was loaded
+     */
+    public Instant getCreated(Path file, K k) {
+        Key<K> key = new Key<>(file, k);
+        if (!map.containsKey(key)) {
+            throw new IllegalArgumentException(k + " is not in map " + map);
+        }
+        return map.get(key).created;
+    }
+
     public V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
         if (!map.containsKey(key)) {
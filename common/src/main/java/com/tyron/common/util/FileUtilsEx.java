@@ -2,6 +2,9 @@ package com.tyron.common.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class FileUtilsEx {
 
@@ -14,4 +17,21 @@ public class FileUtilsEx {
             throw new IOException("Unable to create file: " + file);
         }
     }
+
+    /**
+     * Moves the source to the target in a single step, so other processes see either the
+     * previous target or the source but never a missing or partially written target. A file
+     * replaces the target, a directory only replaces an empty directory.
+     *
+     * <p>The source should be in the same directory as the target, the move is not atomic
+     * if the file system does not support it.
+     */
+    public static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class HashUtils {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private HashUtils() {
+
+    }
+
+    /**
+     * @param algorithm the name of the algorithm, such as MD5, SHA-1 or SHA-256
+     * @throws IOException if the algorithm is not available
+     */
+    @NonNull
+    public static MessageDigest newDigest(@NonNull String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the digest of the contents of the file in lower case hex
+     */
+    @NonNull
+    public static String hash(@NonNull File file, @NonNull String algorithm)
+            throws IOException {
+        MessageDigest digest = newDigest(algorithm);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the bytes in lower case hex, two digits per byte
+     */
+    @NonNull
+    public static String toHex(@NonNull byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
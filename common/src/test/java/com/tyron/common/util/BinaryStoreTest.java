@@ -0,0 +1,85 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+public class BinaryStoreTest {
+
+    private static final int MAGIC = 0x54455354;
+    private static final int VERSION = 1;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        File file = new File(mFolder.getRoot(), "store/test.bin");
+        BinaryStore.write(file, MAGIC, VERSION, out -> out.writeUTF("first"));
+        BinaryStore.write(file, MAGIC, VERSION, out -> out.writeUTF("second"));
+
+        assertEquals("second", BinaryStore.read(file, MAGIC, VERSION, in -> in.readUTF()));
+        // only the file itself is left in the directory
+        assertArrayEquals(new String[]{"test.bin"}, file.getParentFile().list());
+    }
+
+    @Test
+    public void testOtherVersionIsNotRead() throws IOException {
+        File file = new File(mFolder.getRoot(), "test.bin");
+        assertNull(BinaryStore.read(file, MAGIC, VERSION, in -> "missing"));
+
+        BinaryStore.write(file, MAGIC, VERSION + 1, out -> out.writeUTF("newer"));
+        assertNull(BinaryStore.read(file, MAGIC, VERSION, in -> in.readUTF()));
+        assertNull(BinaryStore.read(file, MAGIC + 1, VERSION + 1, in -> in.readUTF()));
+    }
+
+    @Test
+    public void testFailedWriteKeepsPreviousFile() throws IOException {
+        File file = new File(mFolder.getRoot(), "test.bin");
+        BinaryStore.write(file, MAGIC, VERSION, out -> out.writeUTF("previous"));
+        try {
+            BinaryStore.write(file, MAGIC, VERSION, out -> {
+                out.writeUTF("partial");
+                throw new IOException("failed");
+            });
+            fail();
+        } catch (IOException expected) {
+            // the previous contents are kept
+        }
+
+        assertEquals("previous", BinaryStore.read(file, MAGIC, VERSION, in -> in.readUTF()));
+        assertArrayEquals(new String[]{"test.bin"}, mFolder.getRoot().list());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedFile() throws IOException {
+        File file = new File(mFolder.getRoot(), "test.bin");
+        BinaryStore.write(file, MAGIC, VERSION, out -> out.writeInt(1));
+        BinaryStore.read(file, MAGIC, VERSION, in -> in.readLong());
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        File file = new File(mFolder.getRoot(), "test.bin");
+        try (DataOutputStream out = BinaryStore.append(file, MAGIC, VERSION)) {
+            out.writeUTF("first");
+        }
+        try (DataOutputStream out = BinaryStore.append(file, MAGIC, VERSION)) {
+            out.writeUTF("second");
+        }
+
+        String contents = BinaryStore.read(file, MAGIC, VERSION,
+                in -> in.readUTF() + " " + in.readUTF());
+        assertEquals("first second", contents);
+    }
+}
@@ -0,0 +1,32 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class HashUtilsTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testToHex() throws IOException {
+        assertEquals("00ff7f80", HashUtils.toHex(new byte[]{0, -1, 127, -128}));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", HashUtils.toHex(
+                HashUtils.newDigest("SHA-1").digest("abc".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testHashFile() throws IOException {
+        File file = mFolder.newFile("test.txt");
+        Files.write(file.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", HashUtils.hash(file, "MD5"));
+    }
+}
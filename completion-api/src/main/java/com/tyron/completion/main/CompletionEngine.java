@@ -2,6 +2,7 @@ package com.tyron.completion.main;
 
 import android.util.Log;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.logging.IdeLog;
@@ -9,18 +10,26 @@ import com.tyron.completion.CompletionParameters;
 import com.tyron.completion.CompletionProvider;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
 import com.tyron.completion.progress.ProgressManager;
+import com.tyron.completion.progress.TaskStatistics;
 import com.tyron.editor.Editor;
 
 import java.io.File;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -38,7 +47,18 @@ public class CompletionEngine {
         return sInstance;
     }
 
+    private static final String TAG = "CompletionEngine";
+
+    /**
+     * Time after which the items of the providers that have finished are shown without
+     * waiting for the other providers
+     */
+    private static final long BUDGET_MILLIS = 300;
+
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
     private final Set<CompletionProvider> mCompletionProviders;
+    private final Map<String, TaskStatistics> mProviderStatistics = new ConcurrentHashMap<>();
 
     public CompletionEngine() {
         mCompletionProviders = new HashSet<>();
@@ -67,12 +87,8 @@ public class CompletionEngine {
                                    int line,
                                    int column,
                                    long index) {
-        if (project.isCompiling()) {
-            return CompletionList.EMPTY;
-        }
-
-        CompletionList list = new CompletionList();
-        list.items = new ArrayList<>();
+        // a running build clears and indexes the module again
+        module = project.getSnapshot(module);
 
         CompletionParameters parameters = CompletionParameters.builder()
                 .setProject(project)
@@ -88,16 +104,127 @@ public class CompletionEngine {
 
         Instant now = Instant.now();
         List<CompletionProvider> providers = CompletionProvider.forParameters(parameters);
-        for (CompletionProvider provider : providers) {
-            CompletionList complete = provider.complete(parameters);
-            if (complete != null) {
-                list.items.addAll(complete.items);
+        CompletionList list;
+        if (providers.size() == 1) {
+            list = completeWith(providers.get(0), parameters, System.nanoTime());
+            if (list == null) {
+                list = new CompletionList();
+            } else {
+                list = getTopItems(list);
             }
+        } else {
+            list = completeConcurrently(providers, parameters);
         }
         logger.info("Completions took " + Duration.between(now, Instant.now()).toMillis() + " ms");
         return list;
     }
 
+    /**
+     * Runs the providers at the same time and merges their results as they finish. Once
+     * the budget of the request has been spent, the items found so far are returned and the
+     * providers that are still running are canceled.
+     */
+    @VisibleForTesting
+    CompletionList completeConcurrently(List<CompletionProvider> providers,
+                                        CompletionParameters parameters) {
+        BlockingQueue<CompletionList> results = new LinkedBlockingQueue<>();
+        List<ProgressIndicator> indicators = new ArrayList<>();
+        for (CompletionProvider provider : providers) {
+            ProgressIndicator indicator = new ProgressIndicator();
+            indicators.add(indicator);
+            long queued = System.nanoTime();
+            // keyed by the file and the provider so a request that is still running for an
+            // older prefix of the same file is canceled instead of taking a thread of the lane,
+            // while the completion of other editors keeps running
+            Object key = Arrays.asList(parameters.getFile(), provider);
+            ProgressManager.getInstance().runAsync(key, ProgressManager.Priority.INTERACTIVE, () -> {
+                CompletionList result = null;
+                try {
+                    result = completeWith(provider, parameters, queued);
+                } catch (ProcessCanceledException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Completion provider " + provider.getClass().getName() + " failed", e);
+                } finally {
+                    results.add(result != null ? result : CompletionList.EMPTY);
+                }
+            }, it -> {}, indicator);
+        }
+
+        CompletionList.TopItems items = new CompletionList.TopItems(CompletionList.MAX_ITEMS);
+        boolean incomplete = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BUDGET_MILLIS);
+        try {
+            int pending = providers.size();
+            while (pending > 0) {
+                ProgressManager.checkCanceled();
+                CompletionList result = results.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    pending--;
+                    items.addAll(result.items);
+                    incomplete |= result.isIncomplete;
+                } else if (items.size() > 0 && System.nanoTime() > deadline) {
+                    // show what has been found so far, the next request asks the
+                    // providers again
+                    incomplete = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (ProgressIndicator indicator : indicators) {
+                indicator.cancel();
+            }
+        }
+
+        CompletionList list = new CompletionList();
+        list.isIncomplete = incomplete || items.isTruncated();
+        list.items = items.toSortedList();
+        return list;
+    }
+
+    /**
+     * Returns a list with the best {@link CompletionList#MAX_ITEMS} items of the given list in
+     * order, the lists of the providers are not sorted. The list of the provider is left
+     * untouched since providers filter it again as the user types, the items that are cut
+     * here may match the longer prefix.
+     */
+    private static CompletionList getTopItems(CompletionList list) {
+        CompletionList.TopItems items = new CompletionList.TopItems(CompletionList.MAX_ITEMS);
+        items.addAll(list.items);
+        CompletionList topItems = new CompletionList();
+        topItems.isIncomplete = list.isIncomplete || items.isTruncated();
+        topItems.items = items.toSortedList();
+        return topItems;
+    }
+
+    private CompletionList completeWith(CompletionProvider provider,
+                                        CompletionParameters parameters,
+                                        long queued) {
+        long started = System.nanoTime();
+        try {
+            return provider.complete(parameters);
+        } finally {
+            long runNanos = System.nanoTime() - started;
+            getStatistics(provider).record(started - queued, runNanos);
+            logger.info(provider.getClass().getSimpleName() + " took "
+                        + TimeUnit.NANOSECONDS.toMillis(runNanos) + " ms");
+        }
+    }
+
+    private TaskStatistics getStatistics(CompletionProvider provider) {
+        return mProviderStatistics.computeIfAbsent(provider.getClass().getName(),
+                                                   it -> new TaskStatistics());
+    }
+
+    /**
+     * @return the time spent by each completion provider, keyed by its class name
+     */
+    public Map<String, TaskStatistics> getProviderStatistics() {
+        return Collections.unmodifiableMap(mProviderStatistics);
+    }
+
     public void clear() {
         mCompletionProviders.clear();
     }
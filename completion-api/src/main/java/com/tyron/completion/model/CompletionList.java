@@ -15,6 +15,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Represents a list of completion items to be return from a {@link CompletionProvider}
@@ -25,6 +26,13 @@ public class CompletionList {
     public static final Ordering<CompletionItem> ITEM_ORDERING =
             Ordering.from(CompletionItem.COMPARATOR);
 
+    /**
+     * The maximum number of items shown to the user, the completion engine only keeps the best
+     * ones according to {@link #ITEM_ORDERING}. The lists of the providers are not cut so they
+     * can still be filtered as the user types.
+     */
+    public static final int MAX_ITEMS = 150;
+
     public static Builder builder(String prefix) {
         return new Builder(prefix);
     }
@@ -125,12 +133,69 @@ public class CompletionList {
             return incomplete;
         }
 
-        @SuppressWarnings("NewApi")
+        /**
+         * The items are kept in the order they were added, the completion engine sorts only
+         * the items that are shown.
+         */
         public CompletionList build() {
             CompletionList list = new CompletionList();
             list.isIncomplete = this.incomplete;
-            list.items = ITEM_ORDERING.immutableSortedCopy(items);
+            list.items = ImmutableList.copyOf(items);
             return list;
         }
     }
+
+    /**
+     * Keeps the best items added to it according to {@link #ITEM_ORDERING}. The items are kept
+     * in a heap bounded by the limit so only the items that are kept need to be sorted.
+     */
+    public static class TopItems {
+
+        private final int limit;
+
+        /**
+         * The worst of the kept items is at the head
+         */
+        private final PriorityQueue<CompletionItem> heap;
+
+        private boolean truncated;
+
+        public TopItems(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(limit + 1, ITEM_ORDERING.reverse());
+        }
+
+        public void add(CompletionItem item) {
+            if (heap.size() < limit) {
+                heap.add(item);
+                return;
+            }
+            truncated = true;
+            if (ITEM_ORDERING.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        public void addAll(Collection<CompletionItem> items) {
+            for (CompletionItem item : items) {
+                add(item);
+            }
+        }
+
+        /**
+         * @return whether items have been dropped because the limit was reached
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public int size() {
+            return heap.size();
+        }
+
+        public List<CompletionItem> toSortedList() {
+            return ITEM_ORDERING.immutableSortedCopy(heap);
+        }
+    }
 }
@@ -8,17 +8,46 @@ import com.google.common.util.concurrent.AsyncCallable;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class ProgressManager {
 
+    /**
+     * The lanes tasks are scheduled in. Each lane has its own threads, so a lane that is busy
+     * with long running tasks never delays the tasks of the lanes above it.
+     */
+    public enum Priority {
+        /**
+         * Requests the user is waiting for, such as completion and hover
+         */
+        INTERACTIVE(2, Thread.NORM_PRIORITY),
+        /**
+         * Work whose results are shown without being requested, such as diagnostics
+         */
+        NORMAL(2, Thread.NORM_PRIORITY - 1),
+        /**
+         * Long running work such as indexing and builds
+         */
+        BACKGROUND(4, Thread.MIN_PRIORITY);
+
+        private final int mThreadCount;
+        private final int mThreadPriority;
+
+        Priority(int threadCount, int threadPriority) {
+            mThreadCount = threadCount;
+            mThreadPriority = threadPriority;
+        }
+    }
+
     private static ProgressManager sInstance = null;
 
     public static ProgressManager getInstance() {
@@ -32,13 +61,67 @@ public class ProgressManager {
         getInstance().doCheckCanceled();
     }
 
-    private final ExecutorService mPool = Executors.newFixedThreadPool(8);
+    private static final String TAG = "ProgressManager";
+
+    /**
+     * Tasks that waited longer than this in their queue are logged
+     */
+    private static final long SLOW_WAIT_MILLIS = 500;
+
+    private final Map<Priority, ExecutorService> mPools = new EnumMap<>(Priority.class);
+    private final Map<Priority, TaskStatistics> mStatistics = new EnumMap<>(Priority.class);
+
+    /**
+     * Runs the tasks that are not scheduled in a lane. It has no bound since such tasks may
+     * wait for other tasks they have scheduled, they must not take the threads of a lane.
+     */
+    private final ExecutorService mDefaultPool = createDefaultPool();
     private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     private final Map<Thread, ProgressIndicator> mThreadToIndicator;
 
+    /**
+     * The indicator of the most recent task of each key, see
+     * {@link #runAsync(Object, Priority, Runnable, Consumer, ProgressIndicator)}
+     */
+    private final Map<Object, ProgressIndicator> mKeyToIndicator;
+
     public ProgressManager() {
-        mThreadToIndicator = new HashMap<>();
+        mThreadToIndicator = new ConcurrentHashMap<>();
+        mKeyToIndicator = new ConcurrentHashMap<>();
+        for (Priority priority : Priority.values()) {
+            mPools.put(priority, createPool(priority));
+            mStatistics.put(priority, new TaskStatistics());
+        }
+    }
+
+    private static ExecutorService createPool(Priority priority) {
+        AtomicInteger threadCount = new AtomicInteger();
+        String name = "ProgressManager-" + priority.name().toLowerCase() + "-";
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(priority.mThreadCount,
+                priority.mThreadCount, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + threadCount.incrementAndGet());
+                    thread.setPriority(priority.mThreadPriority);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ExecutorService createDefaultPool() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> new Thread(runnable,
+                        "ProgressManager-default-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * @return the time the tasks of the given lane have spent waiting and running
+     */
+    public TaskStatistics getStatistics(Priority priority) {
+        return mStatistics.get(priority);
     }
 
     /**
@@ -52,17 +135,75 @@ public class ProgressManager {
     public void runAsync(Runnable runnable,
                          Consumer<ProgressIndicator> cancelConsumer,
                          ProgressIndicator indicator) {
-        mPool.execute(() -> {
+        mDefaultPool.execute(cancelable(null, runnable, cancelConsumer, indicator));
+    }
+
+    /**
+     * Run a cancelable asynchronous task in the given lane.
+     *
+     * @param key            Identifies the request the task computes, such as the completion
+     *                       of an editor. A task that has not finished is canceled once
+     *                       another task with the same key is scheduled. May be null.
+     * @param priority       The lane to run the task in
+     * @param runnable       The task to run
+     * @param cancelConsumer The code to run when this task has been canceled,
+     *                       called from background thread
+     * @param indicator      The class used to control this task's execution
+     */
+    public void runAsync(Object key,
+                         Priority priority,
+                         Runnable runnable,
+                         Consumer<ProgressIndicator> cancelConsumer,
+                         ProgressIndicator indicator) {
+        if (key != null) {
+            ProgressIndicator superseded = mKeyToIndicator.put(key, indicator);
+            if (superseded != null) {
+                superseded.cancel();
+            }
+        }
+        execute(priority, cancelable(key, runnable, cancelConsumer, indicator));
+    }
+
+    private Runnable cancelable(Object key,
+                                Runnable runnable,
+                                Consumer<ProgressIndicator> cancelConsumer,
+                                ProgressIndicator indicator) {
+        return () -> {
             Thread currentThread = Thread.currentThread();
             try {
                 mThreadToIndicator.put(currentThread, indicator);
                 indicator.setRunning(true);
+                if (indicator.isCanceled()) {
+                    // canceled before it started running
+                    throw new ProcessCanceledException();
+                }
                 runnable.run();
             } catch (ProcessCanceledException e) {
                 cancelConsumer.accept(indicator);
             } finally {
                 indicator.setRunning(false);
                 mThreadToIndicator.remove(currentThread);
+                if (key != null) {
+                    mKeyToIndicator.remove(key, indicator);
+                }
+            }
+        };
+    }
+
+    private void execute(Priority priority, Runnable runnable) {
+        long queued = System.nanoTime();
+        mPools.get(priority).execute(() -> {
+            long started = System.nanoTime();
+            try {
+                runnable.run();
+            } finally {
+                long waitNanos = started - queued;
+                mStatistics.get(priority).record(waitNanos, System.nanoTime() - started);
+                if (TimeUnit.NANOSECONDS.toMillis(waitNanos) > SLOW_WAIT_MILLIS) {
+                    Log.w(TAG, "Task waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos)
+                               + " ms in the " + priority + " lane, "
+                               + mStatistics.get(priority));
+                }
             }
         });
     }
@@ -95,11 +236,21 @@ public class ProgressManager {
      * @param runnable The code to run
      */
     public void runNonCancelableAsync(Runnable runnable) {
-        mPool.execute(runnable);
+        mDefaultPool.execute(runnable);
+    }
+
+    /**
+     * Run an asynchronous operation that is not cancelable in the given lane.
+     *
+     * @param priority The lane to run the operation in
+     * @param runnable The code to run
+     */
+    public void runNonCancelableAsync(Priority priority, Runnable runnable) {
+        execute(priority, runnable);
     }
 
     public <T> ListenableFuture<T> computeNonCancelableAsync(AsyncCallable<T> callable) {
-        return Futures.submitAsync(callable, mPool);
+        return Futures.submitAsync(callable, mDefaultPool);
     }
 
     /**
@@ -125,6 +276,9 @@ public class ProgressManager {
     }
 
     public void cancelThread(Thread thread) {
+        if (thread == null) {
+            return;
+        }
         ProgressIndicator indicator = mThreadToIndicator.get(thread);
         if (indicator == null) {
             indicator = new ProgressIndicator();
@@ -0,0 +1,60 @@
+package com.tyron.completion.progress;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time spent by tasks waiting in a queue and running, such as the tasks of a
+ * {@link ProgressManager.Priority} lane. Used to find lanes that are saturated and slow tasks.
+ */
+public class TaskStatistics {
+
+    private final AtomicLong mTaskCount = new AtomicLong();
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+    private final AtomicLong mTotalRunNanos = new AtomicLong();
+
+    public void record(long waitNanos, long runNanos) {
+        mTaskCount.incrementAndGet();
+        mTotalWaitNanos.addAndGet(waitNanos);
+        mTotalRunNanos.addAndGet(runNanos);
+        long max = mMaxWaitNanos.get();
+        while (waitNanos > max && !mMaxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = mMaxWaitNanos.get();
+        }
+    }
+
+    public long getTaskCount() {
+        return mTaskCount.get();
+    }
+
+    public long getAverageWaitMillis() {
+        return average(mTotalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mMaxWaitNanos.get());
+    }
+
+    public long getAverageRunMillis() {
+        return average(mTotalRunNanos.get());
+    }
+
+    private long average(long totalNanos) {
+        long count = mTaskCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos / count);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskStatistics{" +
+               "tasks=" + getTaskCount() +
+               ", averageWait=" + getAverageWaitMillis() + "ms" +
+               ", maxWait=" + getMaxWaitMillis() + "ms" +
+               ", averageRun=" + getAverageRunMillis() + "ms" +
+               '}';
+    }
+}
@@ -0,0 +1,129 @@
+package com.tyron.completion.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.CompletionParameters;
+import com.tyron.completion.CompletionProvider;
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompletionEngineTest {
+
+    private final CompletionEngine engine = new CompletionEngine();
+    private final CompletionParameters parameters = CompletionParameters.builder()
+            .setFile(new File("Main.java"))
+            .setContents("")
+            .setPrefix("")
+            .build();
+
+    @Test
+    public void testResultsAreMerged() {
+        CompletionList list = engine.completeConcurrently(Arrays.asList(
+                provider("b", "d"),
+                provider("a", "c")), parameters);
+
+        assertFalse(list.isIncomplete());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), labels(list));
+    }
+
+    @Test
+    public void testMergedResultsAreCut() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        for (int i = 0; i < CompletionList.MAX_ITEMS; i++) {
+            first.add(String.format("a%03d", i));
+            second.add(String.format("b%03d", i));
+        }
+        CompletionList list = engine.completeConcurrently(Arrays.asList(
+                provider(second.toArray(new String[0])),
+                provider(first.toArray(new String[0]))), parameters);
+
+        assertTrue(list.isIncomplete());
+        assertEquals(first, labels(list));
+    }
+
+    @Test
+    public void testFailingProviderIsSkipped() {
+        CompletionProvider failing = new TestProvider() {
+            @Override
+            public CompletionList complete(CompletionParameters parameters) {
+                throw new IllegalStateException("failed");
+            }
+        };
+        CompletionList list = engine.completeConcurrently(
+                Arrays.asList(failing, provider("a")), parameters);
+
+        assertEquals(Arrays.asList("a"), labels(list));
+    }
+
+    @Test
+    public void testSlowProviderIsCanceledAfterBudget() throws InterruptedException {
+        CountDownLatch canceled = new CountDownLatch(1);
+        CompletionProvider slow = new TestProvider() {
+            @Override
+            public CompletionList complete(CompletionParameters parameters) {
+                try {
+                    while (true) {
+                        ProgressManager.checkCanceled();
+                        Thread.sleep(5);
+                    }
+                } catch (ProcessCanceledException e) {
+                    canceled.countDown();
+                    throw e;
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        CompletionList list = engine.completeConcurrently(
+                Arrays.asList(slow, provider("a")), parameters);
+
+        assertTrue(list.isIncomplete());
+        assertEquals(Arrays.asList("a"), labels(list));
+        assertTrue(canceled.await(5, TimeUnit.SECONDS));
+    }
+
+    private static CompletionProvider provider(String... labels) {
+        return new TestProvider() {
+            @Override
+            public CompletionList complete(CompletionParameters parameters) {
+                CompletionList.Builder builder = CompletionList.builder(parameters.getPrefix());
+                for (String label : labels) {
+                    builder.addItem(CompletionItem.create(label, "", label));
+                }
+                return builder.build();
+            }
+        };
+    }
+
+    private static List<String> labels(CompletionList list) {
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : list.items) {
+            labels.add(item.label);
+        }
+        return labels;
+    }
+
+    private abstract static class TestProvider extends CompletionProvider {
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.tyron.completion.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompletionListTest {
+
+    @Test
+    public void testTopItemsKeepsTheBestItems() {
+        CompletionList.TopItems topItems = new CompletionList.TopItems(3);
+        for (String label : new String[]{"e", "b", "d", "a", "c"}) {
+            topItems.add(item(label));
+        }
+
+        assertTrue(topItems.isTruncated());
+        assertEquals(3, topItems.size());
+        assertEquals(labels(topItems.toSortedList()), list("a", "b", "c"));
+    }
+
+    @Test
+    public void testTopItemsBelowLimit() {
+        CompletionList.TopItems topItems = new CompletionList.TopItems(3);
+        topItems.add(item("b"));
+        topItems.add(item("a"));
+
+        assertFalse(topItems.isTruncated());
+        assertEquals(labels(topItems.toSortedList()), list("a", "b"));
+    }
+
+    @Test
+    public void testBuilderKeepsEveryItem() {
+        CompletionList.Builder builder = CompletionList.builder("");
+        for (int i = 0; i < CompletionList.MAX_ITEMS * 2; i++) {
+            builder.addItem(item(String.format("item%03d", i)));
+        }
+        CompletionList list = builder.build();
+        assertEquals(CompletionList.MAX_ITEMS * 2, list.items.size());
+        assertFalse(list.isIncomplete());
+    }
+
+    @Test
+    public void testBuilderDoesNotSort() {
+        CompletionList list = CompletionList.builder("")
+                .addItem(item("b"))
+                .addItem(item("a"))
+                .build();
+        assertEquals(list("b", "a"), labels(list.items));
+    }
+
+    @Test
+    public void testCopyFindsItemsOutsideTheTopItems() {
+        CompletionList.Builder builder = CompletionList.builder("");
+        for (int i = 0; i < CompletionList.MAX_ITEMS; i++) {
+            builder.addItem(item(String.format("a%03d", i)));
+        }
+        // sorted after every item above
+        builder.addItem(item("zebra"));
+
+        CompletionList copy = CompletionList.copy(builder.build(), "z");
+        assertEquals(list("zebra"), labels(copy.items));
+    }
+
+    private static CompletionItem item(String label) {
+        return CompletionItem.create(label, "", label);
+    }
+
+    private static List<String> labels(List<CompletionItem> items) {
+        List<String> labels = new ArrayList<>();
+        for (CompletionItem item : items) {
+            labels.add(item.label);
+        }
+        return labels;
+    }
+
+    private static List<String> list(String... labels) {
+        List<String> list = new ArrayList<>();
+        for (String label : labels) {
+            list.add(label);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,140 @@
+package com.tyron.completion.progress;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProgressManagerTest {
+
+    private final ProgressManager manager = new ProgressManager();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void testBusyBackgroundLaneDoesNotDelayInteractiveTasks() throws Exception {
+        // more tasks than the background lane has threads
+        for (int i = 0; i < 8; i++) {
+            manager.runNonCancelableAsync(ProgressManager.Priority.BACKGROUND, this::await);
+        }
+
+        CountDownLatch ran = new CountDownLatch(1);
+        manager.runAsync(null, ProgressManager.Priority.INTERACTIVE, ran::countDown, it -> {},
+                new ProgressIndicator());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTasksRunInTheirLane() throws Exception {
+        AtomicReference<String> unprioritized = new AtomicReference<>();
+        AtomicReference<String> background = new AtomicReference<>();
+        CountDownLatch ran = new CountDownLatch(2);
+        manager.runNonCancelableAsync(() -> {
+            unprioritized.set(Thread.currentThread().getName());
+            ran.countDown();
+        });
+        manager.runNonCancelableAsync(ProgressManager.Priority.BACKGROUND, () -> {
+            background.set(Thread.currentThread().getName());
+            ran.countDown();
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(unprioritized.get(),
+                unprioritized.get().startsWith("ProgressManager-default-"));
+        assertTrue(background.get(), background.get().startsWith("ProgressManager-background-"));
+    }
+
+    @Test
+    public void testUnprioritizedTasksDoNotTakeTheNormalLane() throws Exception {
+        // more blocked tasks than the normal lane has threads
+        for (int i = 0; i < 4; i++) {
+            manager.runNonCancelableAsync(this::await);
+        }
+
+        CountDownLatch ran = new CountDownLatch(1);
+        manager.runNonCancelableAsync(ProgressManager.Priority.NORMAL, ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTaskWithTheSameKeyCancelsRunningTask() throws Exception {
+        Object key = new Object();
+        ProgressIndicator first = new ProgressIndicator();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch canceled = new CountDownLatch(1);
+        manager.runAsync(key, ProgressManager.Priority.INTERACTIVE, () -> {
+            started.countDown();
+            while (!first.isCanceled()) {
+                Thread.yield();
+            }
+            throw new ProcessCanceledException();
+        }, it -> canceled.countDown(), first);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        ProgressIndicator second = new ProgressIndicator();
+        CountDownLatch ran = new CountDownLatch(1);
+        manager.runAsync(key, ProgressManager.Priority.INTERACTIVE, ran::countDown, it -> {},
+                second);
+
+        assertTrue(canceled.await(5, TimeUnit.SECONDS));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertFalse(second.isCanceled());
+    }
+
+    @Test
+    public void testSupersededTaskDoesNotRun() throws Exception {
+        // occupy every thread of the lane so the keyed tasks wait in the queue
+        for (int i = 0; i < 2; i++) {
+            manager.runNonCancelableAsync(ProgressManager.Priority.INTERACTIVE, this::await);
+        }
+
+        Object key = new Object();
+        AtomicBoolean firstRan = new AtomicBoolean();
+        CountDownLatch firstCanceled = new CountDownLatch(1);
+        manager.runAsync(key, ProgressManager.Priority.INTERACTIVE, () -> firstRan.set(true),
+                it -> firstCanceled.countDown(), new ProgressIndicator());
+
+        CountDownLatch secondRan = new CountDownLatch(1);
+        manager.runAsync(key, ProgressManager.Priority.INTERACTIVE, secondRan::countDown,
+                it -> {}, new ProgressIndicator());
+        release.countDown();
+
+        assertTrue(secondRan.await(5, TimeUnit.SECONDS));
+        assertTrue(firstCanceled.await(5, TimeUnit.SECONDS));
+        assertFalse(firstRan.get());
+    }
+
+    @Test
+    public void testTasksWithDifferentKeysAreNotCanceled() throws Exception {
+        CountDownLatch ran = new CountDownLatch(2);
+        ProgressIndicator first = new ProgressIndicator();
+        ProgressIndicator second = new ProgressIndicator();
+        manager.runAsync("first", ProgressManager.Priority.INTERACTIVE, ran::countDown,
+                it -> {}, first);
+        manager.runAsync("second", ProgressManager.Priority.INTERACTIVE, ran::countDown,
+                it -> {}, second);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertFalse(first.isCanceled());
+        assertFalse(second.isCanceled());
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
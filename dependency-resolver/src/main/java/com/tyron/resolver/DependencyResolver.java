@@ -1,27 +1,47 @@
 package com.tyron.resolver;
 
-import android.text.TextUtils;
-
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.RepositoryManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DependencyResolver {
 
+    /**
+     * The maximum number of pom files that are fetched at the same time
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 8;
+
     private final RepositoryManager repository;
     private final Map<Pom, String> resolvedPoms;
 
+    /**
+     * Pom files that have been fetched by {@link #prefetch(List)}, keyed by the
+     * declaration string of the dependency. A future that completes with null means
+     * the pom was not found on any repository.
+     */
+    private final Map<String, Future<Pom>> fetchedPoms;
+
     private ResolveListener mListener;
 
     public DependencyResolver(RepositoryManager repository) {
         this.repository = repository;
         this.resolvedPoms = new HashMap<>();
+        this.fetchedPoms = new ConcurrentHashMap<>();
     }
 
     public void setResolveListener(ResolveListener listener) {
@@ -59,12 +79,100 @@ public class DependencyResolver {
      * the conflicting libraries
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
-        for (Pom pom : declaredDependencies) {
-            resolve(pom);
+        prefetch(declaredDependencies);
+        try {
+            for (Pom pom : declaredDependencies) {
+                resolve(pom);
+            }
+        } finally {
+            fetchedPoms.clear();
         }
         return new ArrayList<>(resolvedPoms.keySet());
     }
 
+    /**
+     * Fetches the pom files of the whole dependency graph breadth first so the round trips
+     * to the repositories happen in parallel. The conflict resolution in {@link #resolve(Pom)}
+     * still runs on the calling thread using the fetched poms, so the result is the
+     * same as resolving them one at a time.
+     */
+    private void prefetch(List<Pom> declaredDependencies) {
+        ExecutorService service = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+        try {
+            // the excludes of a declared dependency only apply to its own transitive
+            // dependencies, so a pom is expanded again when it is reached with other excludes
+            Map<String, Set<Set<Dependency>>> visited = new HashMap<>();
+            List<PathEntry> level = new ArrayList<>();
+            for (Pom pom : declaredDependencies) {
+                level.add(new PathEntry(CompletableFuture.completedFuture(pom),
+                        new HashSet<>(pom.getExcludes())));
+            }
+            while (!level.isEmpty()) {
+                List<PathEntry> nextLevel = new ArrayList<>();
+                for (PathEntry entry : level) {
+                    Pom pom = getFetchedPom(entry.pom);
+                    if (pom == null) {
+                        continue;
+                    }
+                    if (!visited.computeIfAbsent(pom.getDeclarationString(),
+                            declaration -> new HashSet<>()).add(entry.excludes)) {
+                        continue;
+                    }
+                    for (Dependency dependency : getDependencies(pom, entry.excludes)) {
+                        Future<Pom> request = fetchedPoms.computeIfAbsent(dependency.toString(),
+                                declaration -> CompletableFuture.supplyAsync(
+                                        () -> repository.getPom(declaration), service));
+                        nextLevel.add(new PathEntry(request, entry.excludes));
+                    }
+                }
+                level = nextLevel;
+            }
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * A pom being fetched along with the excludes of the path it was reached by
+     */
+    private static class PathEntry {
+
+        private final Future<Pom> pom;
+        private final Set<Dependency> excludes;
+
+        PathEntry(Future<Pom> pom, Set<Dependency> excludes) {
+            this.pom = pom;
+            this.excludes = excludes;
+        }
+    }
+
+    private Pom getFetchedPom(Future<Pom> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // it will be fetched again when the graph is resolved
+            return null;
+        }
+    }
+
+    private Pom getPom(Dependency dependency) {
+        Future<Pom> fetched = fetchedPoms.get(dependency.toString());
+        if (fetched != null) {
+            try {
+                return fetched.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                // fetch it again below
+            }
+        }
+        return repository.getPom(dependency.toString());
+    }
+
     private void resolve(Pom pom) {
         if (resolvedPoms.containsKey(pom)) {
             if (pom.isUserDefined()) {
@@ -90,6 +198,27 @@ public class DependencyResolver {
 
         List<Dependency> excludes = pom.getExcludes();
 
+        for (Dependency dependency : getDependencies(pom, excludes)) {
+            Pom resolvedPom = getPom(dependency);
+            if (resolvedPom == null) {
+                if (mListener != null) {
+                    mListener.onFailure("Failed to resolve " + dependency);
+                }
+                continue;
+            }
+            if (!resolvedPom.equals(pom)) {
+                resolvedPom.addExcludes(excludes);
+                resolve(resolvedPom);
+            }
+        }
+        resolvedPoms.put(pom, pom.getVersionName());
+    }
+
+    /**
+     * @return the dependencies of the pom that are needed at runtime and are not excluded
+     */
+    private static List<Dependency> getDependencies(Pom pom, Collection<Dependency> excludes) {
+        List<Dependency> dependencies = new ArrayList<>();
         for (Dependency dependency : pom.getDependencies()) {
             if ("test".equals(dependency.getScope())) {
                 continue;
@@ -102,29 +231,17 @@ public class DependencyResolver {
                 if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
                     return false;
                 }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
+                if (ex.getVersionName().isEmpty()) {
                     return true;
                 }
                 return ex.getVersionName().equals(dependency.getVersionName());
             });
 
-            if (excluded) {
-                continue;
-            }
-
-            Pom resolvedPom = repository.getPom(dependency.toString());
-            if (resolvedPom == null) {
-                if (mListener != null) {
-                    mListener.onFailure("Failed to resolve " + dependency);
-                }
-                continue;
-            }
-            if (!resolvedPom.equals(pom)) {
-                resolvedPom.addExcludes(excludes);
-                resolve(resolvedPom);
+            if (!excluded) {
+                dependencies.add(dependency);
             }
         }
-        resolvedPoms.put(pom, pom.getVersionName());
+        return dependencies;
     }
 
     private int getHigherVersion(String firstVersion, String secondVersion) {
@@ -91,6 +91,13 @@ public class LocalRepository extends DefaultRepository {
         return file;
     }
 
+    /**
+     * @return the location of the file in this repository, whether it exists or not
+     */
+    File getLocation(String path) {
+        return new File(getRootFile(), path);
+    }
+
     private File getRootFile() {
         return new File(getCacheDirectory(), mName);
     }
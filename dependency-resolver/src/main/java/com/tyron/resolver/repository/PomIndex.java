@@ -0,0 +1,178 @@
+package com.tyron.resolver.repository;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.common.util.BinaryStore;
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent index of parsed pom files keyed by {@code groupId:artifactId:version}.
+ *
+ * <p>The index is an append only file, each pom that is parsed is appended as a single
+ * record so adding an entry does not rewrite the whole index. Only the index is read
+ * at startup, the pom files themselves are parsed lazily when they are not indexed yet.
+ */
+public class PomIndex {
+
+    private static final int MAGIC = 0x504f4d49;
+    private static final int VERSION = 1;
+
+    private final File mFile;
+    private final Map<String, Pom> mPoms = new ConcurrentHashMap<>();
+
+    public PomIndex(@NonNull File file) {
+        mFile = file;
+    }
+
+    @Nullable
+    public Pom get(String groupId, String artifactId, String version) {
+        return mPoms.get(getKey(groupId, artifactId, version));
+    }
+
+    public int size() {
+        return mPoms.size();
+    }
+
+    /**
+     * Adds the pom to this index and appends it to the index file.
+     */
+    public synchronized void put(@NonNull Pom pom) throws IOException {
+        String key = getKey(pom.getGroupId(), pom.getArtifactId(), pom.getVersionName());
+        if (mPoms.putIfAbsent(key, pom) != null) {
+            return;
+        }
+
+        try (DataOutputStream out = BinaryStore.append(mFile, MAGIC, VERSION)) {
+            writePom(out, pom);
+        }
+    }
+
+    /**
+     * Reads the index file, replacing the current entries of this index. A record that was
+     * only partially written is discarded and the index file is rewritten without it.
+     */
+    public synchronized void load() throws IOException {
+        mPoms.clear();
+        if (!mFile.exists()) {
+            return;
+        }
+
+        boolean truncated;
+        try {
+            truncated = BinaryStore.read(mFile, MAGIC, VERSION, in -> {
+                while (hasNext(in)) {
+                    Pom pom = readPom(in);
+                    mPoms.put(getKey(pom.getGroupId(), pom.getArtifactId(),
+                            pom.getVersionName()), pom);
+                }
+                return true;
+            }) == null;
+        } catch (EOFException e) {
+            // the previous write was interrupted, the records that were
+            // fully written are still valid
+            truncated = true;
+        }
+
+        if (truncated) {
+            rewrite();
+        }
+    }
+
+    private static boolean hasNext(DataInputStream in) throws IOException {
+        in.mark(1);
+        if (in.read() == -1) {
+            return false;
+        }
+        in.reset();
+        return true;
+    }
+
+    private void rewrite() throws IOException {
+        BinaryStore.write(mFile, MAGIC, VERSION, out -> {
+            for (Pom pom : mPoms.values()) {
+                writePom(out, pom);
+            }
+        });
+    }
+
+    private static String getKey(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    private static void writePom(DataOutputStream out, Pom pom) throws IOException {
+        out.writeUTF(pom.getGroupId());
+        out.writeUTF(pom.getArtifactId());
+        out.writeUTF(pom.getVersionName());
+        writeNullable(out, pom.getPackaging());
+
+        List<Dependency> dependencies = pom.getDependencies();
+        out.writeInt(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            writeDependency(out, dependency);
+            out.writeInt(dependency.getExcludes().size());
+            for (Dependency exclude : dependency.getExcludes()) {
+                writeDependency(out, exclude);
+            }
+        }
+    }
+
+    private static Pom readPom(DataInputStream in) throws IOException {
+        Pom pom = Pom.valueOf(in.readUTF(), in.readUTF(), in.readUTF());
+        pom.setPackaging(readNullable(in));
+
+        int dependencyCount = in.readInt();
+        List<Dependency> dependencies = new ArrayList<>(dependencyCount);
+        for (int i = 0; i < dependencyCount; i++) {
+            Dependency dependency = readDependency(in);
+            int excludeCount = in.readInt();
+            for (int j = 0; j < excludeCount; j++) {
+                dependency.addExclude(readDependency(in));
+            }
+            dependencies.add(dependency);
+        }
+        pom.setDependencies(dependencies);
+        return pom;
+    }
+
+    private static void writeDependency(DataOutputStream out, Dependency dependency)
+            throws IOException {
+        writeNullable(out, dependency.getGroupId());
+        writeNullable(out, dependency.getArtifactId());
+        writeNullable(out, dependency.getVersionName());
+        writeNullable(out, dependency.getScope());
+        writeNullable(out, dependency.getType());
+    }
+
+    private static Dependency readDependency(DataInputStream in) throws IOException {
+        Dependency dependency = new Dependency(readNullable(in), readNullable(in),
+                readNullable(in));
+        dependency.setScope(readNullable(in));
+        dependency.setType(readNullable(in));
+        return dependency;
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String string)
+            throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -3,15 +3,42 @@ package com.tyron.resolver.repository;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.tyron.common.util.FileUtilsEx;
+import com.tyron.common.util.HashUtils;
+
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 public class RemoteRepository extends DefaultRepository {
 
+    /**
+     * The maximum number of files that are downloaded from this repository at the same time
+     */
+    private static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
+    private static final int TIMEOUT = 30_000;
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final Semaphore mDownloads = new Semaphore(MAX_CONCURRENT_DOWNLOADS);
+    private final Map<String, Object> mLocks = new ConcurrentHashMap<>();
+
     private final String mName;
     private final String mUrl;
 
@@ -69,17 +96,125 @@ public class RemoteRepository extends DefaultRepository {
     }
 
     private File getFileInternal(String path) throws IOException {
-        String downloadUrl = mUrl + path;
-        URL url = new URL(downloadUrl);
+        // the same file may be requested by the pom and library lookups at the same time,
+        // only one of them writes the partial file
+        synchronized (mLocks.computeIfAbsent(path, p -> new Object())) {
+            File file = mLocalRepository.getFile(path);
+            if (file != null && file.exists()) {
+                return file;
+            }
+            try {
+                mDownloads.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            try {
+                return download(path);
+            } catch (IOException e) {
+                // ignored, return null
+                return null;
+            } finally {
+                mDownloads.release();
+            }
+        }
+    }
+
+    /**
+     * Downloads the file into a partial file next to its location in the cache. A partial
+     * file left by an interrupted download is resumed with a range request, the file is
+     * only moved to its location once it matches the checksum published by the repository.
+     */
+    private File download(String path) throws IOException {
+        URLConnection urlConnection = new URL(mUrl + path).openConnection();
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            return mLocalRepository.save(path, urlConnection.getInputStream());
+        }
+
+        File file = mLocalRepository.getLocation(path);
+        File partial = new File(file.getAbsolutePath() + PARTIAL_SUFFIX);
+        FileUtils.forceMkdirParent(partial);
+        long offset = partial.exists() ? partial.length() : 0;
+
+        HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+
+        MessageDigest digest = HashUtils.newDigest("SHA-1");
+        try {
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (code == HTTP_RANGE_NOT_SATISFIABLE) {
+                // the partial file is not a prefix of the file anymore, start over
+                FileUtils.delete(partial);
+                connection.disconnect();
+                return download(path);
+            }
+            // a server that does not support ranges sends the whole file
+            boolean resume = offset > 0 && code == HttpURLConnection.HTTP_PARTIAL;
+            if (code != HttpURLConnection.HTTP_OK && !resume) {
+                throw new IOException("Unexpected response " + code + " for " + path);
+            }
+            if (resume) {
+                try (InputStream in = FileUtils.openInputStream(partial)) {
+                    update(digest, in, null);
+                }
+            }
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = new FileOutputStream(partial, resume)) {
+                update(digest, in, out);
+            }
+        } finally {
+            connection.disconnect();
+        }
+
+        String checksum = getChecksum(path);
+        if (checksum != null && !checksum.equalsIgnoreCase(HashUtils.toHex(digest.digest()))) {
+            FileUtils.delete(partial);
+            throw new IOException("Checksum mismatch for " + path);
+        }
+        FileUtilsEx.moveAtomically(partial, file);
+        return file;
+    }
+
+    /**
+     * @return the SHA-1 of the file published by the repository, or null if there is none
+     */
+    @Nullable
+    private String getChecksum(String path) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(mUrl + path + ".sha1").openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
         try {
-            InputStream inputStream = url.openStream();
-            if (inputStream != null) {
-                // save the file to cache, and then return the one from there
-                return mLocalRepository.save(path, inputStream);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                // some repositories append the name of the file after the checksum
+                String[] contents = IOUtils.toString(in, StandardCharsets.UTF_8).trim()
+                        .split("\\s+");
+                return contents[0].isEmpty() ? null : contents[0];
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void update(MessageDigest digest, InputStream in, @Nullable OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            if (out != null) {
+                out.write(buffer, 0, read);
             }
-        } catch (IOException e) {
-            // ignored, return null
         }
-        return null;
     }
 }
@@ -7,6 +7,8 @@ import com.tyron.resolver.model.Pom;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 public interface RepositoryManager {
 
@@ -24,6 +26,13 @@ public interface RepositoryManager {
     @Nullable
     File getLibrary(Pom pom) throws IOException;
 
+    /**
+     * Retrieves the libraries of the given poms, downloading them in parallel
+     * @return the library of each pom that was found, in the order of the given poms
+     */
+    @NonNull
+    Map<Pom, File> getLibraries(List<Pom> poms);
+
     void setCacheDirectory(File directory);
 
     /**
@@ -9,8 +9,6 @@ import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
@@ -19,8 +17,14 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.zip.ZipFile;
 
@@ -28,13 +32,25 @@ import kotlin.text.Charsets;
 
 public class RepositoryManagerImpl implements RepositoryManager {
 
+    /**
+     * The maximum number of libraries that are downloaded at the same time, each
+     * repository also limits the number of its own downloads
+     */
+    private static final int MAX_CONCURRENT_DOWNLOADS = 8;
+
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+    private PomIndex pomIndex;
+
+    /**
+     * The repository that last served a file of a group, keyed by the group id. The other
+     * files of the group are usually hosted by the same repository so it is searched first.
+     */
+    private final Map<String, Repository> groupRepositories;
 
     public RepositoryManagerImpl() {
         this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.groupRepositories = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -44,32 +60,35 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
-            }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
-            }
+        if (pomIndex == null) {
+            throw new IllegalStateException("Repository manager is not initialized.");
+        }
+        Pom pom = pomIndex.get(pomNames[0], pomNames[1], pomNames[2]);
+        if (pom != null) {
             return pom;
         }
         return getPomFromUrls(pomNames);
     }
 
     private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
+        String path = getPathFromDeclaration(names) + ".pom";
+        InputStream is = getFromCache(path);
+        if (is == null) {
+            is = getFromUrls(names[0], path);
+        }
         if (is != null) {
             String contents;
-            try {
+            try (InputStream ignored = is) {
                 contents = CharStreams.toString(new InputStreamReader(is));
                 Pom parsed = new PomParser().parse(contents);
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
+                try {
+                    pomIndex.put(parsed);
+                } catch (IOException e) {
+                    // the pom will be parsed again on the next startup
+                }
                 return parsed;
             } catch (IOException | XmlPullParserException e) {
                 // ignored
@@ -78,12 +97,32 @@ public class RepositoryManagerImpl implements RepositoryManager {
         return null;
     }
 
-    private InputStream getFromUrls(String appendUrl) {
+    /**
+     * Searches the file on the cache directories of all repositories first so a file
+     * that has already been downloaded by another repository is not requested again.
+     */
+    private InputStream getFromCache(String path) {
+        for (Repository repository : repositories) {
+            try {
+                File file = repository.getCachedFile(path);
+                if (file != null && file.exists()) {
+                    return FileUtils.openInputStream(file);
+                }
+            } catch (IOException e) {
+                // ignored, try the next repository
+            }
+        }
+        return null;
+    }
+
+    private InputStream getFromUrls(String groupId, String appendUrl) {
+        List<Repository> repositories = getRepositories(groupId);
         for (int i = 0; i < repositories.size(); i++) {
             Repository repository = repositories.get(i);
             try {
                 InputStream is = repository.getInputStream(appendUrl);
                 if (is != null) {
+                    groupRepositories.put(groupId, repository);
                     return is;
                 }
             } catch (IOException e) {
@@ -117,6 +156,59 @@ public class RepositoryManagerImpl implements RepositoryManager {
     @Override
     @Nullable
     public File getLibrary(Pom pom) throws IOException {
+        String path = getLibraryPath(pom);
+        for (Repository repository : repositories) {
+            File file = repository.getCachedFile(path);
+            if (file != null && file.exists()) {
+                return file;
+            }
+        }
+
+        // cannot find file from disk, try from network
+        for (Repository repository : getRepositories(pom.getGroupId())) {
+            File file = repository.getFile(path);
+            if (file != null && file.exists()) {
+                groupRepositories.put(pom.getGroupId(), repository);
+                return file;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    @Override
+    public Map<Pom, File> getLibraries(List<Pom> poms) {
+        Map<Pom, File> libraries = new LinkedHashMap<>();
+        if (poms.isEmpty()) {
+            return libraries;
+        }
+
+        int threads = Math.min(poms.size(), MAX_CONCURRENT_DOWNLOADS);
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            Map<Pom, Future<File>> futures = new LinkedHashMap<>();
+            for (Pom pom : poms) {
+                futures.put(pom, service.submit(() -> getLibrary(pom)));
+            }
+            for (Map.Entry<Pom, Future<File>> entry : futures.entrySet()) {
+                try {
+                    File file = entry.getValue().get();
+                    if (file != null) {
+                        libraries.put(entry.getKey(), file);
+                    }
+                } catch (ExecutionException e) {
+                    // left out, the caller reports the libraries that are missing
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.shutdownNow();
+        }
+        return libraries;
+    }
+
+    private String getLibraryPath(Pom pom) {
         StringBuilder sb = new StringBuilder();
         sb.append(pom.getGroupId().replace('.', '/'));
         sb.append('/');
@@ -132,22 +224,26 @@ public class RepositoryManagerImpl implements RepositoryManager {
         } else {
             sb.append(".jar");
         }
+        return sb.toString();
+    }
 
-        for (Repository repository : repositories) {
-            File file = repository.getCachedFile(sb.toString());
-            if (file != null && file.exists()) {
-                return file;
-            }
+    /**
+     * @return the repositories in the order they should be searched for a file of the group,
+     * the repository that served the group before comes first
+     */
+    private List<Repository> getRepositories(String groupId) {
+        Repository hit = groupRepositories.get(groupId);
+        if (hit == null) {
+            return repositories;
         }
-
-        // cannot find file from disk, try from network
+        List<Repository> ordered = new ArrayList<>(repositories.size());
+        ordered.add(hit);
         for (Repository repository : repositories) {
-            File file = repository.getFile(sb.toString());
-            if (file != null && file.exists()) {
-                return file;
+            if (repository != hit) {
+                ordered.add(repository);
             }
         }
-        return null;
+        return ordered;
     }
 
     private boolean isValidZipFile(File file) {
@@ -197,26 +293,14 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
+        }
 
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser();
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                }
-            }
+        // pom files are parsed lazily when they are requested, only the index is read here
+        pomIndex = new PomIndex(new File(cacheDir, "pom-index.bin"));
+        try {
+            pomIndex.load();
+        } catch (IOException e) {
+            // the index will be rebuilt as pom files are requested
         }
     }
 }
@@ -0,0 +1,187 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tyron.common.util.HashUtils;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.RemoteRepository;
+import com.tyron.resolver.repository.RepositoryManagerImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Downloads libraries from a local http server that serves a maven layout, each
+ * repository is a different context path of the server.
+ */
+public class LibraryDownloadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The files served by the server keyed by their path, including the repository
+     */
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+    private String url;
+    private File cacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+        cacheDir = folder.newFolder("cache");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testChecksumIsVerified() throws Exception {
+        byte[] contents = bytes("library");
+        publish("/maven/lib/a/1/a-1.jar", contents);
+
+        RemoteRepository repository = newRepository("maven");
+        File file = repository.getFile("lib/a/1/a-1.jar");
+        assertNotNull(file);
+        assertArrayEquals(contents, FileUtils.readFileToByteArray(file));
+
+        // the published checksum does not match the file
+        files.put("/maven/lib/b/1/b-1.jar", contents);
+        files.put("/maven/lib/b/1/b-1.jar.sha1", bytes(sha1(bytes("other"))));
+        assertNull(repository.getFile("lib/b/1/b-1.jar"));
+        assertFalse(new File(cacheDir, "maven/lib/b/1/b-1.jar").exists());
+    }
+
+    @Test
+    public void testPartialDownloadIsResumed() throws Exception {
+        byte[] contents = bytes("contents of a library that was partially downloaded");
+        publish("/maven/lib/a/1/a-1.jar", contents);
+
+        File partial = new File(cacheDir, "maven/lib/a/1/a-1.jar.part");
+        FileUtils.writeByteArrayToFile(partial, Arrays.copyOf(contents, 10));
+
+        File file = newRepository("maven").getFile("lib/a/1/a-1.jar");
+        assertNotNull(file);
+        assertArrayEquals(contents, FileUtils.readFileToByteArray(file));
+        assertFalse(partial.exists());
+        assertEquals(Arrays.asList("bytes=10-"), ranges);
+    }
+
+    @Test
+    public void testRepositoryOfGroupIsRemembered() throws Exception {
+        List<Pom> poms = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            publish("/second/lib/a" + i + "/1/a" + i + "-1.jar", bytes("library " + i));
+            poms.add(Pom.valueOf("lib", "a" + i, "1"));
+        }
+        RepositoryManagerImpl repositoryManager = new RepositoryManagerImpl();
+        repositoryManager.addRepository(new RemoteRepository("first", url + "/first"));
+        repositoryManager.addRepository(new RemoteRepository("second", url + "/second"));
+        repositoryManager.setCacheDirectory(cacheDir);
+        repositoryManager.initialize();
+
+        // served by the second repository, the first one is not asked again after that
+        File first = repositoryManager.getLibrary(poms.get(0));
+        assertNotNull(first);
+        requests.clear();
+
+        Map<Pom, File> libraries = repositoryManager.getLibraries(poms);
+        assertEquals(poms, new ArrayList<>(libraries.keySet()));
+        for (int i = 0; i < poms.size(); i++) {
+            assertEquals("library " + i, FileUtils.readFileToString(libraries.get(poms.get(i)),
+                    StandardCharsets.UTF_8));
+        }
+        for (String request : requests) {
+            assertTrue(request, request.startsWith("/second/"));
+        }
+    }
+
+    @Test
+    public void testMissingLibrariesAreLeftOut() throws Exception {
+        publish("/maven/lib/a/1/a-1.jar", bytes("library"));
+        RepositoryManagerImpl repositoryManager = new RepositoryManagerImpl();
+        repositoryManager.addRepository(new RemoteRepository("maven", url + "/maven"));
+        repositoryManager.setCacheDirectory(cacheDir);
+        repositoryManager.initialize();
+
+        Pom found = Pom.valueOf("lib", "a", "1");
+        Map<Pom, File> libraries = repositoryManager.getLibraries(
+                Arrays.asList(found, Pom.valueOf("lib", "missing", "1")));
+        assertEquals(Arrays.asList(found), new ArrayList<>(libraries.keySet()));
+    }
+
+    private RemoteRepository newRepository(String name) {
+        RemoteRepository repository = new RemoteRepository(name, url + "/" + name);
+        repository.setCacheDirectory(cacheDir);
+        return repository;
+    }
+
+    private void publish(String path, byte[] contents) throws Exception {
+        files.put(path, contents);
+        files.put(path + ".sha1", bytes(sha1(contents)));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(path);
+        byte[] contents = files.get(path);
+        if (contents == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        int code = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            ranges.add(range);
+            int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            contents = Arrays.copyOfRange(contents, start, contents.length);
+            code = 206;
+        }
+        exchange.sendResponseHeaders(code, contents.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(contents);
+        }
+    }
+
+    private static byte[] bytes(String contents) {
+        return contents.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha1(byte[] contents) throws Exception {
+        return HashUtils.toHex(HashUtils.newDigest("SHA-1").digest(contents));
+    }
+}
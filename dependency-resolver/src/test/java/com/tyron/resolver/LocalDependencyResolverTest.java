@@ -0,0 +1,165 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.LocalRepository;
+import com.tyron.resolver.repository.RepositoryManagerImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves dependencies against pom files on the disk, the repository simulates the latency
+ * of a remote repository and counts how many times each file has been requested.
+ */
+public class LocalDependencyResolverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Map<String, String> requestThreads = new ConcurrentHashMap<>();
+    private File root;
+    private RepositoryManagerImpl repositoryManager;
+
+    @Before
+    public void setup() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        root = new File(cacheDir, "local");
+        writePom(root, "app", "a", "1", dependency("lib", "b", "1"),
+                dependency("lib", "c", "1"));
+        writePom(root, "lib", "b", "1", dependency("lib", "d", "1"),
+                dependency("lib", "e", "1"));
+        writePom(root, "lib", "c", "1", dependency("lib", "d", "2"),
+                dependency("lib", "e", "1"), dependency("lib", "x", "1"),
+                "<dependency><groupId>lib</groupId><artifactId>junit</artifactId>"
+                + "<version>1</version><scope>test</scope></dependency>");
+        writePom(root, "lib", "d", "1");
+        writePom(root, "lib", "d", "2");
+        writePom(root, "lib", "e", "1");
+
+        repositoryManager = new RepositoryManagerImpl();
+        repositoryManager.addRepository(new LocalRepository("local") {
+            @Override
+            public File getCachedFile(String path) throws IOException {
+                requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+                requestThreads.put(path, Thread.currentThread().getName());
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.getCachedFile(path);
+            }
+        });
+        repositoryManager.setCacheDirectory(cacheDir);
+        repositoryManager.initialize();
+    }
+
+    @Test
+    public void testResolve() {
+        Dependency declared = Dependency.valueOf("app:a:1");
+        declared.addExclude(new Dependency("lib", "x", null));
+
+        List<String> failures = new ArrayList<>();
+        DependencyResolver resolver = new DependencyResolver(repositoryManager);
+        resolver.setResolveListener(new DependencyResolver.ResolveListener() {
+            @Override
+            public void onResolve(String message) {
+
+            }
+
+            @Override
+            public void onFailure(String message) {
+                failures.add(message);
+            }
+        });
+        List<Pom> resolved = resolver.resolveDependencies(Collections.singletonList(declared));
+
+        List<String> names = new ArrayList<>();
+        for (Pom pom : resolved) {
+            names.add(pom.getDeclarationString());
+        }
+        Collections.sort(names);
+
+        // the higher version of d wins, x is excluded and test dependencies are skipped
+        assertEquals(names.toString(), 5, names.size());
+        assertTrue(names.contains("lib:d:2"));
+        assertFalse(names.contains("lib:d:1"));
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        // e is a dependency of both b and c, it should only be requested once
+        assertEquals(1, requests.get("lib/e/1/e-1.pom").get());
+        assertFalse(requests.containsKey("lib/x/1/x-1.pom"));
+    }
+
+    @Test
+    public void testPrefetchFollowsEachPath() throws IOException {
+        // d:2 has a dependency that d:1 doesn't have, and x is only excluded below a
+        writePom(root, "lib", "d", "2", dependency("lib", "f", "1"));
+        writePom(root, "lib", "f", "1");
+        writePom(root, "app", "g", "1", dependency("lib", "y", "1"));
+        writePom(root, "lib", "y", "1", dependency("lib", "x", "1"));
+        writePom(root, "lib", "x", "1");
+
+        Dependency first = Dependency.valueOf("app:a:1");
+        first.addExclude(new Dependency("lib", "x", null));
+        Dependency second = Dependency.valueOf("app:g:1");
+
+        DependencyResolver resolver = new DependencyResolver(repositoryManager);
+        List<Pom> resolved = resolver.resolveDependencies(Arrays.asList(first, second));
+        List<String> names = new ArrayList<>();
+        for (Pom pom : resolved) {
+            names.add(pom.getDeclarationString());
+        }
+        assertTrue(names.toString(), names.contains("lib:f:1"));
+        assertTrue(names.toString(), names.contains("lib:x:1"));
+
+        // both were fetched ahead of the resolution instead of by the calling thread
+        String thread = Thread.currentThread().getName();
+        assertNotEquals(thread, requestThreads.get("lib/f/1/f-1.pom"));
+        assertNotEquals(thread, requestThreads.get("lib/x/1/x-1.pom"));
+    }
+
+    private static String dependency(String groupId, String artifactId, String version) {
+        return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId
+                + "</artifactId><version>" + version + "</version></dependency>";
+    }
+
+    private static void writePom(File root, String groupId, String artifactId, String version,
+                                 String... dependencies) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<project>")
+                .append("<groupId>").append(groupId).append("</groupId>")
+                .append("<artifactId>").append(artifactId).append("</artifactId>")
+                .append("<version>").append(version).append("</version>")
+                .append("<dependencies>");
+        for (String dependency : dependencies) {
+            builder.append(dependency);
+        }
+        builder.append("</dependencies></project>");
+
+        File file = new File(root, groupId.replace('.', '/') + "/" + artifactId + "/"
+                + version + "/" + artifactId + "-" + version + ".pom");
+        FileUtils.writeStringToFile(file, builder.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.tyron.resolver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.PomIndex;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+public class PomIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReload() throws Exception {
+        File file = new File(folder.getRoot(), "pom-index.bin");
+        PomIndex index = new PomIndex(file);
+
+        Pom pom = Pom.valueOf("androidx.core", "core", "1.5.0");
+        pom.setPackaging("aar");
+        Dependency dependency = Dependency.valueOf("androidx.annotation:annotation:1.1.0");
+        dependency.setScope("compile");
+        pom.setDependencies(Collections.singletonList(dependency));
+        index.put(pom);
+        index.put(Pom.valueOf("androidx.annotation", "annotation", "1.1.0"));
+
+        PomIndex reloaded = new PomIndex(file);
+        reloaded.load();
+        assertEquals(2, reloaded.size());
+
+        Pom restored = reloaded.get("androidx.core", "core", "1.5.0");
+        assertNotNull(restored);
+        assertEquals("aar", restored.getPackaging());
+        assertEquals(Collections.singletonList(dependency), restored.getDependencies());
+        assertNull(reloaded.get("androidx.core", "core", "1.6.0"));
+    }
+
+    @Test
+    public void testPartialRecordIsDiscarded() throws Exception {
+        File file = new File(folder.getRoot(), "pom-index.bin");
+        PomIndex index = new PomIndex(file);
+        index.put(Pom.valueOf("androidx.core", "core", "1.5.0"));
+        long length = file.length();
+        index.put(Pom.valueOf("androidx.annotation", "annotation", "1.1.0"));
+
+        // simulate a write that was interrupted
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length + 5);
+        }
+
+        PomIndex reloaded = new PomIndex(file);
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+        assertNotNull(reloaded.get("androidx.core", "core", "1.5.0"));
+
+        // new records can still be appended after the discarded one
+        reloaded.put(Pom.valueOf("androidx.annotation", "annotation", "1.1.0"));
+        PomIndex again = new PomIndex(file);
+        again.load();
+        assertEquals(2, again.size());
+    }
+}
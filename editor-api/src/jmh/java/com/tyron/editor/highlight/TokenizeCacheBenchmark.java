@@ -0,0 +1,79 @@
+package com.tyron.editor.highlight;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up the lines of a file that is tokenized again, such as after an edit
+ * near its top, and storing the lines of a file that does not fit in the cache.
+ *
+ * <p>Run with {@code ./gradlew :editor-api:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizeCacheBenchmark {
+
+    private static final int LINES = 2000;
+
+    /**
+     * The lines as the editor passes them, its lines are not strings
+     */
+    private final StringBuilder[] mLines = new StringBuilder[LINES];
+    private final String[] mStrings = new String[LINES];
+    private final int[][] mTokens = new int[LINES][];
+
+    private TokenizeCache<Integer, int[]> mCache;
+    private TokenizeCache<Integer, int[]> mSmallCache;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < LINES; i++) {
+            mStrings[i] = "        int value" + i + " = compute(" + i + ", \"text\"); // comment";
+            mLines[i] = new StringBuilder(mStrings[i]);
+            mTokens[i] = new int[]{0, i, 8, i, 12, i};
+        }
+        mCache = new TokenizeCache<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            mCache.put(mStrings[i], i % 4, mCache.getGeneration(), mTokens[i]);
+        }
+        mSmallCache = new TokenizeCache<>(LINES / 4);
+    }
+
+    @Benchmark
+    public int tokenizeAgain() {
+        int found = 0;
+        for (int i = 0; i < LINES; i++) {
+            if (mCache.get(mLines[i], i % 4) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int tokenizeLargeFile() {
+        int found = 0;
+        for (int i = 0; i < LINES; i++) {
+            if (mSmallCache.get(mLines[i], i % 4) != null) {
+                found++;
+            } else {
+                mSmallCache.put(mStrings[i], i % 4, mSmallCache.getGeneration(), mTokens[i]);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,198 @@
+package com.tyron.editor.highlight;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Caches the result of tokenizing a line, the tokens of a line only depend on its text and on
+ * the state at its start. Lines that are tokenized again because a line above them has been
+ * edited, or because the whole text is analyzed again, are served from the cache.
+ *
+ * <p>Lines are looked up by their characters so a hit does not copy the line, and the entries
+ * of evicted lines are reused so a full cache does not allocate on a miss.
+ *
+ * <p>Results that depend on something other than the line and its state, such as the colors
+ * of a theme, must be dropped with {@link #clear()} when it changes. A result computed while
+ * the cache is cleared is not stored, callers read {@link #getGeneration()} before computing
+ * it and pass it to {@link #put(String, Object, int, Object)}.
+ *
+ * @param <S> the type of the state at the start of a line
+ * @param <R> the type of the result of tokenizing a line
+ */
+public class TokenizeCache<S, R> {
+
+    private static final class Entry<S, R> {
+        int hash;
+        String line;
+        S state;
+        R result;
+
+        /**
+         * The next entry of the same bucket
+         */
+        Entry<S, R> next;
+
+        /**
+         * The neighbours of this entry, ordered from the least to the most recently used
+         */
+        Entry<S, R> before;
+        Entry<S, R> after;
+    }
+
+    private final int mMaxSize;
+    private final Entry<S, R>[] mTable;
+
+    /**
+     * The head of the circular list of entries, {@code after} is the least recently used
+     */
+    private final Entry<S, R> mHead = new Entry<>();
+
+    private int mSize;
+    private volatile int mGeneration;
+
+    @SuppressWarnings("unchecked")
+    public TokenizeCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        mMaxSize = maxSize;
+        int capacity = Integer.highestOneBit(Math.max(1, maxSize * 4 / 3 - 1)) << 1;
+        mTable = (Entry<S, R>[]) new Entry[capacity];
+        mHead.before = mHead;
+        mHead.after = mHead;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(String, Object, int, Object)}, it changes
+     * every time the cache is cleared
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return the cached result of the line when it starts with the given state, or null
+     */
+    public synchronized R get(CharSequence line, S state) {
+        int hash = hash(line);
+        for (Entry<S, R> entry = mTable[hash & (mTable.length - 1)]; entry != null;
+             entry = entry.next) {
+            if (entry.hash == hash && Objects.equals(entry.state, state)
+                    && contentEquals(entry.line, line)) {
+                moveToEnd(entry);
+                return entry.result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the result of a line, nothing is stored if the cache has been cleared since
+     * the given generation was read.
+     */
+    public synchronized void put(String line, S state, int generation, R result) {
+        if (generation != mGeneration) {
+            return;
+        }
+        int hash = hash(line);
+        int index = hash & (mTable.length - 1);
+        for (Entry<S, R> entry = mTable[index]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && Objects.equals(entry.state, state)
+                    && entry.line.equals(line)) {
+                entry.result = result;
+                moveToEnd(entry);
+                return;
+            }
+        }
+
+        Entry<S, R> entry;
+        if (mSize < mMaxSize) {
+            entry = new Entry<>();
+            mSize++;
+        } else {
+            // reuse the least recently used entry
+            entry = mHead.after;
+            unlink(entry);
+            removeFromBucket(entry);
+        }
+        entry.hash = hash;
+        entry.line = line;
+        entry.state = state;
+        entry.result = result;
+        entry.next = mTable[index];
+        mTable[index] = entry;
+        linkLast(entry);
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        Arrays.fill(mTable, null);
+        mHead.before = mHead;
+        mHead.after = mHead;
+        mSize = 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    private void removeFromBucket(Entry<S, R> entry) {
+        int index = entry.hash & (mTable.length - 1);
+        Entry<S, R> previous = null;
+        for (Entry<S, R> it = mTable[index]; it != null; previous = it, it = it.next) {
+            if (it == entry) {
+                if (previous == null) {
+                    mTable[index] = it.next;
+                } else {
+                    previous.next = it.next;
+                }
+                entry.next = null;
+                return;
+            }
+        }
+    }
+
+    private void moveToEnd(Entry<S, R> entry) {
+        if (mHead.before != entry) {
+            unlink(entry);
+            linkLast(entry);
+        }
+    }
+
+    private void unlink(Entry<S, R> entry) {
+        entry.before.after = entry.after;
+        entry.after.before = entry.before;
+    }
+
+    private void linkLast(Entry<S, R> entry) {
+        entry.before = mHead.before;
+        entry.after = mHead;
+        mHead.before.after = entry;
+        mHead.before = entry;
+    }
+
+    /**
+     * Same as {@link String#hashCode()} with the bits spread, so a line can be looked up
+     * without copying it into a string
+     */
+    private static int hash(CharSequence line) {
+        int hash = 0;
+        for (int i = 0, length = line.length(); i < length; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String line, CharSequence other) {
+        int length = line.length();
+        if (length != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
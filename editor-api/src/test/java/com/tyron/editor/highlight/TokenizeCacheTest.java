@@ -0,0 +1,70 @@
+package com.tyron.editor.highlight;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TokenizeCacheTest {
+
+    @Test
+    public void testLinesAreLookedUpByContents() {
+        TokenizeCache<String, String> cache = new TokenizeCache<>(16);
+        cache.put("int a = 1;", null, cache.getGeneration(), "first");
+        cache.put("int a = 1;", "comment", cache.getGeneration(), "second");
+
+        assertEquals("first", cache.get(new StringBuilder("int a = 1;"), null));
+        assertEquals("second", cache.get(new StringBuilder("int a = 1;"), "comment"));
+        assertNull(cache.get("int a = 2;", null));
+        assertNull(cache.get("int a = 1;", "string"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedLineIsEvicted() {
+        TokenizeCache<String, String> cache = new TokenizeCache<>(3);
+        int generation = cache.getGeneration();
+        cache.put("a", null, generation, "a");
+        cache.put("b", null, generation, "b");
+        cache.put("c", null, generation, "c");
+        // a is now the most recently used line
+        assertEquals("a", cache.get("a", null));
+
+        cache.put("d", null, generation, "d");
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b", null));
+        assertEquals("a", cache.get("a", null));
+        assertEquals("c", cache.get("c", null));
+        assertEquals("d", cache.get("d", null));
+    }
+
+    @Test
+    public void testReusedEntriesAreLookedUpAgain() {
+        TokenizeCache<Integer, String> cache = new TokenizeCache<>(8);
+        for (int i = 0; i < 100; i++) {
+            cache.put("line " + i, i % 3, cache.getGeneration(), "result " + i);
+        }
+        assertEquals(8, cache.size());
+        for (int i = 0; i < 92; i++) {
+            assertNull(cache.get("line " + i, i % 3));
+        }
+        for (int i = 92; i < 100; i++) {
+            assertEquals("result " + i, cache.get("line " + i, i % 3));
+        }
+    }
+
+    @Test
+    public void testResultOfPreviousGenerationIsNotStored() {
+        TokenizeCache<String, String> cache = new TokenizeCache<>(16);
+        int generation = cache.getGeneration();
+        cache.put("a", null, generation, "old theme");
+
+        // the theme changes while the line b is tokenized
+        cache.clear();
+        cache.put("b", null, generation, "old theme");
+
+        assertNull(cache.get("a", null));
+        assertNull(cache.get("b", null));
+        cache.put("b", null, cache.getGeneration(), "new theme");
+        assertEquals("new theme", cache.get("b", null));
+    }
+}
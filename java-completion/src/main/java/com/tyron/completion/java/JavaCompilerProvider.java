@@ -46,7 +46,11 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
     public synchronized JavaCompilerService getCompiler(Project project, JavaModule module) {
         List<Module> dependencies = new ArrayList<>();
         if (project != null) {
-            dependencies.addAll(project.getDependencies(module));
+            // read the modules as they were before a running build cleared them
+            module = project.getSnapshot(module);
+            for (Module dependency : project.getDependencies(module)) {
+                dependencies.add(project.getSnapshot(dependency));
+            }
         }
 
         Set<File> paths = new HashSet<>();
@@ -68,6 +72,9 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
             mCachedPaths.clear();
             mCachedPaths.addAll(paths);
             mProvider.setCurrentModule(module);
+        } else if (mProvider.getCurrentModule() != module) {
+            // switch between the module and its snapshot when a build starts or finishes
+            mProvider.setCurrentModule(module);
         }
 
         return mProvider;
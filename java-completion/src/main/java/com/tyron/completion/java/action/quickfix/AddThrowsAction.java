@@ -79,7 +79,8 @@ public class AddThrowsAction extends ExceptionsQuickFix {
         String exceptionName = DiagnosticUtil.extractExceptionName(diagnostic.getMessage(Locale.ENGLISH));
 
         ThreadUtil.runOnBackgroundThread(() -> {
-            CompilerContainer container = compiler.getCachedContainer();
+            // the diagnostic is from the background compilation
+            CompilerContainer container = compiler.getBackgroundContainer();
             AtomicReference<JavaRewrite> rewrite = new AtomicReference<>();
             container.run(task ->
                     rewrite.set(performInternal(task, exceptionName, diagnostic)));
@@ -68,11 +68,7 @@ public class ImportClassAction extends AnAction {
 
         String simpleName = String.valueOf(diagnosticSourceUnwrapper.d.getArgs()[1]);
         List<String> classNames = new ArrayList<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                classNames.add(qualifiedName);
-            }
-        }
+        compiler.getClassNameIndex().forEachSimpleName(simpleName, classNames::add);
 
         if (classNames.isEmpty()) {
             return;
@@ -105,12 +101,12 @@ public class ImportClassAction extends AnAction {
         Path file = e.getRequiredData(CommonDataKeys.FILE).toPath();
 
         Map<String, JavaRewrite> map = new TreeMap<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                String title = e.getDataContext().getString(R.string.import_class_name, qualifiedName);
-                JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
-                map.put(title, addImport);
-            }
+        List<String> classNames = new ArrayList<>();
+        compiler.getClassNameIndex().forEachSimpleName(simpleName, classNames::add);
+        for (String qualifiedName : classNames) {
+            String title = e.getDataContext().getString(R.string.import_class_name, qualifiedName);
+            JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
+            map.put(title, addImport);
         }
 
         if (map.size() == 1) {
@@ -66,11 +66,7 @@ public class ImportClassFieldFix extends AnAction {
 
         String simpleName = String.valueOf(diagnosticSourceUnwrapper.d.getArgs()[0]);
         List<String> classNames = new ArrayList<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                classNames.add(qualifiedName);
-            }
-        }
+        compiler.getClassNameIndex().forEachSimpleName(simpleName, classNames::add);
 
         if (classNames.isEmpty()) {
             return;
@@ -109,19 +105,19 @@ public class ImportClassFieldFix extends AnAction {
         }
 
         Map<String, JavaRewrite> map = new TreeMap<>();
-        for (String qualifiedName : compiler.publicTopLevelTypes()) {
-            if (qualifiedName.endsWith("." + simpleName)) {
-                if (qualifiedName.endsWith("." + searchName)) {
-                    if (isField) {
-                        qualifiedName = qualifiedName.substring(0,
-                                qualifiedName.lastIndexOf('.'));
-                        qualifiedName += simpleName;
-                    }
-                    String name = e.getDataContext()
-                            .getString(R.string.import_class_name, qualifiedName);
-                    JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
-                    map.put(name, addImport);
+        List<String> classNames = new ArrayList<>();
+        compiler.getClassNameIndex().forEachSimpleName(simpleName, classNames::add);
+        for (String qualifiedName : classNames) {
+            if (qualifiedName.endsWith("." + searchName)) {
+                if (isField) {
+                    qualifiedName = qualifiedName.substring(0,
+                            qualifiedName.lastIndexOf('.'));
+                    qualifiedName += simpleName;
                 }
+                String name = e.getDataContext()
+                        .getString(R.string.import_class_name, qualifiedName);
+                JavaRewrite addImport = new AddImport(file.toFile(), qualifiedName);
+                map.put(name, addImport);
             }
         }
 
@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 
@@ -51,9 +52,21 @@ public class CompileBatch implements AutoCloseable {
     public final Types types;
     public final List<CompilationUnitTree> roots;
 
+    /**
+     * Diagnostics reported by this compilation only, other batches may be compiling
+     * concurrently with their own contexts.
+     */
+    private final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+        this(parent, parent.mSourceFileManager, files);
+    }
+
+    public CompileBatch(JavaCompilerService parent,
+                        SourceFileManager fileManager,
+                        Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(fileManager, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -84,7 +97,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : getDiagnostics()) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -155,11 +168,25 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
+    public synchronized List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+        return new ArrayList<>(diagnostics);
+    }
+
+    synchronized void removeDiagnostics(Predicate<Diagnostic<? extends JavaFileObject>> filter) {
+        diagnostics.removeIf(filter);
+    }
+
+    private synchronized void addDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic) {
+        diagnostics.add(diagnostic);
+    }
+
+    private ReusableCompiler.Borrow batchTask(SourceFileManager fileManager, Collection<?
             extends JavaFileObject> sources) {
-        parent.clearDiagnostics();
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
+        // contexts are pooled per module, so different modules don't evict each other
+        JavaModule module = parent.getCurrentModule();
+        Object key = module != null ? module.getRootFile() : null;
+        return parent.compiler.getTask(key, fileManager, this::addDiagnostic, options,
                 Collections.emptyList(), sources);
     }
 
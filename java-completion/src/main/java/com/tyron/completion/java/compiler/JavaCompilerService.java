@@ -10,6 +10,7 @@ import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.index.ClassNameIndex;
 import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.CompilerProvider;
@@ -45,12 +46,8 @@ import java.util.regex.Pattern;
 
 public class JavaCompilerService implements CompilerProvider {
 
-    private DiagnosticListener<? super JavaFileObject> mDiagnosticListener;
     public final SourceFileManager mSourceFileManager;
 
-    private final List<Diagnostic<? extends JavaFileObject>> diagnostics =
-            new ArrayList<>();
-
     private final Project mProject;
     private JavaModule mCurrentModule;
     public final Set<File> classPath, docPath;
@@ -58,9 +55,16 @@ public class JavaCompilerService implements CompilerProvider {
     public final ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
-    private final CompilerContainer mContainer = new CompilerContainer();
-    private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+    /**
+     * Compilations requested by interactive features such as completion and hover.
+     */
+    private final CompileLane mInteractiveLane;
+
+    /**
+     * Compilations requested by background diagnostics, these use a separate context
+     * so completion does not have to wait for them to finish.
+     */
+    private final CompileLane mBackgroundLane;
 
     public final ReentrantLock mLock = new ReentrantLock();
 
@@ -71,6 +75,9 @@ public class JavaCompilerService implements CompilerProvider {
         this.addExports = Collections.unmodifiableSet(addExports);
         this.mSourceFileManager = new SourceFileManager(project);
         this.docs = new Docs(project, docPath);
+
+        mInteractiveLane = new CompileLane(mSourceFileManager, false);
+        mBackgroundLane = new CompileLane(new SourceFileManager(project), true);
     }
 
     public Project getProject() {
@@ -78,109 +85,207 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void setCurrentModule(@NonNull JavaModule module) {
-        mSourceFileManager.setCurrentModule(module);
+        mInteractiveLane.fileManager.setCurrentModule(module);
+        mBackgroundLane.fileManager.setCurrentModule(module);
         mCurrentModule = module;
     }
 
     /**
-     * Checks whether this list has been compiled before
-     *
-     * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
+     * Holds the cached compilation of one kind of caller. Each lane borrows its own
+     * context from the {@link ReusableCompiler} pool so lanes can compile in parallel, its
+     * compilation and diagnostics are only ever read through its own container.
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
+    private class CompileLane {
+        final CompilerContainer container = new CompilerContainer();
+
+        /**
+         * Notified of the diagnostics of this lane each time its compilation changes
+         */
+        volatile DiagnosticListener<? super JavaFileObject> diagnosticListener;
+
+        final SourceFileManager fileManager;
+        final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+        CompileBatch cachedCompile;
+
+        /**
+         * Whether a compilation of a single file is updated in place when only a method body
+         * has changed, see {@link PartialReparser}.
+         */
+        final boolean incremental;
+
+        /**
+         * The contents the cached compilation of a single file was compiled with.
+         */
+        String cachedContents;
+
+        CompileLane(SourceFileManager fileManager, boolean incremental) {
+            this.fileManager = fileManager;
+            this.incremental = incremental;
         }
-        for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
+
+        /**
+         * Checks whether this list has been compiled before
+         *
+         * @param sources list of java files to compile
+         * @return true if there's a valid cache for it, false otherwise
+         */
+        private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
+            if (cachedModified.size() != sources.size()) {
                 return true;
             }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
+            for (JavaFileObject f : sources) {
+                if (!cachedModified.containsKey(f)) {
+                    return true;
+                }
+                Long cached = cachedModified.get(f);
+                if (cached == null) {
+                    return true;
+                }
+                if (f.getLastModified() != cached) {
+                    return true;
+                }
             }
-            if (f.getLastModified() != cached) {
-                return true;
+            return false;
+        }
+
+        private void loadCompile(Collection<? extends JavaFileObject> sources) {
+            if (cachedCompile != null) {
+                if (!cachedCompile.closed) {
+                    throw new RuntimeException("Compiler is still in-use!");
+                }
+                cachedCompile.borrow.close();
+            }
+            cachedCompile = doCompile(sources);
+            cachedModified.clear();
+            for (JavaFileObject f : sources) {
+                cachedModified.put(f, f.getLastModified());
+            }
+            cachedContents = null;
+            if (incremental && sources.size() == 1) {
+                cachedContents = getContents(sources.iterator().next());
             }
         }
-        return false;
-    }
 
-    private void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
+        /**
+         * Updates the cached compilation in place if the only file in it has changed
+         * inside of a single method body.
+         *
+         * @return true if the cached compilation is up to date with the sources
+         */
+        private boolean reparse(Collection<? extends JavaFileObject> sources) {
+            if (cachedCompile == null || cachedContents == null || sources.size() != 1) {
+                return false;
+            }
+            JavaFileObject file = sources.iterator().next();
+            if (!cachedModified.containsKey(file)) {
+                return false;
+            }
+            String contents = getContents(file);
+            if (contents == null
+                    || !PartialReparser.reparse(cachedCompile, cachedContents, file, contents)) {
+                return false;
             }
-            cachedCompile.borrow.close();
+            cachedContents = contents;
+            cachedModified.clear();
+            cachedModified.put(file, file.getLastModified());
+            return true;
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+
+        private String getContents(JavaFileObject file) {
+            try {
+                return file.getCharContent(true).toString();
+            } catch (IOException e) {
+                return null;
+            }
         }
-    }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
-        if (sources.isEmpty()) throw new RuntimeException("empty sources");
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
-        Set<Path> addFiles = firstAttempt.needsAdditionalSources();
-        if (addFiles.isEmpty()) return firstAttempt;
-        // If the compiler needs additional source files that contain package-private files
-        //  LOG.info("...need to recompile with " + addFiles);
-        Log.d("JavaCompilerService", "Need to recompile with " + addFiles);
-        firstAttempt.close();
-        firstAttempt.borrow.close();
-        List<JavaFileObject> moreSources = new ArrayList<>(sources);
-        for (Path add : addFiles) {
-            moreSources.add(new SourceFileObject(add, mCurrentModule));
+        private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+            if (sources.isEmpty()) throw new RuntimeException("empty sources");
+            CompileBatch firstAttempt = new CompileBatch(JavaCompilerService.this, fileManager, sources);
+            Set<Path> addFiles = firstAttempt.needsAdditionalSources();
+            if (addFiles.isEmpty()) return firstAttempt;
+            // If the compiler needs additional source files that contain package-private files
+            //  LOG.info("...need to recompile with " + addFiles);
+            Log.d("JavaCompilerService", "Need to recompile with " + addFiles);
+            firstAttempt.close();
+            firstAttempt.borrow.close();
+            List<JavaFileObject> moreSources = new ArrayList<>(sources);
+            for (Path add : addFiles) {
+                moreSources.add(new SourceFileObject(add, mCurrentModule));
+            }
+            return new CompileBatch(JavaCompilerService.this, fileManager, moreSources);
         }
-        return new CompileBatch(this, moreSources);
-    }
 
-    /**
-     * Creates a compile batch only if it has not been compiled before
-     *
-     * @param sources Files to compile
-     * @return CompileBatch for this compilation
-     */
-    private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
-        mContainer.initialize(() -> {
-            // this lambda is synchronized
-            // and is guaranteed to be the only one writing
+        /**
+         * Creates a compile batch only if it has not been compiled before
+         *
+         * @param sources Files to compile
+         * @return CompileBatch for this compilation
+         */
+        private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
+            container.initialize(() -> {
+                // this lambda is synchronized
+                // and is guaranteed to be the only one writing
+                if (cachedCompile != null && !cachedCompile.closed) {
+                    cachedCompile.close();
+                }
+                if (needsCompile(sources)) {
+                    if (incremental && reparse(sources)) {
+                        Log.d("JavaCompilerService", "Reparsed the changed method");
+                    } else {
+                        loadCompile(sources);
+                    }
+                    reportDiagnostics();
+                } else {
+                    Log.d("JavaCompilerService", "Using cached compile");
+                }
+                return new CompileTask(cachedCompile);
+            });
+            return container;
+        }
+
+        private void reportDiagnostics() {
+            DiagnosticListener<? super JavaFileObject> listener = diagnosticListener;
+            if (listener == null) {
+                return;
+            }
+            listener.report(null);
+            for (Diagnostic<? extends JavaFileObject> diagnostic : cachedCompile.getDiagnostics()) {
+                listener.report(diagnostic);
+            }
+        }
+
+        private void close() {
             if (cachedCompile != null && !cachedCompile.closed) {
                 cachedCompile.close();
             }
-            if (needsCompile(sources)) {
-                loadCompile(sources);
-            } else {
-                Log.d("JavaCompilerService", "Using cached compile");
-            }
-            return new CompileTask(cachedCompile);
-        });
-        return mContainer;
-    }
-    
-    public void clearDiagnostics() {
-        diagnostics.clear();
-        if (mDiagnosticListener != null) {
-            mDiagnosticListener.report(null);
         }
-    }
 
-    public void addDiagnostic(Diagnostic<? extends JavaFileObject> diagnostic) {
-        diagnostics.add(diagnostic);
-        if (mDiagnosticListener != null) {
-            mDiagnosticListener.report(diagnostic);
+        private void destroy() {
+            if (cachedCompile != null) {
+                cachedCompile.borrow.discard();
+            }
+            cachedCompile = null;
+            cachedContents = null;
         }
     }
 
+    /**
+     * Sets the listener notified of the diagnostics of {@link #compileInBackground(Collection)},
+     * it receives {@code null} before the diagnostics of each new compilation.
+     */
     public void setDiagnosticListener(DiagnosticListener<? super JavaFileObject> listener) {
-        mDiagnosticListener = listener;
+        mBackgroundLane.diagnosticListener = listener;
     }
 
+    /**
+     * @return the diagnostics of the most recent compilation of
+     * {@link #compileInBackground(Collection)}, the ones shown in the editor
+     */
     public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
-        return ImmutableList.copyOf(diagnostics);
+        return mBackgroundLane.container.get(task -> task == null
+                ? ImmutableList.of()
+                : ImmutableList.copyOf(task.diagnostics));
     }
 
     @Override
@@ -191,13 +296,26 @@ public class JavaCompilerService implements CompilerProvider {
     // TODO: This doesn't list all the public types
     @Override
     public Set<String> publicTopLevelTypes() {
-        Set<String> classes = new HashSet<>(mCurrentModule.getAllClasses());
-        for (Module module : mProject.getDependencies(mCurrentModule)) {
+        Set<String> classes = new HashSet<>();
+        getClassNameIndex().addAllTo(classes);
+        return classes;
+    }
+
+    /**
+     * @return the index of the classes of the current module and the modules it depends on,
+     * prefer searching it over iterating {@link #publicTopLevelTypes()}
+     */
+    @NonNull
+    public ClassNameIndex getClassNameIndex() {
+        List<ClassNameIndex> indexes = new ArrayList<>();
+        indexes.add(mCurrentModule.getClassNameIndex());
+        for (Module dependency : mProject.getDependencies(mCurrentModule)) {
+            Module module = mProject.getSnapshot(dependency);
             if (module instanceof JavaModule) {
-                classes.addAll(((JavaModule) module).getAllClasses());
+                indexes.add(((JavaModule) module).getClassNameIndex());
             }
         }
-        return classes;
+        return ClassNameIndex.compose(indexes);
     }
 
     @Override
@@ -445,13 +563,23 @@ public class JavaCompilerService implements CompilerProvider {
      */
     @Override
     public CompilerContainer compile(Collection<? extends JavaFileObject> sources) {
-        return compileBatch(sources);
+        return mInteractiveLane.compileBatch(sources);
+    }
+
+    /**
+     * Same as {@link #compile(Collection)} but uses a separate context from the pool, used by
+     * background tasks such as diagnostics so they don't block completion while compiling.
+     *
+     * @param sources list of java sources
+     * @return a CompileTask for this compilation
+     */
+    public CompilerContainer compileInBackground(Collection<? extends JavaFileObject> sources) {
+        return mBackgroundLane.compileBatch(sources);
     }
 
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
-        }
+        mInteractiveLane.close();
+        mBackgroundLane.close();
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
         }
@@ -462,11 +590,24 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void destroy() {
-        cachedCompile = null;
+        mInteractiveLane.destroy();
+        mBackgroundLane.destroy();
     }
 
+    /**
+     * @return the container of the most recent compilation of {@link #compile(Collection)}
+     */
     @NonNull
     public CompilerContainer getCachedContainer() {
-        return mContainer;
+        return mInteractiveLane.container;
+    }
+
+    /**
+     * @return the container of the most recent compilation of
+     * {@link #compileInBackground(Collection)}, the one the diagnostics of the editor are from
+     */
+    @NonNull
+    public CompilerContainer getBackgroundContainer() {
+        return mBackgroundLane.container;
     }
 }
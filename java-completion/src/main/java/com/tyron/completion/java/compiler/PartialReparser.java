@@ -0,0 +1,319 @@
+package com.tyron.completion.java.compiler;
+
+import android.util.Log;
+
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.tools.javac.api.ClientCodeWrapper;
+import org.openjdk.tools.javac.api.JavacTaskImpl;
+import org.openjdk.tools.javac.comp.Attr;
+import org.openjdk.tools.javac.comp.AttrContext;
+import org.openjdk.tools.javac.comp.Enter;
+import org.openjdk.tools.javac.comp.Env;
+import org.openjdk.tools.javac.comp.Flow;
+import org.openjdk.tools.javac.parser.JavacParser;
+import org.openjdk.tools.javac.parser.ParserFactory;
+import org.openjdk.tools.javac.parser.Tokens;
+import org.openjdk.tools.javac.tree.EndPosTable;
+import org.openjdk.tools.javac.tree.JCTree;
+import org.openjdk.tools.javac.tree.TreeInfo;
+import org.openjdk.tools.javac.tree.TreeMaker;
+import org.openjdk.tools.javac.tree.TreeScanner;
+import org.openjdk.tools.javac.util.Context;
+import org.openjdk.tools.javac.util.DiagnosticSource;
+import org.openjdk.tools.javac.util.JCDiagnostic;
+import org.openjdk.tools.javac.util.Position;
+
+import java.lang.reflect.Field;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Updates a compilation of a single file in place when only the body of one of its methods
+ * has changed. The new body is parsed and attributed in the context of the existing
+ * compilation, the trees after it are moved to their new positions and the diagnostics of the
+ * method are replaced with the new ones. The diagnostics of the rest of the file are kept, their
+ * positions are computed from the trees so they move along with them.
+ *
+ * <p>Changes outside of a method body, to constructors or to bodies declaring classes require a
+ * full compilation, {@link #reparse} returns false for those.
+ */
+class PartialReparser {
+
+    private static final String TAG = "PartialReparser";
+
+    /**
+     * The fields javac caches the lines of a diagnostic in, null if they are not accessible
+     * in which case files are always compiled again.
+     */
+    private static final Field sSourcePosition;
+    private static final Field sFileObject;
+    private static final Field sBuf;
+    private static final Field sRefBuf;
+
+    static {
+        Field sourcePosition = null;
+        Field fileObject = null;
+        Field buf = null;
+        Field refBuf = null;
+        try {
+            sourcePosition = JCDiagnostic.class.getDeclaredField("sourcePosition");
+            sourcePosition.setAccessible(true);
+            fileObject = DiagnosticSource.class.getDeclaredField("fileObject");
+            fileObject.setAccessible(true);
+            buf = DiagnosticSource.class.getDeclaredField("buf");
+            buf.setAccessible(true);
+            refBuf = DiagnosticSource.class.getDeclaredField("refBuf");
+            refBuf.setAccessible(true);
+        } catch (NoSuchFieldException | RuntimeException e) {
+            Log.w(TAG, "Unable to access the lines of diagnostics", e);
+            sourcePosition = null;
+        }
+        sSourcePosition = sourcePosition;
+        sFileObject = fileObject;
+        sBuf = buf;
+        sRefBuf = refBuf;
+    }
+
+    /**
+     * @param batch the compilation of the previous contents of the file, it can no longer be
+     *              used if this method returns false
+     * @param oldContents the contents of the file the batch was compiled with
+     * @param file the file with the new contents
+     * @param newContents the new contents of the file
+     * @return true if the batch has been updated to the new contents
+     */
+    static boolean reparse(CompileBatch batch, String oldContents, JavaFileObject file,
+                           String newContents) {
+        if (sSourcePosition == null || batch.roots.size() != 1) {
+            return false;
+        }
+        JCTree.JCCompilationUnit unit = (JCTree.JCCompilationUnit) batch.roots.get(0);
+        if (unit.endPositions == null || !unit.sourcefile.toUri().equals(file.toUri())) {
+            return false;
+        }
+
+        int oldLength = oldContents.length();
+        int newLength = newContents.length();
+        int prefix = 0;
+        int max = Math.min(oldLength, newLength);
+        while (prefix < max && oldContents.charAt(prefix) == newContents.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return true;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && oldContents.charAt(oldLength - suffix - 1) == newContents.charAt(newLength - suffix - 1)) {
+            suffix++;
+        }
+        int changeEnd = oldLength - suffix;
+        int delta = newLength - oldLength;
+
+        try {
+            return reparse(batch, unit, file, newContents, prefix, changeEnd, delta);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to reparse " + file.getName(), e);
+            return false;
+        }
+    }
+
+    private static boolean reparse(CompileBatch batch, JCTree.JCCompilationUnit unit,
+                                   JavaFileObject file, String newContents, int changeStart,
+                                   int changeEnd, int delta) {
+        EndPosTable endPositions = unit.endPositions;
+        JCTree.JCMethodDecl method = null;
+        for (JCTree tree : unit.getTypeDecls()) {
+            if (tree instanceof JCTree.JCClassDecl) {
+                method = findMethod((JCTree.JCClassDecl) tree, endPositions, changeStart, changeEnd);
+                if (method != null) {
+                    break;
+                }
+            }
+        }
+        if (method == null || method.sym == null || method.sym.isConstructor()
+                || declaresClass(method.body)) {
+            return false;
+        }
+
+        int methodStart = TreeInfo.getStartPos(method);
+        int methodEnd = TreeInfo.getEndPos(method, endPositions);
+        int bodyStart = method.body.pos;
+        int bodyEnd = TreeInfo.getEndPos(method.body, endPositions);
+        for (Diagnostic<? extends JavaFileObject> diagnostic : batch.getDiagnostics()) {
+            // diagnostics without a tree cannot be moved
+            if (getTree(diagnostic) == null && diagnostic.getPosition() >= methodStart) {
+                return false;
+            }
+        }
+
+        Context context = ((JavacTaskImpl) batch.task).getContext();
+        org.openjdk.tools.javac.util.Log log = org.openjdk.tools.javac.util.Log.instance(context);
+        if (!(log instanceof ReusableCompiler.ReusableContext.ReusableLog)) {
+            return false;
+        }
+        ((ReusableCompiler.ReusableContext.ReusableLog) log).forgetSource(unit.sourcefile);
+        log.setEndPosTable(file, endPositions);
+        JavaFileObject previousSource = log.useSource(file);
+        try {
+            // the body is parsed at its position in the file
+            int newBodyEnd = bodyEnd + delta;
+            char[] buffer = new char[newBodyEnd];
+            Arrays.fill(buffer, 0, bodyStart, ' ');
+            newContents.getChars(bodyStart, newBodyEnd, buffer, bodyStart);
+            JavacParser parser = ParserFactory.instance(context)
+                    .newParser(CharBuffer.wrap(buffer), false, true, false);
+            JCTree.JCBlock body = parser.block();
+            if (parser.token().kind != Tokens.TokenKind.EOF
+                    || parser.getEndPos(body) != newBodyEnd
+                    || declaresClass(body)) {
+                return false;
+            }
+
+            batch.removeDiagnostics(it -> {
+                long position = it.getPosition();
+                return position >= methodStart && position < methodEnd;
+            });
+
+            method.body = body;
+            shiftPositions(unit, body, bodyEnd, delta);
+            new TreeScanner() {
+                @Override
+                public void scan(JCTree tree) {
+                    if (tree != null) {
+                        int end = parser.getEndPos(tree);
+                        if (end != Position.NOPOS) {
+                            endPositions.storeEnd(tree, end);
+                        }
+                    }
+                    super.scan(tree);
+                }
+            }.scan(body);
+            unit.sourcefile = file;
+            unit.lineMap = Position.makeLineMap(newContents.toCharArray(), newContents.length(), true);
+
+            Env<AttrContext> classEnv = Enter.instance(context).getEnv(method.sym.enclClass());
+            Attr.instance(context).attribStat(method, classEnv);
+            // javac does not analyze the flow of files with errors either
+            if (batch.getDiagnostics().stream()
+                    .noneMatch(it -> it.getKind() == Diagnostic.Kind.ERROR)) {
+                Flow.instance(context).analyzeTree(classEnv.dup(method), TreeMaker.instance(context));
+            }
+            resetLines(batch.getDiagnostics(), file);
+        } finally {
+            log.useSource(previousSource);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the method of the class or its member classes whose body contains the changed
+     * region, not including its braces.
+     */
+    private static JCTree.JCMethodDecl findMethod(JCTree.JCClassDecl classDecl,
+                                                  EndPosTable endPositions,
+                                                  int changeStart,
+                                                  int changeEnd) {
+        for (JCTree member : classDecl.getMembers()) {
+            if (member instanceof JCTree.JCClassDecl) {
+                JCTree.JCMethodDecl method = findMethod((JCTree.JCClassDecl) member,
+                        endPositions, changeStart, changeEnd);
+                if (method != null) {
+                    return method;
+                }
+            } else if (member instanceof JCTree.JCMethodDecl) {
+                JCTree.JCBlock body = ((JCTree.JCMethodDecl) member).body;
+                if (body != null && body.pos < changeStart
+                        && changeEnd < TreeInfo.getEndPos(body, endPositions)) {
+                    return (JCTree.JCMethodDecl) member;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Local and anonymous classes are entered with names that are unique to the compilation,
+     * attributing them again would declare them twice.
+     */
+    private static boolean declaresClass(JCTree tree) {
+        boolean[] found = new boolean[1];
+        new TreeScanner() {
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree) {
+                found[0] = true;
+            }
+        }.scan(tree);
+        return found[0];
+    }
+
+    /**
+     * Moves the trees that start or end after the old body of the changed method, the new body
+     * is already at its position.
+     */
+    private static void shiftPositions(JCTree.JCCompilationUnit unit, JCTree.JCBlock body,
+                                       int oldBodyEnd, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        EndPosTable endPositions = unit.endPositions;
+        // type trees may be shared between variables declared together
+        Set<JCTree> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null || tree == body || !visited.add(tree)) {
+                    return;
+                }
+                if (tree.pos >= oldBodyEnd) {
+                    tree.pos += delta;
+                }
+                int end = endPositions.getEndPos(tree);
+                if (end != Position.NOPOS && end >= oldBodyEnd) {
+                    endPositions.storeEnd(tree, end + delta);
+                }
+                super.scan(tree);
+            }
+        }.scan(unit);
+    }
+
+    /**
+     * The diagnostics that have been kept compute their lines from the contents they were
+     * reported with, javac caches those so they are reset to read the new contents.
+     */
+    private static void resetLines(List<Diagnostic<? extends JavaFileObject>> diagnostics,
+                                   JavaFileObject file) {
+        Set<DiagnosticSource> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+                if (!(diagnostic instanceof ClientCodeWrapper.DiagnosticSourceUnwrapper)) {
+                    continue;
+                }
+                JCDiagnostic d = ((ClientCodeWrapper.DiagnosticSourceUnwrapper) diagnostic).d;
+                sSourcePosition.set(d, null);
+                DiagnosticSource source = d.getDiagnosticSource();
+                if (source != null && source != DiagnosticSource.NO_SOURCE && sources.add(source)) {
+                    sFileObject.set(source, file);
+                    sBuf.set(source, null);
+                    sRefBuf.set(source, null);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JCTree getTree(Diagnostic<? extends JavaFileObject> diagnostic) {
+        if (diagnostic instanceof ClientCodeWrapper.DiagnosticSourceUnwrapper) {
+            JCDiagnostic.DiagnosticPosition position =
+                    ((ClientCodeWrapper.DiagnosticSourceUnwrapper) diagnostic).d.getDiagnosticPosition();
+            return position != null ? position.getTree() : null;
+        }
+        return null;
+    }
+}
@@ -24,11 +24,16 @@ import org.openjdk.tools.javac.util.Context;
 import org.openjdk.tools.javac.util.DefinedBy;
 import org.openjdk.tools.javac.util.Log;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Handler;
@@ -44,8 +49,9 @@ import me.xdrop.diffutils.DiffUtils;
  * reused for future processing in some cases. The reuse is achieved by replacing some components (most notably
  * JavaCompiler and Log) with reusable counterparts, and by cleaning up leftovers from previous compilation.
  *
- * <p>For each combination of options, a separate task/context is created and kept, as most option values are cached
- * inside components themselves.
+ * <p>For each combination of options and key, a separate task/context is created and kept, as most option values are
+ * cached inside components themselves. Several contexts can be checked out at the same time, the pool keeps a bounded
+ * number of them and evicts the least recently used ones first. Idle contexts are also dropped under memory pressure.
  *
  * <p>When the compilation redefines sensitive classes (e.g. classes in the the java.* packages), the task/context is
  * not reused.
@@ -66,15 +72,59 @@ public class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
-    private final List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+    /**
+     * The default number of warm contexts kept in the pool, this allows completion and
+     * diagnostics to compile at the same time without waiting on each other.
+     */
+    private static final int DEFAULT_MAX_CONTEXTS = 3;
+
+    /**
+     * When the free heap falls below this fraction of the max heap, idle contexts are dropped
+     * before a new one is created.
+     */
+    private static final double LOW_MEMORY_RATIO = 0.15;
+
+    private final int maxContexts;
+
+    /**
+     * Idle contexts ordered from the least recently used to the most recently used. They are
+     * softly reachable so the garbage collector can reclaim them under memory pressure.
+     */
+    private final Deque<SoftReference<ReusableContext>> idleContexts = new ArrayDeque<>();
+    private int checkedOut;
+
+    public ReusableCompiler() {
+        this(DEFAULT_MAX_CONTEXTS);
+    }
+
+    public ReusableCompiler(int maxContexts) {
+        if (maxContexts < 1) {
+            throw new IllegalArgumentException("maxContexts must be at least 1");
+        }
+        this.maxContexts = maxContexts;
+    }
+
+    /**
+     * Same as {@link #getTask(Object, JavaFileManager, DiagnosticListener, Iterable, Iterable, Iterable)}
+     * without a pool key, the context is only matched by its options.
+     */
+    public Borrow getTask(
+            JavaFileManager fileManager,
+            DiagnosticListener<? super JavaFileObject> diagnosticListener,
+            Iterable<String> options,
+            Iterable<String> classes,
+            Iterable<? extends JavaFileObject> compilationUnits) {
+        return getTask(null, fileManager, diagnosticListener, options, classes, compilationUnits);
+    }
 
     /**
      * Creates a new task as if by JavaCompiler and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
      * compilation.
      *
+     * <p>Multiple tasks may be checked out at the same time, each of them gets its own context.
+     *
+     * @param key an additional key used to match pooled contexts, for example the module, may be {@code null}
      * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
      *     diagnostics
@@ -88,76 +138,147 @@ public class ReusableCompiler {
      *     of other kind than {@linkplain JavaFileObject.Kind#SOURCE source}
      */
     public Borrow getTask(
-		JavaFileManager fileManager,
-		DiagnosticListener<? super JavaFileObject> diagnosticListener,
-		Iterable<String> options,
-		Iterable<String> classes,
-		Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
+            Object key,
+            JavaFileManager fileManager,
+            DiagnosticListener<? super JavaFileObject> diagnosticListener,
+            Iterable<String> options,
+            Iterable<String> classes,
+            Iterable<? extends JavaFileObject> compilationUnits) {
         List<String> opts =
 			StreamSupport.stream(options.spliterator(), false)
                     .collect(Collectors.toList());
-        if (!opts.equals(currentOptions)) {
-            List<String> difference = new ArrayList<>(currentOptions);
-            difference.removeAll(opts);
-            LOG.warning("Options changed, creating new compiler \n difference: " + difference);
-            currentOptions.clear();
-            currentOptions.addAll(opts);
-            currentContext = new ReusableContext(new ArrayList<>(opts));
-        }
+        ReusableContext context = checkOut(key, opts);
         JavacTaskImpl task =
 			(JavacTaskImpl)
 			systemProvider.getTask(
-			null, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
+			null, fileManager, diagnosticListener, opts, classes, compilationUnits, context);
+
+        task.addTaskListener(context);
+        return new Borrow(task, context);
+    }
+
+    /**
+     * Drops all the idle contexts in the pool, contexts that are currently checked out
+     * are not affected.
+     */
+    public synchronized void trim() {
+        idleContexts.clear();
+    }
+
+    private synchronized ReusableContext checkOut(Object key, List<String> options) {
+        if (isLowOnMemory()) {
+            LOG.warning("Low on memory, dropping " + idleContexts.size() + " idle contexts");
+            idleContexts.clear();
+        }
+
+        Iterator<SoftReference<ReusableContext>> iterator = idleContexts.descendingIterator();
+        while (iterator.hasNext()) {
+            ReusableContext context = iterator.next().get();
+            if (context == null) {
+                // collected by the garbage collector
+                iterator.remove();
+                continue;
+            }
+            if (context.matches(key, options)) {
+                iterator.remove();
+                checkedOut++;
+                return context;
+            }
+        }
+
+        if (checkedOut + idleContexts.size() >= maxContexts && !idleContexts.isEmpty()) {
+            // evict the least recently used context to make room for the new one
+            idleContexts.removeFirst();
+        }
+        LOG.info("No reusable context for key " + key + ", creating new compiler");
+        checkedOut++;
+        return new ReusableContext(key, new ArrayList<>(options));
+    }
+
+    /**
+     * Returns a context to the pool. It is the most recently used one so it is always kept,
+     * the least recently used idle contexts are evicted instead when the pool is full.
+     */
+    private synchronized void checkIn(ReusableContext context) {
+        checkedOut--;
+        idleContexts.addLast(new SoftReference<>(context));
+        while (idleContexts.size() > 1 && checkedOut + idleContexts.size() > maxContexts) {
+            idleContexts.removeFirst();
+        }
+    }
 
-        task.addTaskListener(currentContext);
-        return new Borrow(task, currentContext);
+    private synchronized void release() {
+        checkedOut--;
     }
 
-    public ReusableContext getCurrentContext() {
-        return currentContext;
+    private static boolean isLowOnMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return free < runtime.maxMemory() * LOW_MEMORY_RATIO;
     }
 
     public class Borrow implements AutoCloseable {
         final JavacTask task;
+        final ReusableContext context;
         boolean closed;
 
         Borrow(JavacTask task, ReusableContext ctx) {
             this.task = task;
+            this.context = ctx;
         }
 
         @Override
         public void close() {
             if (closed) return;
-            // not returning the context to the pool if task crashes with an exception
+            closed = true;
+            // not returning the context to the pool if resetting it fails,
             // the task/context may be in a broken state
-            currentContext.clear();
+            boolean reset = false;
             try {
+                context.clear();
                 Method method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
                 method.invoke(task);
+                reset = true;
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
                 throw new RuntimeException(e);
+            } finally {
+                if (reset) {
+                    checkIn(context);
+                } else {
+                    release();
+                }
             }
-            checkedOut = false;
+        }
+
+        /**
+         * Releases this borrow without returning its context to the pool, used when the
+         * task may be in a broken state.
+         */
+        public void discard() {
+            if (closed) return;
             closed = true;
+            release();
         }
     }
 
     static class ReusableContext extends Context implements TaskListener {
 
+        final Object key;
         List<String> arguments;
 
-        ReusableContext(List<String> arguments) {
+        ReusableContext(Object key, List<String> arguments) {
             super();
+            this.key = key;
             this.arguments = arguments;
             put(Log.logKey, ReusableLog.factory);
             put(JavaCompiler.compilerKey, ReusableJavaCompiler.factory);
         }
 
+        boolean matches(Object key, List<String> arguments) {
+            return Objects.equals(this.key, key) && this.arguments.equals(arguments);
+        }
+
         public void clear() {
             drop(Arguments.argsKey);
             drop(DiagnosticListener.class);
@@ -267,6 +388,15 @@ public class ReusableCompiler {
 					}
 				};
             }
+
+            /**
+             * Forgets the contents of the given file and the positions reported in it, used
+             * when the file is attributed again in the same compilation.
+             */
+            void forgetSource(JavaFileObject file) {
+                sourceMap.remove(file);
+                recorded.removeIf(it -> file.equals(it.fst));
+            }
         }
     }
 }
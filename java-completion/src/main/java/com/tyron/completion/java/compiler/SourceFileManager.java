@@ -59,7 +59,7 @@ public class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFil
 		if (location == StandardLocation.SOURCE_PATH) {
 		    List<File> found = new ArrayList<>();
             for (Module module : mProject.getModules()) {
-                found.addAll(list(module, packageName));
+                found.addAll(list(mProject.getSnapshot(module), packageName));
             }
             Stream<JavaFileObject> stream = found.stream()
                     .map(this::asJavaFileObject);
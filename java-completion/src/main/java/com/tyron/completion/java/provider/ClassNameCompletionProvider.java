@@ -68,29 +68,26 @@ public class ClassNameCompletionProvider extends BaseCompletionProvider {
             uniques.add(className);
         }
 
-        for (String className : compiler.publicTopLevelTypes()) {
-            // more strict on matching class names
-            String simpleName = ActionUtil.getSimpleName(className);
-            if (!predicate.test(simpleName)) {
-                continue;
-            }
+        // a single dot matches every class name
+        String prefix = ".".equals(partial) ? "" : partial;
+        File file = new File(root.getSourceFile().toUri());
+        compiler.getClassNameIndex().forEachMatch(prefix, caseSensitive, className -> {
             if (uniques.contains(className)) {
-                continue;
+                return true;
             }
             if (list.getItemCount() >= Completions.MAX_COMPLETION_ITEMS) {
                 list.incomplete();
-                break;
+                return false;
             }
             if (ActionUtil.hasImport(root, className)) {
-                continue;
+                return true;
             }
             CompletionItem item = classItem(className);
-            item.setInsertHandler(new ClassImportInsertHandler(compiler, new File(
-                    root.getSourceFile()
-                            .toUri()), item));
+            item.setInsertHandler(new ClassImportInsertHandler(compiler, file, item));
             item.setSortText(JavaSortCategory.TO_IMPORT.toString());
             list.addItem(item);
             uniques.add(className);
-        }
+            return true;
+        });
     }
 }
@@ -31,7 +31,9 @@ import org.openjdk.source.tree.Tree;
 import org.openjdk.source.util.JavacTask;
 import org.openjdk.source.util.TreePath;
 import org.openjdk.source.util.Trees;
+import org.openjdk.tools.javac.api.JavacTaskImpl;
 import org.openjdk.tools.javac.tree.JCTree;
+import org.openjdk.tools.javac.util.Context;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -76,12 +78,10 @@ public class Completions {
             StringBuilder pruned = new PruneMethodBodies(task.task).scan(task.root, index);
             int end = StringSearch.endOfLine(pruned, (int) index);
             pruned.insert(end, ';');
-            if (compiler.compiler.getCurrentContext() != null) {
-                contents = new FileContentFixer(compiler.compiler.getCurrentContext()).fixFileContent(
-                        pruned);
-            } else {
-                contents = pruned.toString();
-            }
+            // the context of the parse task is only used by this completion, the pooled
+            // contexts may still be compiling on another thread
+            Context context = ((JavacTaskImpl) task.task).getContext();
+            contents = new FileContentFixer(context).fixFileContent(pruned);
         } catch (IndexOutOfBoundsException e) {
             Log.w(TAG, "Unable to fix file content", e);
             return null;
@@ -0,0 +1,222 @@
+package com.tyron.completion.java.compiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.TestUtil;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.openjdk.javax.tools.Diagnostic;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.source.tree.CompilationUnitTree;
+import org.openjdk.source.tree.Tree;
+import org.openjdk.source.util.JavacTask;
+import org.openjdk.source.util.SourcePositions;
+import org.openjdk.source.util.TreeScanner;
+import org.openjdk.source.util.Trees;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Edits a file compiled by the background lane and checks that the updated compilation has
+ * the same trees and diagnostics as a full compilation of the new contents.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class PartialReparserTest {
+
+    private static final String SOURCE = "package com.tyron.test;\n" +
+            "\n" +
+            "public class Reparse {\n" +
+            "\n" +
+            "    private int mField;\n" +
+            "\n" +
+            "    public int first(int a) {\n" +
+            "        int b = a + 1;\n" +
+            "        return b;\n" +
+            "    }\n" +
+            "\n" +
+            "    public String second() {\n" +
+            "        String s = undefined;\n" +
+            "        return s + mField;\n" +
+            "    }\n" +
+            "\n" +
+            "    class Inner {\n" +
+            "        int third() {\n" +
+            "            return \"a\";\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockAndroidModule mModule;
+    private JavaCompilerService mService;
+    private Path mFile;
+    private Snapshot mCompiled;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = new File(TestUtil.resolveBasePath(), "EmptyProject");
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, new MockFileManager(root));
+        mModule.open();
+
+        mService = provider.get(project, mModule);
+        File file = folder.newFile("Reparse.java");
+        FileUtils.writeStringToFile(file, SOURCE, StandardCharsets.UTF_8);
+        mFile = file.toPath();
+        mCompiled = compileInBackground(SOURCE);
+    }
+
+    @Test
+    public void testSameLengthEdit() {
+        assertReparsed(SOURCE.replace("a + 1", "a + 2"));
+    }
+
+    @Test
+    public void testEditMovesLaterMembers() {
+        assertReparsed(SOURCE.replace("        return b;\n",
+                "        int c = b * 2;\n        return c;\n"));
+        // the next edit starts from the moved trees and diagnostics
+        assertReparsed(SOURCE.replace("        return b;\n", "        return a;\n"));
+        assertReparsed(SOURCE);
+    }
+
+    @Test
+    public void testEditAddsError() {
+        assertReparsed(SOURCE.replace("int b = a + 1;", "int b = a + \"1\";"));
+        assertReparsed(SOURCE);
+    }
+
+    @Test
+    public void testEditOfNestedClass() {
+        assertReparsed(SOURCE.replace("return \"a\";", "return 1;"));
+    }
+
+    @Test
+    public void testEditOutsideOfBodyIsCompiled() {
+        String contents = SOURCE.replace("public int first(int a)", "public long first(int a)");
+        Snapshot compiled = compileInBackground(contents);
+        assertThat(compiled.task).isNotSameInstanceAs(mCompiled.task);
+        assertThat(compiled).isEqualTo(compile(contents));
+    }
+
+    /**
+     * Compiles the given contents in the background lane, the previous compilation must be
+     * reused and match a full compilation of the contents.
+     */
+    private void assertReparsed(String contents) {
+        Snapshot compiled = compileInBackground(contents);
+        assertThat(compiled.task).isSameInstanceAs(mCompiled.task);
+        assertThat(compiled).isEqualTo(compile(contents));
+        mCompiled = compiled;
+    }
+
+    private Snapshot compileInBackground(String contents) {
+        return mService.compileInBackground(Collections.singletonList(newSource(contents)))
+                .get(Snapshot::new);
+    }
+
+    private Snapshot compile(String contents) {
+        return mService.compile(Collections.singletonList(newSource(contents)))
+                .get(Snapshot::new);
+    }
+
+    private JavaFileObject newSource(String contents) {
+        // a new timestamp for each version so the lanes see the change
+        return new SourceFileObject(mFile, contents, Instant.now().plusNanos(System.nanoTime()),
+                mModule);
+    }
+
+    /**
+     * The positions of the trees and the diagnostics of a compilation, the tree positions
+     * include the kind and the type of each tree so a stale attribution is detected as well.
+     */
+    private static class Snapshot {
+
+        final JavacTask task;
+        final List<String> trees = new ArrayList<>();
+        final List<String> diagnostics = new ArrayList<>();
+
+        Snapshot(CompileTask compileTask) {
+            task = compileTask.task;
+            Trees trees = Trees.instance(task);
+            SourcePositions positions = trees.getSourcePositions();
+            CompilationUnitTree root = compileTask.root();
+            new TreeScanner<Void, Void>() {
+                @Override
+                public Void scan(Tree tree, Void unused) {
+                    if (tree != null) {
+                        Snapshot.this.trees.add(tree.getKind() + " " +
+                                positions.getStartPosition(root, tree) + "-" +
+                                positions.getEndPosition(root, tree) + " " +
+                                trees.getTypeMirror(trees.getPath(root, tree)));
+                    }
+                    return super.scan(tree, unused);
+                }
+            }.scan(root, null);
+
+            for (Diagnostic<? extends JavaFileObject> diagnostic : compileTask.diagnostics) {
+                diagnostics.add(diagnostic.getKind() + " " + diagnostic.getCode() + " " +
+                        diagnostic.getStartPosition() + "-" + diagnostic.getPosition() + "-" +
+                        diagnostic.getEndPosition() + " " + diagnostic.getLineNumber() + ":" +
+                        diagnostic.getColumnNumber() + " " +
+                        diagnostic.getMessage(Locale.ENGLISH));
+            }
+            Collections.sort(diagnostics);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot snapshot = (Snapshot) o;
+            return trees.equals(snapshot.trees) && diagnostics.equals(snapshot.diagnostics);
+        }
+
+        @Override
+        public int hashCode() {
+            return trees.hashCode() * 31 + diagnostics.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.join("\n", trees) + "\n" + String.join("\n", diagnostics);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.tyron.completion.java.compiler;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.openjdk.javax.tools.JavaFileManager;
+import org.openjdk.javax.tools.JavaFileObject;
+import org.openjdk.javax.tools.SimpleJavaFileObject;
+import org.openjdk.tools.javac.api.JavacTool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Collections;
+
+public class ReusableCompilerTest {
+
+    private final JavaFileManager mFileManager =
+            JavacTool.create().getStandardFileManager(null, null, null);
+
+    @Test
+    public void testReturnedContextIsKeptWhilePoolIsInUse() {
+        ReusableCompiler compiler = new ReusableCompiler(1);
+        ReusableCompiler.Borrow first = borrow(compiler);
+        ReusableCompiler.Borrow second = borrow(compiler);
+        assertNotSame(first.context, second.context);
+
+        // the pool is full while the second context is in use, the first one is kept warm
+        first.close();
+        ReusableCompiler.Borrow third = borrow(compiler);
+        assertSame(first.context, third.context);
+        second.close();
+        third.close();
+
+        // only the context returned last is kept
+        ReusableCompiler.Borrow fourth = borrow(compiler);
+        assertSame(first.context, fourth.context);
+        fourth.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedContextIsEvicted() {
+        ReusableCompiler compiler = new ReusableCompiler(2);
+        ReusableCompiler.Borrow first = borrow(compiler);
+        ReusableCompiler.Borrow second = borrow(compiler);
+        ReusableCompiler.Borrow third = borrow(compiler);
+        first.close();
+        second.close();
+        third.close();
+
+        ReusableCompiler.Borrow reused = borrow(compiler);
+        ReusableCompiler.Borrow other = borrow(compiler);
+        assertSame(third.context, reused.context);
+        assertSame(second.context, other.context);
+        reused.close();
+        other.close();
+    }
+
+    @Test
+    public void testContextIsNotReusedWhenResetFails() {
+        ReusableCompiler compiler = new ReusableCompiler(1);
+        ReusableCompiler.Borrow borrow = borrow(compiler);
+        // resetting a borrow without a task fails
+        ReusableCompiler.Borrow broken = compiler.new Borrow(null, borrow.context);
+        try {
+            broken.close();
+            fail();
+        } catch (RuntimeException expected) {
+            // expected
+        }
+        assertTrue(broken.closed);
+        // closing it again does nothing
+        broken.close();
+
+        ReusableCompiler.Borrow next = borrow(compiler);
+        assertNotSame(borrow.context, next.context);
+        next.close();
+    }
+
+    private ReusableCompiler.Borrow borrow(ReusableCompiler compiler) {
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("file:///A.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "class A {}";
+            }
+        };
+        ReusableCompiler.Borrow borrow = compiler.getTask(mFileManager, null,
+                Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(source));
+        try {
+            // contexts are only reset after they have been used
+            borrow.task.parse();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return borrow;
+    }
+}
@@ -27,6 +27,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 import edu.emory.mathcs.backport.java.util.Collections;
 
@@ -153,6 +154,34 @@ public class MultiThreadTest {
         });
     }
 
+    @Test
+    public void testInteractiveAndBackgroundInParallel() throws InterruptedException {
+        File file = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        assert file != null;
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread background = new Thread(() -> {
+            SourceFileObject source = new SourceFileObject(file.toPath(), mModule, Instant.now());
+            CompilerContainer container =
+                    mService.compileInBackground(Collections.singletonList(source));
+            container.run(task -> w(1000));
+        }, "Background");
+        background.setUncaughtExceptionHandler((thread, e) -> error.set(e));
+        background.start();
+
+        // must not throw a compiler in-use error while the background task is reading
+        CompilerContainer container = mService.compile(file.toPath());
+        container.run(task -> {
+            assert task != null;
+            System.out.println(Thread.currentThread().getName());
+        });
+
+        background.join();
+        if (error.get() != null) {
+            throw new AssertionError("The background compilation failed", error.get());
+        }
+    }
+
     private void w(long millis) {
         try {
             Thread.sleep(millis);
@@ -155,25 +155,7 @@ public class CompiledFile {
     }
 
     private int oldOffset(int cursor) {
-        Pair<TextRange, TextRange> pair = Position.changedRegion(mParse.getText(), mContent);
-
-        if (pair == null || pair.getFirst() == null || pair.getSecond() == null) {
-            return cursor;
-        }
-
-        TextRange oldChanged = pair.getFirst();
-        TextRange newChanged = pair.getSecond();
-
-        if (cursor <= newChanged.getStartOffset()) {
-            return cursor;
-        }
-        if (cursor < newChanged.getEndOffset()) {
-            int newRelative = cursor - newChanged.getStartOffset();
-            int oldRelative = newRelative * oldChanged.getLength() / newChanged.getLength();
-            return oldChanged.getStartOffset() + oldRelative;
-        }
-
-        return mParse.getText().length() - (mContent.length() - cursor);
+        return Position.oldOffset(mParse.getText(), mContent, cursor);
     }
 
     public String describeRange(TextRange range, boolean oldContent) {
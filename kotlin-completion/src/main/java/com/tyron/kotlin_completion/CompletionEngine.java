@@ -93,9 +93,9 @@ public class CompletionEngine {
 
         CompiledFile compiled;
         if (shouldRecompile) {
-            compiled = sp.currentVersion(file);
+            compiled = sp.currentVersion(file, offset);
         } else {
-            compiled = sp.latestCompiledVersion(file);
+            compiled = sp.latestCompiledVersion(file, offset);
         }
 
         return Pair.create(compiled, offset);
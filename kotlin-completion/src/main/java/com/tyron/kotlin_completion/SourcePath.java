@@ -3,16 +3,21 @@ package com.tyron.kotlin_completion;
 import android.util.Log;
 
 import com.tyron.kotlin_completion.compiler.CompletionKind;
+import com.tyron.kotlin_completion.compiler.IncrementalAnalysisKt;
 import com.tyron.kotlin_completion.index.SymbolIndex;
+import com.tyron.kotlin_completion.position.Position;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
 import com.tyron.kotlin_completion.util.UtilKt;
 
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.kotlin.com.intellij.lang.Language;
+import org.jetbrains.kotlin.com.intellij.openapi.util.TextRange;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtNamedFunction;
 import org.jetbrains.kotlin.resolve.BindingContext;
 
 import java.io.File;
@@ -23,6 +28,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
@@ -70,7 +76,17 @@ public class SourcePath {
         private String content;
         private final Path path;
         private KtFile parsed;
+        private String parsedContent;
         private KtFile compiledFile;
+        private String compiledSignature;
+        private Map<String, String> compiledDeclarations;
+        private FqName compiledPackage;
+        // the compiled context only contains the body of the last edited function
+        private boolean partiallyCompiled;
+        // the body of that function in the compiled file
+        private TextRange compiledFunctionRange;
+        // a file this file depends on has changed its signature since it was compiled
+        private boolean dependenciesChanged;
         public BindingContext compiledContext;
         private ComponentProvider compiledcontainer;
         private final Language language;
@@ -114,10 +130,11 @@ public class SourcePath {
         public void parse() {
             Log.d(TAG, "Parsing file " + path);
             parsed = cp.getCompiler().createKtFile(content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            parsedContent = content;
         }
 
         public void parseIfChanged() {
-            if (parsed == null || !content.equals(parsed.getText())) {
+            if (parsed == null || !content.equals(parsedContent)) {
                 Log.d(TAG, "Parse has changed, parsing.");
                 parse();
             }
@@ -141,31 +158,113 @@ public class SourcePath {
         }
 
         private void doCompileIfChanged() {
-            if (parsed == null || compiledFile == null || !parsed.getText().equals(compiledFile.getText())) {
-                doCompile();;
+            if (dependenciesChanged) {
+                // the declarations this file references may have changed
+                doCompile();
+                return;
             }
+            if (parsed == null || compiledFile == null || parsed != compiledFile) {
+                if (!compileChangedFunction()) {
+                    doCompile();
+                }
+            }
+        }
+
+        private boolean needsCompile() {
+            parseIfChanged();
+            return compiledFile == null || parsed != compiledFile || partiallyCompiled
+                    || dependenciesChanged;
+        }
+
+        /**
+         * If the edits since the last compilation are contained in the body of a single
+         * function and the signature of the file is unchanged, only that function is analyzed
+         * again. The context of the file will then only contain that function, requests for
+         * other offsets compile the whole file first, see {@link #prepareCompiledFile(int)}.
+         *
+         * @return false if the whole file needs to be compiled
+         */
+        private boolean compileChangedFunction() {
+            if (parsed == null || compiledFile == null || compiledSignature == null
+                    || !this.path.toFile().getName().endsWith(".kt")) {
+                return false;
+            }
+            if (!compiledSignature.equals(IncrementalAnalysisKt.signatureOf(parsed))) {
+                return false;
+            }
+            org.jetbrains.kotlin.com.intellij.openapi.util.Pair<TextRange, TextRange> changed =
+                    Position.changedRegion(compiledFile.getText(), parsed.getText());
+            if (changed == null) {
+                return false;
+            }
+            KtNamedFunction function =
+                    IncrementalAnalysisKt.findChangedFunction(parsed, changed.getSecond());
+            if (function == null) {
+                return false;
+            }
+
+            Log.d(TAG, "Compiling function " + function.getName() + " of " + path);
+            Pair<BindingContext, ComponentProvider> pair =
+                    cp.getCompiler().compileKtDeclaration(function, allIncludingThis());
+            parsedDataWriteLock.lock();
+            try {
+                compiledContext = pair.getFirst();
+                compiledcontainer = pair.getSecond();
+                compiledFile = parsed;
+                partiallyCompiled = true;
+                compiledFunctionRange = function.getBodyExpression().getTextRange();
+            } finally {
+                parsedDataWriteLock.unlock();
+            }
+            return true;
         }
 
         private void doCompile() {
+            Set<FqName> changedPackages = new HashSet<>();
             if (this.path.toFile().getName().endsWith(".kt")) {
                 Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(parsed, allIncludingThis());
                 parsedDataWriteLock.lock();
                 try {
+                    addPackages(changedPackages, this, parsed);
                     compiledContext = pair.getFirst();
                     compiledcontainer = pair.getSecond();
                     compiledFile = parsed;
+                    updateSignature(this);
                 } finally {
                     parsedDataWriteLock.unlock();
                 }
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
+            updateIndexAsync(compiledcontainer, changedPackages);
         }
         public CompiledFile prepareCompiledFile() {
+            return prepareCompiledFile(-1);
+        }
+
+        /**
+         * Returns the compiled file used to serve a request at the given offset of the current
+         * content. If only the last edited function has been analyzed and the offset is not
+         * in its body, the whole file is compiled first since the context has nothing
+         * for the rest of the file.
+         */
+        public CompiledFile prepareCompiledFile(int offset) {
             parseIfChanged();
             compileIfNull();
+            if (partiallyCompiled && !isInCompiledFunction(offset)) {
+                Log.d(TAG, "Offset " + offset + " is outside of the compiled function, compiling " + path);
+                doCompile();
+            }
             return doPrepareCompiledFile();
         }
 
+        private boolean isInCompiledFunction(int offset) {
+            if (offset < 0 || compiledFunctionRange == null) {
+                return false;
+            }
+            int compiledOffset = Position.oldOffset(compiledFile.getText(), content, offset);
+            return compiledFunctionRange.getStartOffset() < compiledOffset
+                    && compiledOffset < compiledFunctionRange.getEndOffset();
+        }
+
         public CompiledFile doPrepareCompiledFile() {
             return new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, allIncludingThis(), cp);
         }
@@ -213,22 +312,74 @@ public class SourcePath {
 
     public BindingContext compileFiles(Collection<File> all) {
         Set<SourceFile> sources = all.stream().map(o -> files.get(o.toURI())).collect(Collectors.toSet());
-        Set<SourceFile> allChanged = sources.stream().filter(it -> !it.content.equals(it.compiledFile.getText()))
+        Set<SourceFile> allChanged = sources.stream().filter(SourceFile::needsCompile)
                 .collect(Collectors.toSet());
         BindingContext sourcesContext = compileAndUpdate(allChanged);
         return UtilKt.util(sourcesContext, sources, allChanged);
     }
 
-    private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
+    /**
+     * Indexes the whole module the first time, afterwards only the symbols of the packages
+     * declared by the compiled files are replaced.
+     */
+    private void updateIndexAsync(ComponentProvider container, Set<FqName> changedPackages) {
         indexAsync.execute(() -> {
-            if (indexEnabled && !indexInitialized) {
-                ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+            if (!indexEnabled) {
+                return;
+            }
+            ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+            if (!indexInitialized) {
                 index.refresh(module, true);
                 indexInitialized = true;
+            } else {
+                index.updatePackages(module, changedPackages);
             }
         });
     }
 
+    /**
+     * Marks the file as fully compiled. If its signature has changed, the other files that
+     * reference one of the changed declarations are compiled again the next time they are
+     * requested. If its package has changed, every other file is.
+     */
+    private void updateSignature(SourceFile file) {
+        String signature = IncrementalAnalysisKt.signatureOf(file.compiledFile);
+        Map<String, String> declarations =
+                IncrementalAnalysisKt.declarationSignaturesOf(file.compiledFile);
+        FqName packageName = file.compiledFile.getPackageFqName();
+        if (file.compiledSignature != null && !file.compiledSignature.equals(signature)) {
+            boolean packageChanged = !packageName.equals(file.compiledPackage);
+            Set<String> changed = IncrementalAnalysisKt.changedDeclarations(
+                    file.compiledDeclarations, declarations);
+            for (SourceFile other : files.values()) {
+                if (other == file || other.dependenciesChanged) {
+                    continue;
+                }
+                other.parseIfChanged();
+                if (packageChanged || IncrementalAnalysisKt.referencesAny(other.parsed, changed)) {
+                    other.dependenciesChanged = true;
+                }
+            }
+        }
+        file.compiledSignature = signature;
+        file.compiledDeclarations = declarations;
+        file.compiledPackage = packageName;
+        file.partiallyCompiled = false;
+        file.compiledFunctionRange = null;
+        file.dependenciesChanged = false;
+    }
+
+    /**
+     * Adds the package of the new version of the file and of its previously compiled version,
+     * so declarations moved out of a package are removed from the index.
+     */
+    private static void addPackages(Set<FqName> packages, SourceFile file, KtFile parsed) {
+        packages.add(parsed.getPackageFqName());
+        if (file.compiledFile != null) {
+            packages.add(file.compiledFile.getPackageFqName());
+        }
+    }
+
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
@@ -240,32 +391,49 @@ public class SourcePath {
         Pair<BindingContext, ComponentProvider> pair = cp.getCompiler()
                 .compileKtFiles(parse.values(), all, CompletionKind.DEFAULT);
 
+        Set<FqName> changedPackages = new HashSet<>();
         parse.forEach((f, parsed) -> {
             parsedDataWriteLock.lock();
             try {
                 if (f.parsed.equals(parsed)) {
+                    addPackages(changedPackages, f, parsed);
                     f.compiledFile = parsed;
                     f.compiledContext = pair.getFirst();
                     f.compiledcontainer = pair.getSecond();
+                    updateSignature(f);
                 }
             } finally {
                 parsedDataWriteLock.unlock();
             }
         });
 
-        initializeIndexAsyncIfNeeded(pair.getSecond());
+        updateIndexAsync(pair.getSecond(), changedPackages);
         return pair.getFirst();
     }
 
     public CompiledFile currentVersion(File file) {
+        return currentVersion(file, -1);
+    }
+
+    /**
+     * @param offset the offset of the current content the compiled file is used for
+     */
+    public CompiledFile currentVersion(File file, int offset) {
         SourceFile sourceFile = sourceFile(file);
         sourceFile.compileIfChanged();
-        return sourceFile.prepareCompiledFile();
+        return sourceFile.prepareCompiledFile(offset);
     }
 
     public CompiledFile latestCompiledVersion(File file) {
+        return latestCompiledVersion(file, -1);
+    }
+
+    /**
+     * @param offset the offset of the current content the compiled file is used for
+     */
+    public CompiledFile latestCompiledVersion(File file, int offset) {
         SourceFile sourceFile = sourceFile(file);
-        return sourceFile.prepareCompiledFile();
+        return sourceFile.prepareCompiledFile(offset);
     }
 
     private SourceFile sourceFile(File file) {
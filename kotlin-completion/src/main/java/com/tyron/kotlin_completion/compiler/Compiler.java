@@ -14,6 +14,7 @@ import org.jetbrains.kotlin.com.intellij.psi.PsiJavaFile;
 import org.jetbrains.kotlin.config.CompilerConfiguration;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.psi.KtDeclaration;
 import org.jetbrains.kotlin.psi.KtExpression;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
@@ -105,6 +106,23 @@ public class Compiler implements Closeable {
         }
     }
 
+    /**
+     * Analyzes only the given declaration, the other declarations of the source path are
+     * resolved lazily when they are referenced.
+     */
+    public Pair<BindingContext, ComponentProvider> compileKtDeclaration(KtDeclaration declaration, Collection<KtFile> sourcePath) {
+        mCompileLock.lock();
+        try {
+            Pair<ComponentProvider, BindingTraceContext> pair = mDefaultCompileEnvironment.createContainer(sourcePath);
+            ((LazyTopDownAnalyzer) pair.getFirst().resolve(LazyTopDownAnalyzer.class).getValue())
+                    .analyzeDeclarations(TopDownAnalysisMode.TopLevelDeclarations,
+                            Collections.singletonList(declaration), DataFlowInfo.Companion.getEMPTY(), null);
+            return new Pair<>(pair.getSecond().getBindingContext(), pair.getFirst());
+        } finally {
+            mCompileLock.unlock();
+        }
+    }
+
     public CompilationEnvironment getDefaultCompileEnvironment() {
         return mDefaultCompileEnvironment;
     }
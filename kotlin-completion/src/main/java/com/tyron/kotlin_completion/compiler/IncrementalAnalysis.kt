@@ -0,0 +1,128 @@
+package com.tyron.kotlin_completion.compiler
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.TextRange
+import org.jetbrains.kotlin.psi.KtElement
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi.KtNamedDeclaration
+import org.jetbrains.kotlin.psi.KtNamedFunction
+import org.jetbrains.kotlin.psi.KtParameter
+import org.jetbrains.kotlin.psi.KtPsiUtil
+import org.jetbrains.kotlin.psi.KtSimpleNameExpression
+import org.jetbrains.kotlin.psi.KtTreeVisitorVoid
+import org.jetbrains.kotlin.psi.psiUtil.parentsWithSelf
+
+/**
+ * Returns the text of the file without the bodies of the functions whose return type does not
+ * depend on their body. Two versions of a file with the same signature declare the same
+ * descriptors, so files depending on it do not need to be analyzed again.
+ */
+fun signatureOf(file: KtFile): String = signatureOf(file as KtElement)
+
+private fun signatureOf(element: KtElement): String {
+    val bodies = ArrayList<TextRange>()
+    element.accept(object : KtTreeVisitorVoid() {
+        override fun visitNamedFunction(function: KtNamedFunction) {
+            val body = function.bodyExpression
+            if (body != null && (function.hasBlockBody() || function.typeReference != null)) {
+                bodies.add(body.textRange)
+                // local declarations are part of the body
+                return
+            }
+            super.visitNamedFunction(function)
+        }
+    })
+
+    val text = element.text
+    val offset = element.textRange.startOffset
+    val builder = StringBuilder(text.length)
+    var start = 0
+    for (body in bodies) {
+        builder.append(text, start, body.startOffset - offset).append("{}")
+        start = body.endOffset - offset
+    }
+    builder.append(text, start, text.length)
+    return builder.toString()
+}
+
+/**
+ * Returns the signature of every non local declaration of the file keyed by its name, see
+ * [signatureOf]. The signatures of declarations with the same name, such as overloads, are
+ * joined.
+ */
+fun declarationSignaturesOf(file: KtFile): Map<String, String> {
+    val signatures = HashMap<String, String>()
+    file.accept(object : KtTreeVisitorVoid() {
+        override fun visitNamedDeclaration(declaration: KtNamedDeclaration) {
+            if (KtPsiUtil.isLocal(declaration)) {
+                return
+            }
+            val name = declaration.name
+            if (name != null && (declaration !is KtParameter || declaration.hasValOrVar())) {
+                val signature = signatureOf(declaration)
+                signatures.merge(name, signature) { first, second -> first + "\n" + second }
+            }
+            super.visitNamedDeclaration(declaration)
+        }
+    })
+    return signatures
+}
+
+/**
+ * Returns the names of the declarations that have been added, removed or whose signature
+ * differs between the two versions of a file, see [declarationSignaturesOf].
+ */
+fun changedDeclarations(old: Map<String, String>, new: Map<String, String>): Set<String> {
+    val changed = HashSet<String>()
+    for ((name, signature) in old) {
+        if (new[name] != signature) {
+            changed.add(name)
+        }
+    }
+    for (name in new.keys) {
+        if (!old.containsKey(name)) {
+            changed.add(name)
+        }
+    }
+    return changed
+}
+
+/**
+ * Returns whether the file contains a reference to one of the given names. References are
+ * matched by name only, so a file referencing another declaration with the same name is
+ * also reported.
+ */
+fun referencesAny(file: KtFile, names: Set<String>): Boolean {
+    if (names.isEmpty()) {
+        return false
+    }
+    var found = false
+    file.accept(object : KtTreeVisitorVoid() {
+        override fun visitKtElement(element: KtElement) {
+            if (!found) {
+                super.visitKtElement(element)
+            }
+        }
+
+        override fun visitSimpleNameExpression(expression: KtSimpleNameExpression) {
+            if (names.contains(expression.getReferencedName())) {
+                found = true
+            }
+            super.visitSimpleNameExpression(expression)
+        }
+    })
+    return found
+}
+
+/**
+ * Returns the non local function whose body contains the changed range of the file, or null
+ * if the change is not contained in a single function body that is excluded from the
+ * signature of the file, see [signatureOf].
+ */
+fun findChangedFunction(file: KtFile, changed: TextRange): KtNamedFunction? {
+    val element = file.findElementAt(changed.startOffset) ?: return null
+    return element.parentsWithSelf
+        .filterIsInstance<KtNamedFunction>()
+        .firstOrNull { !KtPsiUtil.isLocal(it) }
+        ?.takeIf { it.hasBlockBody() || it.typeReference != null }
+        ?.takeIf { it.bodyExpression?.textRange?.contains(changed) == true }
+}
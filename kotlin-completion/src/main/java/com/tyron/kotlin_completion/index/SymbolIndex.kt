@@ -2,8 +2,6 @@ package com.tyron.kotlin_completion.index
 
 import android.util.Log
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.name.FqName
@@ -14,117 +12,103 @@ import java.time.Duration
 import java.time.Instant
 import kotlin.sequences.Sequence
 
-private const val MAX_FQNAME_LENGTH = 255
-private const val MAX_SHORT_NAME_LENGTH = 80
-
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+/**
+ * An in memory index of the top level declarations of a module. Queries are served from an
+ * immutable [SymbolTable] so they never wait for an update that is in progress.
+ */
+class SymbolIndex {
 
-    override val primaryKey = PrimaryKey(fqName)
-}
+    @Volatile
+    private var table = SymbolTable.EMPTY
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
-
-    override val primaryKey = PrimaryKey(fqName)
-}
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
+    // used to share the FqName instances of the symbols and their receiver types
+    private val fqNames = HashMap<FqName, FqName>()
 
+    @Volatile
     var indexing: Boolean = false
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
-    }
-
+    @Synchronized
     fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
         val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+        Log.d("SymbolIndex", "Updating symbol index...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
-                }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
-                }
-
-                indexing = false
+            if (forced) {
+                fqNames.clear()
+                table = SymbolTable.create(symbolsOf(module, allPackages(module)))
+            } else {
+                // packages that are no longer in the module are dropped as well
+                val packages = allPackages(module).toSet()
+                table = table.replacePackages(packages + table.packages,
+                    symbolsOf(module, packages.asSequence()))
             }
+            Log.d("SymbolIndex", "Indexed ${table.size} symbols in "
+                    + (System.currentTimeMillis() - started) + " ms")
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
+        } finally {
+            indexing = false
+        }
+    }
+
+    /**
+     * Replaces the symbols of the given packages with the ones currently in the module,
+     * used after source files declaring those packages have been compiled.
+     */
+    @Synchronized
+    fun updatePackages(module: ModuleDescriptor, packages: Collection<FqName>) {
+        if (packages.isEmpty()) {
+            return
+        }
+        try {
+            val packageSet = packages.toSet()
+            table = table.replacePackages(packageSet, symbolsOf(module, packageSet.asSequence()))
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while updating packages $packages", e)
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
         val start = Instant.now()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
-                        Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
-                        )
-                    }
-            }
+            return table.query(prefix, receiverType, limit)
         } finally {
             Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
         }
     }
 
-    private fun canStoreFqName(fqName: FqName) =
-        fqName.toString().length <= MAX_FQNAME_LENGTH
-                && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
+    private fun symbolsOf(module: ModuleDescriptor, packages: Sequence<FqName>): Collection<Symbol> {
+        // overloads share the same fully qualified name, only one of them is kept
+        val symbols = LinkedHashMap<FqName, Symbol>()
+        for (descriptor in packages.flatMap { descriptorsOf(module, it) }) {
+            val descriptorFqn = intern(PsiUtils.getFqNameSafe(descriptor))
+            val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+                ?.let(::intern)
+            symbols[descriptorFqn] = Symbol(
+                fqName = descriptorFqn,
+                kind = descriptor.accept(ExtractSymbolKind, Unit),
+                visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+                extensionReceiverType = extensionReceiverFqn
+            )
+        }
+        return symbols.values
+    }
 
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
-            }
+    private fun intern(fqName: FqName): FqName = fqNames.getOrPut(fqName) { fqName }
+
+    private fun descriptorsOf(module: ModuleDescriptor, packageName: FqName): Sequence<DeclarationDescriptor> =
+        try {
+            module.getPackage(packageName).memberScope
+                .getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+                .asSequence()
+        } catch (e: IllegalStateException) {
+            Log.w("SymbolIndex", "Couldn't query descriptors in package $packageName")
+            emptySequence()
         }
 
     private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package com.tyron.kotlin_completion.index
+
+import org.jetbrains.kotlin.name.FqName
+
+/**
+ * An immutable table of symbols, bucketed by their extension receiver type. Each bucket is
+ * sorted by short name so a prefix query is a binary search followed by a scan.
+ *
+ * Updates return a new table, the symbols of the replaced packages are filtered out and the
+ * new ones are merged in without sorting the whole bucket again.
+ */
+internal class SymbolTable private constructor(
+    private val buckets: Map<FqName?, Bucket>
+) {
+
+    private class Bucket(val shortNames: Array<String>, val symbols: Array<Symbol>) {
+
+        fun lowerBound(prefix: String): Int {
+            var low = 0
+            var high = shortNames.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (shortNames[mid] < prefix) {
+                    low = mid + 1
+                } else {
+                    high = mid
+                }
+            }
+            return low
+        }
+    }
+
+    val size: Int
+        get() = buckets.values.sumOf { it.symbols.size }
+
+    /**
+     * The packages declaring the symbols of this table
+     */
+    val packages: Set<FqName> by lazy {
+        buckets.values.flatMapTo(HashSet()) { bucket -> bucket.symbols.map { it.fqName.parent() } }
+    }
+
+    fun query(prefix: String, receiverType: FqName?, limit: Int): List<Symbol> {
+        val bucket = buckets[receiverType] ?: return emptyList()
+        val result = ArrayList<Symbol>(minOf(limit, 16))
+        var i = bucket.lowerBound(prefix)
+        while (i < bucket.symbols.size && result.size < limit
+            && bucket.shortNames[i].startsWith(prefix)) {
+            result.add(bucket.symbols[i])
+            i++
+        }
+        return result
+    }
+
+    /**
+     * @param packages the packages whose symbols are replaced
+     * @param symbols the new symbols of the given packages
+     */
+    fun replacePackages(packages: Set<FqName>, symbols: Collection<Symbol>): SymbolTable {
+        val added = symbols.groupBy { it.extensionReceiverType }
+        val newBuckets = HashMap<FqName?, Bucket>()
+        for (receiverType in buckets.keys + added.keys) {
+            val retained = buckets[receiverType]?.symbols
+                ?.filter { it.fqName.parent() !in packages }
+                .orEmpty()
+            val merged = merge(retained, sort(added[receiverType].orEmpty()))
+            if (merged.isNotEmpty()) {
+                newBuckets[receiverType] = createBucket(merged)
+            }
+        }
+        return SymbolTable(newBuckets)
+    }
+
+    companion object {
+
+        val EMPTY = SymbolTable(emptyMap())
+
+        fun create(symbols: Collection<Symbol>): SymbolTable = SymbolTable(
+            symbols.groupBy { it.extensionReceiverType }
+                .mapValues { createBucket(sort(it.value)) }
+        )
+
+        private fun createBucket(sorted: List<Symbol>) = Bucket(
+            Array(sorted.size) { sorted[it].fqName.shortName().asString() },
+            sorted.toTypedArray()
+        )
+
+        private fun sort(symbols: List<Symbol>) =
+            symbols.sortedBy { it.fqName.shortName().asString() }
+
+        private fun merge(first: List<Symbol>, second: List<Symbol>): List<Symbol> {
+            if (first.isEmpty()) return second
+            if (second.isEmpty()) return first
+            val result = ArrayList<Symbol>(first.size + second.size)
+            var i = 0
+            var j = 0
+            while (i < first.size && j < second.size) {
+                if (first[i].fqName.shortName().asString()
+                    <= second[j].fqName.shortName().asString()) {
+                    result.add(first[i++])
+                } else {
+                    result.add(second[j++])
+                }
+            }
+            while (i < first.size) result.add(first[i++])
+            while (j < second.size) result.add(second[j++])
+            return result
+        }
+    }
+}
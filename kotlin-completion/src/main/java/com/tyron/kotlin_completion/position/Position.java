@@ -67,6 +67,32 @@ public class Position {
         return Pair.create(new TextRange(prefix, oldEnd), new TextRange(prefix, newEnd));
     }
 
+    /**
+     * Maps an offset of the new content to the offset of the same position in the old content,
+     * offsets inside the changed region are scaled to the length of the old region.
+     */
+    public static int oldOffset(String oldContent, String newContent, int cursor) {
+        Pair<TextRange, TextRange> pair = changedRegion(oldContent, newContent);
+
+        if (pair == null || pair.getFirst() == null || pair.getSecond() == null) {
+            return cursor;
+        }
+
+        TextRange oldChanged = pair.getFirst();
+        TextRange newChanged = pair.getSecond();
+
+        if (cursor <= newChanged.getStartOffset()) {
+            return cursor;
+        }
+        if (cursor < newChanged.getEndOffset()) {
+            int newRelative = cursor - newChanged.getStartOffset();
+            int oldRelative = newRelative * oldChanged.getLength() / newChanged.getLength();
+            return oldChanged.getStartOffset() + oldRelative;
+        }
+
+        return oldContent.length() - (newContent.length() - cursor);
+    }
+
 
     public static com.tyron.completion.model.Position position(String content, int offset) throws IOException {
         StringReader reader = new StringReader(content);
@@ -0,0 +1,143 @@
+package com.tyron.kotlin_completion.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.kotlin_completion.position.Position;
+
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.com.intellij.openapi.util.TextRange;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtNamedFunction;
+import org.jetbrains.kotlin.psi.KtPsiFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class IncrementalAnalysisTest {
+
+    private static final String SOURCE = "package test\n" +
+            "\n" +
+            "class Main {\n" +
+            "    fun foo(): Int {\n" +
+            "        return 1\n" +
+            "    }\n" +
+            "\n" +
+            "    fun bar() = 2\n" +
+            "}\n";
+
+    private final Disposable mDisposable = Disposer.newDisposable();
+    private KtPsiFactory mFactory;
+
+    @Before
+    public void setup() {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.Companion.getNONE());
+        KotlinCoreEnvironment environment = KotlinCoreEnvironment.createForProduction(mDisposable,
+                configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        mFactory = new KtPsiFactory(environment.getProject());
+    }
+
+    @After
+    public void tearDown() {
+        Disposer.dispose(mDisposable);
+    }
+
+    @Test
+    public void testSignatureIgnoresBlockBodies() {
+        KtFile file = createFile(SOURCE);
+        KtFile edited = createFile(SOURCE.replace("return 1", "val one = 1\n        return one"));
+        assertEquals(IncrementalAnalysisKt.signatureOf(file),
+                IncrementalAnalysisKt.signatureOf(edited));
+    }
+
+    @Test
+    public void testSignatureIncludesInferredBodies() {
+        // the return type of bar is inferred from its body
+        KtFile file = createFile(SOURCE);
+        KtFile edited = createFile(SOURCE.replace("fun bar() = 2", "fun bar() = 2L"));
+        assertNotEquals(IncrementalAnalysisKt.signatureOf(file),
+                IncrementalAnalysisKt.signatureOf(edited));
+    }
+
+    @Test
+    public void testFindChangedFunction() {
+        KtFile file = createFile(SOURCE);
+        String text = SOURCE.replace("return 1", "val one = 1\n        return one");
+        KtFile edited = createFile(text);
+
+        TextRange changed = Position.changedRegion(file.getText(), edited.getText()).getSecond();
+        KtNamedFunction function = IncrementalAnalysisKt.findChangedFunction(edited, changed);
+        assertNotNull(function);
+        assertEquals("foo", function.getName());
+    }
+
+    @Test
+    public void testChangeOutsideOfBlockBodyIsNotAFunctionChange() {
+        KtFile file = createFile(SOURCE);
+        KtFile edited = createFile(SOURCE.replace("fun bar() = 2", "fun bar() = 3"));
+        TextRange changed = Position.changedRegion(file.getText(), edited.getText()).getSecond();
+        assertNull(IncrementalAnalysisKt.findChangedFunction(edited, changed));
+
+        KtFile renamed = createFile(SOURCE.replace("fun foo()", "fun foo2()"));
+        changed = Position.changedRegion(file.getText(), renamed.getText()).getSecond();
+        assertNull(IncrementalAnalysisKt.findChangedFunction(renamed, changed));
+    }
+
+    @Test
+    public void testChangedDeclarations() {
+        KtFile file = createFile(SOURCE);
+        KtFile edited = createFile(SOURCE.replace("fun bar() = 2", "fun bar() = 2L"));
+        Set<String> changed = IncrementalAnalysisKt.changedDeclarations(
+                IncrementalAnalysisKt.declarationSignaturesOf(file),
+                IncrementalAnalysisKt.declarationSignaturesOf(edited));
+        // the class contains bar so its signature changes as well
+        assertEquals(new HashSet<>(Arrays.asList("Main", "bar")), changed);
+
+        KtFile bodyOnly = createFile(SOURCE.replace("return 1", "return 2"));
+        assertTrue(IncrementalAnalysisKt.changedDeclarations(
+                IncrementalAnalysisKt.declarationSignaturesOf(file),
+                IncrementalAnalysisKt.declarationSignaturesOf(bodyOnly)).isEmpty());
+    }
+
+    @Test
+    public void testReferences() {
+        KtFile user = createFile("package other\n" +
+                "\n" +
+                "import test.Main\n" +
+                "\n" +
+                "fun use() = Main().bar()\n");
+        assertTrue(IncrementalAnalysisKt.referencesAny(user, Collections.singleton("bar")));
+        assertTrue(IncrementalAnalysisKt.referencesAny(user, Collections.singleton("Main")));
+        assertFalse(IncrementalAnalysisKt.referencesAny(user, Collections.singleton("foo")));
+        assertFalse(IncrementalAnalysisKt.referencesAny(user, Collections.emptySet()));
+    }
+
+    @Test
+    public void testOldOffset() {
+        String edited = SOURCE.replace("return 1", "return 100");
+        int before = SOURCE.indexOf("fun foo");
+        int after = edited.indexOf("fun bar");
+        assertEquals(before, Position.oldOffset(SOURCE, edited, before));
+        assertEquals(SOURCE.indexOf("fun bar"), Position.oldOffset(SOURCE, edited, after));
+    }
+
+    private KtFile createFile(String text) {
+        return mFactory.createFile("Main.kt", text);
+    }
+}
@@ -0,0 +1,130 @@
+package com.tyron.kotlin_completion.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.kotlin_completion.compiler.CompilerKt;
+
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys;
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
+import org.jetbrains.kotlin.com.intellij.openapi.Disposable;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Disposer;
+import org.jetbrains.kotlin.config.CommonConfigurationKeys;
+import org.jetbrains.kotlin.config.CompilerConfiguration;
+import org.jetbrains.kotlin.config.JVMConfigurationKeys;
+import org.jetbrains.kotlin.container.ComponentProvider;
+import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
+import org.jetbrains.kotlin.name.FqName;
+import org.jetbrains.kotlin.psi.KtFile;
+import org.jetbrains.kotlin.psi.KtPsiFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Indexes the declarations of source files and looks them up again
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SymbolIndexTest {
+
+    private static final String FIRST = "package first\n" +
+            "\n" +
+            "class Foo\n" +
+            "\n" +
+            "interface FooListener\n" +
+            "\n" +
+            "fun fooBar() = 1\n" +
+            "\n" +
+            "fun fooBar(value: Int) = value\n" +
+            "\n" +
+            "fun Foo.fooExtension() = 2\n" +
+            "\n" +
+            "val fooValue = 3\n";
+
+    private static final String SECOND = "package second\n" +
+            "\n" +
+            "fun foo() = 4\n";
+
+    private final Disposable mDisposable = Disposer.newDisposable();
+    private KotlinCoreEnvironment mEnvironment;
+    private KtPsiFactory mFactory;
+
+    @Before
+    public void setup() {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.Companion.getNONE());
+        configuration.put(CommonConfigurationKeys.MODULE_NAME, "test");
+        // only the declarations of the sources are indexed
+        configuration.put(JVMConfigurationKeys.NO_JDK, true);
+        mEnvironment = KotlinCoreEnvironment.createForProduction(mDisposable,
+                configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES);
+        mFactory = new KtPsiFactory(mEnvironment.getProject());
+    }
+
+    @After
+    public void tearDown() {
+        Disposer.dispose(mDisposable);
+    }
+
+    @Test
+    public void testIndexedDeclarationsAreFound() {
+        SymbolIndex index = new SymbolIndex();
+        index.refresh(module(FIRST, SECOND), true);
+
+        List<Symbol> symbols = index.query("Foo", null, 20);
+        assertEquals(Arrays.asList("first.Foo", "first.FooListener"), names(symbols));
+        assertEquals(Symbol.Kind.CLASS, symbols.get(0).getKind());
+        assertEquals(Symbol.Kind.INTERFACE, symbols.get(1).getKind());
+        assertEquals(Symbol.Visibility.PUBLIC, symbols.get(0).getVisibility());
+
+        // the overloads of fooBar are indexed once
+        assertEquals(Arrays.asList("second.foo", "first.fooBar", "first.fooValue"),
+                names(index.query("foo", null, 20)));
+        assertEquals(Collections.singletonList("first.fooExtension"),
+                names(index.query("foo", new FqName("first.Foo"), 20)));
+        assertTrue(index.query("bar", null, 20).isEmpty());
+    }
+
+    @Test
+    public void testUpdatedPackagesAreIndexedAgain() {
+        SymbolIndex index = new SymbolIndex();
+        index.refresh(module(FIRST, SECOND), true);
+
+        String edited = SECOND.replace("fun foo()", "fun fooRenamed()");
+        index.updatePackages(module(FIRST, edited),
+                Collections.singletonList(new FqName("second")));
+        assertEquals(Arrays.asList("first.fooBar", "second.fooRenamed", "first.fooValue"),
+                names(index.query("foo", null, 20)));
+
+        // the whole module is indexed again, the removed package is dropped
+        index.refresh(module(FIRST), false);
+        assertEquals(Arrays.asList("first.fooBar", "first.fooValue"),
+                names(index.query("foo", null, 20)));
+    }
+
+    private ModuleDescriptor module(String... sources) {
+        List<KtFile> files = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            files.add(mFactory.createFile("File" + i + ".kt", sources[i]));
+        }
+        ComponentProvider container = CompilerKt.createContainer(mEnvironment, files).getFirst();
+        return (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+    }
+
+    private static List<String> names(List<Symbol> symbols) {
+        List<String> names = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            names.add(symbol.getFqName().asString());
+        }
+        return names;
+    }
+}
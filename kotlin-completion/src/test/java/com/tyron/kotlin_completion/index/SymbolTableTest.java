@@ -0,0 +1,89 @@
+package com.tyron.kotlin_completion.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jetbrains.kotlin.name.FqName;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class SymbolTableTest {
+
+    private static final FqName STRING = new FqName("kotlin.String");
+
+    private final SymbolTable mTable = SymbolTable.Companion.create(Arrays.asList(
+            symbol("a.foo", null),
+            symbol("a.fooBar", null),
+            symbol("b.bar", null),
+            symbol("b.fob", null),
+            symbol("c.foo", STRING),
+            symbol("c.zoo", STRING)));
+
+    @Test
+    public void testPrefixLookup() {
+        assertEquals(Arrays.asList("b.fob", "a.foo", "a.fooBar"),
+                names(mTable.query("fo", null, 10)));
+        assertEquals(Arrays.asList("a.foo", "a.fooBar"), names(mTable.query("foo", null, 10)));
+        assertEquals(Collections.singletonList("b.bar"), names(mTable.query("b", null, 10)));
+        assertTrue(mTable.query("Foo", null, 10).isEmpty());
+        assertTrue(mTable.query("x", null, 10).isEmpty());
+        assertEquals(6, mTable.getSize());
+    }
+
+    @Test
+    public void testLookupBoundaries() {
+        // the first and the last names of the bucket
+        assertEquals(Collections.singletonList("b.bar"), names(mTable.query("bar", null, 10)));
+        assertEquals(Collections.singletonList("a.fooBar"),
+                names(mTable.query("fooBar", null, 10)));
+        assertTrue(mTable.query("fooBarBaz", null, 10).isEmpty());
+        assertEquals(4, mTable.query("", null, 10).size());
+        assertEquals(2, mTable.query("", null, 2).size());
+        assertTrue(SymbolTable.Companion.getEMPTY().query("", null, 10).isEmpty());
+    }
+
+    @Test
+    public void testReceiverTypeLookup() {
+        assertEquals(Collections.singletonList("c.foo"), names(mTable.query("fo", STRING, 10)));
+        assertEquals(Arrays.asList("c.foo", "c.zoo"), names(mTable.query("", STRING, 10)));
+        assertTrue(mTable.query("", new FqName("kotlin.Int"), 10).isEmpty());
+    }
+
+    @Test
+    public void testReplacePackages() {
+        SymbolTable table = mTable.replacePackages(
+                new HashSet<>(Arrays.asList(new FqName("a"), new FqName("c"))),
+                Arrays.asList(symbol("a.fox", null), symbol("a.alpha", null),
+                        symbol("a.zed", new FqName("kotlin.Int"))));
+
+        assertEquals(Arrays.asList("a.alpha", "b.bar", "b.fob", "a.fox"),
+                names(table.query("", null, 10)));
+        assertEquals(Collections.singletonList("a.zed"),
+                names(table.query("", new FqName("kotlin.Int"), 10)));
+        // every symbol with this receiver type was in a replaced package
+        assertTrue(table.query("", STRING, 10).isEmpty());
+        assertEquals(5, table.getSize());
+
+        // the previous table is not modified
+        assertEquals(Arrays.asList("b.fob", "a.foo", "a.fooBar"),
+                names(mTable.query("fo", null, 10)));
+    }
+
+    private static Symbol symbol(String fqName, FqName receiverType) {
+        return new Symbol(new FqName(fqName), Symbol.Kind.FUNCTION, Symbol.Visibility.PUBLIC,
+                receiverType);
+    }
+
+    private static List<String> names(List<Symbol> symbols) {
+        List<String> names = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            names.add(symbol.getFqName().asString());
+        }
+        return names;
+    }
+}
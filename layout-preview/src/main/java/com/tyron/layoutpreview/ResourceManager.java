@@ -45,9 +45,8 @@ public class ResourceManager {
                 continue;
             }
 
-            File resourcesDir = new File(parent, "res");
-            if (resourcesDir.exists()) {
-                parser = new ResourceDrawableParser(mContext, resourcesDir, mFileManager);
+            if (new File(parent, "res").exists()) {
+                parser = new ResourceDrawableParser(mContext, parent);
                 defaultDrawables.putAll(parser.getDefaultDrawables());
             }
         }
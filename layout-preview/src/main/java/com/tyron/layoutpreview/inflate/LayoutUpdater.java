@@ -0,0 +1,232 @@
+package com.tyron.layoutpreview.inflate;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ProteusView;
+import com.flipkart.android.proteus.ViewTypeParser;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Value;
+import com.flipkart.android.proteus.view.UnknownView;
+import com.flipkart.android.proteus.view.UnknownViewGroup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Updates an inflated view hierarchy to a new {@link Layout} by comparing it with the layouts
+ * the views were inflated from. Views whose type and children are unchanged are kept and only
+ * their changed attributes are applied again, other views are inflated again in place.
+ *
+ * <p>Attributes cannot be unset from a view, a view whose attribute has been removed or whose
+ * style or theme has changed is inflated again.
+ */
+public class LayoutUpdater {
+
+    private final ProteusContext mContext;
+
+    private int mUpdatedViews;
+    private int mInflatedViews;
+
+    public LayoutUpdater(@NonNull ProteusContext context) {
+        mContext = context;
+    }
+
+    /**
+     * @param view the view to update, it must have been inflated by the same context
+     * @param layout the new layout of the view
+     * @return the view showing the new layout, this is a new view if the old one could not be
+     * updated. If the old view had a parent, the new view replaces it.
+     */
+    @NonNull
+    public ProteusView update(@NonNull ProteusView view, @NonNull Layout layout) {
+        mUpdatedViews = 0;
+        mInflatedViews = 0;
+        return updateView(view, layout);
+    }
+
+    /**
+     * @return the number of views kept by the last update
+     */
+    public int getUpdatedViewCount() {
+        return mUpdatedViews;
+    }
+
+    /**
+     * @return the number of views inflated again by the last update, not including their children
+     */
+    public int getInflatedViewCount() {
+        return mInflatedViews;
+    }
+
+    private ProteusView updateView(ProteusView view, Layout layout) {
+        ProteusView.Manager manager = view.getViewManager();
+        Layout old = manager.getLayout();
+        ViewTypeParser<View> parser = manager.getViewTypeParser();
+        // unknown views apply their attributes when they are created
+        if (parser == null || !old.type.equals(layout.type)
+                || view instanceof UnknownView || view instanceof UnknownViewGroup) {
+            return replace(view, layout);
+        }
+
+        View androidView = view.getAsView();
+        int childrenId = androidView instanceof ViewGroup ? parser.getAttributeId("children") : -1;
+        Map<Integer, Value> oldAttributes = getAttributes(old, childrenId);
+        Map<Integer, Value> newAttributes = getAttributes(layout, childrenId);
+        if (!newAttributes.keySet().containsAll(oldAttributes.keySet())
+                || changed(oldAttributes, newAttributes, parser.getAttributeId("style"))
+                || changed(oldAttributes, newAttributes, parser.getAttributeId("android:theme"))) {
+            return replace(view, layout);
+        }
+
+        ViewParent parent = androidView.getParent();
+        ViewTypeParser<View> parentParser = parent instanceof ProteusView
+                ? ((ProteusView) parent).getViewManager().getViewTypeParser()
+                : null;
+        Map<String, Value> oldExtras = getExtras(old);
+        Map<String, Value> newExtras = getExtras(layout);
+        if (!newExtras.keySet().containsAll(oldExtras.keySet())) {
+            return replace(view, layout);
+        }
+
+        List<Layout> oldChildren = getChildren(old, childrenId);
+        List<Layout> newChildren = getChildren(layout, childrenId);
+        if (oldChildren == null || newChildren == null
+                || newChildren.size() != oldChildren.size()
+                || (childrenId != -1 && ((ViewGroup) androidView).getChildCount() != oldChildren.size())) {
+            return replace(view, layout);
+        }
+
+        View parentView = parent instanceof View ? (View) parent : null;
+        newAttributes.forEach((id, value) -> {
+            if (!isSame(oldAttributes.get(id), value)) {
+                parser.handleAttribute(parentView, androidView, id, value);
+            }
+        });
+        newExtras.forEach((name, value) -> {
+            // like the inflater, extras are only applied by a parent it knows
+            if (parentParser != null && !isSame(oldExtras.get(name), value)) {
+                int id = parentParser.getAttributeId(name);
+                if (id != -1) {
+                    parentParser.handleAttribute(parentView, androidView, id, value);
+                }
+            }
+        });
+
+        List<Layout.Attribute> attributes = new ArrayList<>(layout.getAttributes());
+        if (childrenId != -1) {
+            ViewGroup group = (ViewGroup) androidView;
+            Array children = new Array(newChildren.size());
+            for (int i = 0; i < newChildren.size(); i++) {
+                View child = group.getChildAt(i);
+                if (!(child instanceof ProteusView)) {
+                    return replace(view, layout);
+                }
+                ProteusView updated = updateView((ProteusView) child, newChildren.get(i));
+                children.add(updated.getViewManager().getLayout());
+            }
+            attributes.remove(new Layout.Attribute(childrenId, null));
+            if (!newChildren.isEmpty()) {
+                attributes.add(new Layout.Attribute(childrenId, children));
+            }
+        }
+
+        // the layout is shared with the view manager
+        old.attributes = attributes;
+        old.extras = layout.extras;
+        mUpdatedViews++;
+        return view;
+    }
+
+    private ProteusView replace(ProteusView view, Layout layout) {
+        mInflatedViews++;
+        View old = view.getAsView();
+        ViewParent parent = old.getParent();
+        if (!(parent instanceof ViewGroup)) {
+            return mContext.getInflater().inflate(layout, new ObjectValue());
+        }
+        ViewGroup group = (ViewGroup) parent;
+        int index = group.indexOfChild(old);
+        group.removeViewAt(index);
+        ProteusView inflated = mContext.getInflater().inflate(layout, new ObjectValue(), group, -1);
+        group.addView(inflated.getAsView(), index);
+        return inflated;
+    }
+
+    /**
+     * Compiled values do not implement equals, they are compared by the string they are
+     * converted back to xml with.
+     */
+    private static boolean isSame(@Nullable Value oldValue, @Nullable Value newValue) {
+        if (Objects.equals(oldValue, newValue)) {
+            return true;
+        }
+        return oldValue != null && newValue != null
+               && oldValue.getClass() == newValue.getClass()
+               && oldValue.toString().equals(newValue.toString());
+    }
+
+    private static boolean changed(Map<Integer, Value> oldAttributes,
+                                   Map<Integer, Value> newAttributes,
+                                   int id) {
+        return id != -1 && !isSame(oldAttributes.get(id), newAttributes.get(id));
+    }
+
+    private static Map<Integer, Value> getAttributes(Layout layout, int childrenId) {
+        Map<Integer, Value> attributes = new LinkedHashMap<>();
+        for (Layout.Attribute attribute : layout.getAttributes()) {
+            if (attribute.id != childrenId) {
+                attributes.put(attribute.id, attribute.value);
+            }
+        }
+        return attributes;
+    }
+
+    private static Map<String, Value> getExtras(Layout layout) {
+        Map<String, Value> extras = new LinkedHashMap<>();
+        if (layout.extras != null) {
+            for (Map.Entry<String, Value> entry : layout.extras.entrySet()) {
+                extras.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return extras;
+    }
+
+    /**
+     * @return the layouts of the children, or null if the children are not all layouts
+     */
+    @Nullable
+    private static List<Layout> getChildren(Layout layout, int childrenId) {
+        List<Layout> children = new ArrayList<>();
+        if (childrenId == -1) {
+            return children;
+        }
+        for (Layout.Attribute attribute : layout.getAttributes()) {
+            if (attribute.id != childrenId) {
+                continue;
+            }
+            if (!attribute.value.isArray()) {
+                return null;
+            }
+            Array array = attribute.value.getAsArray();
+            for (int i = 0; i < array.size(); i++) {
+                Value child = array.get(i);
+                if (!child.isLayout()) {
+                    return null;
+                }
+                children.add(child.getAsLayout());
+            }
+        }
+        return children;
+    }
+}
@@ -50,6 +50,8 @@ import dalvik.system.DexClassLoader;
 
 public class PreviewLayoutInflater {
 
+    private static final String TAG = PreviewLayoutInflater.class.getSimpleName();
+
     private final Context mBaseContext;
     private final Proteus mProteus;
     private final AndroidModule mProject;
@@ -248,6 +250,42 @@ public class PreviewLayoutInflater {
         return mContext.getInflater().inflate(layout, new ObjectValue());
     }
 
+    /**
+     * Converts the contents of a layout file, this does not touch any view and can be
+     * called from a background thread.
+     *
+     * @param xml The contents of the layout file
+     * @return The layout, or empty if the contents are not a valid layout
+     */
+    public Optional<Layout> parseLayout(String xml) {
+        try {
+            JsonObject object = new XmlToJsonConverter()
+                    .convert(xml);
+            Value value = new ProteusTypeAdapterFactory(mContext)
+                    .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(object.toString())), false);
+            if (value != null && value.isLayout()) {
+                return Optional.of(value.getAsLayout());
+            }
+        } catch (Exception e) {
+            // the layout is being edited, wait for it to become valid
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Updates a view inflated by this inflater to a new layout, only the views that have
+     * changed are bound or inflated again.
+     *
+     * @return The view showing the new layout, see {@link LayoutUpdater#update}
+     */
+    public ProteusView updateLayout(ProteusView view, Layout layout) {
+        LayoutUpdater updater = new LayoutUpdater(mContext);
+        ProteusView updated = updater.update(view, layout);
+        Log.d(TAG, "Updated " + updater.getUpdatedViewCount() + " views, inflated " +
+                   updater.getInflatedViewCount() + " views");
+        return updated;
+    }
+
     public void registerCustomViews(ProteusBuilder builder, Module module) {
         File customViewsDir = new File(module.getBuildDirectory(), "custom_views");
         if (!customViewsDir.exists() && !customViewsDir.mkdirs()) {
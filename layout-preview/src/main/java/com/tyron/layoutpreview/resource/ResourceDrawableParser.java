@@ -6,35 +6,42 @@ import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.DrawableValue;
 import com.flipkart.android.proteus.value.ObjectValue;
 import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
-import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
 import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
 import com.tyron.vectorparser.VectorValue;
 
-import org.xmlpull.v1.XmlPullParserException;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 public class ResourceDrawableParser {
 
     private final ProteusContext mContext;
     private final File mResourceDirectory;
     private final FileManager mFileManager;
-    private final Map<String, DrawableValue> drawableValueMap = new HashMap<>();
+    private final Map<String, ResourceXmlCache.Entry> mLibraryFiles;
 
     public ResourceDrawableParser(ProteusContext context, File dir, FileManager fileManager) {
         mContext = context;
         mResourceDirectory = dir;
         mFileManager = fileManager;
-        drawableValueMap.putAll(getDefaultDrawables());
+        mLibraryFiles = null;
+    }
+
+    /**
+     * Creates a parser for the drawables of a library, the converted xml files are shared
+     * by all the previews of projects using the library.
+     *
+     * @param libraryDir the directory the AAR of the library has been extracted to
+     */
+    public ResourceDrawableParser(ProteusContext context, File libraryDir) {
+        mContext = context;
+        mResourceDirectory = new File(libraryDir, "res");
+        mFileManager = null;
+        mLibraryFiles = ResourceXmlCache.getInstance().getLibraryFolder(libraryDir, "drawable");
     }
 
     public Map<String, DrawableValue> getDefaultDrawables() {
@@ -53,10 +60,7 @@ public class ResourceDrawableParser {
             } else if (file.getName().endsWith(".xml")) {
                 try {
                     value = parseXml(file);
-                    if (value != null) {
-                        map.put(getName(file), value);
-                    }
-                } catch (IOException | ConvertException | XmlPullParserException ignore) {
+                } catch (IOException ignore) {
 
                 }
             }
@@ -79,18 +83,17 @@ public class ResourceDrawableParser {
     }
 
     @Nullable
-    private DrawableValue parseXml(File file) throws IOException, ConvertException, XmlPullParserException {
-        Optional<CharSequence> contents = mFileManager.getFileContent(file);
-        if (contents.isPresent()) {
-            String contentsString = contents.get().toString();
-            JsonObject converted = new XmlToJsonConverter()
-                    .convert(contentsString);
+    private DrawableValue parseXml(File file) throws IOException {
+        ResourceXmlCache.Entry entry = mLibraryFiles != null
+                ? mLibraryFiles.get(file.getName())
+                : ResourceXmlCache.getInstance().get(file, mFileManager);
+        if (entry != null && entry.getJson() != null) {
             Value value = new ProteusTypeAdapterFactory(mContext)
-                    .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(converted.toString())), true);
+                    .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(entry.getJson())), true);
             ObjectValue objectValue = value.getAsObject();
             if (objectValue != null) {
                 if ("vector".equals(objectValue.getAsString("type"))) {
-                    return new VectorValue(contentsString);
+                    return new VectorValue(entry.getContents());
                 }
                 try {
                     return DrawableValue.valueOf(objectValue, mContext);
@@ -7,23 +7,17 @@ import androidx.annotation.Nullable;
 import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.Layout;
 import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.layoutpreview.BuildConfig;
-import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
 import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
 
-import org.xmlpull.v1.XmlPullParserException;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 public class ResourceLayoutParser {
     private static final String TAG = ResourceLayoutParser.class.getSimpleName();
@@ -61,7 +55,7 @@ public class ResourceLayoutParser {
                 if (layout != null && layout.isLayout()) {
                     map.put(getName(file), layout.getAsLayout());
                 }
-            } catch (IOException | XmlPullParserException | ConvertException e) {
+            } catch (IOException e) {
                 if (BuildConfig.DEBUG) {
                     Log.d(TAG, "Unable to parse file: " + file.getName(), e);
                 }
@@ -72,14 +66,11 @@ public class ResourceLayoutParser {
     }
 
     @Nullable
-    private Value parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
-        Optional<CharSequence> fileContent = mFileManager.getFileContent(file);
-        if (fileContent.isPresent()) {
-            String contents = fileContent.get().toString();
-            JsonObject jsonObject = new XmlToJsonConverter()
-                    .convert(contents);
+    private Value parseLayout(File file) throws IOException {
+        ResourceXmlCache.Entry entry = ResourceXmlCache.getInstance().get(file, mFileManager);
+        if (entry != null && entry.getJson() != null) {
             return new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
-                    .read(new JsonReader(new StringReader(jsonObject.toString())), false);
+                    .read(new JsonReader(new StringReader(entry.getJson())), false);
         }
         return null;
     }
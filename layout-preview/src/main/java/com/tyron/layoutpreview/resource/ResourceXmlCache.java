@@ -0,0 +1,157 @@
+package com.tyron.layoutpreview.resource;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.layoutpreview.convert.ConvertException;
+import com.tyron.layoutpreview.convert.XmlToJsonConverter;
+
+import org.apache.commons.io.FileUtils;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches resource xml files converted to json so they do not have to be converted again every
+ * time the preview is opened.
+ *
+ * <p>Libraries are extracted to a directory named after the hash of the AAR and are never
+ * modified, the files of a library are cached by that hash and shared between projects using
+ * the same library. Files of the app are cached until their timestamp changes, or until the
+ * contents of the file opened in the editor change.
+ */
+public class ResourceXmlCache {
+
+    private static final ResourceXmlCache sInstance = new ResourceXmlCache();
+
+    public static ResourceXmlCache getInstance() {
+        return sInstance;
+    }
+
+    public static class Entry {
+
+        /**
+         * Marks entries made from the contents of an opened file, their timestamp
+         * does not match the contents.
+         */
+        private static final long SNAPSHOT = -1;
+
+        private final long mLastModified;
+        private final String mContents;
+        private final String mJson;
+
+        private Entry(long lastModified, String contents, String json) {
+            mLastModified = lastModified;
+            mContents = contents;
+            mJson = json;
+        }
+
+        @NonNull
+        public String getContents() {
+            return mContents;
+        }
+
+        /**
+         * @return the converted json, or null if the xml could not be converted
+         */
+        @Nullable
+        public String getJson() {
+            return mJson;
+        }
+    }
+
+    private final Map<File, Entry> mFiles = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Entry>> mLibraries = new ConcurrentHashMap<>();
+
+    private ResourceXmlCache() {
+
+    }
+
+    /**
+     * Returns the converted file of the app, using the contents of the file manager if the file
+     * is opened.
+     *
+     * @return the entry of the file, or null if the file cannot be read
+     */
+    @Nullable
+    public Entry get(@NonNull File file, @NonNull FileManager fileManager) {
+        Entry cached = mFiles.get(file);
+        Optional<CharSequence> snapshot = fileManager.getFileContent(file);
+        if (snapshot.isPresent()) {
+            String contents = snapshot.get().toString();
+            if (cached != null && cached.mContents.equals(contents)) {
+                return cached;
+            }
+            Entry entry = convert(Entry.SNAPSHOT, contents);
+            mFiles.put(file, entry);
+            return entry;
+        }
+
+        long lastModified = file.lastModified();
+        if (cached != null && cached.mLastModified == lastModified) {
+            return cached;
+        }
+        try {
+            Entry entry = convert(lastModified, FileUtils.readFileToString(file,
+                    StandardCharsets.UTF_8));
+            mFiles.put(file, entry);
+            return entry;
+        } catch (IOException e) {
+            mFiles.remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the converted xml files of a resource folder of a library, such as
+     * {@code drawable} or {@code layout}.
+     *
+     * @param libraryDir the directory the AAR of the library has been extracted to
+     * @return the entries of the folder keyed by file name
+     */
+    @NonNull
+    public Map<String, Entry> getLibraryFolder(@NonNull File libraryDir, @NonNull String folder) {
+        return mLibraries.computeIfAbsent(libraryDir.getName() + "/" + folder,
+                key -> convertFolder(new File(libraryDir, "res/" + folder)));
+    }
+
+    public void clear() {
+        mFiles.clear();
+        mLibraries.clear();
+    }
+
+    private static Map<String, Entry> convertFolder(File dir) {
+        File[] xmlFiles = dir.listFiles(c -> c.getName().endsWith(".xml"));
+        if (xmlFiles == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Entry> entries = new HashMap<>(xmlFiles.length);
+        for (File file : xmlFiles) {
+            try {
+                String contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                entries.put(file.getName(), convert(file.lastModified(), contents));
+            } catch (IOException ignore) {
+
+            }
+        }
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private static Entry convert(long lastModified, String contents) {
+        String json;
+        try {
+            json = new XmlToJsonConverter().convert(contents).toString();
+        } catch (IOException | XmlPullParserException | ConvertException e) {
+            json = null;
+        }
+        return new Entry(lastModified, contents, json);
+    }
+}
@@ -0,0 +1,98 @@
+package com.tyron.layoutpreview.resource;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.builder.project.mock.MockFileManager;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TestResourceXmlCache {
+
+    private static final String SHAPE = "<shape xmlns:android=\"http://schemas.android.com/apk/res/android\">\n" +
+            "    <solid android:color=\"#FF0000\"/>\n" +
+            "</shape>";
+
+    private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:layout_height=\"match_parent\"/>";
+
+    private File mDirectory;
+    private final ResourceXmlCache mCache = ResourceXmlCache.getInstance();
+
+    @Before
+    public void setup() throws IOException {
+        mDirectory = Files.createTempDirectory("resources").toFile();
+        mCache.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mDirectory);
+    }
+
+    @Test
+    public void testFileIsConvertedOnce() throws IOException {
+        File file = new File(mDirectory, "shape.xml");
+        FileUtils.writeStringToFile(file, SHAPE, StandardCharsets.UTF_8);
+        MockFileManager fileManager = new MockFileManager(mDirectory);
+
+        ResourceXmlCache.Entry entry = mCache.get(file, fileManager);
+        assertThat(entry).isNotNull();
+        assertThat(entry.getJson()).contains("shape");
+        assertThat(mCache.get(file, fileManager)).isSameInstanceAs(entry);
+    }
+
+    @Test
+    public void testOpenedFileIsConvertedWhenChanged() throws IOException {
+        File file = new File(mDirectory, "layout.xml");
+        FileUtils.writeStringToFile(file, LAYOUT, StandardCharsets.UTF_8);
+        MockFileManager fileManager = new MockFileManager(mDirectory);
+        ResourceXmlCache.Entry entry = mCache.get(file, fileManager);
+
+        fileManager.openFileForSnapshot(file, SHAPE);
+        ResourceXmlCache.Entry changed = mCache.get(file, fileManager);
+        assertThat(changed).isNotSameInstanceAs(entry);
+        assertThat(changed.getContents()).isEqualTo(SHAPE);
+        assertThat(changed.getJson()).contains("shape");
+    }
+
+    @Test
+    public void testInvalidFileIsCached() throws IOException {
+        File file = new File(mDirectory, "invalid.xml");
+        FileUtils.writeStringToFile(file, "<LinearLayout", StandardCharsets.UTF_8);
+        MockFileManager fileManager = new MockFileManager(mDirectory);
+
+        ResourceXmlCache.Entry entry = mCache.get(file, fileManager);
+        assertThat(entry).isNotNull();
+        assertThat(entry.getJson()).isNull();
+        assertThat(mCache.get(file, fileManager)).isSameInstanceAs(entry);
+    }
+
+    @Test
+    public void testLibraryFolderIsCachedByHash() throws IOException {
+        File libraryDir = new File(mDirectory, "5d41402abc4b2a76b9719d911017c592");
+        File drawable = new File(libraryDir, "res/drawable/shape.xml");
+        FileUtils.writeStringToFile(drawable, SHAPE, StandardCharsets.UTF_8);
+
+        Map<String, ResourceXmlCache.Entry> entries =
+                mCache.getLibraryFolder(libraryDir, "drawable");
+        assertThat(entries).containsKey("shape.xml");
+        assertThat(entries.get("shape.xml").getJson()).contains("shape");
+        assertThat(mCache.getLibraryFolder(libraryDir, "drawable")).isSameInstanceAs(entries);
+        assertThat(mCache.getLibraryFolder(libraryDir, "layout")).isEmpty();
+    }
+}
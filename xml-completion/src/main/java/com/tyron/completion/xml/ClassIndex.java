@@ -0,0 +1,292 @@
+package com.tyron.completion.xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.common.util.BinaryStore;
+import com.tyron.common.util.HashUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A compact index of the classes in a jar file, containing only the super class of each
+ * class and whether it has a constructor that can be used to inflate it from XML.
+ *
+ * <p>The index is built by reading only the header and the method table of each class file,
+ * method bodies are never parsed. Indexes are stored in the cache directory keyed by the
+ * SHA-256 of the jar so a jar is only scanned once, the jar is only hashed again when it has
+ * been modified since it was last read.
+ */
+public class ClassIndex {
+
+    private static final int MAGIC = 0x434c5349;
+    private static final int VERSION = 1;
+
+    private static final String VIEW_CONSTRUCTOR_DESCRIPTOR =
+            "(Landroid/content/Context;Landroid/util/AttributeSet;)V";
+
+    /**
+     * The indexes read so far keyed by the path of their jar, a jar is only hashed again
+     * when its length or modification time has changed.
+     */
+    private static final Map<String, CachedIndex> sIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the index of the given jar, reading it from the cache directory or scanning
+     * the jar if it has not been indexed yet.
+     */
+    public static ClassIndex getInstance(@NonNull File jar, @NonNull File cacheDir)
+            throws IOException {
+        String path = jar.getAbsolutePath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        CachedIndex cached = sIndexes.get(path);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.index;
+        }
+
+        File indexFile = new File(cacheDir, HashUtils.hash(jar, "SHA-256") + ".bin");
+        ClassIndex index = new ClassIndex();
+        if (!indexFile.exists() || !index.read(indexFile)) {
+            index.mClasses.clear();
+            index.scan(jar);
+            index.write(indexFile);
+        }
+        sIndexes.put(path, new CachedIndex(length, lastModified, index));
+        return index;
+    }
+
+    private static class CachedIndex {
+        final long length;
+        final long lastModified;
+        final ClassIndex index;
+
+        CachedIndex(long length, long lastModified, ClassIndex index) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.index = index;
+        }
+    }
+
+    public static class Entry {
+
+        private final String mClassName;
+        private final String mSuperClassName;
+        private final boolean mHasViewConstructor;
+
+        public Entry(@NonNull String className, @Nullable String superClassName,
+                     boolean hasViewConstructor) {
+            mClassName = className;
+            mSuperClassName = superClassName;
+            mHasViewConstructor = hasViewConstructor;
+        }
+
+        @NonNull
+        public String getClassName() {
+            return mClassName;
+        }
+
+        @NonNull
+        public String getPackageName() {
+            int index = mClassName.lastIndexOf('.');
+            return index == -1 ? "" : mClassName.substring(0, index);
+        }
+
+        @Nullable
+        public String getSuperClassName() {
+            return mSuperClassName;
+        }
+
+        /**
+         * @return whether this class has a {@code (Context, AttributeSet)} constructor
+         */
+        public boolean hasViewConstructor() {
+            return mHasViewConstructor;
+        }
+    }
+
+    private final Map<String, Entry> mClasses = new HashMap<>();
+
+    @Nullable
+    public Entry get(String className) {
+        return mClasses.get(className);
+    }
+
+    public Collection<Entry> getEntries() {
+        return mClasses.values();
+    }
+
+    private void scan(File jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry element = entries.nextElement();
+                String name = element.getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream in = jarFile.getInputStream(element)) {
+                    Entry entry = readClassHeader(new DataInputStream(
+                            new BufferedInputStream(in)));
+                    if (entry != null) {
+                        mClasses.put(entry.getClassName(), entry);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // malformed class file, skip it
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the name, super class and constructors of a class file. Reading stops
+     * after the method table, the attributes of the class are not read.
+     */
+    @Nullable
+    static Entry readClassHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) {
+            return null;
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    // takes up two entries in the constant pool
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        String className = getClassName(utf8, classNameIndexes, in.readUnsignedShort());
+        String superClassName = getClassName(utf8, classNameIndexes, in.readUnsignedShort());
+        if (className == null) {
+            return null;
+        }
+
+        int interfaceCount = in.readUnsignedShort();
+        in.skipBytes(interfaceCount * 2);
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+
+        boolean hasViewConstructor = false;
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            in.readUnsignedShort(); // access flags
+            String name = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            if ("<init>".equals(name) && VIEW_CONSTRUCTOR_DESCRIPTOR.equals(descriptor)) {
+                hasViewConstructor = true;
+            }
+            skipAttributes(in);
+        }
+        return new Entry(className, superClassName, hasViewConstructor);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.skipBytes(2);
+            int length = in.readInt();
+            int skipped = 0;
+            while (skipped < length) {
+                int n = in.skipBytes(length - skipped);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of class file");
+                }
+                skipped += n;
+            }
+        }
+    }
+
+    @Nullable
+    private static String getClassName(String[] utf8, int[] classNameIndexes, int index) {
+        if (index == 0) {
+            return null;
+        }
+        String name = utf8[classNameIndexes[index]];
+        return name == null ? null : name.replace('/', '.');
+    }
+
+    private boolean read(File file) {
+        try {
+            return BinaryStore.read(file, MAGIC, VERSION, in -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String className = in.readUTF();
+                    String superClassName = in.readBoolean() ? in.readUTF() : null;
+                    boolean hasViewConstructor = in.readBoolean();
+                    mClasses.put(className,
+                            new Entry(className, superClassName, hasViewConstructor));
+                }
+                return true;
+            }) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void write(File file) throws IOException {
+        BinaryStore.write(file, MAGIC, VERSION, out -> {
+            out.writeInt(mClasses.size());
+            for (Entry entry : mClasses.values()) {
+                out.writeUTF(entry.getClassName());
+                out.writeBoolean(entry.getSuperClassName() != null);
+                if (entry.getSuperClassName() != null) {
+                    out.writeUTF(entry.getSuperClassName());
+                }
+                out.writeBoolean(entry.hasViewConstructor());
+            }
+        });
+    }
+}
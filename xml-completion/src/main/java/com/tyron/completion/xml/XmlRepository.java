@@ -32,8 +32,6 @@ import com.tyron.completion.xml.model.Format;
 import com.tyron.completion.xml.repository.ResourceRepository;
 import com.tyron.completion.xml.util.StyleUtils;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -43,6 +41,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,7 +52,7 @@ public class XmlRepository {
     private final Map<String, DeclareStyleable> mDeclareStyleables = new TreeMap<>();
     private final Map<String, DeclareStyleable> mManifestAttrs = new TreeMap<>();
     private final Map<String, AttributeInfo> mExtraAttributes = new TreeMap<>();
-    private final Map<String, JavaClass> mJavaViewClasses = new TreeMap<>();
+    private final Map<String, ClassIndex.Entry> mJavaViewClasses = new TreeMap<>();
 
     private boolean mInitialized = false;
     private ResourceRepository mRepository;
@@ -72,7 +71,7 @@ public class XmlRepository {
         return mDeclareStyleables;
     }
 
-    public Map<String, JavaClass> getJavaViewClasses() {
+    public Map<String, ClassIndex.Entry> getJavaViewClasses() {
         return mJavaViewClasses;
     }
 
@@ -85,42 +84,43 @@ public class XmlRepository {
         if (mInitialized) {
             return;
         }
-        BytecodeScanner.scanBootstrapIfNeeded();
-
         mRepository = new ResourceRepository(module);
         mRepository.initialize();
 
-        for (File library : module.getLibraries()) {
-            File parent = library.getParentFile();
-            if (parent == null) {
-                continue;
-            }
-            File classesFile = new File(parent, "classes.jar");
-            if (classesFile.exists()) {
-                try {
-                    BytecodeScanner.loadJar(classesFile);
-                } catch (IOException ignored) {
-
-                }
+        // only the super classes and constructors are needed, these are read
+        // from a small index instead of loading the classes of every jar
+        Map<String, ClassIndex.Entry> classes = new HashMap<>();
+        ClassIndex bootstrapIndex = BytecodeScanner.getBootstrapIndex();
+        if (bootstrapIndex != null) {
+            for (ClassIndex.Entry entry : bootstrapIndex.getEntries()) {
+                classes.put(entry.getClassName(), entry);
             }
         }
 
+        List<ClassIndex> libraryIndexes = new ArrayList<>();
         for (File library : module.getLibraries()) {
+            if (!library.exists()) {
+                continue;
+            }
             try {
-                List<JavaClass> scan =
-                        BytecodeScanner.scan(library);
-                for (JavaClass javaClass : scan) {
-                    StyleUtils.putStyles(javaClass);
-                    mJavaViewClasses.put(javaClass.getClassName(), javaClass);
+                ClassIndex index = BytecodeScanner.getIndex(library);
+                for (ClassIndex.Entry entry : index.getEntries()) {
+                    classes.put(entry.getClassName(), entry);
                 }
+                libraryIndexes.add(index);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
 
-        addFrameworkViews();
+        for (ClassIndex index : libraryIndexes) {
+            for (ClassIndex.Entry entry : BytecodeScanner.scan(index, classes)) {
+                StyleUtils.putStyles(entry, classes);
+                mJavaViewClasses.put(entry.getClassName(), entry);
+            }
+        }
 
-        Repository.clearCache();
+        addFrameworkViews();
 
         mInitialized = true;
     }
@@ -149,15 +149,9 @@ public class XmlRepository {
     }
 
     private void addFrameworkView(Class<? extends View> viewClass) {
-        org.apache.bcel.util.Repository repository = Repository.getRepository();
-        try {
-            JavaClass javaClass = repository.loadClass(viewClass);
-            if (javaClass != null) {
-                mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
-        }
+        Class<?> superClass = viewClass.getSuperclass();
+        mJavaViewClasses.put(viewClass.getName(), new ClassIndex.Entry(viewClass.getName(),
+                superClass != null ? superClass.getName() : null, true));
     }
 
     private Map<String, DeclareStyleable> parse(Reader reader, String namespace) throws XmlPullParserException, IOException {
@@ -6,11 +6,10 @@ import androidx.annotation.Nullable;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.model.DrawableKind;
+import com.tyron.completion.xml.ClassIndex;
 import com.tyron.completion.xml.XmlRepository;
 import com.tyron.completion.xml.insert.LayoutTagInsertHandler;
 
-import org.apache.bcel.classfile.JavaClass;
-
 import java.util.HashMap;
 import java.util.Map;
 
@@ -96,7 +95,7 @@ public class AndroidXmlTagUtils {
     public static void addTagItems(@NonNull XmlRepository repository,
                                    @NonNull String prefix,
                                    @NonNull CompletionList.Builder builder) {
-        for (Map.Entry<String, JavaClass> entry : repository.getJavaViewClasses()
+        for (Map.Entry<String, ClassIndex.Entry> entry : repository.getJavaViewClasses()
                 .entrySet()) {
             CompletionItem item = new CompletionItem();
             String commitPrefix = "<";
@@ -30,13 +30,13 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.tyron.completion.xml.BytecodeScanner;
+import com.tyron.completion.xml.ClassIndex;
 import com.tyron.completion.xml.model.DeclareStyleable;
 
-import org.apache.bcel.classfile.JavaClass;
-
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -99,44 +99,35 @@ public class StyleUtils {
         return classes;
     }
 
-    public static void putStyles(JavaClass javaClass) {
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-                String simpleName = getSimpleName(superClass.getClassName());
-                sViewStyleMap.put(javaClass.getClassName(), simpleName);
+    public static void putStyles(ClassIndex.Entry entry, Map<String, ClassIndex.Entry> classes) {
+        List<String> superClasses = BytecodeScanner.getSuperClasses(entry, classes);
+        for (String superClass : superClasses) {
+            if (Object.class.getName().equals(superClass)) {
+                continue;
             }
-        } catch (ClassNotFoundException e) {
-            // ignored
+            String simpleName = getSimpleName(superClass);
+            sViewStyleMap.put(entry.getClassName(), simpleName);
         }
 
-        if (BytecodeScanner.isViewGroup(javaClass)) {
-            putLayoutParams(javaClass);
+        if (superClasses.contains(ViewGroup.class.getName())) {
+            putLayoutParams(entry.getClassName(), superClasses);
         }
     }
 
-    public static void putLayoutParams(JavaClass javaClass) {
+    private static void putLayoutParams(String className, List<String> superClasses) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        try {
-            JavaClass[] superClasses = javaClass.getSuperClasses();
-            for (JavaClass superClass : superClasses) {
-                if (Object.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
-
-                if (View.class.getName().equals(superClass.getClassName())) {
-                    continue;
-                }
+        for (String superClass : superClasses) {
+            if (Object.class.getName().equals(superClass)) {
+                continue;
+            }
 
-                builder.add(getSimpleName(superClass.getClassName()) + "_Layout");
+            if (View.class.getName().equals(superClass)) {
+                continue;
             }
-            sLayoutParamsMap.put(getSimpleName(javaClass.getClassName()) + "_Layout", builder.build());
-        } catch (ClassNotFoundException e) {
-            // ignored
+
+            builder.add(getSimpleName(superClass) + "_Layout");
         }
+        sLayoutParamsMap.put(getSimpleName(className) + "_Layout", builder.build());
     }
 
     public static void putLayoutParams(@NonNull Class<? extends ViewGroup> viewGroup) {
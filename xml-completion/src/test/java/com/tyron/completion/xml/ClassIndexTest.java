@@ -0,0 +1,102 @@
+package com.tyron.completion.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class ClassIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("unused")
+    public static class InflatableList extends ArrayList<String> {
+        public InflatableList(Context context, AttributeSet attributeSet) {
+
+        }
+    }
+
+    @Test
+    public void testReadClassHeader() throws IOException {
+        ClassIndex.Entry entry = read(InflatableList.class);
+        assertNotNull(entry);
+        assertEquals(InflatableList.class.getName(), entry.getClassName());
+        assertEquals(ArrayList.class.getName(), entry.getSuperClassName());
+        assertEquals("com.tyron.completion.xml", entry.getPackageName());
+        assertTrue(entry.hasViewConstructor());
+
+        entry = read(ClassIndexTest.class);
+        assertNotNull(entry);
+        assertEquals(Object.class.getName(), entry.getSuperClassName());
+        assertFalse(entry.hasViewConstructor());
+    }
+
+    @Test
+    public void testIndexIsReadAgainWhenJarChanges() throws IOException {
+        File cacheDir = folder.newFolder("cache");
+        File jar = new File(folder.getRoot(), "classes.jar");
+        writeJar(jar, InflatableList.class);
+        jar.setLastModified(1_000_000L);
+
+        ClassIndex index = ClassIndex.getInstance(jar, cacheDir);
+        assertNotNull(index.get(InflatableList.class.getName()));
+        assertSame(index, ClassIndex.getInstance(jar, cacheDir));
+
+        // the jar is not hashed again as long as its length and modification time are the same
+        byte[] contents = IOUtils.toByteArray(jar.toURI());
+        contents[contents.length - 1] ^= 1;
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(contents);
+        }
+        jar.setLastModified(1_000_000L);
+        assertSame(index, ClassIndex.getInstance(jar, cacheDir));
+
+        writeJar(jar, ClassIndexTest.class);
+        jar.setLastModified(2_000_000L);
+        ClassIndex changed = ClassIndex.getInstance(jar, cacheDir);
+        assertNotSame(index, changed);
+        assertNull(changed.get(InflatableList.class.getName()));
+        assertNotNull(changed.get(ClassIndexTest.class.getName()));
+    }
+
+    private static void writeJar(File jar, Class<?> clazz) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+             InputStream in = clazz.getResourceAsStream(getClassFileName(clazz))) {
+            out.putNextEntry(new JarEntry(clazz.getName().replace('.', '/') + ".class"));
+            IOUtils.copy(in, out);
+            out.closeEntry();
+        }
+    }
+
+    private static String getClassFileName(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.substring(name.lastIndexOf('.') + 1) + ".class";
+    }
+
+    private static ClassIndex.Entry read(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(getClassFileName(clazz))) {
+            return ClassIndex.readClassHeader(new DataInputStream(in));
+        }
+    }
+}